@@ -0,0 +1,55 @@
+/**
+ * This file copyright (c) 2015-2016, Jing Fan, Adalbert Gerald Soosai Raj, and Jignesh M. Patel
+ *
+ * See the file CREDITS.txt in the root directory for details.
+ **/
+
+package Bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * @brief Compiled programs per second: Parser alone, and Parser, Translator
+ * and Optimizer together as Grail.run() does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompileBenchmark {
+  @Param({"pagerank", "sssp", "wcc", "nested8_vars32"})
+  public String program;
+
+  private String filename;
+
+  @Setup
+  public void setup() throws Throwable {
+    this.filename = Programs.path(this.program);
+  }
+
+  @Benchmark
+  public Object parse() throws Throwable {
+    return Programs.PARSE.invoke(this.filename);
+  }
+
+  @Benchmark
+  public Object compile() throws Throwable {
+    Object grail = Programs.NEW_GRAIL.invoke(this.filename);
+    Programs.RUN.invoke(grail);
+    return Programs.GET_BLOCKS.invoke(grail);
+  }
+}
@@ -0,0 +1,98 @@
+/**
+ * This file copyright (c) 2015-2016, Jing Fan, Adalbert Gerald Soosai Raj, and Jignesh M. Patel
+ *
+ * See the file CREDITS.txt in the root directory for details.
+ **/
+
+package Bench;
+
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+
+import Engine.CsrGraph;
+import Engine.VertexProgram;
+
+/**
+ * @brief Handles on the compiler and the backends, which are in the unnamed
+ * package and so can not be imported, and the paths of the programs. The
+ * handles are resolved once, outside of the measured code.
+ */
+final class Programs {
+  static final MethodHandle PARSE;
+  static final MethodHandle NEW_GRAIL;
+  static final MethodHandle RUN;
+  static final MethodHandle GET_BLOCKS;
+  static final MethodHandle NEW_JVM_BACKEND;
+  static final MethodHandle SET_SPECIALIZED;
+  static final MethodHandle SET_COMPRESSED;
+  static final MethodHandle PREPARE;
+  static final MethodHandle RUN_BACKEND;
+  static final MethodHandle GET_OPTIONS;
+  static final MethodHandle COMPILE;
+  static final MethodHandle ATTACH;
+  private static final MethodHandle GEN_NESTED;
+
+  static {
+    try {
+      MethodHandles.Lookup lookup = MethodHandles.lookup();
+      Class<?> grail = Class.forName("Grail");
+      Class<?> backend = Class.forName("JvmBackend");
+      PARSE = lookup.unreflect(accessible(Class.forName("Parser")
+          .getDeclaredMethod("parse", String.class)));
+      NEW_GRAIL = lookup.unreflectConstructor(grail.getConstructor(String.class));
+      RUN = lookup.unreflect(grail.getMethod("run"));
+      GET_BLOCKS = lookup.unreflect(grail.getMethod("getBlocks"));
+      NEW_JVM_BACKEND = lookup.unreflectConstructor(backend.getConstructor());
+      SET_SPECIALIZED = lookup.unreflect(backend.getMethod("setSpecialized", boolean.class));
+      SET_COMPRESSED = lookup.unreflect(backend.getMethod("setCompressed", boolean.class));
+      PREPARE = lookup.unreflect(backend.getMethod("prepare", String.class, boolean.class));
+      RUN_BACKEND = lookup.unreflect(backend.getMethod("run", grail));
+      GET_OPTIONS = lookup.unreflect(grail.getMethod("getOptions"));
+      COMPILE = lookup.unreflect(backend.getMethod("compile", HashMap.class));
+      ATTACH = lookup.unreflect(backend.getMethod("attach", VertexProgram.class,
+                                                  CsrGraph.class));
+      GEN_NESTED = lookup.unreflect(accessible(Class.forName("GrailBench")
+          .getDeclaredMethod("genNestedProgram", int.class, int.class)));
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  private Programs() {
+  }
+
+  private static Method accessible(Method method) {
+    method.setAccessible(true);
+    return method;
+  }
+
+  /**
+   * @brief Get the file of a program: a program of the analytics directory
+   * (the system property grail.analytics, ../../analytics by default), or
+   * nested<depth>_vars<vars> for a generated program (see
+   * GrailBench.genNestedProgram).
+   */
+  static String path(String program) throws Throwable {
+    if (program.matches("nested\\d+_vars\\d+")) {
+      String[] fields = program.substring("nested".length()).split("_vars");
+      return (String) GEN_NESTED.invoke(Integer.parseInt(fields[0]),
+                                        Integer.parseInt(fields[1]));
+    }
+    String dir = System.getProperty("grail.analytics", "../../analytics");
+    return new File(dir, program + ".grail").getPath();
+  }
+
+  /**
+   * @brief Create a JvmBackend: jvm, jvm-generic or jvm-compressed.
+   */
+  static Object jvmBackend(String name) throws Throwable {
+    Object backend = NEW_JVM_BACKEND.invoke();
+    SET_SPECIALIZED.invoke(backend, name.equals("jvm"));
+    SET_COMPRESSED.invoke(backend, name.equals("jvm-compressed"));
+    return backend;
+  }
+}
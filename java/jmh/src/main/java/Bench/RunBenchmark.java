@@ -0,0 +1,70 @@
+/**
+ * This file copyright (c) 2015-2016, Jing Fan, Adalbert Gerald Soosai Raj, and Jignesh M. Patel
+ *
+ * See the file CREDITS.txt in the root directory for details.
+ **/
+
+package Bench;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Graph.GraphGenerator;
+
+/**
+ * @brief The time of a whole run of a program on JvmBackend, over an R-MAT
+ * graph generated from seed 1. The program is compiled in the setup, so a
+ * run only initializes the vertices and runs the supersteps.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RunBenchmark {
+  @Param({"pagerank", "sssp", "wcc"})
+  public String program;
+
+  @Param({"jvm", "jvm-generic", "jvm-compressed"})
+  public String backend;
+
+  @Param({"16"})
+  public int scale;
+
+  private Object engine;
+  private Object grail;
+
+  @Setup(Level.Trial)
+  public void setup() throws Throwable {
+    File file = File.createTempFile("rmat" + this.scale, ".txt");
+    file.deleteOnExit();
+    GraphGenerator gen = new GraphGenerator();
+    gen.setRmat(this.scale, 16, 0.57, 0.19, 0.19);
+    gen.generate(new GraphGenerator.TextSink(file.getPath(), false));
+    this.engine = Programs.jvmBackend(this.backend);
+    Programs.PREPARE.invoke(this.engine, file.getPath(), false);
+    this.grail = Programs.NEW_GRAIL.invoke(Programs.path(this.program));
+    Programs.RUN.invoke(this.grail);
+    // Compile the program before the measurement.
+    Programs.RUN_BACKEND.invoke(this.engine, this.grail);
+  }
+
+  @Benchmark
+  public long[] run() throws Throwable {
+    return (long[]) Programs.RUN_BACKEND.invoke(this.engine, this.grail);
+  }
+}
@@ -0,0 +1,149 @@
+/**
+ * This file copyright (c) 2015-2016, Jing Fan, Adalbert Gerald Soosai Raj, and Jignesh M. Patel
+ *
+ * See the file CREDITS.txt in the root directory for details.
+ **/
+
+package Bench;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Block.Block;
+import Engine.CsrGraph;
+import Engine.VertexProgram;
+import Graph.EdgeListReader;
+import Graph.GraphGenerator;
+import Graph.GraphLoader;
+import Runner.BlockRunner;
+import Runner.SqlDialect;
+
+/**
+ * @brief The time of one superstep of a program, over an R-MAT graph
+ * generated from seed 1. The graph is loaded and the program compiled once
+ * per trial; a benchmark invocation runs a single superstep, on JvmBackend
+ * or as the SQL of the program on an in-memory H2 database.
+ *
+ * When a run ends, the setup of the next invocation starts a new run, so
+ * the invocations measure the supersteps of whole runs in turn and never
+ * one past the end. Starting a run is not measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SuperstepBenchmark {
+  @Param({"pagerank", "sssp", "wcc"})
+  public String program;
+
+  @Param({"jvm", "jvm-generic", "jvm-compressed", "h2"})
+  public String backend;
+
+  @Param({"12"})
+  public int scale;
+
+  // The JVM backend, its graph, and the program of the current run, with
+  // the messages and the number of its last superstep.
+  private Object engine;
+  private CsrGraph graph;
+  private HashMap<String, String> options;
+  private VertexProgram vertexProgram;
+  private long messages;
+  private int supersteps;
+
+  // The H2 database, the blocks of the program and the runner of the
+  // current run.
+  private String url;
+  private Connection conn;
+  private List<Block> blocks;
+  private BlockRunner runner;
+
+  @SuppressWarnings("unchecked")
+  @Setup(Level.Trial)
+  public void setup() throws Throwable {
+    File file = File.createTempFile("rmat" + this.scale, ".txt");
+    file.deleteOnExit();
+    GraphGenerator gen = new GraphGenerator();
+    gen.setRmat(this.scale, 16, 0.57, 0.19, 0.19);
+    gen.generate(new GraphGenerator.TextSink(file.getPath(), false));
+    Object grail = Programs.NEW_GRAIL.invoke(Programs.path(this.program));
+    Programs.RUN.invoke(grail);
+    if (this.backend.equals("h2")) {
+      this.url = "jdbc:h2:mem:superstep;DB_CLOSE_DELAY=-1";
+      int threads = Runtime.getRuntime().availableProcessors();
+      GraphLoader loader = new GraphLoader(this.url, null, null, false, 10000);
+      loader.load(new EdgeListReader(file.getPath(), threads, 10000));
+      this.conn = DriverManager.getConnection(this.url);
+      this.blocks = (List<Block>) Programs.GET_BLOCKS.invoke(grail);
+    } else {
+      this.engine = Programs.jvmBackend(this.backend);
+      this.graph = CsrGraph.load(file.getPath(), false);
+      this.options = (HashMap<String, String>) Programs.GET_OPTIONS.invoke(grail);
+    }
+  }
+
+  /**
+   * @brief Start a new run when the last superstep ended the current one.
+   */
+  @Setup(Level.Invocation)
+  public void nextSuperstep() throws Throwable {
+    if (this.runner != null) {
+      if (this.runner.nextSuperstep()) return;
+      this.runner.finish();
+    }
+    if (this.conn != null) {
+      this.runner = new BlockRunner(this.conn, SqlDialect.forUrl(this.url));
+      this.runner.setCountRows(false);
+      this.runner.start(this.blocks);
+      if (!this.runner.nextSuperstep()) {
+        throw new IllegalStateException(this.program + " runs no superstep");
+      }
+      return;
+    }
+    if (this.vertexProgram != null) {
+      int max = this.vertexProgram.getMaxSupersteps();
+      if (max >= 0 ? this.supersteps < max : this.messages > 0) return;
+    }
+    this.vertexProgram = (VertexProgram) Programs.COMPILE.invoke(this.engine, this.options);
+    Programs.ATTACH.invoke(this.engine, this.vertexProgram, this.graph);
+    this.messages = this.vertexProgram.init();
+    this.supersteps = 0;
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws SQLException {
+    if (this.conn != null) this.conn.close();
+  }
+
+  @Benchmark
+  public long superstep() throws SQLException {
+    if (this.runner != null) {
+      this.runner.superstep();
+      return 0;
+    }
+    ++this.supersteps;
+    this.messages = this.vertexProgram.superstep();
+    return this.messages;
+  }
+}
@@ -20,12 +20,30 @@ public class BeginWhileBlock extends Block {
    *               iterations.
    */
   public BeginWhileBlock(String stage, int indent, String endStr) {
+    this(stage, indent, endStr, null);
+  }
+
+  /**
+   * @brief Constructor.
+   * @param stage The string indicates the stage of this code block.
+   * @param indent The indent level.
+   * @param endStr The string indicates the termination condition of the
+   *               iterations.
+   * @param initVal The initial value of @flag. If it is null, the value is
+   *                decided by the termination condition.
+   */
+  public BeginWhileBlock(String stage,
+                         int indent,
+                         String endStr,
+                         String initVal) {
     super(stage, indent);
-    String initVal = "-1";
-    if (!endStr.equals("NO_MESSAGE")) {
-      initVal = endStr.substring(endStr.indexOf('(') + 1,
-                                 endStr.indexOf(')'))
-                      .split(",")[1].trim();
+    if (initVal == null) {
+      initVal = "-1";
+      if (!endStr.equals("NO_MESSAGE")) {
+        initVal = endStr.substring(endStr.indexOf('(') + 1,
+                                   endStr.indexOf(')'))
+                        .split(",")[1].trim();
+      }
     }
     this.append("DECLARE @flag int");
     this.append("SET @flag = " + initVal);
@@ -118,4 +118,41 @@ public class Block {
   public String toString() {
     return this.sb.toString();
   }
+
+  /**
+   * @brief Rename a table in the SQL of the block. The block is changed in
+   * place, so it keeps its type for the passes that look at it later.
+   * @param from The old table name.
+   * @param to The new table name.
+   */
+  public void renameTable(String from, String to) {
+    this.sb = new StringBuilder(rename(this.getSql(), from, to));
+    this.sql = this.sb.toString();
+  }
+
+  /**
+   * @brief Rename a table in a piece of SQL, as a whole word.
+   */
+  protected static String rename(String sql, String from, String to) {
+    return sql.replaceAll("\\b" + from + "\\b", to);
+  }
+
+  /**
+   * @brief Get the predicate that joins two tables on their key columns.
+   * The key is the vertex id, or (source_id, id) in multi-source mode.
+   * @param keys The key columns.
+   * @param lhs The left table.
+   * @param rhs The right table.
+   * @return The predicate.
+   */
+  public static String keyPredicate(String[] keys, String lhs, String rhs) {
+    StringBuilder pred = new StringBuilder();
+    for (String key : keys) {
+      if (pred.length() > 0) {
+        pred.append(" AND ");
+      }
+      pred.append(lhs + "." + key + " = " + rhs + "." + key);
+    }
+    return pred.toString();
+  }
 }
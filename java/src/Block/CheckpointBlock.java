@@ -0,0 +1,67 @@
+/**
+ * This file copyright (c) 2015-2016, Jing Fan, Adalbert Gerald Soosai Raj, and Jignesh M. Patel
+ *
+ * See the file CREDITS.txt in the root directory for details.
+ **/
+
+package Block;
+
+import java.util.ArrayList;
+
+/**
+ * @brief The SQL block for saving a checkpoint every few supersteps. The
+ * tables are first copied into staging tables, and then swapped with the
+ * last checkpoint by renaming, so a failure during the copy always leaves a
+ * complete checkpoint behind.
+ *
+ * The live tables themselves can not be swapped out: next is updated in
+ * place and, like the senders, is read again by the next superstep, and
+ * SQL Server has no copy-on-write snapshot of a table. So every checkpoint
+ * copies them once, with SELECT INTO, which is minimally logged, and only
+ * the swap with the last checkpoint is a rename. The copy is paid once
+ * every interval supersteps.
+ */
+public class CheckpointBlock extends Block {
+
+  /**
+   * @brief Constructor.
+   * @param stage The string indicates the stage of this code block.
+   * @param indent The indent level.
+   * @param interval Save a checkpoint every interval supersteps.
+   * @param tables The tables that should be saved. Table t is saved as
+   *               ckpt_t.
+   * @param flagVal The value of @flag that the resumed loop should start
+   *                with.
+   */
+  public CheckpointBlock(String stage,
+                         int indent,
+                         String interval,
+                         ArrayList<String> tables,
+                         String flagVal) {
+    super(stage, indent);
+    this.append("SET @superstep = @superstep + 1");
+    this.append("IF (@superstep % " + interval + " = 0)");
+    this.append("BEGIN");
+    for (String table : tables) {
+      String staging = "ckpt_" + table + "_new";
+      this.append("IF OBJECT_ID('dbo." + staging + "', 'U') IS NOT NULL DROP TABLE "
+                  + staging + ";", indent + 1);
+      this.append("SELECT * INTO " + staging + " FROM " + table + ";",
+                  indent + 1);
+    }
+    this.append("BEGIN TRANSACTION", indent + 1);
+    for (String table : tables) {
+      String ckpt = "ckpt_" + table;
+      this.append("IF OBJECT_ID('dbo." + ckpt + "', 'U') IS NOT NULL DROP TABLE "
+                  + ckpt + ";", indent + 1);
+      this.append("EXEC SP_RENAME '" + ckpt + "_new','" + ckpt + "';",
+                  indent + 1);
+    }
+    this.append("UPDATE ckpt_state SET superstep = @superstep, flag = "
+                + flagVal + ", is_first = @isFirst;", indent + 1);
+    this.append("COMMIT TRANSACTION", indent + 1);
+    this.append("END");
+    this.sql = this.sb.toString();
+  }
+
+}
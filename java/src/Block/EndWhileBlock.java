@@ -11,6 +11,8 @@ package Block;
  */
 public class EndWhileBlock extends Block {
   private String endStr;
+  private String counter;
+  private String until;
 
   /**
    * @brief Constructor.
@@ -25,12 +27,38 @@ public class EndWhileBlock extends Block {
                        int indent,
                        String endStr,
                        String counter) {
+    this(stage, indent, endStr, counter, null);
+  }
+
+  /**
+   * @brief Constructor.
+   * @param stage The string indicates the stage of this code block.
+   * @param indent The indent level.
+   * @param endStr The string indicates the termination condition of the
+   *               iterations.
+   * @param counter The name of the table that is used to control the
+   *                 iterations. If it is null with NO_MESSAGE, @flag is set
+   *                 in the loop body, from the rows written to the table.
+   * @param until A condition on the aggregate variables that ends the
+   *              iterations as well, or null.
+   */
+  public EndWhileBlock(String stage,
+                       int indent,
+                       String endStr,
+                       String counter,
+                       String until) {
     super(stage, indent);
     this.endStr  = endStr;
-    if (endStr.equals("NO_MESSAGE")) {
-      this.append("SELECT @flag = COUNT (*) FROM " + counter + ";");
-    } else {
+    this.counter = counter;
+    this.until = until;
+    if (!endStr.equals("NO_MESSAGE")) {
       this.append("SET @flag = @flag - 1");
+    } else if (counter != null) {
+      this.append("SELECT @flag = COUNT (*) FROM " + counter + ";");
+    }
+    if (until != null) {
+      this.append("IF (" + until + ")");
+      this.append("  SET @flag = 0");
     }
     this.append("END", indent - 1);
     this.sql = this.sb.toString();
@@ -43,4 +71,21 @@ public class EndWhileBlock extends Block {
   public String getEndStr() {
     return endStr;
   }
+
+  /**
+   * @brief Get the table that is counted to control the iterations.
+   * @return The table, or null if @flag is set in the loop body.
+   */
+  public String getCounter() {
+    return counter;
+  }
+
+  /**
+   * @brief Get the condition on the aggregate variables that ends the
+   * iterations.
+   * @return The condition, or null.
+   */
+  public String getUntil() {
+    return until;
+  }
 }
@@ -10,6 +10,10 @@ package Block;
  * @brief The SQL block for flow control.
  */
 public class FlowControlBlock extends Block {
+  private String flowControl;
+  private String lhs;
+  private String rhs;
+
     /**
      * @brief Constructor.
      * @param stage The stage string.
@@ -24,6 +28,9 @@ public class FlowControlBlock extends Block {
                           String lhs,
                           String rhs) {
     super(stage, indent);
+    this.flowControl = flowControl;
+    this.lhs = lhs;
+    this.rhs = rhs;
     this.append("IF (" + flowControl + ")");
     this.append("BEGIN");
     this.concat(lhs);
@@ -35,4 +42,24 @@ public class FlowControlBlock extends Block {
     this.sql = this.sb.toString();
   }
 
+  /**
+   * @brief Get the flow control condition.
+   */
+  public String getFlowControl() {
+    return flowControl;
+  }
+
+  /**
+   * @brief Get the SQL in the if clause.
+   */
+  public String getLhs() {
+    return lhs;
+  }
+
+  /**
+   * @brief Get the SQL in the else clause.
+   */
+  public String getRhs() {
+    return rhs;
+  }
 }
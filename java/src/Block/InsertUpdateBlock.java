@@ -19,6 +19,16 @@ public class InsertUpdateBlock extends Block {
    * just another way to write the UpdateVertexBlock).
    */
   public InsertUpdateBlock(UpdateVertexBlock block) {
+    this(block, null);
+  }
+
+  /**
+   * @brief Constructor.
+   * @param block The original UpdateVertexBlock.
+   * @param option The query hints of the INSERT, such as
+   * "OPTION (HASH JOIN)", or null.
+   */
+  public InsertUpdateBlock(UpdateVertexBlock block, String option) {
     super(block.getStage(), block.getIndentLevel());
     this.otherTable = block.getOtherTable();
 
@@ -27,10 +37,21 @@ public class InsertUpdateBlock extends Block {
     this.append("FROM next");
     this.append("WHERE NOT EXISTS (");
     this.append("  SELECT * FROM " + otherTable);
-    this.append("  WHERE " + otherTable + ".id = next.id)");
+    this.append("  WHERE " + keyPredicate(block.getKeys(), otherTable, "next")
+                + ")");
+    if (option != null) {
+      this.append(option);
+    }
     this.append("DROP TABLE next;");
     this.append("EXEC SP_RENAME '"+ otherTable +"','next'" + ";");
     this.sql = this.sb.toString();
   }
 
+  /**
+   * @brief Rename a table in the SQL and in the other table.
+   */
+  public void renameTable(String from, String to) {
+    super.renameTable(from, to);
+    this.otherTable = rename(this.otherTable, from, to);
+  }
 }
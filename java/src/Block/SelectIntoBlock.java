@@ -36,6 +36,31 @@ public class SelectIntoBlock extends Block {
                          String pred,
                          boolean joinWithId,
                          String groupBy) {
+    this(stage, indent, attrs, targetTb, fromList, pred, joinWithId, groupBy,
+         new String[] {"id"});
+  }
+
+  /**
+   * @brief Constructor.
+   * @param stage The string indicates the stage of this code block.
+   * @param indent The indent level.
+   * @param attrs The attribute list.
+   * @param targetTb The name of the new table.
+   * @param fromList The names of the from table.
+   * @param pred The predicates.
+   * @param joinWithId Whether to join these tables with common vertex id.
+   * @param groupBy The attribute that we should add group by operation on.
+   * @param keys The columns the tables are joined on when joinWithId is set.
+   */
+  public SelectIntoBlock(String stage,
+                         int indent,
+                         ArrayList<String> attrs,
+                         String targetTb,
+                         ArrayList<String> fromList,
+                         String pred,
+                         boolean joinWithId,
+                         String groupBy,
+                         String[] keys) {
     super(stage, indent);
     StringBuilder line = new StringBuilder();
     line.append("SELECT ");
@@ -64,22 +89,23 @@ public class SelectIntoBlock extends Block {
               continue;
           }
           if ( 0 == i) {
-            line.append(fromList.get(i) + ".id = " + fromList.get(i+1)
-                + ".id ");
+            line.append(keyPredicate(keys, fromList.get(i), fromList.get(i+1))
+                + " ");
           } else {
-            line.append("AND " + fromList.get(i) + ".id = " + fromList.get(i+1)
-                + ".id ");
+            line.append("AND " + keyPredicate(keys, fromList.get(i),
+                                              fromList.get(i+1)) + " ");
           }
       }
       if (fromList.size() >= 2 &&
          !fromList.get(fromList.size() - 2).equals("edge")
          && !fromList.get(fromList.size() - 1).equals("edge")) {
         if (fromList.size() == 2) {
-          line.append(fromList.get(fromList.size() - 2)
-              + ".id = " + fromList.get(fromList.size() - 1) + ".id");
+          line.append(keyPredicate(keys, fromList.get(fromList.size() - 2),
+                                   fromList.get(fromList.size() - 1)));
         } else {
-          line.append(" AND " + fromList.get(fromList.size() - 2)
-              + ".id = " + fromList.get(fromList.size() - 1) + ".id");
+          line.append(" AND " + keyPredicate(keys,
+                                             fromList.get(fromList.size() - 2),
+                                             fromList.get(fromList.size() - 1)));
         }
       }
 
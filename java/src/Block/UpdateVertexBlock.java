@@ -14,6 +14,8 @@ public class UpdateVertexBlock extends Block{
   // The name of the other table used in update.
   private String otherTable;
   private String valueExpression;
+  // The key columns of next.
+  private String[] keys;
 
   /**
    * @brief Constructor.
@@ -26,12 +28,30 @@ public class UpdateVertexBlock extends Block{
                            int indent,
                            String otherTable,
                            String valueExpression) {
+    this(stage, indent, otherTable, valueExpression, new String[] {"id"});
+  }
+
+  /**
+   * @brief Constructor.
+   * @param stage The stage.
+   * @param indent The indent level.
+   * @param otherTable The table holding the new values.
+   * @param valueExpression The new value.
+   * @param keys The key columns of next, (source_id, id) in multi-source
+   * mode.
+   */
+  public UpdateVertexBlock(String stage,
+                           int indent,
+                           String otherTable,
+                           String valueExpression,
+                           String[] keys) {
     super(stage, indent);
     this.otherTable = otherTable;
     this.valueExpression = valueExpression;
+    this.keys = keys;
     this.append("UPDATE next SET next.val = " + valueExpression);
     this.append("FROM next, " + otherTable);
-    this.append("WHERE next.id = " + otherTable + ".id" + ";");
+    this.append("WHERE " + keyPredicate(keys, "next", otherTable) + ";");
     
     this.sql = this.sb.toString();
   }
@@ -51,4 +71,17 @@ public class UpdateVertexBlock extends Block{
   public String getValueExpression() {
       return this.valueExpression;
   }
+
+  public String[] getKeys() {
+    return this.keys;
+  }
+
+  /**
+   * @brief Rename a table in the SQL and in the other table and the value expression.
+   */
+  public void renameTable(String from, String to) {
+    super.renameTable(from, to);
+    this.otherTable = rename(this.otherTable, from, to);
+    this.valueExpression = rename(this.valueExpression, from, to);
+  }
 }
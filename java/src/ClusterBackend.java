@@ -0,0 +1,251 @@
+/**
+ * This file copyright (c) 2015-2016, Jing Fan, Adalbert Gerald Soosai Raj, and Jignesh M. Patel
+ *
+ * See the file CREDITS.txt in the root directory for details.
+ **/
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import Engine.BspWorker;
+import Engine.CodeGenerator;
+import Expr.Stmt;
+
+/**
+ * @brief Runs Grail programs across several worker JVMs, as the coordinator
+ * of Engine.BspWorker processes. The workers split the vertices among them
+ * and run the program generated by Engine.CodeGenerator for a partition,
+ * exchanging the combined messages at the end of every superstep. The
+ * coordinator is the barrier: it starts a superstep on all the workers,
+ * sums the messages they sent, and ends the run as End says.
+ *
+ * With port 0 the workers are started as local processes with the class
+ * path of this JVM. Otherwise the coordinator listens on the port, and the
+ * workers are started by hand on their hosts with
+ * java Engine.BspWorker <coordinator host> <port>.
+ */
+public class ClusterBackend implements ExecutionBackend {
+  private int workers;
+  private int port;
+  private Process[] processes = null;
+  // The connections to the workers, by index.
+  private DataInputStream[] in = null;
+  private DataOutputStream[] out = null;
+  // The file of the vertex ids, or null.
+  private String vertexFile = null;
+  // The file of the partition of every vertex, or null.
+  private String partFile = null;
+  // The values of the last run, indexed by vertex id.
+  private double[] values = null;
+
+  /**
+   * @brief Constructor.
+   * @param workers The number of workers.
+   * @param port The port to listen on for the workers, or 0 to start them
+   * as local processes.
+   */
+  public ClusterBackend(int workers, int port) {
+    this.workers = workers;
+    this.port = port;
+  }
+
+  public String getName() {
+    return "cluster" + this.workers;
+  }
+
+  /**
+   * @brief Set the file of the vertex ids, one per line, so the vertices
+   * without edges are loaded too. By default the vertices are the end
+   * points of the edges.
+   */
+  public void setVertexFile(String vertexFile) {
+    this.vertexFile = vertexFile;
+  }
+
+  /**
+   * @brief Place the vertices on the workers by a partition file of
+   * Graph.GraphPartitioner, partition i goes to worker i % workers. By
+   * default the vertices are placed by id % workers.
+   */
+  public void setPartitionFile(String partFile) {
+    this.partFile = partFile;
+  }
+
+  /**
+   * @brief Start the workers, or wait for them, and connect them.
+   */
+  private void start() throws IOException {
+    ServerSocket server = new ServerSocket(this.port);
+    if (this.port == 0) {
+      String java = System.getProperty("java.home") + File.separator + "bin"
+                    + File.separator + "java";
+      this.processes = new Process[this.workers];
+      for (int w = 0; w < this.workers; ++w) {
+        this.processes[w] = new ProcessBuilder(
+            java, "-cp", System.getProperty("java.class.path"),
+            "Engine.BspWorker", "localhost",
+            String.valueOf(server.getLocalPort())).inheritIO().start();
+      }
+    }
+    this.in = new DataInputStream[this.workers];
+    this.out = new DataOutputStream[this.workers];
+    String[] hosts = new String[this.workers];
+    int[] ports = new int[this.workers];
+    for (int w = 0; w < this.workers; ++w) {
+      Socket socket = server.accept();
+      socket.setTcpNoDelay(true);
+      this.in[w] = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      this.out[w] = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      hosts[w] = socket.getInetAddress().getHostAddress();
+      ports[w] = this.in[w].readInt();
+    }
+    server.close();
+    for (int w = 0; w < this.workers; ++w) {
+      this.out[w].writeInt(this.workers);
+      this.out[w].writeInt(w);
+      for (int peer = 0; peer < this.workers; ++peer) {
+        this.out[w].writeUTF(hosts[peer]);
+        this.out[w].writeInt(ports[peer]);
+      }
+      this.out[w].flush();
+    }
+  }
+
+  /**
+   * @brief Send a command without arguments to all the workers.
+   */
+  private void broadcast(int command) throws IOException {
+    for (DataOutputStream out : this.out) {
+      out.writeInt(command);
+      out.flush();
+    }
+  }
+
+  /**
+   * @brief Wait for the reply of a worker.
+   * @throws IOException If the command failed on the worker.
+   */
+  private DataInputStream reply(int worker) throws IOException {
+    if (!this.in[worker].readBoolean()) {
+      throw new IOException(this.in[worker].readUTF());
+    }
+    return this.in[worker];
+  }
+
+  /**
+   * @brief Run a superstep, or the initialization, on all the workers.
+   * @return The number of messages sent by all the workers.
+   */
+  private long step(int command) throws IOException {
+    this.broadcast(command);
+    long sent = 0;
+    IOException error = null;
+    for (int w = 0; w < this.workers; ++w) {
+      try {
+        sent += this.reply(w).readLong();
+      } catch (IOException e) {
+        // The replies of the other workers are read all the same.
+        error = error == null ? e : error;
+      }
+    }
+    if (error != null) throw error;
+    return sent;
+  }
+
+  public void prepare(String edgeFile, boolean weighted) throws Exception {
+    if (this.in == null) this.start();
+    for (DataOutputStream out : this.out) {
+      out.writeInt(BspWorker.LOAD);
+      out.writeUTF(new File(edgeFile).getAbsolutePath());
+      out.writeUTF(this.vertexFile == null ? ""
+                   : new File(this.vertexFile).getAbsolutePath());
+      out.writeUTF(this.partFile == null ? ""
+                   : new File(this.partFile).getAbsolutePath());
+      out.writeBoolean(weighted);
+      out.flush();
+    }
+    for (int w = 0; w < this.workers; ++w) {
+      this.reply(w).readLong();
+    }
+  }
+
+  public long[] run(Grail grail) throws Exception {
+    HashMap<String, String> options = grail.getOptions();
+    CodeGenerator.checkSupported(options);
+    ArrayList<Stmt> stmts = Parser.parseUpdateAndSend(options);
+    CodeGenerator generator = new CodeGenerator(options, stmts);
+    generator.setPartitioned(true);
+    String className = "GrailProgram";
+    byte[] code = generator.generate(className).getBytes(StandardCharsets.UTF_8);
+    for (DataOutputStream out : this.out) {
+      out.writeInt(BspWorker.PROGRAM);
+      out.writeUTF(className);
+      out.writeInt(code.length);
+      out.write(code);
+      out.flush();
+    }
+    int maxSupersteps = -1;
+    for (int w = 0; w < this.workers; ++w) {
+      maxSupersteps = this.reply(w).readInt();
+    }
+
+    // The supersteps run as in Engine.VertexProgram.run().
+    ArrayList<Long> nanos = new ArrayList<Long>();
+    long messages = this.step(BspWorker.INIT);
+    while (maxSupersteps >= 0 ? nanos.size() < maxSupersteps : messages > 0) {
+      long start = System.nanoTime();
+      messages = this.step(BspWorker.STEP);
+      nanos.add(System.nanoTime() - start);
+    }
+
+    this.broadcast(BspWorker.VALUES);
+    this.values = new double[0];
+    for (int w = 0; w < this.workers; ++w) {
+      DataInputStream in = this.reply(w);
+      for (int count = in.readInt(); count > 0; --count) {
+        int id = in.readInt();
+        if (id >= this.values.length) {
+          int length = this.values.length;
+          this.values = Arrays.copyOf(this.values, Math.max(2 * length, id + 1));
+          Arrays.fill(this.values, length, this.values.length, Double.NaN);
+        }
+        this.values[id] = in.readDouble();
+      }
+    }
+    long[] result = new long[nanos.size()];
+    for (int i = 0; i < result.length; ++i) result[i] = nanos.get(i);
+    return result;
+  }
+
+  /**
+   * @brief Get the value of a vertex after the last run.
+   * @param id The vertex id.
+   * @return The value, or NaN if the id is not a vertex.
+   */
+  public double getValue(int id) {
+    return id < this.values.length ? this.values[id] : Double.NaN;
+  }
+
+  /**
+   * @brief Stop the workers.
+   */
+  public void close() throws IOException, InterruptedException {
+    if (this.out == null) return;
+    this.broadcast(BspWorker.STOP);
+    if (this.processes != null) {
+      for (Process process : this.processes) process.waitFor();
+    }
+    this.in = null;
+    this.out = null;
+  }
+}
@@ -0,0 +1,316 @@
+/**
+ * This file copyright (c) 2015-2016, Jing Fan, Adalbert Gerald Soosai Raj, and Jignesh M. Patel
+ *
+ * See the file CREDITS.txt in the root directory for details.
+ **/
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import Block.Block;
+import Block.EndWhileBlock;
+
+/**
+ * @brief Estimates the rows read and written by every stage of the generated
+ * blocks in every superstep, from the statistics of the graph. The model:
+ *
+ * The vertices receiving messages are the distinct destinations of the
+ * message rows, V * (1 - exp(-rows / V)). With a condition (toupdate, ...)
+ * only a part of them change their value and send again, the part is
+ * decay^(k-1) in superstep k. Otherwise all of them send. A frontier after the first superstep touches E[d^2] / E[d]
+ * edges per vertex, as high-degree vertices are reached more often.
+ * NO_MESSAGE programs stop when the senders are estimated below one row.
+ *
+ * With Accumulation DELTA the senders decay as the vertices passing a
+ * condition do.
+ *
+ * With ComponentPlan POINTER_JUMPING, every round reads next and both
+ * directions of the edges once, and the rounds are bounded by log2(V).
+ */
+public class CostEstimator {
+
+  /**
+   * @brief The estimate of a stage in a superstep.
+   */
+  public static class StageCost {
+    public int superstep;
+    public String stage;
+    public double rowsIn;
+    public double rowsOut;
+    public double edgeRows;
+
+    StageCost(int superstep, String stage, double rowsIn, double rowsOut,
+              double edgeRows) {
+      this.superstep = superstep;
+      this.stage = stage;
+      this.rowsIn = rowsIn;
+      this.rowsOut = rowsOut;
+      this.edgeRows = edgeRows;
+    }
+  }
+
+  private ArrayList<Block> blocks;
+  private HashMap<String, String> options;
+  private HashMap<String, String> convertedOptions;
+  private GraphStats stats;
+  private ArrayList<StageCost> costs = new ArrayList<StageCost>();
+  private ArrayList<String> warnings = new ArrayList<String>();
+  // The largest intermediate tables, table -> rows.
+  private HashMap<String, Double> peakRows = new HashMap<String, Double>();
+  private int supersteps = 0;
+
+  /**
+   * @brief Constructor.
+   * @param blocks The generated blocks.
+   * @param options The options of the program.
+   * @param convertedOptions The options converted by the translator.
+   * @param stats The statistics of the graph.
+   */
+  public CostEstimator(ArrayList<Block> blocks,
+                       HashMap<String, String> options,
+                       HashMap<String, String> convertedOptions,
+                       GraphStats stats) {
+    this.blocks = blocks;
+    this.options = options;
+    this.convertedOptions = convertedOptions;
+    this.stats = stats;
+  }
+
+  /**
+   * @brief The expected distinct destinations of rows spread over V.
+   */
+  private double distinct(double rows) {
+    double v = this.stats.getVertices();
+    return v * (1 - Math.exp(-rows / v));
+  }
+
+  private void peak(String table, double rows) {
+    Double old = this.peakRows.get(table);
+    if (old == null || old < rows) {
+      this.peakRows.put(table, rows);
+    }
+  }
+
+  /**
+   * @brief Estimate the cost of the pointer-jumping plan of a min-label
+   * program, see Optimizer.pointerJumping. The number of rounds and of
+   * jumps are upper estimates.
+   */
+  private void estimatePointerJumping() {
+    double v = this.stats.getVertices();
+    double e = this.stats.getEdges();
+    int rounds = (int) Math.ceil(Math.log(Math.max(2, v)) / Math.log(2));
+    this.costs.add(new StageCost(0, "pjEdge", v, 2 * e, 2 * e));
+    this.peak("pj_edge", 2 * e);
+    for (int k = 1; k <= rounds; ++k) {
+      this.costs.add(new StageCost(k, "pjMin", v + 2 * e, v, 2 * e));
+      this.costs.add(new StageCost(k, "pjHook", 2 * v, v, 0));
+      this.costs.add(new StageCost(k, "pjUpdate", v, v, 0));
+      // The first round builds the deepest trees, later rounds only hook
+      // the roots of the trees.
+      this.costs.add(new StageCost(k, "pjJump", k == 1 ? v * rounds : 2 * v,
+                                   v, 0));
+    }
+    this.supersteps = rounds;
+  }
+
+  /**
+   * @brief Estimate the cost of the program.
+   */
+  public void estimate() {
+    double v = this.stats.getVertices();
+    double e = this.stats.getEdges();
+    if ("POINTER_JUMPING".equals(this.convertedOptions.get("componentPlan"))) {
+      this.estimatePointerJumping();
+      return;
+    }
+
+    // The stages in the loop, in order.
+    ArrayList<String> loop = new ArrayList<String>();
+    String endStr = null;
+    boolean inLoop = false;
+    for (Block block : this.blocks) {
+      String stage = block.getStage();
+      if (stage.equals("beginWhile")) inLoop = true;
+      if (stage.equals("endWhile")) {
+        endStr = ((EndWhileBlock) block).getEndStr();
+        break;
+      }
+      if (inLoop) loop.add(stage);
+    }
+    // With Accumulation DELTA only the vertices with large changes send,
+    // like the vertices passing a condition.
+    boolean delta = loop.contains("deltaSend");
+    boolean hasCondition = loop.contains("genVar") || delta;
+    boolean allSend = !delta
+                      && ("all".equals(this.convertedOptions.get("isSender"))
+                          || !hasCondition);
+    String dir = this.convertedOptions.get("msgDir");
+    int dirs = "all".equals(dir) ? 2 : (dir == null || dir.equals("no") ? 0 : 1);
+
+    int maxSupersteps = this.stats.getMaxSupersteps();
+    boolean untilNoMessage = endStr == null || endStr.equals("NO_MESSAGE");
+    if (!untilNoMessage) {
+      // (ITER, n)
+      maxSupersteps = Integer.parseInt(
+          endStr.substring(endStr.indexOf(',') + 1, endStr.lastIndexOf(')')).trim());
+    }
+
+    // The initial messages.
+    String initMsg = this.options.get("InitialMessage");
+    boolean initAll = this.options.get("WarmStart") != null
+                      || (initMsg != null && initMsg.toUpperCase().contains("ALL"));
+    double messages = initAll ? v : 1;
+    this.peak("message", messages);
+
+    double received = 0;
+    double senders = 0;
+    double edgeRows = 0;
+    double totalEdgeRows = 0;
+    for (int k = 1; k <= maxSupersteps; ++k) {
+      // The vertices receiving messages in this superstep.
+      if (k == 1) {
+        received = initAll ? v : Math.min(v, messages);
+      } else {
+        received = this.distinct(edgeRows);
+      }
+      double changed = hasCondition
+                       ? received * Math.pow(this.stats.getDecay(), k - 1)
+                       : received;
+      double lastSenders = senders;
+      double lastEdgeRows = edgeRows;
+      senders = allSend ? received : changed;
+      double degree = (k == 1 && !initAll) ? this.stats.getAvgDegree()
+                                           : this.stats.getReachedDegree();
+      edgeRows = senders >= v ? e * dirs : Math.min(e, senders * degree) * dirs;
+
+      for (String stage : loop) {
+        switch (stage) {
+          case "flowControl":
+            // The combine of the first superstep, afterwards the send of the
+            // last superstep merged with the combine.
+            if (k == 1) {
+              this.costs.add(new StageCost(k, "combineMsg", messages, received, 0));
+            } else {
+              this.costs.add(new StageCost(k, "sendMsg+combineMsg", lastSenders,
+                                           received, lastEdgeRows));
+            }
+            break;
+          case "combineMsg":
+            this.costs.add(new StageCost(k, stage, k == 1 ? messages : received,
+                                         received, 0));
+            break;
+          case "genVar": case "join":
+            this.costs.add(new StageCost(k, stage, received, changed, 0));
+            break;
+          case "setVal":
+            this.costs.add(new StageCost(k, stage, allSend ? received : changed,
+                                         allSend ? received : changed, 0));
+            break;
+          case "sendMsg":
+            this.costs.add(new StageCost(k, stage, senders, this.distinct(edgeRows),
+                                         edgeRows));
+            break;
+          case "deltaSend":
+            // Scans next for the senders, and sends along their edges.
+            this.costs.add(new StageCost(k, stage, v + senders,
+                                         this.distinct(edgeRows), edgeRows));
+            break;
+          default:
+            break;
+        }
+      }
+      if (delta) {
+        this.peak("delta_recv", this.distinct(edgeRows));
+      } else {
+        this.peak("cur", received);
+        if (hasCondition) this.peak("toupdate", changed);
+        this.peak("message", this.distinct(edgeRows));
+      }
+      totalEdgeRows += edgeRows;
+      this.supersteps = k;
+      if (untilNoMessage && senders < 1) break;
+    }
+
+    if (untilNoMessage && senders >= 1) {
+      this.warnings.add("NO_MESSAGE is not reached in " + this.supersteps
+                        + " supersteps, " + Math.round(senders)
+                        + " vertices still send");
+    }
+    if (totalEdgeRows > this.stats.getEdgeBudget()) {
+      this.warnings.add(String.format(
+          "touches %.3g edge rows, %.1f times |E|%s", totalEdgeRows,
+          e == 0 ? 0 : totalEdgeRows / e,
+          allSend && dirs > 0 ? ", every vertex sends in every superstep" : ""));
+    }
+  }
+
+  /**
+   * @brief Getters.
+   */
+  public ArrayList<StageCost> getCosts() {
+    return this.costs;
+  }
+
+  public ArrayList<String> getWarnings() {
+    return this.warnings;
+  }
+
+  public int getSupersteps() {
+    return this.supersteps;
+  }
+
+  /**
+   * @brief Print the estimate. Supersteps with the same estimate as the one
+   * before are printed once.
+   * @param out The output stream.
+   */
+  public void print(PrintStream out) {
+    out.printf("-- |V| = %d, |E| = %d, decay = %.3f, E[d^2]/E[d] = %.2f%n",
+               this.stats.getVertices(), this.stats.getEdges(),
+               this.stats.getDecay(), this.stats.getReachedDegree());
+    out.printf("-- %9s %-20s %14s %14s %14s%n",
+               "superstep", "stage", "rows in", "rows out", "edge rows");
+    double total = 0;
+    String last = null;
+    boolean skipped = false;
+    for (int i = 0; i < this.costs.size(); ) {
+      // The lines of a superstep.
+      int superstep = this.costs.get(i).superstep;
+      StringBuilder lines = new StringBuilder();
+      for (; i < this.costs.size() && this.costs.get(i).superstep == superstep; ++i) {
+        StageCost cost = this.costs.get(i);
+        total += cost.rowsIn + cost.edgeRows;
+        lines.append(String.format(" %-20s %14.0f %14.0f %14.0f%n", cost.stage,
+                                   cost.rowsIn, cost.rowsOut, cost.edgeRows));
+      }
+      if (lines.toString().equals(last)) {
+        skipped = true;
+        continue;
+      }
+      if (skipped) {
+        out.println("--       ...");
+        skipped = false;
+      }
+      for (String line : lines.toString().split("\n")) {
+        out.printf("-- %9d%s%n", superstep, line);
+      }
+      last = lines.toString();
+    }
+    if (skipped) {
+      out.println("--       ...");
+    }
+    for (String table : new String[] {"message", "cur", "toupdate", "pj_edge",
+                                      "delta_recv"}) {
+      if (this.peakRows.containsKey(table)) {
+        out.printf("-- peak %s rows: %.0f%n", table, this.peakRows.get(table));
+      }
+    }
+    out.printf("-- %d supersteps, %.3g rows read in total%n",
+               this.supersteps, total);
+    for (String warning : this.warnings) {
+      out.println("-- WARNING: " + warning);
+    }
+  }
+}
@@ -0,0 +1,107 @@
+/**
+ * This file copyright (c) 2015-2016, Jing Fan, Adalbert Gerald Soosai Raj, and Jignesh M. Patel
+ *
+ * See the file CREDITS.txt in the root directory for details.
+ **/
+
+package Engine;
+
+import java.util.Arrays;
+
+/**
+ * @brief A CSR split into column blocks. The columns (the vertices gathered
+ * from) are cut into ranges of 2^shift vertices, and every block keeps the
+ * rows that have a column in its range, so a pass over a block gathers from
+ * a part of the vector that fits in the cache.
+ */
+public class BlockedCsr {
+  private int shift;
+  // The non-empty rows of every block, in increasing order.
+  private int[][] rows;
+  // The columns of row rows[b][r] are cols[b][rowOffsets[b][r] .. rowOffsets[b][r + 1]).
+  private int[][] rowOffsets;
+  private int[][] cols;
+
+  /**
+   * @brief Constructor.
+   * @param offsets The row offsets of the CSR.
+   * @param columns The columns of the CSR.
+   * @param size The number of rows and columns.
+   * @param shift The log2 of the number of columns of a block.
+   */
+  public BlockedCsr(int[] offsets, int[] columns, int size, int shift) {
+    this.shift = shift;
+    int blocks = Math.max(1, ((size - 1) >> shift) + 1);
+    int[] rowCnt = new int[blocks];
+    int[] colCnt = new int[blocks];
+    int[] lastRow = new int[blocks];
+    Arrays.fill(lastRow, -1);
+    for (int v = 0; v < size; ++v) {
+      for (int e = offsets[v]; e < offsets[v + 1]; ++e) {
+        int b = columns[e] >> shift;
+        ++colCnt[b];
+        if (lastRow[b] != v) {
+          lastRow[b] = v;
+          ++rowCnt[b];
+        }
+      }
+    }
+
+    this.rows = new int[blocks][];
+    this.rowOffsets = new int[blocks][];
+    this.cols = new int[blocks][];
+    for (int b = 0; b < blocks; ++b) {
+      this.rows[b] = new int[rowCnt[b]];
+      this.rowOffsets[b] = new int[rowCnt[b] + 1];
+      this.cols[b] = new int[colCnt[b]];
+    }
+    Arrays.fill(lastRow, -1);
+    int[] rowPos = new int[blocks];
+    int[] colPos = new int[blocks];
+    for (int v = 0; v < size; ++v) {
+      for (int e = offsets[v]; e < offsets[v + 1]; ++e) {
+        int b = columns[e] >> shift;
+        if (lastRow[b] != v) {
+          lastRow[b] = v;
+          this.rows[b][rowPos[b]++] = v;
+        }
+        this.cols[b][colPos[b]++] = columns[e];
+        this.rowOffsets[b][rowPos[b]] = colPos[b];
+      }
+    }
+  }
+
+  /**
+   * @brief Multiply: y[r] += sum of x[c] over the columns c of row r, for k
+   * interleaved vectors.
+   * @param kernel The gather kernel.
+   * @param x The interleaved input vectors.
+   * @param k The number of vectors.
+   * @param y The interleaved output vectors.
+   */
+  public void multiply(SpmvKernel kernel, double[] x, int k, double[] y) {
+    for (int b = 0; b < this.rows.length; ++b) {
+      int[] blockRows = this.rows[b];
+      int[] blockOffsets = this.rowOffsets[b];
+      int[] blockCols = this.cols[b];
+      if (k == 1) {
+        for (int r = 0; r < blockRows.length; ++r) {
+          y[blockRows[r]] += kernel.gatherSum(x, blockCols, blockOffsets[r],
+                                              blockOffsets[r + 1]);
+        }
+      } else {
+        for (int r = 0; r < blockRows.length; ++r) {
+          kernel.gatherSum(x, k, blockCols, blockOffsets[r], blockOffsets[r + 1],
+                           y, blockRows[r] * k);
+        }
+      }
+    }
+  }
+
+  /**
+   * @brief Get the log2 of the number of columns of a block.
+   */
+  public int getShift() {
+    return this.shift;
+  }
+}
@@ -0,0 +1,353 @@
+/**
+ * This file copyright (c) 2015-2016, Jing Fan, Adalbert Gerald Soosai Raj, and Jignesh M. Patel
+ *
+ * See the file CREDITS.txt in the root directory for details.
+ **/
+
+package Engine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import Graph.EdgeListReader;
+import Graph.GraphPartitioner;
+
+/**
+ * @brief A worker process of a BSP run across several JVMs, driven by the
+ * coordinator (ClusterBackend). The vertices are split among the workers by
+ * a partition file written by Graph.GraphPartitioner, or else by
+ * id % workers, and every worker loads its vertices and their in-edges and
+ * out-edges from the edge-list file, which all the hosts must be able to
+ * read.
+ *
+ * A worker runs the PartitionedProgram generated for the program on its
+ * partition. After every superstep, the messages to the vertices of other
+ * workers are already combined per vertex by the accumulators of the
+ * program, so every worker sends at most one message per vertex to the
+ * worker of the vertex over a socket, and combines the messages it receives
+ * into its own accumulators. The number of messages sent in a superstep is
+ * summed by the coordinator, which ends the run as End says.
+ *
+ * The coordinator sends commands over its connection, and every reply
+ * starts with a boolean telling whether the command succeeded, followed by
+ * the error message if it failed:
+ *
+ * LOAD edgeFile vertexFile partFile weighted -> long edges
+ * PROGRAM className code                     -> int maxSupersteps
+ * INIT, STEP                                 -> long sent
+ * VALUES -> int count, count x (int id, double val)
+ * STOP
+ *
+ * Usage: java Engine.BspWorker coordinatorHost port
+ */
+public class BspWorker {
+  public static final int LOAD = 1;
+  public static final int PROGRAM = 2;
+  public static final int INIT = 3;
+  public static final int STEP = 4;
+  public static final int VALUES = 5;
+  public static final int STOP = 6;
+
+  // The number of workers and the index of this one.
+  private int workers;
+  private int index;
+  // The coordinator.
+  private DataInputStream in;
+  private DataOutputStream out;
+  // The connections to the other workers, by index.
+  private DataInputStream[] peerIn;
+  private DataOutputStream[] peerOut;
+  // Reads the messages of the other workers while this one sends.
+  private ExecutorService readers;
+  private CsrGraph graph = null;
+  private PartitionedProgram program = null;
+  // The partition of every vertex, or null to hash the ids.
+  private int[] owners = null;
+
+  /**
+   * @brief Get the worker of a vertex.
+   */
+  private int owner(int v) {
+    if (this.owners != null && v < this.owners.length && this.owners[v] >= 0) {
+      return this.owners[v] % this.workers;
+    }
+    return v % this.workers;
+  }
+
+  /**
+   * @brief Connect to the coordinator and to the other workers.
+   */
+  private void connect(String host, int port) throws IOException {
+    ServerSocket peers = new ServerSocket(0);
+    Socket socket = new Socket(host, port);
+    socket.setTcpNoDelay(true);
+    this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+    this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    this.out.writeInt(peers.getLocalPort());
+    this.out.flush();
+
+    this.workers = this.in.readInt();
+    this.index = this.in.readInt();
+    String[] hosts = new String[this.workers];
+    int[] ports = new int[this.workers];
+    for (int w = 0; w < this.workers; ++w) {
+      hosts[w] = this.in.readUTF();
+      ports[w] = this.in.readInt();
+    }
+    // Every worker connects to all the others, and accepts a connection
+    // from each of them.
+    this.peerIn = new DataInputStream[this.workers];
+    this.peerOut = new DataOutputStream[this.workers];
+    for (int w = 0; w < this.workers; ++w) {
+      if (w == this.index) continue;
+      Socket peer = new Socket(hosts[w], ports[w]);
+      peer.setTcpNoDelay(true);
+      this.peerOut[w] = new DataOutputStream(
+          new BufferedOutputStream(peer.getOutputStream()));
+      this.peerOut[w].writeInt(this.index);
+      this.peerOut[w].flush();
+    }
+    for (int i = 0; i < this.workers - 1; ++i) {
+      Socket peer = peers.accept();
+      DataInputStream peerIn = new DataInputStream(
+          new BufferedInputStream(peer.getInputStream()));
+      this.peerIn[peerIn.readInt()] = peerIn;
+    }
+    peers.close();
+    this.readers = Executors.newFixedThreadPool(Math.max(1, this.workers - 1));
+  }
+
+  /**
+   * @brief Load the vertices of this worker and their edges.
+   * @param edgeFile The edge-list file, see Graph.EdgeListReader.
+   * @param vertexFile A file of vertex ids, one per line, or "" to take the
+   * end points of the edges as the vertices.
+   * @param weighted Whether the edges have weights.
+   * @return The number of edges loaded.
+   */
+  private long load(String edgeFile, String vertexFile, boolean weighted)
+      throws IOException {
+    final int[][] edges = new int[3][1024];
+    final int[] edgeCnt = new int[1];
+    final boolean[][] owned = {new boolean[1024]};
+    int threads = Runtime.getRuntime().availableProcessors();
+    new EdgeListReader(edgeFile, threads, 10000).read(
+        new EdgeListReader.EdgeHandler() {
+          public void handle(int worker, int[] src, int[] dest, int[] weight,
+                             int count) {
+            EdgeListReader.checkIndexIds(src, dest, count);
+            synchronized (edges) {
+              for (int i = 0; i < count; ++i) {
+                boolean ownsSrc = owner(src[i]) == index;
+                boolean ownsDest = owner(dest[i]) == index;
+                if (!ownsSrc && !ownsDest) continue;
+                if (edgeCnt[0] == edges[0].length) {
+                  for (int j = 0; j < 3; ++j) {
+                    edges[j] = Arrays.copyOf(edges[j], edgeCnt[0] * 2);
+                  }
+                }
+                edges[0][edgeCnt[0]] = src[i];
+                edges[1][edgeCnt[0]] = dest[i];
+                edges[2][edgeCnt[0]] = weight[i];
+                ++edgeCnt[0];
+                int id = ownsSrc ? src[i] : dest[i];
+                if (Math.max(src[i], dest[i]) >= owned[0].length) {
+                  owned[0] = Arrays.copyOf(owned[0], 2 * Math.max(src[i], dest[i]) + 1);
+                }
+                owned[0][id] = true;
+                if (ownsSrc && ownsDest) owned[0][dest[i]] = true;
+              }
+            }
+          }
+        });
+
+    ArrayList<Integer> ids = new ArrayList<Integer>();
+    if (vertexFile.isEmpty()) {
+      for (int v = 0; v < owned[0].length; ++v) {
+        if (owned[0][v]) ids.add(v);
+      }
+    } else {
+      BufferedReader reader = new BufferedReader(new FileReader(vertexFile));
+      try {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          if (line.trim().isEmpty()) continue;
+          int v = Integer.parseInt(line.trim());
+          if (v < 0) {
+            throw new IOException(vertexFile + ": negative vertex id " + v);
+          }
+          if (owner(v) == this.index) ids.add(v);
+        }
+      } finally {
+        reader.close();
+      }
+    }
+    int[] vertices = new int[ids.size()];
+    for (int i = 0; i < vertices.length; ++i) vertices[i] = ids.get(i);
+    this.graph = CsrGraph.build(vertices, vertices.length, edges[0], edges[1],
+                                weighted ? edges[2] : null, edgeCnt[0]);
+    return edgeCnt[0];
+  }
+
+  /**
+   * @brief Move the messages to the vertices of other workers to their
+   * workers, and combine the messages received from them.
+   */
+  private void exchange() throws Exception {
+    ByteArrayOutputStream[] bytes = new ByteArrayOutputStream[this.workers];
+    DataOutputStream[] batches = new DataOutputStream[this.workers];
+    for (int w = 0; w < this.workers; ++w) {
+      bytes[w] = new ByteArrayOutputStream();
+      batches[w] = new DataOutputStream(bytes[w]);
+    }
+    int size = this.graph.getSize();
+    for (int v = 0; v < size; ++v) {
+      int w = this.owner(v);
+      if (w == this.index || !this.program.hasMessage(v)) continue;
+      batches[w].writeInt(v);
+      this.program.writeMessage(v, batches[w]);
+    }
+
+    // The batches are read while ours are sent, so no worker blocks on a
+    // full socket.
+    ArrayList<Future<byte[]>> received = new ArrayList<Future<byte[]>>();
+    for (int w = 0; w < this.workers; ++w) {
+      if (w == this.index) continue;
+      final DataInputStream peer = this.peerIn[w];
+      received.add(this.readers.submit(new Callable<byte[]>() {
+        public byte[] call() throws IOException {
+          byte[] batch = new byte[peer.readInt()];
+          peer.readFully(batch);
+          return batch;
+        }
+      }));
+    }
+    for (int w = 0; w < this.workers; ++w) {
+      if (w == this.index) continue;
+      this.peerOut[w].writeInt(bytes[w].size());
+      bytes[w].writeTo(this.peerOut[w]);
+      this.peerOut[w].flush();
+    }
+    for (Future<byte[]> batch : received) {
+      ByteArrayInputStream input = new ByteArrayInputStream(batch.get());
+      DataInputStream messages = new DataInputStream(input);
+      while (input.available() > 0) {
+        this.program.readMessage(messages.readInt(), messages);
+      }
+    }
+  }
+
+  /**
+   * @brief Run a command of the coordinator and write the reply, after the
+   * success flag.
+   */
+  private void execute(int command) throws Exception {
+    switch (command) {
+      case LOAD: {
+        String edgeFile = this.in.readUTF();
+        String vertexFile = this.in.readUTF();
+        String partFile = this.in.readUTF();
+        this.owners = partFile.isEmpty() ? null : GraphPartitioner.read(partFile);
+        boolean weighted = this.in.readBoolean();
+        long edges = this.load(edgeFile, vertexFile, weighted);
+        this.out.writeBoolean(true);
+        this.out.writeLong(edges);
+        break;
+      }
+      case PROGRAM: {
+        String className = this.in.readUTF();
+        byte[] code = new byte[this.in.readInt()];
+        this.in.readFully(code);
+        this.program = (PartitionedProgram) ProgramCompiler.compile(
+            className, new String(code, StandardCharsets.UTF_8))
+            .getDeclaredConstructor().newInstance();
+        this.program.setGraph(this.graph);
+        this.out.writeBoolean(true);
+        this.out.writeInt(this.program.getMaxSupersteps());
+        break;
+      }
+      case INIT:
+      case STEP: {
+        long sent = command == INIT ? this.program.init() : this.program.superstep();
+        this.exchange();
+        this.out.writeBoolean(true);
+        this.out.writeLong(sent);
+        break;
+      }
+      case VALUES: {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream values = new DataOutputStream(bytes);
+        int count = 0;
+        for (int v = 0; v < this.graph.getSize(); ++v) {
+          if (!this.graph.exists(v)) continue;
+          values.writeInt(v);
+          values.writeDouble(this.program.getValue(v));
+          ++count;
+        }
+        this.out.writeBoolean(true);
+        this.out.writeInt(count);
+        bytes.writeTo(this.out);
+        break;
+      }
+      default:
+        throw new IllegalArgumentException("Unknown command " + command);
+    }
+  }
+
+  /**
+   * @brief Run the commands of the coordinator until STOP, or until the
+   * coordinator goes away.
+   */
+  private void serve() throws IOException {
+    while (true) {
+      int command;
+      try {
+        command = this.in.readInt();
+      } catch (EOFException e) {
+        break;
+      }
+      if (command == STOP) break;
+      try {
+        this.execute(command);
+      } catch (Exception e) {
+        // The reply is only written once the command succeeded.
+        this.out.writeBoolean(false);
+        this.out.writeUTF("worker " + this.index + ": " + e);
+      }
+      this.out.flush();
+    }
+    this.readers.shutdownNow();
+  }
+
+  /**
+   * @brief Main function.
+   * @param args The host and the port of the coordinator.
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2) {
+      System.err.println("Usage: java Engine.BspWorker coordinatorHost port");
+      System.exit(1);
+    }
+    BspWorker worker = new BspWorker();
+    worker.connect(args[0], Integer.parseInt(args[1]));
+    worker.serve();
+    System.exit(0);
+  }
+}
@@ -0,0 +1,727 @@
+/**
+ * This file copyright (c) 2015-2016, Jing Fan, Adalbert Gerald Soosai Raj, and Jignesh M. Patel
+ *
+ * See the file CREDITS.txt in the root directory for details.
+ **/
+
+package Engine;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import Expr.Binary;
+import Expr.Call;
+import Expr.Expr;
+import Expr.ExprParser;
+import Expr.Literal;
+import Expr.Ref;
+import Expr.Stmt;
+import Expr.Unary;
+
+/**
+ * @brief Generates the Java source of a VertexProgram specialized for a
+ * Grail program. The values and the messages are kept in primitive arrays
+ * indexed by vertex id, and the combine, update and send expressions are
+ * inlined into the superstep loop, so nothing is interpreted at run time.
+ *
+ * The generated program follows the semantics of the generated SQL: the
+ * messages are combined with the aggregate of CombineMessage, only the
+ * vertices that received messages run UpdateAndSend, and the messages
+ * sent in a superstep are received in the next one. In programs where all
+ * the vertices send (UpdateAndSend sets the value to the aggregate outside
+ * of any if, as in pagerank.grail), every vertex sends
+ * in every superstep, as from next in the SQL, and the vertices that
+ * received nothing keep their values.
+ *
+ * Supported are the programs with a single value column, a single
+ * aggregate (SUM, MIN, MAX, COUNT or AVG) in CombineMessage, and
+ * InitialMessage to ALL or to one vertex. Other programs throw
+ * UnsupportedOperationException.
+ *
+ * Out of core, the program extends OutOfCoreProgram instead and reads the
+ * edges from a DiskGraph: only the offsets of the edges and the vertex
+ * arrays are in memory, and the edges of the directions the program sends
+ * along are streamed from their mapped segments in every superstep.
+ *
+ * Off heap, the values, the accumulators and the frontier are kept in
+ * VertexStore columns instead of arrays.
+ *
+ * Partitioned, the program extends PartitionedProgram, so a BspWorker can
+ * move the combined messages of the vertices of other workers.
+ *
+ * With compressed adjacency, the edges are decoded from the CompressedCsr
+ * lists of a compressed CsrGraph by a cursor per direction.
+ */
+public class CodeGenerator {
+  private HashMap<String, String> options;
+  private ArrayList<Stmt> stmts;
+  // Java types of the value and of the message, int, long or double.
+  private String valType;
+  private String msgType;
+  // The aggregate of CombineMessage and the Java type of its result.
+  private String aggFunc = null;
+  private String aggType;
+  // The types of the variables of UpdateAndSend.
+  private HashMap<String, String> varTypes = new HashMap<String, String>();
+  // The weight array of the edge being sent along, or null outside send.
+  private String edgeWeight = null;
+  // Whether the program reads the edges from a DiskGraph.
+  private boolean outOfCore = false;
+  // The directions sent along.
+  private boolean sendsOut = false;
+  private boolean sendsIn = false;
+  // Whether the vertex arrays are VertexStore columns.
+  private boolean offHeap = false;
+  // Whether the program runs on one partition of the graph.
+  private boolean partitioned = false;
+  // Whether the edges are read from compressed lists.
+  private boolean compressed = false;
+  // Whether all the vertices send in every superstep.
+  private boolean allSenders = false;
+
+  /**
+   * @brief Constructor.
+   * @param options The options of the program, see Parser.parse.
+   * @param stmts The statements of UpdateAndSend, see
+   * Parser.parseUpdateAndSend.
+   */
+  public CodeGenerator(HashMap<String, String> options, ArrayList<Stmt> stmts) {
+    this.options = options;
+    this.stmts = stmts;
+  }
+
+  /**
+   * @brief Generate a program reading the edges from a DiskGraph, see
+   * OutOfCoreProgram.
+   */
+  public void setOutOfCore(boolean outOfCore) {
+    this.outOfCore = outOfCore;
+  }
+
+  /**
+   * @brief Generate a program keeping the vertex arrays off the heap, see
+   * VertexStore.
+   */
+  public void setOffHeap(boolean offHeap) {
+    this.offHeap = offHeap;
+  }
+
+  /**
+   * @brief Generate a program for a partition of the graph, see
+   * PartitionedProgram.
+   */
+  public void setPartitioned(boolean partitioned) {
+    this.partitioned = partitioned;
+  }
+
+  /**
+   * @brief Generate a program reading the edges of a compressed CsrGraph,
+   * see CompressedCsr.
+   */
+  public void setCompressed(boolean compressed) {
+    this.compressed = compressed;
+  }
+
+  /**
+   * @brief Generate the read of an element of a vertex array.
+   * @param array The array.
+   * @param type The Java type of the elements.
+   * @param index The index.
+   */
+  private String load(String array, String type, String index) {
+    if (!this.offHeap) return array + "[" + index + "]";
+    return array + ".get" + Character.toUpperCase(type.charAt(0))
+           + type.substring(1) + "(" + index + ")";
+  }
+
+  /**
+   * @brief Generate the write of an element of a vertex array, without the
+   * semicolon.
+   */
+  private String store(String array, String type, String index, String value) {
+    if (!this.offHeap) return array + "[" + index + "] = " + value;
+    return array + ".put" + Character.toUpperCase(type.charAt(0))
+           + type.substring(1) + "(" + index + ", " + value + ")";
+  }
+
+  /**
+   * @brief Get the Java type of a vertex array.
+   */
+  private String arrayType(String type) {
+    return this.offHeap ? "Engine.VertexStore" : type + "[]";
+  }
+
+  /**
+   * @brief Generate the allocation of a vertex array of size elements.
+   */
+  private String allocate(String type) {
+    if (this.offHeap) {
+      return "new Engine.VertexStore(size, " + VertexStore.width(type) + ")";
+    }
+    return "new " + type + "[size]";
+  }
+
+  /**
+   * @brief Generate the reset of a vertex array to zeros, without the
+   * semicolon.
+   */
+  private String clear(String array, String type) {
+    if (this.offHeap) return array + ".clear()";
+    return "Arrays.fill(" + array + ", "
+           + (type.equals("boolean") ? "false" : "(" + type + ") 0") + ")";
+  }
+
+  private static UnsupportedOperationException unsupported(String what) {
+    return new UnsupportedOperationException(what + " is not supported by the JVM engine");
+  }
+
+  private static String javaType(String grailType) {
+    if (grailType == null) {
+      throw unsupported("A program without value type");
+    }
+    String type = grailType.trim();
+    if (type.equalsIgnoreCase("INT")) return "int";
+    return type.equalsIgnoreCase("BIGINT") ? "long" : "double";
+  }
+
+  /**
+   * @brief The wider of two numeric types.
+   */
+  private static String widen(String lhs, String rhs) {
+    if (lhs.equals("double") || rhs.equals("double")) return "double";
+    return lhs.equals("long") || rhs.equals("long") ? "long" : "int";
+  }
+
+  /**
+   * @brief Get the Java type of an expression.
+   */
+  private String typeOf(Expr expr) {
+    if (expr instanceof Literal) {
+      return ((Literal) expr).isInteger() ? "int" : "double";
+    } else if (expr instanceof Binary) {
+      Binary binary = (Binary) expr;
+      if (binary.isPredicate()) return "boolean";
+      return widen(this.typeOf(binary.getLhs()), this.typeOf(binary.getRhs()));
+    } else if (expr instanceof Unary) {
+      Unary unary = (Unary) expr;
+      return unary.getOp().equals("NOT") ? "boolean" : this.typeOf(unary.getOperand());
+    } else if (expr instanceof Call) {
+      String name = ((Call) expr).getName();
+      if (name.equals("getVal")) return this.valType;
+      if (name.equals("getAggregationVal")) return this.aggType;
+      if (name.equalsIgnoreCase("COUNT")) return "int";
+      return this.msgType;
+    }
+    Ref ref = (Ref) expr;
+    if (ref.getTable() == null && this.varTypes.containsKey(ref.getName())) {
+      return this.varTypes.get(ref.getName());
+    }
+    if (ref.getName().equals("val")) {
+      return ref.getTable().equals("next") ? this.valType : this.aggType;
+    }
+    if (ref.getTable() == null && ref.getName().equals("message")) {
+      return this.msgType;
+    }
+    // id, cnt and weight.
+    return "int";
+  }
+
+  /**
+   * @brief Generate the Java expression of an expression.
+   */
+  private String gen(Expr expr) {
+    if (expr instanceof Literal) {
+      String text = ((Literal) expr).getText();
+      if (text.equals("INT_MAX")) return "Integer.MAX_VALUE";
+      if (text.equals("INT_MIN")) return "Integer.MIN_VALUE";
+      // The same constants as the generated SQL, see Common.
+      if (text.startsWith("DBL_")) return "1.79E+308";
+      return text;
+    } else if (expr instanceof Binary) {
+      Binary binary = (Binary) expr;
+      String op = binary.getOp();
+      if (op.equals("AND")) op = "&&";
+      if (op.equals("OR")) op = "||";
+      return "(" + this.gen(binary.getLhs()) + " " + op + " "
+             + this.gen(binary.getRhs()) + ")";
+    } else if (expr instanceof Unary) {
+      Unary unary = (Unary) expr;
+      return "(" + (unary.getOp().equals("NOT") ? "!" : "-")
+             + this.gen(unary.getOperand()) + ")";
+    } else if (expr instanceof Call) {
+      Call call = (Call) expr;
+      if (call.getName().equals("getVal")) return this.load("val", this.valType, "v");
+      if (call.getName().equals("getAggregationVal")) return "agg";
+      throw unsupported("The function " + call.getName());
+    }
+
+    Ref ref = (Ref) expr;
+    String table = ref.getTable();
+    String name = ref.getName();
+    if (table == null && this.varTypes.containsKey(name)) {
+      // The prefix keeps variables apart from the generated locals.
+      return "var_" + name;
+    }
+    if (name.equals("id")) {
+      return "v";
+    }
+    if (name.equals("val") && table != null) {
+      return table.equals("next") ? this.load("val", this.valType, "v") : "agg";
+    }
+    if (name.equals("cnt") && ("out_cnts".equals(table) || "in_cnts".equals(table))) {
+      String offsets = table.equals("out_cnts") ? "outOffsets" : "inOffsets";
+      String cnt = "(" + offsets + "[v + 1] - " + offsets + "[v])";
+      // The offsets of a DiskGraph and of a CompressedCsr are long.
+      return this.outOfCore || this.compressed ? "((int) " + cnt + ")" : cnt;
+    }
+    if (name.equals("weight") && "edge".equals(table)) {
+      if (this.edgeWeight == null) {
+        throw unsupported("edge.weight outside of send");
+      }
+      return this.edgeWeight;
+    }
+    throw unsupported("The reference " + ref);
+  }
+
+  /**
+   * @brief Whether an expression reads the edge.
+   */
+  private static boolean usesEdge(Expr expr) {
+    if (expr instanceof Binary) {
+      return usesEdge(((Binary) expr).getLhs()) || usesEdge(((Binary) expr).getRhs());
+    } else if (expr instanceof Unary) {
+      return usesEdge(((Unary) expr).getOperand());
+    } else if (expr instanceof Ref) {
+      return "edge".equals(((Ref) expr).getTable());
+    }
+    return false;
+  }
+
+  /**
+   * @brief Split an option like "(ITER, 50)" into its fields.
+   */
+  private static String[] fields(String option) {
+    String text = option.trim();
+    if (text.startsWith("(") && text.endsWith(")")) {
+      text = text.substring(1, text.length() - 1);
+    }
+    String[] fields = text.split(",");
+    for (int i = 0; i < fields.length; ++i) {
+      fields[i] = fields[i].trim();
+    }
+    return fields;
+  }
+
+  /**
+   * @brief Generate the code delivering msg to vertex u.
+   */
+  private String deliver(String indent) {
+    StringBuilder sb = new StringBuilder();
+    String accType = this.aggFunc.equals("COUNT") ? "int" : this.msgType;
+    String acc = this.load("nextAcc", accType, "u");
+    if (this.aggFunc.equals("MIN") || this.aggFunc.equals("MAX")) {
+      String cmp = this.aggFunc.equals("MIN") ? "<" : ">";
+      sb.append(indent + "if (!" + this.load("nextHas", "boolean", "u") + " || msg "
+                + cmp + " " + acc + ") " + this.store("nextAcc", accType, "u", "msg")
+                + ";\n");
+    } else if (!this.offHeap) {
+      sb.append(indent + (this.aggFunc.equals("COUNT") ? "++nextAcc[u]" : "nextAcc[u] += msg")
+                + ";\n");
+    } else {
+      String add = this.aggFunc.equals("COUNT") ? " + 1" : " + msg";
+      sb.append(indent + this.store("nextAcc", accType, "u", acc + add) + ";\n");
+    }
+    if (this.aggFunc.equals("AVG")) {
+      sb.append(indent + (this.offHeap
+                          ? this.store("nextCnt", "int", "u", this.load("nextCnt", "int", "u") + " + 1")
+                          : "++nextCnt[u]") + ";\n");
+    }
+    sb.append(indent + this.store("nextHas", "boolean", "u", "true") + ";\n");
+    return sb.toString();
+  }
+
+  /**
+   * @brief Generate the code of a send along the edges of one direction.
+   */
+  private String genSend(Stmt.Send send, String dir, String indent) {
+    String offsets = dir.equals("out") ? "outOffsets" : "inOffsets";
+    String targets = dir.equals("out") ? "outTargets" : "inSources";
+    this.edgeWeight = (dir.equals("out") ? "outWeights" : "inWeights") + "[e]";
+    String target = targets + "[e]";
+    if (this.outOfCore) {
+      String edges = dir.equals("out") ? "outEdges" : "inEdges";
+      this.edgeWeight = edges + ".weight(e)";
+      target = edges + ".target(e)";
+    }
+    String cursor = dir.equals("out") ? "outCursor" : "inCursor";
+    if (this.compressed) {
+      this.edgeWeight = cursor + ".weight()";
+      target = cursor + ".target()";
+    }
+    this.sendsOut |= dir.equals("out");
+    this.sendsIn |= dir.equals("in");
+    boolean edgeCond = send.cond != null && usesEdge(send.cond);
+    StringBuilder sb = new StringBuilder();
+    String inner = indent + "  ";
+    if (send.cond != null && !edgeCond) {
+      sb.append(indent + "if (" + this.gen(send.cond) + ") {\n");
+      indent = inner;
+      inner += "  ";
+    }
+    if (this.compressed) {
+      sb.append(indent + "for (" + cursor + ".reset(v); " + cursor + ".next(); ) {\n");
+    } else {
+      sb.append(indent + "for (" + (this.outOfCore ? "long" : "int") + " e = " + offsets + "[v]; e < " + offsets
+                + "[v + 1]; ++e) {\n");
+    }
+    if (edgeCond) {
+      sb.append(inner + "if (!" + this.gen(send.cond) + ") continue;\n");
+    }
+    sb.append(inner + "final int u = " + target + ";\n");
+    sb.append(inner + "final " + this.msgType + " msg = (" + this.msgType + ") "
+              + this.gen(send.content) + ";\n");
+    sb.append(this.deliver(inner));
+    sb.append(inner + "++sent;\n");
+    sb.append(indent + "}\n");
+    if (send.cond != null && !edgeCond) {
+      sb.append(indent.substring(2) + "}\n");
+    }
+    this.edgeWeight = null;
+    return sb.toString();
+  }
+
+  /**
+   * @brief Generate the code of the statements.
+   */
+  private String genStmts(ArrayList<Stmt> stmts, String indent) {
+    StringBuilder sb = new StringBuilder();
+    for (Stmt stmt : stmts) {
+      if (stmt instanceof Stmt.Assign) {
+        Stmt.Assign assign = (Stmt.Assign) stmt;
+        sb.append(indent + "var_" + assign.name + " = " + this.gen(assign.value) + ";\n");
+      } else if (stmt instanceof Stmt.If) {
+        Stmt.If ifStmt = (Stmt.If) stmt;
+        sb.append(indent + "if (" + this.gen(ifStmt.cond) + ") {\n");
+        sb.append(this.genStmts(ifStmt.body, indent + "  "));
+        sb.append(indent + "}\n");
+      } else if (stmt instanceof Stmt.SetVal) {
+        sb.append(indent + this.store("val", this.valType, "v", "(" + this.valType + ") "
+                  + this.gen(((Stmt.SetVal) stmt).value)) + ";\n");
+      } else {
+        Stmt.Send send = (Stmt.Send) stmt;
+        if (send.dir.equals("out") || send.dir.equals("all")) {
+          sb.append(this.genSend(send, "out", indent));
+        }
+        if (send.dir.equals("in") || send.dir.equals("all")) {
+          sb.append(this.genSend(send, "in", indent));
+        }
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * @brief Infer the types of the variables, in the order of assignment.
+   */
+  private void inferVars(ArrayList<Stmt> stmts) {
+    for (Stmt stmt : stmts) {
+      if (stmt instanceof Stmt.Assign) {
+        Stmt.Assign assign = (Stmt.Assign) stmt;
+        String type = this.typeOf(assign.value);
+        String old = this.varTypes.get(assign.name);
+        if (old != null && !old.equals(type)) {
+          type = old.equals("boolean") || type.equals("boolean")
+                 ? "boolean" : widen(old, type);
+        }
+        this.varTypes.put(assign.name, type);
+      } else if (stmt instanceof Stmt.If) {
+        this.inferVars(((Stmt.If) stmt).body);
+      }
+    }
+  }
+
+  /**
+   * @brief Whether all the vertices send in every superstep, as the SQL
+   * does when isSender is all and the value set is the aggregate: an
+   * unguarded setVal(getAggregationVal()).
+   * @param stmts The statements of UpdateAndSend.
+   */
+  public static boolean isAllSender(ArrayList<Stmt> stmts) {
+    for (Stmt stmt : stmts) {
+      if (stmt instanceof Stmt.SetVal) {
+        Expr value = ((Stmt.SetVal) stmt).value;
+        return value instanceof Call
+               && ((Call) value).getName().equals("getAggregationVal");
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @brief Check that a program can be compiled, before its statements
+   * are parsed.
+   * @param options The options of the program.
+   */
+  public static void checkSupported(HashMap<String, String> options) {
+    for (String option : new String[] {"WarmStart", "NextTblSchema", "Aggregate",
+                                        "EndCondition", "Freeze"}) {
+      if (options.containsKey(option)) {
+        throw unsupported(option);
+      }
+    }
+  }
+
+  /**
+   * @brief Generate the source of the program.
+   * @param className The name of the generated class, in the unnamed
+   * package.
+   * @return The Java source.
+   */
+  public String generate(String className) {
+    checkSupported(this.options);
+    if (this.partitioned && this.outOfCore) {
+      throw unsupported("A partitioned program out of core");
+    }
+    if (this.compressed && (this.partitioned || this.outOfCore)) {
+      throw unsupported("Compressed adjacency with a partitioned or out of core program");
+    }
+    if (this.options.containsKey("Sources")) {
+      throw unsupported("Sources");
+    }
+    this.valType = javaType(this.options.get("VertexValType"));
+    this.msgType = javaType(this.options.get("MessageValType"));
+
+    // CombineMessage is an expression over one aggregate of message.
+    String combineText = this.options.get("CombineMessage");
+    String combine = combineText;
+    for (String func : new String[] {"SUM", "MIN", "MAX", "COUNT", "AVG"}) {
+      String pattern = "(?i)\\b" + func + "\\s*\\(\\s*message\\s*\\)";
+      if (combine.matches("(?s).*" + pattern + ".*")) {
+        if (this.aggFunc != null) {
+          throw unsupported("More than one aggregate in CombineMessage");
+        }
+        this.aggFunc = func;
+        combine = combine.replaceAll(pattern, "message");
+      }
+    }
+    if (this.aggFunc == null) {
+      throw unsupported("CombineMessage " + combineText);
+    }
+    String accType = this.aggFunc.equals("COUNT") ? "int" : this.msgType;
+    Expr combineExpr = ExprParser.parse(combine);
+    String accExpr = this.load("acc", accType, "v");
+    if (this.aggFunc.equals("AVG")) {
+      accExpr = "(" + accExpr + " / " + this.load("cnt", "int", "v") + ")";
+    }
+    this.varTypes.put("message", this.aggFunc.equals("COUNT") ? "int" : this.msgType);
+    this.aggType = this.typeOf(combineExpr);
+    this.allSenders = isAllSender(this.stmts);
+    if (this.allSenders) {
+      // The vertices that received nothing send their values as the
+      // aggregate.
+      this.aggType = widen(this.aggType, this.valType);
+    }
+    String aggCode = this.gen(combineExpr).replace("var_message", accExpr);
+    this.varTypes.remove("message");
+
+    String[] initMsg = fields(this.options.get("InitialMessage"));
+    if (initMsg.length != 2 || initMsg[0].equalsIgnoreCase("MATCH")) {
+      throw unsupported("InitialMessage " + this.options.get("InitialMessage"));
+    }
+    String initVal = this.options.get("InitiateVal");
+    if (initVal.contains(",")) {
+      throw unsupported("InitiateVal " + initVal);
+    }
+    String[] end = fields(this.options.get("End"));
+    int maxSupersteps = end[0].equalsIgnoreCase("ITER") ? Integer.parseInt(end[1]) : -1;
+
+    this.inferVars(this.stmts);
+    String body = this.genStmts(this.stmts, "      ");
+
+    StringBuilder sb = new StringBuilder();
+    sb.append("import java.util.Arrays;\n\n");
+    String graph = this.outOfCore ? "this.disk" : "this.graph";
+    String base = this.outOfCore ? "OutOfCoreProgram"
+                  : this.partitioned ? "PartitionedProgram" : "VertexProgram";
+    sb.append("public final class " + className + " extends Engine." + base + " {\n");
+    sb.append("  private " + this.arrayType(this.valType) + " val;\n");
+    sb.append("  private " + this.arrayType(accType) + " acc;\n");
+    sb.append("  private " + this.arrayType(accType) + " nextAcc;\n");
+    sb.append("  private " + this.arrayType("boolean") + " has;\n");
+    sb.append("  private " + this.arrayType("boolean") + " nextHas;\n");
+    if (this.aggFunc.equals("AVG")) {
+      sb.append("  private " + this.arrayType("int") + " cnt;\n");
+      sb.append("  private " + this.arrayType("int") + " nextCnt;\n");
+    }
+    sb.append("\n");
+    sb.append("  public int getMaxSupersteps() {\n");
+    sb.append("    return " + maxSupersteps + ";\n");
+    sb.append("  }\n\n");
+    sb.append("  public double getValue(int id) {\n");
+    sb.append("    return " + this.load("this.val", this.valType, "id") + ";\n");
+    sb.append("  }\n\n");
+
+    // init
+    sb.append("  public long init() {\n");
+    sb.append("    final int size = " + graph + ".getSize();\n");
+    sb.append("    final boolean[] exists = " + graph + ".getExists();\n");
+    sb.append("    this.val = " + this.allocate(this.valType) + ";\n");
+    sb.append("    this.acc = " + this.allocate(accType) + ";\n");
+    sb.append("    this.nextAcc = " + this.allocate(accType) + ";\n");
+    sb.append("    this.has = " + this.allocate("boolean") + ";\n");
+    sb.append("    this.nextHas = " + this.allocate("boolean") + ";\n");
+    if (this.aggFunc.equals("AVG")) {
+      sb.append("    this.cnt = " + this.allocate("int") + ";\n");
+      sb.append("    this.nextCnt = " + this.allocate("int") + ";\n");
+    }
+    sb.append("    final " + this.arrayType(accType) + " nextAcc = this.nextAcc;\n");
+    sb.append("    final " + this.arrayType("boolean") + " nextHas = this.nextHas;\n");
+    if (this.aggFunc.equals("AVG")) {
+      sb.append("    final " + this.arrayType("int") + " nextCnt = this.nextCnt;\n");
+    }
+    sb.append("    long sent = 0;\n");
+    sb.append("    for (int v = 0; v < size; ++v) {\n");
+    sb.append("      if (exists[v]) " + this.store("this.val", this.valType, "v", "("
+              + this.valType + ") " + this.gen(ExprParser.parse(initVal))) + ";\n");
+    sb.append("    }\n");
+    String initContent = this.gen(ExprParser.parse(initMsg[1]));
+    if (initMsg[0].equalsIgnoreCase("ALL")) {
+      sb.append("    for (int v = 0; v < size; ++v) {\n");
+      sb.append("      if (!exists[v]) continue;\n");
+    } else {
+      sb.append("    for (int v = " + Integer.parseInt(initMsg[0]) + "; v <= "
+                + Integer.parseInt(initMsg[0]) + "; ++v) {\n");
+      sb.append("      if (!" + graph + ".exists(v)) continue;\n");
+    }
+    sb.append("      final int u = v;\n");
+    sb.append("      final " + this.msgType + " msg = (" + this.msgType + ") "
+              + initContent + ";\n");
+    sb.append(this.deliver("      "));
+    sb.append("      ++sent;\n");
+    sb.append("    }\n");
+    sb.append("    return sent;\n");
+    sb.append("  }\n\n");
+
+    // superstep
+    sb.append("  public long superstep() {\n");
+    sb.append("    " + this.arrayType(accType) + " swap = this.acc;\n");
+    sb.append("    this.acc = this.nextAcc;\n");
+    sb.append("    this.nextAcc = swap;\n");
+    sb.append("    " + this.arrayType("boolean") + " swapHas = this.has;\n");
+    sb.append("    this.has = this.nextHas;\n");
+    sb.append("    this.nextHas = swapHas;\n");
+    sb.append("    " + this.clear("this.nextAcc", accType) + ";\n");
+    sb.append("    " + this.clear("this.nextHas", "boolean") + ";\n");
+    if (this.aggFunc.equals("AVG")) {
+      sb.append("    " + this.arrayType("int") + " swapCnt = this.cnt;\n");
+      sb.append("    this.cnt = this.nextCnt;\n");
+      sb.append("    this.nextCnt = swapCnt;\n");
+      sb.append("    " + this.clear("this.nextCnt", "int") + ";\n");
+      sb.append("    final " + this.arrayType("int") + " cnt = this.cnt;\n");
+      sb.append("    final " + this.arrayType("int") + " nextCnt = this.nextCnt;\n");
+    }
+    sb.append("    final " + this.arrayType(this.valType) + " val = this.val;\n");
+    sb.append("    final " + this.arrayType(accType) + " acc = this.acc;\n");
+    sb.append("    final " + this.arrayType(accType) + " nextAcc = this.nextAcc;\n");
+    sb.append("    final " + this.arrayType("boolean") + " has = this.has;\n");
+    sb.append("    final " + this.arrayType("boolean") + " nextHas = this.nextHas;\n");
+    if (this.outOfCore) {
+      // Only the directions sent along are streamed.
+      sb.append("    final Engine.DiskGraph.Edges outEdges = this.disk.getOut();\n");
+      sb.append("    final Engine.DiskGraph.Edges inEdges = this.disk.getIn();\n");
+      sb.append("    final long[] outOffsets = outEdges.getOffsets();\n");
+      sb.append("    final long[] inOffsets = inEdges.getOffsets();\n");
+      String active = this.allSenders ? "this.disk.getExists()" : "has";
+      if (this.sendsOut) sb.append("    outEdges.beginSuperstep(" + active + ");\n");
+      if (this.sendsIn) sb.append("    inEdges.beginSuperstep(" + active + ");\n");
+    } else if (this.compressed) {
+      sb.append("    final long[] outOffsets = this.graph.getCompressedOut().getOffsets();\n");
+      sb.append("    final long[] inOffsets = this.graph.getCompressedIn().getOffsets();\n");
+      sb.append("    final Engine.CompressedCsr.Cursor outCursor ="
+                + " this.graph.getCompressedOut().cursor();\n");
+      sb.append("    final Engine.CompressedCsr.Cursor inCursor ="
+                + " this.graph.getCompressedIn().cursor();\n");
+    } else {
+      sb.append("    final int[] outOffsets = this.graph.getOutOffsets();\n");
+      sb.append("    final int[] outTargets = this.graph.getOutTargets();\n");
+      sb.append("    final int[] outWeights = this.graph.getOutWeights();\n");
+      sb.append("    final int[] inOffsets = this.graph.getInOffsets();\n");
+      sb.append("    final int[] inSources = this.graph.getInSources();\n");
+      sb.append("    final int[] inWeights = this.graph.getInWeights();\n");
+    }
+    sb.append("    final int size = " + graph + ".getSize();\n");
+    sb.append("    long sent = 0;\n");
+    sb.append("    for (int v = 0; v < size; ++v) {\n");
+    if (this.allSenders) {
+      sb.append("      if (!" + graph + ".exists(v)) continue;\n");
+      sb.append("      final " + this.aggType + " agg = "
+                + this.load("has", "boolean", "v") + " ? (" + this.aggType + ") ("
+                + aggCode + ") : " + this.load("val", this.valType, "v") + ";\n");
+    } else {
+      sb.append("      if (!" + this.load("has", "boolean", "v") + ") continue;\n");
+      sb.append("      final " + this.aggType + " agg = " + aggCode + ";\n");
+    }
+    for (String var : this.varTypes.keySet()) {
+      String type = this.varTypes.get(var);
+      sb.append("      " + type + " var_" + var + " = "
+                + (type.equals("boolean") ? "false" : "0") + ";\n");
+    }
+    sb.append(body);
+    sb.append("    }\n");
+    if (this.outOfCore && this.sendsOut) sb.append("    outEdges.endSuperstep();\n");
+    if (this.outOfCore && this.sendsIn) sb.append("    inEdges.endSuperstep();\n");
+    sb.append("    return sent;\n");
+    sb.append("  }\n");
+    if (this.partitioned) {
+      sb.append("\n");
+      sb.append(this.genMessageIo(accType));
+    }
+    sb.append("}\n");
+    return sb.toString();
+  }
+
+  /**
+   * @brief Generate the methods of PartitionedProgram, which write the
+   * combined message of a vertex and combine a message read into it.
+   */
+  private String genMessageIo(String accType) {
+    String io = Character.toUpperCase(accType.charAt(0)) + accType.substring(1);
+    boolean avg = this.aggFunc.equals("AVG");
+    StringBuilder sb = new StringBuilder();
+    sb.append("  public boolean hasMessage(int v) {\n");
+    sb.append("    return " + this.load("this.nextHas", "boolean", "v") + ";\n");
+    sb.append("  }\n\n");
+    sb.append("  public void writeMessage(int v, java.io.DataOutput out)"
+              + " throws java.io.IOException {\n");
+    sb.append("    out.write" + io + "(" + this.load("this.nextAcc", accType, "v") + ");\n");
+    if (avg) {
+      sb.append("    out.writeInt(" + this.load("this.nextCnt", "int", "v") + ");\n");
+    }
+    sb.append("    " + this.store("this.nextAcc", accType, "v", "(" + accType + ") 0") + ";\n");
+    if (avg) {
+      sb.append("    " + this.store("this.nextCnt", "int", "v", "0") + ";\n");
+    }
+    sb.append("    " + this.store("this.nextHas", "boolean", "v", "false") + ";\n");
+    sb.append("  }\n\n");
+    sb.append("  public void readMessage(int v, java.io.DataInput in)"
+              + " throws java.io.IOException {\n");
+    sb.append("    final " + accType + " msg = in.read" + io + "();\n");
+    String acc = this.load("this.nextAcc", accType, "v");
+    if (this.aggFunc.equals("MIN") || this.aggFunc.equals("MAX")) {
+      String cmp = this.aggFunc.equals("MIN") ? "<" : ">";
+      sb.append("    if (!" + this.load("this.nextHas", "boolean", "v") + " || msg " + cmp
+                + " " + acc + ") " + this.store("this.nextAcc", accType, "v", "msg") + ";\n");
+    } else {
+      // COUNT and AVG messages carry their counts.
+      sb.append("    " + this.store("this.nextAcc", accType, "v", acc + " + msg") + ";\n");
+    }
+    if (avg) {
+      sb.append("    " + this.store("this.nextCnt", "int", "v",
+                                    this.load("this.nextCnt", "int", "v") + " + in.readInt()")
+                + ";\n");
+    }
+    sb.append("    " + this.store("this.nextHas", "boolean", "v", "true") + ";\n");
+    sb.append("  }\n");
+    return sb.toString();
+  }
+}
@@ -0,0 +1,314 @@
+/**
+ * This file copyright (c) 2015-2016, Jing Fan, Adalbert Gerald Soosai Raj, and Jignesh M. Patel
+ *
+ * See the file CREDITS.txt in the root directory for details.
+ **/
+
+package Engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * @brief One direction of a CSR with compressed neighbor lists. The list of
+ * every vertex is sorted, and stored as the gaps between the neighbors in
+ * byte-aligned varints: the first neighbor as the zig-zag of its distance
+ * from the vertex, the others as the distance from the previous one. The
+ * weights follow their neighbors as zig-zag varints, unless all of them are
+ * 1. Lists of nearby vertices take one or two bytes per edge instead of
+ * four (eight with the weights).
+ *
+ * The bytes are kept in pages of less than 2^30 bytes, and no list crosses a
+ * page, and the degrees are kept in long offsets, so the edges are not
+ * bounded by the size of an array. positions holds the start of every list,
+ * so the list of any vertex is decoded without the lists before it, for the
+ * pull-mode gathers as well as for the scans of a superstep.
+ *
+ * The lists are compressed from a plain CSR, or appended one vertex at a
+ * time, which CsrGraph.loadCompressed does while it reads an edge file.
+ */
+public class CompressedCsr {
+  private static final int PAGE_SHIFT = 30;
+  private static final long PAGE_MASK = (1L << PAGE_SHIFT) - 1;
+
+  // The degree of v is offsets[v + 1] - offsets[v].
+  private long[] offsets;
+  // The list of v starts at byte positions[v], page positions[v] >>> PAGE_SHIFT.
+  private long[] positions;
+  private byte[][] pages;
+  // Whether the weights are stored, otherwise they are all 1.
+  private boolean weighted;
+  // While the lists are appended: the pages so far, and the buffers of the
+  // sorted edges and of the bytes of a list. null after finish().
+  private Pager pager;
+  private long[] sorted;
+  private byte[] list;
+
+  /**
+   * @brief Decodes the lists of vertices one at a time. A cursor is not
+   * thread safe, every thread takes its own.
+   */
+  public final class Cursor {
+    private byte[] page;
+    private int pos;
+    private int remaining;
+    // Whether the next gap is the first one, relative to the vertex.
+    private boolean first;
+    private int target;
+    private int weight = 1;
+
+    /**
+     * @brief Start decoding the list of a vertex.
+     */
+    public void reset(int v) {
+      long start = positions[v];
+      this.page = pages[(int) (start >>> PAGE_SHIFT)];
+      this.pos = (int) (start & PAGE_MASK);
+      this.remaining = (int) (offsets[v + 1] - offsets[v]);
+      this.first = true;
+      this.target = v;
+    }
+
+    /**
+     * @brief Move to the next edge.
+     * @return false at the end of the list.
+     */
+    public boolean next() {
+      if (this.remaining == 0) return false;
+      --this.remaining;
+      int gap = this.readVarint();
+      if (this.first) {
+        this.first = false;
+        gap = unzigzag(gap);
+      }
+      this.target += gap;
+      if (weighted) this.weight = unzigzag(this.readVarint());
+      return true;
+    }
+
+    /**
+     * @brief Get the neighbor of the current edge.
+     */
+    public int target() {
+      return this.target;
+    }
+
+    /**
+     * @brief Get the weight of the current edge.
+     */
+    public int weight() {
+      return this.weight;
+    }
+
+    private int readVarint() {
+      byte[] page = this.page;
+      int b = page[this.pos++];
+      if (b >= 0) return b;
+      int x = b & 0x7f;
+      int shift = 7;
+      do {
+        b = page[this.pos++];
+        x |= (b & 0x7f) << shift;
+        shift += 7;
+      } while (b < 0);
+      return x;
+    }
+  }
+
+  /**
+   * @brief Constructor, compresses one direction of a CSR.
+   * @param offsets The offsets of the CSR.
+   * @param columns The neighbors of the CSR.
+   * @param weights The weights of the CSR.
+   * @param size The number of vertex slots.
+   */
+  public CompressedCsr(int[] offsets, int[] columns, int[] weights, int size) {
+    this(size, hasWeights(weights, offsets[size]));
+    for (int v = 0; v < size; ++v) {
+      this.append(v, columns, weights, offsets[v], offsets[v + 1] - offsets[v]);
+    }
+    this.finish();
+  }
+
+  /**
+   * @brief Constructor of empty lists, which append() fills one vertex at a
+   * time, in the order of the vertices, and finish() closes.
+   * @param size The number of vertex slots.
+   * @param weighted Whether to store the weights, otherwise they are all 1.
+   */
+  CompressedCsr(int size, boolean weighted) {
+    this.weighted = weighted;
+    this.offsets = new long[size + 1];
+    this.positions = new long[size + 1];
+    this.pager = new Pager();
+    this.sorted = new long[0];
+    this.list = new byte[0];
+  }
+
+  private static boolean hasWeights(int[] weights, int edgeCnt) {
+    for (int e = 0; e < edgeCnt; ++e) {
+      if (weights[e] != 1) return true;
+    }
+    return false;
+  }
+
+  /**
+   * @brief Compress the list of the next vertex.
+   * @param v The vertex, the one after the vertex of the last call.
+   * @param columns The neighbors are columns[from .. from + degree).
+   * @param weights Their weights, at the same indices, or null for 1.
+   * @param from The index of the first neighbor.
+   * @param degree The number of neighbors.
+   */
+  void append(int v, int[] columns, int[] weights, int from, int degree) {
+    // Sort the list with its weights, by neighbor.
+    if (this.sorted.length < degree) {
+      this.sorted = new long[Math.max(degree, 2 * this.sorted.length)];
+    }
+    long[] sorted = this.sorted;
+    for (int i = 0; i < degree; ++i) {
+      int e = from + i;
+      sorted[i] = ((long) columns[e] << 32)
+                  | (weights == null ? 1 : weights[e] & 0xffffffffL);
+    }
+    Arrays.sort(sorted, 0, degree);
+
+    // At most 5 bytes for a neighbor and 5 for its weight.
+    int maxBytes = degree * (this.weighted ? 10 : 5);
+    if (this.list.length < maxBytes) {
+      this.list = new byte[Math.max(maxBytes, 2 * this.list.length)];
+    }
+    byte[] list = this.list;
+    int len = 0;
+    int prev = v;
+    for (int i = 0; i < degree; ++i) {
+      int target = (int) (sorted[i] >> 32);
+      len = writeVarint(list, len, i == 0 ? zigzag(target - prev) : target - prev);
+      if (this.weighted) len = writeVarint(list, len, zigzag((int) sorted[i]));
+      prev = target;
+    }
+    this.positions[v] = this.pager.append(list, len);
+    this.offsets[v + 1] = this.offsets[v] + degree;
+  }
+
+  /**
+   * @brief Close the lists after the last vertex.
+   */
+  void finish() {
+    this.positions[this.positions.length - 1] = this.pager.append(this.list, 0);
+    this.pages = this.pager.finish();
+    this.pager = null;
+    this.sorted = null;
+    this.list = null;
+  }
+
+  /**
+   * @brief Collects the lists into pages, starting a new page when a list
+   * does not fit the current one.
+   */
+  private static class Pager {
+    private static final int INITIAL = 1 << 16;
+    private ArrayList<byte[]> full = new ArrayList<byte[]>();
+    private byte[] page = new byte[INITIAL];
+    private int used = 0;
+
+    long append(byte[] bytes, int len) {
+      // The offset in a page must stay below 2^PAGE_SHIFT, also for the
+      // empty lists at its end.
+      if (len >= (1 << PAGE_SHIFT)) {
+        throw new IllegalArgumentException("A neighbor list takes more than 2^"
+                                           + PAGE_SHIFT + " bytes");
+      }
+      if ((long) this.used + len >= (1L << PAGE_SHIFT)) {
+        this.full.add(Arrays.copyOf(this.page, this.used));
+        this.page = new byte[INITIAL];
+        this.used = 0;
+      }
+      if (this.used + len > this.page.length) {
+        long capacity = Math.max(2L * this.page.length, (long) this.used + len);
+        this.page = Arrays.copyOf(this.page, (int) Math.min(capacity, 1L << PAGE_SHIFT));
+      }
+      System.arraycopy(bytes, 0, this.page, this.used, len);
+      long start = ((long) this.full.size() << PAGE_SHIFT) | this.used;
+      this.used += len;
+      return start;
+    }
+
+    byte[][] finish() {
+      this.full.add(Arrays.copyOf(this.page, this.used));
+      return this.full.toArray(new byte[0][]);
+    }
+  }
+
+  private static int zigzag(int x) {
+    return (x << 1) ^ (x >> 31);
+  }
+
+  private static int unzigzag(int x) {
+    return (x >>> 1) ^ -(x & 1);
+  }
+
+  /**
+   * @brief Write a varint, 7 bits per byte with the high bit set on all
+   * but the last byte.
+   * @return The position after it.
+   */
+  private static int writeVarint(byte[] out, int pos, int x) {
+    while ((x & ~0x7f) != 0) {
+      out[pos++] = (byte) ((x & 0x7f) | 0x80);
+      x >>>= 7;
+    }
+    out[pos++] = (byte) x;
+    return pos;
+  }
+
+  /**
+   * @brief Get the offsets of the lists, the degree of v is
+   * offsets[v + 1] - offsets[v].
+   */
+  public long[] getOffsets() {
+    return this.offsets;
+  }
+
+  /**
+   * @brief Get a new cursor.
+   */
+  public Cursor cursor() {
+    return new Cursor();
+  }
+
+  /**
+   * @brief Decode the list of a vertex.
+   * @param v The vertex.
+   * @param targets Receives the neighbors, in increasing order.
+   * @param weights Receives their weights, or null.
+   * @return The degree of the vertex.
+   */
+  public int decode(int v, int[] targets, int[] weights) {
+    Cursor cursor = new Cursor();
+    cursor.reset(v);
+    int i = 0;
+    while (cursor.next()) {
+      targets[i] = cursor.target();
+      if (weights != null) weights[i] = cursor.weight();
+      ++i;
+    }
+    return i;
+  }
+
+  /**
+   * @brief Get the number of bytes of the lists.
+   */
+  public long getBytes() {
+    long bytes = 0;
+    for (byte[] page : this.pages) bytes += page.length;
+    return bytes;
+  }
+
+  /**
+   * @brief Whether the weights are stored, otherwise they are all 1.
+   */
+  public boolean isWeighted() {
+    return this.weighted;
+  }
+}
@@ -0,0 +1,381 @@
+/**
+ * This file copyright (c) 2015-2016, Jing Fan, Adalbert Gerald Soosai Raj, and Jignesh M. Patel
+ *
+ * See the file CREDITS.txt in the root directory for details.
+ **/
+
+package Engine;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import Graph.EdgeListReader;
+
+/**
+ * @brief A graph in compressed sparse row form, with both the out-edges and
+ * the in-edges, for the vertex programs compiled by CodeGenerator. Vertices
+ * are indexed by id, so the arrays have max id + 1 entries, and exists
+ * tells which ids are vertices.
+ *
+ * compress() replaces the neighbors and the weights of both directions by
+ * CompressedCsr lists, which the programs generated with compressed
+ * adjacency read, and the degrees by their long offsets. loadCompressed()
+ * builds these lists from an edge file without the plain arrays.
+ */
+public class CsrGraph {
+  // The number of vertex slots, max id + 1.
+  private int size;
+  private boolean[] exists;
+  // The out-edges of v are outTargets[outOffsets[v] .. outOffsets[v + 1]).
+  private int[] outOffsets;
+  private int[] outTargets;
+  private int[] outWeights;
+  // The in-edges of v are inSources[inOffsets[v] .. inOffsets[v + 1]).
+  private int[] inOffsets;
+  private int[] inSources;
+  private int[] inWeights;
+  // The compressed out-edges and in-edges, or null.
+  private CompressedCsr compressedOut = null;
+  private CompressedCsr compressedIn = null;
+  // The blocked in-edges and out-edges, built on first use.
+  private BlockedCsr blockedIn = null;
+  private BlockedCsr blockedOut = null;
+
+  // The number of edges loadCompressed() collects in one pass.
+  private static final int WINDOW_EDGES = 1 << 24;
+
+  private CsrGraph() {
+  }
+
+  /**
+   * @brief Build the graph from edge arrays.
+   * @param vertices The vertex ids, or null to take the end points of the
+   * edges as the vertices.
+   * @param vertexCnt The number of vertex ids.
+   * @param src The sources of the edges.
+   * @param dest The destinations of the edges.
+   * @param weight The weights of the edges, or null for weight 1.
+   * @param edgeCnt The number of edges.
+   * @return The graph.
+   */
+  public static CsrGraph build(int[] vertices, int vertexCnt,
+                               int[] src, int[] dest, int[] weight,
+                               int edgeCnt) {
+    int maxId = -1;
+    for (int i = 0; i < vertexCnt; ++i) maxId = Math.max(maxId, vertices[i]);
+    for (int i = 0; i < edgeCnt; ++i) {
+      maxId = Math.max(maxId, Math.max(src[i], dest[i]));
+    }
+
+    CsrGraph graph = new CsrGraph();
+    graph.size = maxId + 1;
+    graph.exists = new boolean[graph.size];
+    if (vertices != null) {
+      for (int i = 0; i < vertexCnt; ++i) graph.exists[vertices[i]] = true;
+    } else {
+      for (int i = 0; i < edgeCnt; ++i) {
+        graph.exists[src[i]] = true;
+        graph.exists[dest[i]] = true;
+      }
+    }
+
+    graph.outOffsets = new int[graph.size + 1];
+    graph.inOffsets = new int[graph.size + 1];
+    for (int i = 0; i < edgeCnt; ++i) {
+      ++graph.outOffsets[src[i] + 1];
+      ++graph.inOffsets[dest[i] + 1];
+    }
+    for (int v = 0; v < graph.size; ++v) {
+      graph.outOffsets[v + 1] += graph.outOffsets[v];
+      graph.inOffsets[v + 1] += graph.inOffsets[v];
+    }
+
+    graph.outTargets = new int[edgeCnt];
+    graph.outWeights = new int[edgeCnt];
+    graph.inSources = new int[edgeCnt];
+    graph.inWeights = new int[edgeCnt];
+    int[] outPos = Arrays.copyOf(graph.outOffsets, graph.size);
+    int[] inPos = Arrays.copyOf(graph.inOffsets, graph.size);
+    for (int i = 0; i < edgeCnt; ++i) {
+      int w = weight == null ? 1 : weight[i];
+      int o = outPos[src[i]]++;
+      graph.outTargets[o] = dest[i];
+      graph.outWeights[o] = w;
+      int n = inPos[dest[i]]++;
+      graph.inSources[n] = src[i];
+      graph.inWeights[n] = w;
+    }
+    return graph;
+  }
+
+  /**
+   * @brief Load the graph from an edge-list file, the vertices are the end
+   * points of the edges.
+   * @param edgeFile The edge-list file, see Graph.EdgeListReader.
+   * @param weighted Whether the edges have weights.
+   * @return The graph.
+   */
+  public static CsrGraph load(String edgeFile, final boolean weighted)
+      throws IOException {
+    final int[][] edges = new int[3][1024];
+    final int[] edgeCnt = new int[1];
+    int threads = Runtime.getRuntime().availableProcessors();
+    new EdgeListReader(edgeFile, threads, 10000).read(
+        new EdgeListReader.EdgeHandler() {
+          public void handle(int worker, int[] src, int[] dest, int[] weight,
+                             int count) {
+            EdgeListReader.checkIndexIds(src, dest, count);
+            synchronized (edges) {
+              if (edgeCnt[0] + count > edges[0].length) {
+                int capacity = Math.max(edges[0].length * 2, edgeCnt[0] + count);
+                for (int i = 0; i < 3; ++i) {
+                  edges[i] = Arrays.copyOf(edges[i], capacity);
+                }
+              }
+              System.arraycopy(src, 0, edges[0], edgeCnt[0], count);
+              System.arraycopy(dest, 0, edges[1], edgeCnt[0], count);
+              System.arraycopy(weight, 0, edges[2], edgeCnt[0], count);
+              edgeCnt[0] += count;
+            }
+          }
+        });
+    return build(null, 0, edges[0], edges[1], weighted ? edges[2] : null,
+                 edgeCnt[0]);
+  }
+
+  /**
+   * @brief Load the graph from an edge-list file into compressed lists, see
+   * compress(), without the plain arrays. As in DiskGraph.build, a first
+   * pass counts the degrees. Then the edges of a window of vertices,
+   * WINDOW_EDGES in both directions, are collected in a pass and their
+   * lists compressed; there are two passes in all when the edges fit one
+   * window.
+   * @param edgeFile The edge-list file, see Graph.EdgeListReader.
+   * @param weighted Whether the edges have weights.
+   * @return The graph.
+   */
+  public static CsrGraph loadCompressed(String edgeFile, boolean weighted)
+      throws IOException {
+    return loadCompressed(edgeFile, weighted, WINDOW_EDGES);
+  }
+
+  private static CsrGraph loadCompressed(String edgeFile, final boolean weighted,
+                                         int window) throws IOException {
+    int threads = Runtime.getRuntime().availableProcessors();
+    // The degrees, indexed by id + 1.
+    final long[][] degrees = {new long[1024], new long[1024]};
+    final int[] maxId = {-1};
+    final boolean[] hasWeights = {false};
+    new EdgeListReader(edgeFile, threads, 10000).read(
+        new EdgeListReader.EdgeHandler() {
+          public void handle(int worker, int[] src, int[] dest, int[] weight,
+                             int count) {
+            EdgeListReader.checkIndexIds(src, dest, count);
+            synchronized (degrees) {
+              for (int i = 0; i < count; ++i) {
+                int id = Math.max(src[i], dest[i]);
+                if (id + 2 > degrees[0].length) {
+                  int capacity = Math.max(degrees[0].length * 2, id + 2);
+                  degrees[0] = Arrays.copyOf(degrees[0], capacity);
+                  degrees[1] = Arrays.copyOf(degrees[1], capacity);
+                }
+                maxId[0] = Math.max(maxId[0], id);
+                ++degrees[0][src[i] + 1];
+                ++degrees[1][dest[i] + 1];
+                hasWeights[0] |= weighted && weight[i] != 1;
+              }
+            }
+          }
+        });
+
+    CsrGraph graph = new CsrGraph();
+    graph.size = maxId[0] + 1;
+    graph.exists = new boolean[graph.size];
+    long[] outOffsets = Arrays.copyOf(degrees[0], graph.size + 1);
+    long[] inOffsets = Arrays.copyOf(degrees[1], graph.size + 1);
+    for (int v = 0; v < graph.size; ++v) {
+      graph.exists[v] = outOffsets[v + 1] > 0 || inOffsets[v + 1] > 0;
+      outOffsets[v + 1] += outOffsets[v];
+      inOffsets[v + 1] += inOffsets[v];
+    }
+    degrees[0] = null;
+    degrees[1] = null;
+
+    graph.compressedOut = new CompressedCsr(graph.size, hasWeights[0]);
+    graph.compressedIn = new CompressedCsr(graph.size, hasWeights[0]);
+    for (int lo = 0, hi; lo < graph.size; lo = hi) {
+      // At least one vertex, however many edges it has.
+      hi = lo + 1;
+      while (hi < graph.size
+             && outOffsets[hi + 1] - outOffsets[lo]
+                + inOffsets[hi + 1] - inOffsets[lo] <= window) {
+        ++hi;
+      }
+      graph.compressWindow(edgeFile, threads, lo, hi, outOffsets, inOffsets,
+                           hasWeights[0]);
+    }
+    graph.compressedOut.finish();
+    graph.compressedIn.finish();
+    return graph;
+  }
+
+  /**
+   * @brief Collect the out-edges and the in-edges of the vertices [lo, hi)
+   * in a pass over the edge file, and append their compressed lists.
+   */
+  private void compressWindow(String edgeFile, int threads, final int lo,
+                              final int hi, long[] outOffsets, long[] inOffsets,
+                              boolean weighted) throws IOException {
+    long outCnt = outOffsets[hi] - outOffsets[lo];
+    long inCnt = inOffsets[hi] - inOffsets[lo];
+    if (outCnt > Integer.MAX_VALUE || inCnt > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Vertex " + lo + " has more than 2^31 edges");
+    }
+    // The cursors of the lists of the window, from their start in it.
+    final int[] outPos = new int[hi - lo];
+    final int[] inPos = new int[hi - lo];
+    for (int v = lo; v < hi; ++v) {
+      outPos[v - lo] = (int) (outOffsets[v] - outOffsets[lo]);
+      inPos[v - lo] = (int) (inOffsets[v] - inOffsets[lo]);
+    }
+    final int[] outTargets = new int[(int) outCnt];
+    final int[] inSources = new int[(int) inCnt];
+    final int[] outWeights = weighted ? new int[(int) outCnt] : null;
+    final int[] inWeights = weighted ? new int[(int) inCnt] : null;
+    new EdgeListReader(edgeFile, threads, 10000).read(
+        new EdgeListReader.EdgeHandler() {
+          public void handle(int worker, int[] src, int[] dest, int[] weight,
+                             int count) {
+            synchronized (outPos) {
+              for (int i = 0; i < count; ++i) {
+                if (src[i] >= lo && src[i] < hi) {
+                  int o = outPos[src[i] - lo]++;
+                  outTargets[o] = dest[i];
+                  if (outWeights != null) outWeights[o] = weight[i];
+                }
+                if (dest[i] >= lo && dest[i] < hi) {
+                  int n = inPos[dest[i] - lo]++;
+                  inSources[n] = src[i];
+                  if (inWeights != null) inWeights[n] = weight[i];
+                }
+              }
+            }
+          }
+        });
+    for (int v = lo; v < hi; ++v) {
+      this.compressedOut.append(v, outTargets, outWeights,
+                                (int) (outOffsets[v] - outOffsets[lo]),
+                                (int) (outOffsets[v + 1] - outOffsets[v]));
+      this.compressedIn.append(v, inSources, inWeights,
+                               (int) (inOffsets[v] - inOffsets[lo]),
+                               (int) (inOffsets[v + 1] - inOffsets[v]));
+    }
+  }
+
+  /**
+   * @brief Get the number of vertex slots, max id + 1.
+   */
+  public int getSize() {
+    return this.size;
+  }
+
+  /**
+   * @brief Whether the id is a vertex.
+   */
+  public boolean exists(int id) {
+    return id >= 0 && id < this.size && this.exists[id];
+  }
+
+  public boolean[] getExists() {
+    return this.exists;
+  }
+
+  public int[] getOutOffsets() {
+    return this.outOffsets;
+  }
+
+  /**
+   * @brief Compress the neighbor lists of both directions, see
+   * CompressedCsr. The plain arrays are dropped, one direction at a time,
+   * so getOutOffsets(), getOutTargets(), the in-edges and the weights return
+   * null afterwards; the degrees are in the offsets of the CompressedCsr.
+   */
+  public synchronized void compress() {
+    if (this.compressedOut != null) return;
+    this.compressedOut = new CompressedCsr(this.outOffsets, this.outTargets,
+                                           this.outWeights, this.size);
+    this.outOffsets = null;
+    this.outTargets = null;
+    this.outWeights = null;
+    this.compressedIn = new CompressedCsr(this.inOffsets, this.inSources,
+                                          this.inWeights, this.size);
+    this.inOffsets = null;
+    this.inSources = null;
+    this.inWeights = null;
+    this.blockedIn = null;
+    this.blockedOut = null;
+  }
+
+  /**
+   * @brief Whether the neighbor lists are compressed.
+   */
+  public boolean isCompressed() {
+    return this.compressedOut != null;
+  }
+
+  public CompressedCsr getCompressedOut() {
+    return this.compressedOut;
+  }
+
+  public CompressedCsr getCompressedIn() {
+    return this.compressedIn;
+  }
+
+  public int[] getOutTargets() {
+    return this.outTargets;
+  }
+
+  public int[] getOutWeights() {
+    return this.outWeights;
+  }
+
+  public int[] getInOffsets() {
+    return this.inOffsets;
+  }
+
+  public int[] getInSources() {
+    return this.inSources;
+  }
+
+  public int[] getInWeights() {
+    return this.inWeights;
+  }
+
+  /**
+   * @brief Get the in-edges blocked by source, see BlockedCsr.
+   * @param shift The log2 of the number of sources of a block.
+   */
+  public synchronized BlockedCsr getBlockedIn(int shift) {
+    if (this.isCompressed()) {
+      throw new IllegalStateException("The neighbor lists are compressed");
+    }
+    if (this.blockedIn == null || this.blockedIn.getShift() != shift) {
+      this.blockedIn = new BlockedCsr(this.inOffsets, this.inSources, this.size, shift);
+    }
+    return this.blockedIn;
+  }
+
+  /**
+   * @brief Get the out-edges blocked by destination, see BlockedCsr.
+   * @param shift The log2 of the number of destinations of a block.
+   */
+  public synchronized BlockedCsr getBlockedOut(int shift) {
+    if (this.isCompressed()) {
+      throw new IllegalStateException("The neighbor lists are compressed");
+    }
+    if (this.blockedOut == null || this.blockedOut.getShift() != shift) {
+      this.blockedOut = new BlockedCsr(this.outOffsets, this.outTargets, this.size, shift);
+    }
+    return this.blockedOut;
+  }
+}
@@ -0,0 +1,499 @@
+/**
+ * This file copyright (c) 2015-2016, Jing Fan, Adalbert Gerald Soosai Raj, and Jignesh M. Patel
+ *
+ * See the file CREDITS.txt in the root directory for details.
+ **/
+
+package Engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import Graph.EdgeListReader;
+
+/**
+ * @brief A graph in compressed sparse row form on disk, for the out-of-core
+ * programs compiled by CodeGenerator. Only the vertices and the offsets of
+ * their edges are kept in memory, the targets and the weights of the edges
+ * are memory-mapped in segments of 2^26 edges. In a superstep the edges are
+ * read in the order of their sources, so every segment is read
+ * sequentially, and a prefetching thread loads the next segments that have
+ * an active source while the current one is processed. The segments
+ * without an active source are not read at all.
+ *
+ * The graph is kept in a directory, with the out-edges in out.csr and the
+ * in-edges in in.csr:
+ *
+ * int magic, int size, long edgeCnt, int weighted, int unused
+ * long offsets[size + 1]
+ * int targets[edgeCnt]
+ * int weights[edgeCnt] (if weighted)
+ *
+ * and one byte per vertex slot in vertices.bin, 1 for the ids that are
+ * vertices.
+ */
+public class DiskGraph {
+  private static final int MAGIC = 0x4752434c;
+  private static final int HEADER_SIZE = 24;
+  // The edges of a segment, and of a mapped region of the offsets.
+  private static final int SEGMENT_SHIFT = 26;
+  private static final long SEGMENT_EDGES = 1L << SEGMENT_SHIFT;
+  private static final long SEGMENT_MASK = SEGMENT_EDGES - 1;
+  // The number of segments loaded ahead of the one being read.
+  private static final int PREFETCH_AHEAD = 2;
+
+  // The number of vertex slots, max id + 1.
+  private int size;
+  private boolean[] exists;
+  private Edges out;
+  private Edges in;
+
+  /**
+   * @brief The edges of one direction.
+   */
+  public static class Edges {
+    private long[] offsets;
+    private long edgeCnt;
+    private MappedByteBuffer[] mapped;
+    private IntBuffer[] targets;
+    private IntBuffer[] weights;
+    // The segment being read, and the prefetching thread.
+    private volatile int current = -1;
+    private volatile boolean stopped = true;
+    private Thread prefetcher = null;
+    private final Object lock = new Object();
+    // The segments read in the last superstep.
+    private int activeSegments = 0;
+
+    /**
+     * @brief Get the offsets, the edges of v are [offsets[v],
+     * offsets[v + 1]).
+     */
+    public long[] getOffsets() {
+      return this.offsets;
+    }
+
+    public long getEdgeCnt() {
+      return this.edgeCnt;
+    }
+
+    public int getSegments() {
+      return this.targets.length;
+    }
+
+    /**
+     * @brief Get the number of segments with an active source in the last
+     * superstep.
+     */
+    public int getActiveSegments() {
+      return this.activeSegments;
+    }
+
+    /**
+     * @brief Get the other end of an edge.
+     * @param e The index of the edge.
+     */
+    public int target(long e) {
+      int segment = (int) (e >>> SEGMENT_SHIFT);
+      if (segment != this.current) this.enter(segment);
+      return this.targets[segment].get((int) (e & SEGMENT_MASK));
+    }
+
+    /**
+     * @brief Get the weight of an edge, 1 if the graph has no weights.
+     * @param e The index of the edge.
+     */
+    public int weight(long e) {
+      if (this.weights == null) return 1;
+      return this.weights[(int) (e >>> SEGMENT_SHIFT)].get((int) (e & SEGMENT_MASK));
+    }
+
+    /**
+     * @brief Move on to a segment, letting the prefetcher load further.
+     */
+    private void enter(int segment) {
+      this.current = segment;
+      synchronized (this.lock) {
+        this.lock.notifyAll();
+      }
+    }
+
+    /**
+     * @brief Start prefetching the segments that have an active source.
+     * @param active Whether every vertex is active in the superstep.
+     */
+    public void beginSuperstep(boolean[] active) {
+      boolean[] segments = new boolean[this.targets.length];
+      for (int v = 0; v < active.length; ++v) {
+        if (active[v]) this.mark(v, segments);
+      }
+      this.prefetch(segments);
+    }
+
+    /**
+     * @brief Start prefetching the segments that have an active source.
+     * @param active Whether every vertex is active, off the heap.
+     */
+    public void beginSuperstep(VertexStore active) {
+      boolean[] segments = new boolean[this.targets.length];
+      for (int v = 0; v < active.size(); ++v) {
+        if (active.getBoolean(v)) this.mark(v, segments);
+      }
+      this.prefetch(segments);
+    }
+
+    /**
+     * @brief Mark the segments holding the edges of an active vertex.
+     */
+    private void mark(int v, boolean[] segments) {
+      if (this.offsets[v] == this.offsets[v + 1]) return;
+      int first = (int) (this.offsets[v] >>> SEGMENT_SHIFT);
+      int last = (int) ((this.offsets[v + 1] - 1) >>> SEGMENT_SHIFT);
+      for (int s = first; s <= last; ++s) {
+        segments[s] = true;
+      }
+    }
+
+    /**
+     * @brief Start the prefetching thread on the marked segments.
+     */
+    private void prefetch(final boolean[] segments) {
+      int count = 0;
+      for (boolean segment : segments) {
+        if (segment) ++count;
+      }
+      this.activeSegments = count;
+      this.current = -1;
+      this.stopped = false;
+      this.prefetcher = new Thread(new Runnable() {
+        public void run() {
+          for (int s = 0; s < segments.length && !stopped; ++s) {
+            if (!segments[s]) continue;
+            synchronized (lock) {
+              while (!stopped && s > current + PREFETCH_AHEAD) {
+                try {
+                  lock.wait();
+                } catch (InterruptedException e) {
+                  return;
+                }
+              }
+            }
+            if (stopped) return;
+            if (s > current) {
+              mapped[s].load();
+              if (weights != null) mapped[s + targets.length].load();
+            }
+          }
+        }
+      });
+      this.prefetcher.setDaemon(true);
+      this.prefetcher.start();
+    }
+
+    /**
+     * @brief Stop prefetching at the end of a superstep.
+     */
+    public void endSuperstep() {
+      this.stopped = true;
+      synchronized (this.lock) {
+        this.lock.notifyAll();
+      }
+      try {
+        this.prefetcher.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private DiskGraph() {
+  }
+
+  /**
+   * @brief Get the number of vertex slots, max id + 1.
+   */
+  public int getSize() {
+    return this.size;
+  }
+
+  /**
+   * @brief Whether the id is a vertex.
+   */
+  public boolean exists(int id) {
+    return id >= 0 && id < this.size && this.exists[id];
+  }
+
+  public boolean[] getExists() {
+    return this.exists;
+  }
+
+  public Edges getOut() {
+    return this.out;
+  }
+
+  public Edges getIn() {
+    return this.in;
+  }
+
+  /**
+   * @brief Map a region of a file, in the byte order of the files.
+   */
+  private static MappedByteBuffer map(FileChannel channel, FileChannel.MapMode mode,
+                                      long position, long size) throws IOException {
+    MappedByteBuffer buffer = channel.map(mode, position, size);
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    return buffer;
+  }
+
+  /**
+   * @brief The file of the edges of one direction, while it is written.
+   */
+  private static class EdgeWriter {
+    private RandomAccessFile file;
+    private IntBuffer[] targets;
+    private IntBuffer[] weights = null;
+
+    EdgeWriter(String path, int size, long[] offsets, boolean weighted)
+        throws IOException {
+      long edgeCnt = offsets[size];
+      long offsetsEnd = HEADER_SIZE + 8L * (size + 1);
+      this.file = new RandomAccessFile(path, "rw");
+      this.file.setLength(0);
+      this.file.setLength(offsetsEnd + 4L * edgeCnt * (weighted ? 2 : 1));
+      FileChannel channel = this.file.getChannel();
+      MappedByteBuffer header = map(channel, FileChannel.MapMode.READ_WRITE,
+                                    0, HEADER_SIZE);
+      header.putInt(MAGIC).putInt(size).putLong(edgeCnt)
+            .putInt(weighted ? 1 : 0).putInt(0);
+      for (long from = 0; from <= size; from += SEGMENT_EDGES) {
+        int count = (int) Math.min(SEGMENT_EDGES, size + 1 - from);
+        LongBuffer buffer = map(channel, FileChannel.MapMode.READ_WRITE,
+                                HEADER_SIZE + 8 * from, 8L * count).asLongBuffer();
+        buffer.put(offsets, (int) from, count);
+      }
+      this.targets = mapEdges(channel, FileChannel.MapMode.READ_WRITE,
+                              offsetsEnd, edgeCnt, null);
+      if (weighted) {
+        this.weights = mapEdges(channel, FileChannel.MapMode.READ_WRITE,
+                                offsetsEnd + 4 * edgeCnt, edgeCnt, null);
+      }
+    }
+
+    void put(long e, int target, int weight) {
+      int segment = (int) (e >>> SEGMENT_SHIFT);
+      this.targets[segment].put((int) (e & SEGMENT_MASK), target);
+      if (this.weights != null) {
+        this.weights[segment].put((int) (e & SEGMENT_MASK), weight);
+      }
+    }
+
+    void close() throws IOException {
+      this.file.close();
+    }
+  }
+
+  /**
+   * @brief Map the segments of an array of ints of one int per edge.
+   * @param mapped The mapped buffers are added here, or null.
+   */
+  private static IntBuffer[] mapEdges(FileChannel channel, FileChannel.MapMode mode,
+                                      long position, long edgeCnt,
+                                      MappedByteBuffer[] mapped) throws IOException {
+    int segments = (int) ((edgeCnt + SEGMENT_EDGES - 1) >>> SEGMENT_SHIFT);
+    IntBuffer[] buffers = new IntBuffer[segments];
+    for (int s = 0; s < segments; ++s) {
+      long count = Math.min(SEGMENT_EDGES, edgeCnt - ((long) s << SEGMENT_SHIFT));
+      MappedByteBuffer buffer = map(channel, mode,
+                                    position + (4L * s << SEGMENT_SHIFT), 4 * count);
+      if (mapped != null) mapped[s] = buffer;
+      buffers[s] = buffer.asIntBuffer();
+    }
+    return buffers;
+  }
+
+  /**
+   * @brief Write the vertices, and create the writers of both directions.
+   */
+  private static EdgeWriter[] create(String dir, boolean[] exists,
+                                     long[] outOffsets, long[] inOffsets,
+                                     boolean weighted) throws IOException {
+    new File(dir).mkdirs();
+    RandomAccessFile vertices = new RandomAccessFile(dir + "/vertices.bin", "rw");
+    try {
+      vertices.setLength(0);
+      byte[] bytes = new byte[exists.length];
+      for (int v = 0; v < exists.length; ++v) bytes[v] = (byte) (exists[v] ? 1 : 0);
+      vertices.write(bytes);
+    } finally {
+      vertices.close();
+    }
+    return new EdgeWriter[] {
+        new EdgeWriter(dir + "/out.csr", exists.length, outOffsets, weighted),
+        new EdgeWriter(dir + "/in.csr", exists.length, inOffsets, weighted)};
+  }
+
+  /**
+   * @brief Write a graph in memory to a directory.
+   * @param graph The graph.
+   * @param dir The directory.
+   */
+  public static void write(CsrGraph graph, String dir) throws IOException {
+    int size = graph.getSize();
+    long[] outOffsets = new long[size + 1];
+    long[] inOffsets = new long[size + 1];
+    for (int v = 0; v <= size; ++v) {
+      outOffsets[v] = graph.getOutOffsets()[v];
+      inOffsets[v] = graph.getInOffsets()[v];
+    }
+    EdgeWriter[] writers = create(dir, graph.getExists(), outOffsets,
+                                  inOffsets, true);
+    int[] outTargets = graph.getOutTargets();
+    int[] outWeights = graph.getOutWeights();
+    int[] inSources = graph.getInSources();
+    int[] inWeights = graph.getInWeights();
+    for (int e = 0; e < outTargets.length; ++e) {
+      writers[0].put(e, outTargets[e], outWeights[e]);
+      writers[1].put(e, inSources[e], inWeights[e]);
+    }
+    writers[0].close();
+    writers[1].close();
+  }
+
+  /**
+   * @brief Convert an edge-list file to a graph on disk in two passes, the
+   * first counts the degrees and the second writes every edge to its place.
+   * Only the vertices are kept in memory.
+   * @param edgeFile The edge-list file, see Graph.EdgeListReader.
+   * @param weighted Whether the edges have weights.
+   * @param dir The directory of the graph.
+   */
+  public static void build(String edgeFile, final boolean weighted, String dir)
+      throws IOException {
+    int threads = Runtime.getRuntime().availableProcessors();
+    // The degrees, indexed by id + 1.
+    final long[][] degrees = {new long[1024], new long[1024]};
+    final int[] maxId = {-1};
+    new EdgeListReader(edgeFile, threads, 10000).read(
+        new EdgeListReader.EdgeHandler() {
+          public void handle(int worker, int[] src, int[] dest, int[] weight,
+                             int count) {
+            EdgeListReader.checkIndexIds(src, dest, count);
+            synchronized (degrees) {
+              for (int i = 0; i < count; ++i) {
+                int id = Math.max(src[i], dest[i]);
+                if (id + 2 > degrees[0].length) {
+                  int capacity = Math.max(degrees[0].length * 2, id + 2);
+                  degrees[0] = Arrays.copyOf(degrees[0], capacity);
+                  degrees[1] = Arrays.copyOf(degrees[1], capacity);
+                }
+                maxId[0] = Math.max(maxId[0], id);
+                ++degrees[0][src[i] + 1];
+                ++degrees[1][dest[i] + 1];
+              }
+            }
+          }
+        });
+
+    int size = maxId[0] + 1;
+    boolean[] exists = new boolean[size];
+    long[] outOffsets = Arrays.copyOf(degrees[0], size + 1);
+    long[] inOffsets = Arrays.copyOf(degrees[1], size + 1);
+    for (int v = 0; v < size; ++v) {
+      exists[v] = outOffsets[v + 1] > 0 || inOffsets[v + 1] > 0;
+      outOffsets[v + 1] += outOffsets[v];
+      inOffsets[v + 1] += inOffsets[v];
+    }
+    degrees[0] = null;
+    degrees[1] = null;
+
+    final EdgeWriter[] writers = create(dir, exists, outOffsets, inOffsets,
+                                        weighted);
+    final long[] outPos = outOffsets;
+    final long[] inPos = inOffsets;
+    // The offsets are the cursors of the second pass, and are read again
+    // when the graph is opened.
+    new EdgeListReader(edgeFile, threads, 10000).read(
+        new EdgeListReader.EdgeHandler() {
+          public void handle(int worker, int[] src, int[] dest, int[] weight,
+                             int count) {
+            synchronized (writers) {
+              for (int i = 0; i < count; ++i) {
+                writers[0].put(outPos[src[i]]++, dest[i], weight[i]);
+                writers[1].put(inPos[dest[i]]++, src[i], weight[i]);
+              }
+            }
+          }
+        });
+    writers[0].close();
+    writers[1].close();
+  }
+
+  /**
+   * @brief Open the edges of one direction.
+   */
+  private static Edges openEdges(String path, int size) throws IOException {
+    RandomAccessFile file = new RandomAccessFile(path, "r");
+    try {
+      FileChannel channel = file.getChannel();
+      MappedByteBuffer header = map(channel, FileChannel.MapMode.READ_ONLY,
+                                    0, HEADER_SIZE);
+      if (header.getInt() != MAGIC || header.getInt() != size) {
+        throw new IOException(path + " is not a graph of " + size + " vertices");
+      }
+      Edges edges = new Edges();
+      edges.edgeCnt = header.getLong();
+      boolean weighted = header.getInt() != 0;
+      edges.offsets = new long[size + 1];
+      for (long from = 0; from <= size; from += SEGMENT_EDGES) {
+        int count = (int) Math.min(SEGMENT_EDGES, size + 1 - from);
+        map(channel, FileChannel.MapMode.READ_ONLY, HEADER_SIZE + 8 * from,
+            8L * count).asLongBuffer().get(edges.offsets, (int) from, count);
+      }
+      long offsetsEnd = HEADER_SIZE + 8L * (size + 1);
+      int segments = (int) ((edges.edgeCnt + SEGMENT_EDGES - 1) >>> SEGMENT_SHIFT);
+      edges.mapped = new MappedByteBuffer[weighted ? 2 * segments : segments];
+      MappedByteBuffer[] weightsMapped = new MappedByteBuffer[segments];
+      edges.targets = mapEdges(channel, FileChannel.MapMode.READ_ONLY,
+                               offsetsEnd, edges.edgeCnt, edges.mapped);
+      if (weighted) {
+        edges.weights = mapEdges(channel, FileChannel.MapMode.READ_ONLY,
+                                 offsetsEnd + 4 * edges.edgeCnt, edges.edgeCnt,
+                                 weightsMapped);
+        System.arraycopy(weightsMapped, 0, edges.mapped, segments, segments);
+      }
+      return edges;
+    } finally {
+      // The mappings stay valid after the file is closed.
+      file.close();
+    }
+  }
+
+  /**
+   * @brief Open a graph written by build() or write().
+   * @param dir The directory of the graph.
+   * @return The graph.
+   */
+  public static DiskGraph open(String dir) throws IOException {
+    RandomAccessFile vertices = new RandomAccessFile(dir + "/vertices.bin", "r");
+    DiskGraph graph = new DiskGraph();
+    try {
+      byte[] bytes = new byte[(int) vertices.length()];
+      vertices.readFully(bytes);
+      graph.size = bytes.length;
+      graph.exists = new boolean[graph.size];
+      for (int v = 0; v < graph.size; ++v) graph.exists[v] = bytes[v] != 0;
+    } finally {
+      vertices.close();
+    }
+    graph.out = openEdges(dir + "/out.csr", graph.size);
+    graph.in = openEdges(dir + "/in.csr", graph.size);
+    return graph;
+  }
+}
@@ -0,0 +1,25 @@
+/**
+ * This file copyright (c) 2015-2016, Jing Fan, Adalbert Gerald Soosai Raj, and Jignesh M. Patel
+ *
+ * See the file CREDITS.txt in the root directory for details.
+ **/
+
+package Engine;
+
+/**
+ * @brief The base class of the vertex programs generated by CodeGenerator
+ * in the out-of-core mode. The values, the messages and the frontier are
+ * arrays indexed by vertex id as in VertexProgram, but the edges are read
+ * from a DiskGraph, so only the vertices need to fit in memory.
+ */
+public abstract class OutOfCoreProgram extends VertexProgram {
+  protected DiskGraph disk = null;
+
+  /**
+   * @brief Set the graph on disk, it must be called before init().
+   * @param disk The graph.
+   */
+  public void setDiskGraph(DiskGraph disk) {
+    this.disk = disk;
+  }
+}
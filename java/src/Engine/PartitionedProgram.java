@@ -0,0 +1,43 @@
+/**
+ * This file copyright (c) 2015-2016, Jing Fan, Adalbert Gerald Soosai Raj, and Jignesh M. Patel
+ *
+ * See the file CREDITS.txt in the root directory for details.
+ **/
+
+package Engine;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * @brief The base class of the vertex programs generated by CodeGenerator
+ * for one partition of the graph, run by BspWorker. The graph of a worker
+ * holds its own vertices and their edges, so a superstep combines the
+ * messages to other vertices in the accumulators of the sender, as
+ * CombineMessage would on the receiver. The worker then moves every
+ * combined message to the worker of its vertex before the next superstep.
+ */
+public abstract class PartitionedProgram extends VertexProgram {
+
+  /**
+   * @brief Whether a vertex has a message for the next superstep.
+   * @param v The vertex id.
+   */
+  public abstract boolean hasMessage(int v);
+
+  /**
+   * @brief Write the combined message of a vertex and remove it.
+   * @param v The vertex id.
+   * @param out The output.
+   */
+  public abstract void writeMessage(int v, DataOutput out) throws IOException;
+
+  /**
+   * @brief Read a message written by writeMessage() and combine it with the
+   * message of the vertex.
+   * @param v The vertex id.
+   * @param in The input.
+   */
+  public abstract void readMessage(int v, DataInput in) throws IOException;
+}
@@ -0,0 +1,139 @@
+/**
+ * This file copyright (c) 2015-2016, Jing Fan, Adalbert Gerald Soosai Raj, and Jignesh M. Patel
+ *
+ * See the file CREDITS.txt in the root directory for details.
+ **/
+
+package Engine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * @brief Compiles the source generated by CodeGenerator in memory with the
+ * system Java compiler, and loads the class with its own class loader, so
+ * the class is unloaded with the program. It needs a JDK, not a JRE.
+ */
+public class ProgramCompiler {
+
+  /**
+   * @brief A source held in a string.
+   */
+  private static class Source extends SimpleJavaFileObject {
+    private String code;
+
+    Source(String className, String code) {
+      super(URI.create("string:///" + className + Kind.SOURCE.extension),
+            Kind.SOURCE);
+      this.code = code;
+    }
+
+    public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+      return this.code;
+    }
+  }
+
+  /**
+   * @brief A class file held in memory.
+   */
+  private static class ClassFile extends SimpleJavaFileObject {
+    private ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+    ClassFile(String className) {
+      super(URI.create("bytes:///" + className + Kind.CLASS.extension),
+            Kind.CLASS);
+    }
+
+    public OutputStream openOutputStream() {
+      return this.bytes;
+    }
+  }
+
+  /**
+   * @brief Loads the compiled classes, the rest comes from the loader of
+   * VertexProgram.
+   */
+  private static class Loader extends ClassLoader {
+    private HashMap<String, ClassFile> classes;
+
+    Loader(HashMap<String, ClassFile> classes) {
+      super(VertexProgram.class.getClassLoader());
+      this.classes = classes;
+    }
+
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+      ClassFile file = this.classes.get(name);
+      if (file == null) {
+        throw new ClassNotFoundException(name);
+      }
+      byte[] bytes = file.bytes.toByteArray();
+      return this.defineClass(name, bytes, 0, bytes.length);
+    }
+  }
+
+  /**
+   * @brief Compile a generated program.
+   * @param className The name of the class, in the unnamed package.
+   * @param code The source.
+   * @return The class of the program.
+   */
+  public static Class<? extends VertexProgram> compile(String className,
+                                                       String code) {
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    if (compiler == null) {
+      throw new IllegalStateException("No Java compiler, a JDK is needed");
+    }
+    DiagnosticCollector<JavaFileObject> diagnostics =
+        new DiagnosticCollector<JavaFileObject>();
+    StandardJavaFileManager standard =
+        compiler.getStandardFileManager(diagnostics, null, null);
+    final HashMap<String, ClassFile> classes = new HashMap<String, ClassFile>();
+    ForwardingJavaFileManager<StandardJavaFileManager> manager =
+        new ForwardingJavaFileManager<StandardJavaFileManager>(standard) {
+          public JavaFileObject getJavaFileForOutput(
+              Location location, String name, JavaFileObject.Kind kind,
+              FileObject sibling) {
+            ClassFile file = new ClassFile(name);
+            classes.put(name, file);
+            return file;
+          }
+        };
+    JavaCompiler.CompilationTask task = compiler.getTask(
+        null, manager, diagnostics,
+        Arrays.asList("-classpath", System.getProperty("java.class.path")),
+        null, Arrays.asList(new Source(className, code)));
+    boolean success = task.call();
+    try {
+      manager.close();
+    } catch (IOException e) {
+      // Nothing was written to disk.
+    }
+    if (!success) {
+      StringBuilder sb = new StringBuilder("Failed to compile " + className);
+      for (Diagnostic<? extends JavaFileObject> d : diagnostics.getDiagnostics()) {
+        sb.append("\n  line " + d.getLineNumber() + ": " + d.getMessage(null));
+      }
+      throw new IllegalStateException(sb.toString());
+    }
+    try {
+      return new Loader(classes).loadClass(className)
+          .asSubclass(VertexProgram.class);
+    } catch (ClassNotFoundException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
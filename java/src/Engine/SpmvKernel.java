@@ -0,0 +1,92 @@
+/**
+ * This file copyright (c) 2015-2016, Jing Fan, Adalbert Gerald Soosai Raj, and Jignesh M. Patel
+ *
+ * See the file CREDITS.txt in the root directory for details.
+ **/
+
+package Engine;
+
+/**
+ * @brief The gather-and-accumulate kernel of SpmvProgram. The scalar kernel
+ * is always available, the kernel on jdk.incubator.vector is loaded by
+ * load() when the module is present.
+ */
+public abstract class SpmvKernel {
+  // The class of the vector kernel, compiled separately, see Engine/Vector.
+  private static final String VECTOR_KERNEL = "Engine.Vector.VectorSpmvKernel";
+
+  /**
+   * @brief Get the name of the kernel, used in the benchmark results.
+   */
+  public abstract String getName();
+
+  /**
+   * @brief Sum x[idx[i]] for i in [from, to).
+   * @param x The vector.
+   * @param idx The indexes.
+   * @param from The first index.
+   * @param to The end of the indexes.
+   * @return The sum.
+   */
+  public abstract double gatherSum(double[] x, int[] idx, int from, int to);
+
+  /**
+   * @brief Sum k vectors at once. The vectors are interleaved, element j of
+   * vector i is x[i * k + j], and the sums are added to
+   * out[outOffset .. outOffset + k).
+   * @param x The interleaved vectors.
+   * @param k The number of vectors.
+   * @param idx The indexes.
+   * @param from The first index.
+   * @param to The end of the indexes.
+   * @param out The sums.
+   * @param outOffset The offset of the sums in out.
+   */
+  public abstract void gatherSum(double[] x, int k, int[] idx, int from, int to,
+                                 double[] out, int outOffset);
+
+  /**
+   * @brief The kernel in plain Java.
+   */
+  public static class Scalar extends SpmvKernel {
+    public String getName() {
+      return "scalar";
+    }
+
+    public double gatherSum(double[] x, int[] idx, int from, int to) {
+      double sum = 0;
+      for (int i = from; i < to; ++i) {
+        sum += x[idx[i]];
+      }
+      return sum;
+    }
+
+    public void gatherSum(double[] x, int k, int[] idx, int from, int to,
+                          double[] out, int outOffset) {
+      for (int i = from; i < to; ++i) {
+        int base = idx[i] * k;
+        for (int j = 0; j < k; ++j) {
+          out[outOffset + j] += x[base + j];
+        }
+      }
+    }
+  }
+
+  /**
+   * @brief Load the vector kernel if jdk.incubator.vector is available, the
+   * JVM must be started with --add-modules jdk.incubator.vector, otherwise
+   * return the scalar kernel.
+   * @return The kernel.
+   */
+  public static SpmvKernel load() {
+    try {
+      return (SpmvKernel) Class.forName(VECTOR_KERNEL)
+          .getDeclaredConstructor().newInstance();
+    } catch (ReflectiveOperationException e) {
+      return new Scalar();
+    } catch (LinkageError e) {
+      // The kernel is there, but the module is not.
+      return new Scalar();
+    }
+  }
+}
@@ -0,0 +1,437 @@
+/**
+ * This file copyright (c) 2015-2016, Jing Fan, Adalbert Gerald Soosai Raj, and Jignesh M. Patel
+ *
+ * See the file CREDITS.txt in the root directory for details.
+ **/
+
+package Engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import Expr.Binary;
+import Expr.Call;
+import Expr.Expr;
+import Expr.ExprParser;
+import Expr.Literal;
+import Expr.Ref;
+import Expr.Stmt;
+import Expr.Unary;
+
+/**
+ * @brief Runs a linear program as a sparse matrix-vector product per
+ * superstep. A program is linear when the values and messages are floats,
+ * CombineMessage is affine in SUM(message), and UpdateAndSend is
+ *
+ *   setVal(getAggregationVal())
+ *   send(dir, content[, condition])
+ *
+ * where content is getAggregationVal() times a factor of the sender (e.g.
+ * 1 / out_cnts.cnt), and the condition depends only on the sender. PageRank
+ * is such a program. All the vertices send in every superstep, as in the
+ * SQL (see CodeGenerator.isAllSender), the ones that received nothing with
+ * their old values. Every superstep computes the contribution of every
+ * vertex and multiplies it by the blocked adjacency matrix (see
+ * BlockedCsr), so no message is materialized.
+ *
+ * With sources (see Sources in Grail), one vector per source is run at
+ * once, the initial message of vector j goes to source j, and the vectors
+ * are interleaved so a gather reads all of them.
+ */
+public class SpmvProgram extends VertexProgram {
+  // The log2 of the number of vertices of a column block, 64K vertices take
+  // 512KB per vector.
+  private static final int DEFAULT_BLOCK_SHIFT = 16;
+
+  // CombineMessage is combineScale * SUM(message) + combineShift.
+  private double combineScale;
+  private double combineShift;
+  // The content and the condition of send, and the send direction.
+  private Expr content;
+  private Expr cond;
+  private boolean sendOut;
+  private boolean sendIn;
+  // The initial value, and the initial message and its target (-1 for ALL).
+  private double initVal;
+  private double initMsg;
+  private int initTarget;
+  private int maxSupersteps;
+  // Whether the program declares Sources.
+  private boolean needsSources;
+  private int[] sources = null;
+  private int blockShift = DEFAULT_BLOCK_SHIFT;
+  private SpmvKernel kernel = SpmvKernel.load();
+
+  // The number of vectors, and the interleaved state of the vectors.
+  private int k;
+  private double[] val;
+  private double[] sum;
+  private double[] contrib;
+  // Whether a vertex received a message in the last superstep. After the
+  // first superstep these are the vertices with a sending neighbor.
+  private boolean[] has;
+  private boolean[] nextHas;
+  // Whether has no longer changes, it is then skipped.
+  private boolean hasFixed;
+  // The number of messages of the last superstep, it repeats once has is
+  // fixed.
+  private long lastSent;
+  // The factor of content and whether the condition holds, per sender.
+  private double[] factor;
+  private boolean[] sends;
+
+  private SpmvProgram() {
+  }
+
+  /**
+   * @brief The degree of an expression in the aggregation value, or -1 if
+   * it is not a polynomial of it.
+   */
+  private static int degree(Expr expr) {
+    if (expr instanceof Literal) {
+      return 0;
+    } else if (expr instanceof Call) {
+      return ((Call) expr).getName().equals("getAggregationVal") ? 1 : -1;
+    } else if (expr instanceof Ref) {
+      Ref ref = (Ref) expr;
+      if (ref.getTable() == null) {
+        return ref.getName().equals("message") ? 1 : -1;
+      }
+      if (ref.getName().equals("cnt")
+          && (ref.getTable().equals("out_cnts") || ref.getTable().equals("in_cnts"))) {
+        return 0;
+      }
+      return ref.getTable().equals("cur") && ref.getName().equals("val") ? 1 : -1;
+    } else if (expr instanceof Unary) {
+      Unary unary = (Unary) expr;
+      int d = degree(unary.getOperand());
+      return unary.getOp().equals("-") || d == 0 ? d : -1;
+    }
+    Binary binary = (Binary) expr;
+    int lhs = degree(binary.getLhs());
+    int rhs = degree(binary.getRhs());
+    if (lhs < 0 || rhs < 0) return -1;
+    String op = binary.getOp();
+    if (op.equals("+") || op.equals("-")) return Math.max(lhs, rhs);
+    if (op.equals("*")) return lhs + rhs;
+    if (op.equals("/")) return rhs == 0 ? lhs : -1;
+    // Comparisons and logical operations only on constants.
+    return lhs == 0 && rhs == 0 ? 0 : -1;
+  }
+
+  /**
+   * @brief Evaluate an expression.
+   * @param agg The aggregation value.
+   * @param outCnt The out-degree of the vertex.
+   * @param inCnt The in-degree of the vertex.
+   */
+  private static double eval(Expr expr, double agg, int outCnt, int inCnt) {
+    if (expr instanceof Literal) {
+      String text = ((Literal) expr).getText();
+      if (text.equals("INT_MAX")) return Integer.MAX_VALUE;
+      if (text.equals("INT_MIN")) return Integer.MIN_VALUE;
+      if (text.startsWith("DBL_")) return 1.79E+308;
+      return Double.parseDouble(text);
+    } else if (expr instanceof Call) {
+      return agg;
+    } else if (expr instanceof Ref) {
+      Ref ref = (Ref) expr;
+      if (ref.getName().equals("cnt")) {
+        return ref.getTable().equals("out_cnts") ? outCnt : inCnt;
+      }
+      return agg;
+    } else if (expr instanceof Unary) {
+      Unary unary = (Unary) expr;
+      double operand = eval(unary.getOperand(), agg, outCnt, inCnt);
+      if (unary.getOp().equals("-")) return -operand;
+      return operand != 0 ? 0 : 1;
+    }
+    Binary binary = (Binary) expr;
+    double lhs = eval(binary.getLhs(), agg, outCnt, inCnt);
+    double rhs = eval(binary.getRhs(), agg, outCnt, inCnt);
+    switch (binary.getOp()) {
+      case "+": return lhs + rhs;
+      case "-": return lhs - rhs;
+      case "*": return lhs * rhs;
+      case "/": return lhs / rhs;
+      case "%": return lhs % rhs;
+      case "<": return lhs < rhs ? 1 : 0;
+      case "<=": return lhs <= rhs ? 1 : 0;
+      case ">": return lhs > rhs ? 1 : 0;
+      case ">=": return lhs >= rhs ? 1 : 0;
+      case "==": return lhs == rhs ? 1 : 0;
+      case "!=": return lhs != rhs ? 1 : 0;
+      case "AND": return lhs != 0 && rhs != 0 ? 1 : 0;
+      default: return lhs != 0 || rhs != 0 ? 1 : 0;
+    }
+  }
+
+  /**
+   * @brief Whether an expression reads a column of the table.
+   */
+  private static boolean reads(Expr expr, String table) {
+    if (expr instanceof Binary) {
+      return reads(((Binary) expr).getLhs(), table)
+             || reads(((Binary) expr).getRhs(), table);
+    } else if (expr instanceof Unary) {
+      return reads(((Unary) expr).getOperand(), table);
+    } else if (expr instanceof Ref) {
+      return table.equals(((Ref) expr).getTable());
+    }
+    return false;
+  }
+
+  /**
+   * @brief Whether the content or the condition reads the table.
+   */
+  private boolean reads(String table) {
+    return reads(this.content, table) || (this.cond != null && reads(this.cond, table));
+  }
+
+  /**
+   * @brief Whether an expression is the aggregation value.
+   */
+  private static boolean isAggregation(Expr expr) {
+    return degree(expr) == 1 && (expr instanceof Call || expr instanceof Ref);
+  }
+
+  private static boolean isFloat(String type) {
+    return type != null && type.trim().equalsIgnoreCase("float");
+  }
+
+  /**
+   * @brief Make the program run as SpMV, if it is linear.
+   * @param options The options of the program, see Parser.parse.
+   * @param stmts The statements of UpdateAndSend.
+   * @return The program, or null if it is not linear.
+   */
+  public static SpmvProgram detect(HashMap<String, String> options,
+                                   ArrayList<Stmt> stmts) {
+    if (!isFloat(options.get("VertexValType"))
+        || !isFloat(options.get("MessageValType"))
+        || options.containsKey("WarmStart")
+        || options.containsKey("NextTblSchema")) {
+      return null;
+    }
+    if (stmts.size() != 2 || !(stmts.get(0) instanceof Stmt.SetVal)
+        || !(stmts.get(1) instanceof Stmt.Send)
+        || !isAggregation(((Stmt.SetVal) stmts.get(0)).value)
+        || !CodeGenerator.isAllSender(stmts)) {
+      return null;
+    }
+    SpmvProgram program = new SpmvProgram();
+    try {
+      // CombineMessage must be affine in SUM(message).
+      String combine = options.get("CombineMessage")
+          .replaceAll("(?i)\\bSUM\\s*\\(\\s*message\\s*\\)", "message");
+      if (combine.toLowerCase().matches("(?s).*\\b(min|max|count|avg|sum)\\s*\\(.*")) {
+        return null;
+      }
+      Expr combineExpr = ExprParser.parse(combine);
+      int combineDegree = degree(combineExpr);
+      if (combineDegree != 0 && combineDegree != 1) {
+        return null;
+      }
+      program.combineShift = eval(combineExpr, 0, 0, 0);
+      program.combineScale = eval(combineExpr, 1, 0, 0) - program.combineShift;
+
+      // The content is linear, and the condition does not read the value.
+      Stmt.Send send = (Stmt.Send) stmts.get(1);
+      if (degree(send.content) != 1 || eval(send.content, 0, 1, 1) != 0
+          || (send.cond != null && degree(send.cond) != 0)) {
+        return null;
+      }
+      program.content = send.content;
+      program.cond = send.cond;
+      program.sendOut = send.dir.equals("out") || send.dir.equals("all");
+      program.sendIn = send.dir.equals("in") || send.dir.equals("all");
+
+      String[] initMsg = options.get("InitialMessage").trim()
+          .replaceAll("^\\(|\\)$", "").split(",");
+      if (initMsg.length != 2) {
+        return null;
+      }
+      program.initTarget = initMsg[0].trim().equalsIgnoreCase("ALL")
+                           ? -1 : Integer.parseInt(initMsg[0].trim());
+      Expr initMsgExpr = ExprParser.parse(initMsg[1]);
+      Expr initValExpr = ExprParser.parse(options.get("InitiateVal"));
+      if (degree(initMsgExpr) != 0 || degree(initValExpr) != 0) {
+        return null;
+      }
+      program.initMsg = eval(initMsgExpr, 0, 0, 0);
+      program.initVal = eval(initValExpr, 0, 0, 0);
+
+      String[] end = options.get("End").trim().replaceAll("^\\(|\\)$", "").split(",");
+      program.maxSupersteps = end[0].trim().equalsIgnoreCase("ITER")
+                              ? Integer.parseInt(end[1].trim()) : -1;
+    } catch (IllegalArgumentException e) {
+      // Includes NumberFormatException, the program is not linear.
+      return null;
+    }
+    program.needsSources = options.containsKey("Sources");
+    return program;
+  }
+
+  /**
+   * @brief Set the sources, one vector is run for every source.
+   * @param sources The source vertex ids.
+   */
+  public void setSources(int[] sources) {
+    this.sources = sources;
+  }
+
+  /**
+   * @brief Set the log2 of the number of vertices of a column block.
+   */
+  public void setBlockShift(int blockShift) {
+    this.blockShift = blockShift;
+  }
+
+  /**
+   * @brief Set the gather kernel, by default SpmvKernel.load().
+   */
+  public void setKernel(SpmvKernel kernel) {
+    this.kernel = kernel;
+  }
+
+  public SpmvKernel getKernel() {
+    return this.kernel;
+  }
+
+  /**
+   * @brief Get the number of vectors.
+   */
+  public int getVectors() {
+    return this.k;
+  }
+
+  public int getMaxSupersteps() {
+    return this.maxSupersteps;
+  }
+
+  public double getValue(int id) {
+    return this.val[id * this.k];
+  }
+
+  /**
+   * @brief Get the value of a vertex in a vector.
+   * @param vector The vector, the index of its source.
+   * @param id The vertex id.
+   * @return The value.
+   */
+  public double getValue(int vector, int id) {
+    return this.val[id * this.k + vector];
+  }
+
+  public long init() {
+    if (this.needsSources && this.sources == null) {
+      throw new IllegalStateException("The program needs sources");
+    }
+    this.k = this.needsSources ? this.sources.length : 1;
+    int size = this.graph.getSize();
+    int[] outOffsets = this.graph.getOutOffsets();
+    int[] inOffsets = this.graph.getInOffsets();
+    this.factor = new double[size];
+    this.sends = new boolean[size];
+    for (int v = 0; v < size; ++v) {
+      int outCnt = outOffsets[v + 1] - outOffsets[v];
+      int inCnt = inOffsets[v + 1] - inOffsets[v];
+      // The degree tables are joined, a vertex without a row sends nothing.
+      this.sends[v] = this.graph.exists(v)
+                      && (outCnt > 0 || !this.reads("out_cnts"))
+                      && (inCnt > 0 || !this.reads("in_cnts"))
+                      && (this.cond == null || eval(this.cond, 0, outCnt, inCnt) != 0);
+      // The content is linear, its value at 1 is the factor.
+      this.factor[v] = this.sends[v] ? eval(this.content, 1, outCnt, inCnt) : 0;
+    }
+    // The layouts are built now, not in the first superstep.
+    if (this.sendOut) this.graph.getBlockedIn(this.blockShift);
+    if (this.sendIn) this.graph.getBlockedOut(this.blockShift);
+
+    this.val = new double[size * this.k];
+    this.sum = new double[size * this.k];
+    this.contrib = new double[size * this.k];
+    this.has = new boolean[size * this.k];
+    this.nextHas = new boolean[size * this.k];
+    this.hasFixed = false;
+    long sent = 0;
+    for (int v = 0; v < size; ++v) {
+      if (!this.graph.exists(v)) continue;
+      for (int j = 0; j < this.k; ++j) {
+        this.val[v * this.k + j] = this.initVal;
+        int target = this.needsSources ? this.sources[j] : this.initTarget;
+        if (target < 0 || target == v) {
+          this.has[v * this.k + j] = true;
+          this.sum[v * this.k + j] = this.initMsg;
+          ++sent;
+        }
+      }
+    }
+    return sent;
+  }
+
+  /**
+   * @brief Compute which vertices receive a message, gathering along the
+   * edges of one direction. Every vertex sends, unless its condition or a
+   * missing degree row stops it.
+   * @return The number of messages.
+   */
+  private long gatherHas(int[] offsets, int[] sources) {
+    long sent = 0;
+    int size = this.graph.getSize();
+    for (int v = 0; v < size; ++v) {
+      for (int e = offsets[v]; e < offsets[v + 1]; ++e) {
+        if (!this.sends[sources[e]]) continue;
+        for (int j = 0; j < this.k; ++j) {
+          this.nextHas[v * this.k + j] = true;
+        }
+        sent += this.k;
+      }
+    }
+    return sent;
+  }
+
+  public long superstep() {
+    int k = this.k;
+    int size = this.graph.getSize();
+    double[] val = this.val;
+    double[] sum = this.sum;
+    double[] contrib = this.contrib;
+    boolean[] has = this.has;
+    for (int v = 0; v < size; ++v) {
+      double f = this.factor[v];
+      for (int i = v * k; i < v * k + k; ++i) {
+        if (has[i]) val[i] = this.combineScale * sum[i] + this.combineShift;
+        // The factor is 0 for the ids that are not vertices.
+        contrib[i] = val[i] * f;
+      }
+    }
+
+    Arrays.fill(sum, 0);
+    if (this.sendOut) {
+      this.graph.getBlockedIn(this.blockShift).multiply(this.kernel, contrib, k, sum);
+    }
+    if (this.sendIn) {
+      this.graph.getBlockedOut(this.blockShift).multiply(this.kernel, contrib, k, sum);
+    }
+
+    // The receivers depend only on the edges, once they repeat they stay.
+    long sent = 0;
+    if (!this.hasFixed) {
+      Arrays.fill(this.nextHas, false);
+      if (this.sendOut) {
+        sent += this.gatherHas(this.graph.getInOffsets(), this.graph.getInSources());
+      }
+      if (this.sendIn) {
+        sent += this.gatherHas(this.graph.getOutOffsets(), this.graph.getOutTargets());
+      }
+      this.hasFixed = Arrays.equals(this.has, this.nextHas);
+      boolean[] swap = this.has;
+      this.has = this.nextHas;
+      this.nextHas = swap;
+      this.lastSent = sent;
+    }
+    return this.lastSent;
+  }
+}
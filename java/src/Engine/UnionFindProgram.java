@@ -0,0 +1,139 @@
+/**
+ * This file copyright (c) 2015-2016, Jing Fan, Adalbert Gerald Soosai Raj, and Jignesh M. Patel
+ *
+ * See the file CREDITS.txt in the root directory for details.
+ **/
+
+package Engine;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * @brief Computes the labels of a min-label propagation program (the weakly
+ * connected components of wcc.grail) with a concurrent union-find instead
+ * of supersteps. The parent of a vertex is never larger than the vertex, a
+ * union links the larger root under the smaller one with compare-and-set,
+ * so the root of every component is its smallest id, which is the label
+ * propagation would end with. The edges are split among the threads.
+ */
+public class UnionFindProgram extends VertexProgram {
+  // The number of vertices a thread takes at a time.
+  private static final int CHUNK = 4096;
+
+  private int threads = Runtime.getRuntime().availableProcessors();
+  private AtomicIntegerArray parent;
+
+  /**
+   * @brief Set the number of threads.
+   */
+  public void setThreads(int threads) {
+    this.threads = threads;
+  }
+
+  /**
+   * @brief Find the root of a vertex, halving the path on the way.
+   */
+  private int find(int v) {
+    while (true) {
+      int p = this.parent.get(v);
+      if (p == v) return v;
+      int grand = this.parent.get(p);
+      if (grand != p) {
+        // Another thread may have moved v, the CAS then fails harmlessly.
+        this.parent.compareAndSet(v, p, grand);
+      }
+      v = grand;
+    }
+  }
+
+  /**
+   * @brief Merge the trees of two vertices.
+   */
+  private void union(int a, int b) {
+    while (true) {
+      a = this.find(a);
+      b = this.find(b);
+      if (a == b) return;
+      if (a < b) {
+        int swap = a;
+        a = b;
+        b = swap;
+      }
+      // a is a root larger than b, link it if it is still a root.
+      if (this.parent.compareAndSet(a, a, b)) return;
+    }
+  }
+
+  public int getMaxSupersteps() {
+    return 1;
+  }
+
+  public double getValue(int id) {
+    return this.find(id);
+  }
+
+  public long init() {
+    int size = this.graph.getSize();
+    this.parent = new AtomicIntegerArray(size);
+    for (int v = 0; v < size; ++v) {
+      this.parent.set(v, v);
+    }
+    // Every vertex receives its id.
+    long messages = 0;
+    for (int v = 0; v < size; ++v) {
+      if (this.graph.exists(v)) ++messages;
+    }
+    return messages;
+  }
+
+  public long superstep() {
+    final int size = this.graph.getSize();
+    final int[] offsets = this.graph.getOutOffsets();
+    final int[] targets = this.graph.getOutTargets();
+    final AtomicInteger nextChunk = new AtomicInteger(0);
+    final AtomicReference<RuntimeException> error = new AtomicReference<RuntimeException>();
+    Thread[] workers = new Thread[this.threads];
+    for (int w = 0; w < workers.length; ++w) {
+      workers[w] = new Thread(new Runnable() {
+        public void run() {
+          try {
+            int start;
+            while ((start = nextChunk.getAndAdd(CHUNK)) < size) {
+              int end = Math.min(size, start + CHUNK);
+              for (int v = start; v < end; ++v) {
+                if (!graph.exists(v)) continue;
+                for (int e = offsets[v]; e < offsets[v + 1]; ++e) {
+                  // Messages to ids that are not vertices are dropped.
+                  if (graph.exists(targets[e])) {
+                    union(v, targets[e]);
+                  }
+                }
+              }
+            }
+          } catch (RuntimeException e) {
+            error.compareAndSet(null, e);
+          }
+        }
+      });
+      workers[w].start();
+    }
+    for (Thread worker : workers) {
+      try {
+        worker.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException(e);
+      }
+    }
+    if (error.get() != null) {
+      throw error.get();
+    }
+    // Compress the paths, so getValue() is one lookup.
+    for (int v = 0; v < size; ++v) {
+      this.parent.set(v, this.find(v));
+    }
+    return 0;
+  }
+}
@@ -0,0 +1,77 @@
+/**
+ * This file copyright (c) 2015-2016, Jing Fan, Adalbert Gerald Soosai Raj, and Jignesh M. Patel
+ *
+ * See the file CREDITS.txt in the root directory for details.
+ **/
+
+package Engine.Vector;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import Engine.SpmvKernel;
+
+/**
+ * @brief The SpmvProgram kernel on the incubating Vector API. It is compiled
+ * and run separately, with --add-modules jdk.incubator.vector, and loaded by
+ * SpmvKernel.load().
+ */
+public class VectorSpmvKernel extends SpmvKernel {
+  private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+  public String getName() {
+    return "vector" + SPECIES.length();
+  }
+
+  // Rows shorter than this are summed by the scalar loop, a vector gather
+  // and a lane reduction do not pay off for a few elements.
+  private static final int MIN_VECTOR_ROW = 4 * SPECIES.length();
+
+  public double gatherSum(double[] x, int[] idx, int from, int to) {
+    if (to - from < MIN_VECTOR_ROW) {
+      double sum = 0;
+      for (int i = from; i < to; ++i) {
+        sum += x[idx[i]];
+      }
+      return sum;
+    }
+    int lanes = SPECIES.length();
+    int bound = from + SPECIES.loopBound(to - from);
+    DoubleVector acc = DoubleVector.zero(SPECIES);
+    int i = from;
+    for (; i < bound; i += lanes) {
+      acc = acc.add(DoubleVector.fromArray(SPECIES, x, 0, idx, i));
+    }
+    double sum = acc.reduceLanes(VectorOperators.ADD);
+    for (; i < to; ++i) {
+      sum += x[idx[i]];
+    }
+    return sum;
+  }
+
+  public void gatherSum(double[] x, int k, int[] idx, int from, int to,
+                        double[] out, int outOffset) {
+    if (k == 1) {
+      out[outOffset] += this.gatherSum(x, idx, from, to);
+      return;
+    }
+    // The k elements of a vertex are contiguous, so they are loaded as
+    // whole vectors and no gather is needed.
+    int lanes = SPECIES.length();
+    int bound = SPECIES.loopBound(k);
+    for (int j = 0; j < bound; j += lanes) {
+      DoubleVector acc = DoubleVector.fromArray(SPECIES, out, outOffset + j);
+      for (int i = from; i < to; ++i) {
+        acc = acc.add(DoubleVector.fromArray(SPECIES, x, idx[i] * k + j));
+      }
+      acc.intoArray(out, outOffset + j);
+    }
+    for (int i = from; i < to; ++i) {
+      int base = idx[i] * k;
+      for (int j = bound; j < k; ++j) {
+        out[outOffset + j] += x[base + j];
+      }
+    }
+  }
+}
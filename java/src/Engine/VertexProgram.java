@@ -0,0 +1,70 @@
+/**
+ * This file copyright (c) 2015-2016, Jing Fan, Adalbert Gerald Soosai Raj, and Jignesh M. Patel
+ *
+ * See the file CREDITS.txt in the root directory for details.
+ **/
+
+package Engine;
+
+import java.util.ArrayList;
+
+/**
+ * @brief The base class of the vertex programs generated by CodeGenerator.
+ * A superstep combines the messages received in the last superstep, runs
+ * UpdateAndSend on every vertex that received a message, and delivers the
+ * messages sent for the next superstep.
+ */
+public abstract class VertexProgram {
+  protected CsrGraph graph = null;
+
+  /**
+   * @brief Set the graph, it must be called before init().
+   * @param graph The graph.
+   */
+  public void setGraph(CsrGraph graph) {
+    this.graph = graph;
+  }
+
+  /**
+   * @brief Set the initial values and deliver the initial messages.
+   * @return The number of initial messages.
+   */
+  public abstract long init();
+
+  /**
+   * @brief Run a superstep.
+   * @return The number of messages sent for the next superstep.
+   */
+  public abstract long superstep();
+
+  /**
+   * @brief Get the maximum number of supersteps, given by End: (ITER, n).
+   * @return The number, or -1 to run until no message is sent.
+   */
+  public abstract int getMaxSupersteps();
+
+  /**
+   * @brief Get the value of a vertex.
+   * @param id The vertex id.
+   * @return The value.
+   */
+  public abstract double getValue(int id);
+
+  /**
+   * @brief Run the program until it ends.
+   * @return The time of every superstep, in nanoseconds.
+   */
+  public long[] run() {
+    ArrayList<Long> nanos = new ArrayList<Long>();
+    long messages = this.init();
+    int maxSupersteps = this.getMaxSupersteps();
+    while (maxSupersteps >= 0 ? nanos.size() < maxSupersteps : messages > 0) {
+      long start = System.nanoTime();
+      messages = this.superstep();
+      nanos.add(System.nanoTime() - start);
+    }
+    long[] result = new long[nanos.size()];
+    for (int i = 0; i < result.length; ++i) result[i] = nanos.get(i);
+    return result;
+  }
+}
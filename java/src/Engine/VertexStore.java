@@ -0,0 +1,129 @@
+/**
+ * This file copyright (c) 2015-2016, Jing Fan, Adalbert Gerald Soosai Raj, and Jignesh M. Patel
+ *
+ * See the file CREDITS.txt in the root directory for details.
+ **/
+
+package Engine;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * @brief A column of fixed-width values stored off the Java heap. The
+ * generated programs keep the values, the message accumulators and the
+ * frontier in these columns in the off-heap mode, so the garbage collector
+ * does not scan or copy them.
+ *
+ * The values are kept in direct buffers of 2^30 bytes, and value i is at
+ * byte i * width. A column holds one of the types of the program values:
+ * int (INT), long (BIGINT), double (FLOAT) or boolean.
+ *
+ * The column itself is indexed by a long, but the graphs (CsrGraph,
+ * DiskGraph) and the generated programs number the vertices with ints, so
+ * a program still has fewer than 2^31 vertices. Only the storage moves off
+ * the heap; 64-bit vertex ids would also need long edge arrays.
+ *
+ * The buffers are direct ByteBuffers rather than the memory segments of
+ * jdk.incubator.foreign: the generated programs use this class on every
+ * off-heap run, and the incubator API would have to be added to every such
+ * JVM. It also changed incompatibly before it became java.lang.foreign, so
+ * the code would build only on JDK 17. The Vector API kernel of SpmvKernel
+ * is different: it is optional, built separately, and has a scalar fallback.
+ */
+public class VertexStore {
+  private static final int CHUNK_SHIFT = 30;
+  private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+  private final long size;
+  // log2 of the width of a value in bytes.
+  private final int shift;
+  private final ByteBuffer[] chunks;
+
+  /**
+   * @brief Allocate a column of zeros.
+   * @param size The number of values.
+   * @param width The width of a value in bytes, 1, 4 or 8.
+   */
+  public VertexStore(long size, int width) {
+    if (width != 1 && width != 4 && width != 8) {
+      throw new IllegalArgumentException("Unsupported width " + width);
+    }
+    this.size = size;
+    this.shift = Long.numberOfTrailingZeros(width);
+    long bytes = size << this.shift;
+    this.chunks = new ByteBuffer[(int) ((bytes + CHUNK_MASK) >>> CHUNK_SHIFT)];
+    for (int c = 0; c < this.chunks.length; ++c) {
+      long length = Math.min(1L << CHUNK_SHIFT, bytes - ((long) c << CHUNK_SHIFT));
+      this.chunks[c] = ByteBuffer.allocateDirect((int) length)
+                                 .order(ByteOrder.nativeOrder());
+    }
+  }
+
+  /**
+   * @brief Get the width of the values of a Java type.
+   * @param type int, long, double or boolean.
+   */
+  public static int width(String type) {
+    if (type.equals("boolean")) return 1;
+    return type.equals("int") ? 4 : 8;
+  }
+
+  public long size() {
+    return this.size;
+  }
+
+  private ByteBuffer chunk(long i) {
+    return this.chunks[(int) ((i << this.shift) >>> CHUNK_SHIFT)];
+  }
+
+  private int offset(long i) {
+    return (int) ((i << this.shift) & CHUNK_MASK);
+  }
+
+  public int getInt(long i) {
+    return this.chunk(i).getInt(this.offset(i));
+  }
+
+  public void putInt(long i, int value) {
+    this.chunk(i).putInt(this.offset(i), value);
+  }
+
+  public long getLong(long i) {
+    return this.chunk(i).getLong(this.offset(i));
+  }
+
+  public void putLong(long i, long value) {
+    this.chunk(i).putLong(this.offset(i), value);
+  }
+
+  public double getDouble(long i) {
+    return this.chunk(i).getDouble(this.offset(i));
+  }
+
+  public void putDouble(long i, double value) {
+    this.chunk(i).putDouble(this.offset(i), value);
+  }
+
+  public boolean getBoolean(long i) {
+    return this.chunk(i).get(this.offset(i)) != 0;
+  }
+
+  public void putBoolean(long i, boolean value) {
+    this.chunk(i).put(this.offset(i), (byte) (value ? 1 : 0));
+  }
+
+  /**
+   * @brief Set every value to zero (false).
+   */
+  public void clear() {
+    byte[] zeros = new byte[1 << 16];
+    for (ByteBuffer chunk : this.chunks) {
+      for (int pos = 0; pos < chunk.capacity(); pos += zeros.length) {
+        chunk.position(pos);
+        chunk.put(zeros, 0, Math.min(zeros.length, chunk.capacity() - pos));
+      }
+      chunk.clear();
+    }
+  }
+}
@@ -0,0 +1,34 @@
+/**
+ * This file copyright (c) 2015-2016, Jing Fan, Adalbert Gerald Soosai Raj, and Jignesh M. Patel
+ *
+ * See the file CREDITS.txt in the root directory for details.
+ **/
+
+/**
+ * @brief An engine that can execute a compiled Grail program, used by
+ * GrailBench to compare execution paths on the same graphs.
+ */
+public interface ExecutionBackend {
+
+  /**
+   * @brief Get the name of the backend, used in the benchmark results.
+   * @return The name.
+   */
+  String getName();
+
+  /**
+   * @brief Load the graph, it is called once before the programs are run on
+   * the graph.
+   * @param edgeFile The edge-list file of the graph, see
+   * Graph.EdgeListReader for the format.
+   * @param weighted Whether the edges have weights.
+   */
+  void prepare(String edgeFile, boolean weighted) throws Exception;
+
+  /**
+   * @brief Run a compiled program on the loaded graph.
+   * @param grail The compiled program.
+   * @return The time of every superstep, in nanoseconds.
+   */
+  long[] run(Grail grail) throws Exception;
+}
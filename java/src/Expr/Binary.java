@@ -0,0 +1,55 @@
+/**
+ * This file copyright (c) 2015-2016, Jing Fan, Adalbert Gerald Soosai Raj, and Jignesh M. Patel
+ *
+ * See the file CREDITS.txt in the root directory for details.
+ **/
+
+package Expr;
+
+/**
+ * @brief A binary operation. The operators are + - * / %, the comparisons
+ * < <= > >= == != and the logical AND and OR.
+ */
+public class Binary extends Expr {
+  private String op;
+  private Expr lhs;
+  private Expr rhs;
+
+  /**
+   * @brief Constructor.
+   * @param op The operator, "=" and "<>" are normalized to "==" and "!=".
+   * @param lhs The left operand.
+   * @param rhs The right operand.
+   */
+  public Binary(String op, Expr lhs, Expr rhs) {
+    this.op = op.equals("=") ? "==" : (op.equals("<>") ? "!=" : op);
+    this.lhs = lhs;
+    this.rhs = rhs;
+  }
+
+  public String getOp() {
+    return this.op;
+  }
+
+  public Expr getLhs() {
+    return this.lhs;
+  }
+
+  public Expr getRhs() {
+    return this.rhs;
+  }
+
+  /**
+   * @brief Whether the operation returns a boolean.
+   */
+  public boolean isPredicate() {
+    return this.op.equals("AND") || this.op.equals("OR")
+           || this.op.equals("<") || this.op.equals("<=")
+           || this.op.equals(">") || this.op.equals(">=")
+           || this.op.equals("==") || this.op.equals("!=");
+  }
+
+  public String toString() {
+    return "(" + this.lhs + " " + this.op + " " + this.rhs + ")";
+  }
+}
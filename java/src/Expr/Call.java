@@ -0,0 +1,46 @@
+/**
+ * This file copyright (c) 2015-2016, Jing Fan, Adalbert Gerald Soosai Raj, and Jignesh M. Patel
+ *
+ * See the file CREDITS.txt in the root directory for details.
+ **/
+
+package Expr;
+
+import java.util.ArrayList;
+
+/**
+ * @brief A function call, either a Grail builtin (getVal(),
+ * getAggregationVal()) or an aggregation in CombineMessage (e.g.
+ * SUM(message)).
+ */
+public class Call extends Expr {
+  private String name;
+  private ArrayList<Expr> args;
+
+  /**
+   * @brief Constructor.
+   * @param name The function name.
+   * @param args The arguments.
+   */
+  public Call(String name, ArrayList<Expr> args) {
+    this.name = name;
+    this.args = args;
+  }
+
+  public String getName() {
+    return this.name;
+  }
+
+  public ArrayList<Expr> getArgs() {
+    return this.args;
+  }
+
+  public String toString() {
+    StringBuilder sb = new StringBuilder(this.name + "(");
+    for (int i = 0; i < this.args.size(); ++i) {
+      if (i > 0) sb.append(", ");
+      sb.append(this.args.get(i));
+    }
+    return sb.append(")").toString();
+  }
+}
@@ -0,0 +1,20 @@
+/**
+ * This file copyright (c) 2015-2016, Jing Fan, Adalbert Gerald Soosai Raj, and Jignesh M. Patel
+ *
+ * See the file CREDITS.txt in the root directory for details.
+ **/
+
+package Expr;
+
+/**
+ * @brief A node of the expression tree of a Grail program, parsed by
+ * ExprParser from expressions such as "getAggregationVal() + edge.weight".
+ */
+public abstract class Expr {
+
+  /**
+   * @brief Print the expression back in Grail syntax, with parentheses
+   * around every operation.
+   */
+  public abstract String toString();
+}
@@ -0,0 +1,288 @@
+/**
+ * This file copyright (c) 2015-2016, Jing Fan, Adalbert Gerald Soosai Raj, and Jignesh M. Patel
+ *
+ * See the file CREDITS.txt in the root directory for details.
+ **/
+
+package Expr;
+
+import java.util.ArrayList;
+import java.util.Stack;
+
+/**
+ * @brief A recursive descent parser for the expressions and the
+ * UpdateAndSend statements of Grail programs. The precedence, from low to
+ * high, is OR, AND, NOT, comparisons, + -, * / %, unary -.
+ */
+public class ExprParser {
+  private ArrayList<String> tokens = new ArrayList<String>();
+  private int pos = 0;
+  private String text;
+
+  private ExprParser(String text) {
+    this.text = text;
+    this.tokenize();
+  }
+
+  /**
+   * @brief Parse an expression.
+   * @param text The expression.
+   * @return The expression tree.
+   */
+  public static Expr parse(String text) {
+    ExprParser parser = new ExprParser(text);
+    Expr expr = parser.parseOr();
+    if (parser.pos != parser.tokens.size()) {
+      throw parser.error("unexpected " + parser.tokens.get(parser.pos));
+    }
+    return expr;
+  }
+
+  /**
+   * @brief Parse the UpdateAndSend section, one statement per line.
+   * @param text The section.
+   * @return The statements.
+   */
+  public static ArrayList<Stmt> parseStatements(String text) {
+    ArrayList<Stmt> stmts = new ArrayList<Stmt>();
+    Stack<ArrayList<Stmt>> blocks = new Stack<ArrayList<Stmt>>();
+    ArrayList<Stmt> block = stmts;
+    for (String line : text.split("\n")) {
+      line = line.trim();
+      if (line.isEmpty()) continue;
+      if (line.startsWith("}")) {
+        if (blocks.isEmpty()) {
+          throw new IllegalArgumentException("Unmatched } in: " + line);
+        }
+        block = blocks.pop();
+      } else if (line.startsWith("if")) {
+        Stmt.If stmt = new Stmt.If(parse(inParens(line)));
+        block.add(stmt);
+        blocks.push(block);
+        block = stmt.body;
+      } else if (line.startsWith("setVal")) {
+        ArrayList<String> args = splitArgs(inParens(line));
+        if (args.size() != 1) {
+          throw new IllegalArgumentException("setVal of a column is not supported: " + line);
+        }
+        block.add(new Stmt.SetVal(parse(args.get(0))));
+      } else if (line.startsWith("send")) {
+        ArrayList<String> args = splitArgs(inParens(line));
+        if (args.size() < 2 || args.size() > 3) {
+          throw new IllegalArgumentException("Bad send: " + line);
+        }
+        block.add(new Stmt.Send(args.get(0).trim(),
+                                parse(args.get(1)),
+                                args.size() > 2 ? parse(args.get(2)) : null));
+      } else if (line.contains("=")) {
+        int eq = line.indexOf('=');
+        block.add(new Stmt.Assign(line.substring(0, eq).trim(),
+                                  parse(line.substring(eq + 1))));
+      } else {
+        throw new IllegalArgumentException("Unknown statement: " + line);
+      }
+    }
+    if (!blocks.isEmpty()) {
+      throw new IllegalArgumentException("Missing } in UpdateAndSend");
+    }
+    return stmts;
+  }
+
+  /**
+   * @brief Get the text between the first '(' and the last ')' of a line.
+   */
+  private static String inParens(String line) {
+    int open = line.indexOf('(');
+    int close = line.lastIndexOf(')');
+    if (open < 0 || close < open) {
+      throw new IllegalArgumentException("Missing parentheses in: " + line);
+    }
+    return line.substring(open + 1, close);
+  }
+
+  /**
+   * @brief Split the arguments of a call on the top level commas.
+   */
+  private static ArrayList<String> splitArgs(String text) {
+    ArrayList<String> args = new ArrayList<String>();
+    int depth = 0;
+    int start = 0;
+    for (int i = 0; i < text.length(); ++i) {
+      char c = text.charAt(i);
+      if (c == '(') ++depth;
+      if (c == ')') --depth;
+      if (c == ',' && depth == 0) {
+        args.add(text.substring(start, i));
+        start = i + 1;
+      }
+    }
+    args.add(text.substring(start));
+    return args;
+  }
+
+  private IllegalArgumentException error(String message) {
+    return new IllegalArgumentException(message + " in expression: " + this.text);
+  }
+
+  private void tokenize() {
+    int i = 0;
+    while (i < this.text.length()) {
+      char c = this.text.charAt(i);
+      if (Character.isWhitespace(c)) {
+        ++i;
+      } else if (Character.isDigit(c)
+                 || (c == '.' && i + 1 < this.text.length()
+                     && Character.isDigit(this.text.charAt(i + 1)))) {
+        int start = i;
+        while (i < this.text.length()
+               && (Character.isDigit(this.text.charAt(i))
+                   || this.text.charAt(i) == '.'
+                   || this.text.charAt(i) == 'E' || this.text.charAt(i) == 'e'
+                   || ((this.text.charAt(i) == '+' || this.text.charAt(i) == '-')
+                       && (this.text.charAt(i - 1) == 'E'
+                           || this.text.charAt(i - 1) == 'e')))) {
+          ++i;
+        }
+        this.tokens.add(this.text.substring(start, i));
+      } else if (Character.isLetter(c) || c == '_') {
+        int start = i;
+        while (i < this.text.length()
+               && (Character.isLetterOrDigit(this.text.charAt(i))
+                   || this.text.charAt(i) == '_')) {
+          ++i;
+        }
+        this.tokens.add(this.text.substring(start, i));
+      } else {
+        String two = i + 1 < this.text.length() ? this.text.substring(i, i + 2) : "";
+        if (two.equals("<=") || two.equals(">=") || two.equals("==")
+            || two.equals("!=") || two.equals("<>")) {
+          this.tokens.add(two);
+          i += 2;
+        } else if ("+-*/%<>=(),.".indexOf(c) >= 0) {
+          this.tokens.add(String.valueOf(c));
+          ++i;
+        } else {
+          throw this.error("unexpected character '" + c + "'");
+        }
+      }
+    }
+  }
+
+  private String peek() {
+    return this.pos < this.tokens.size() ? this.tokens.get(this.pos) : null;
+  }
+
+  private boolean accept(String token) {
+    if (token.equalsIgnoreCase(this.peek())) {
+      ++this.pos;
+      return true;
+    }
+    return false;
+  }
+
+  private void expect(String token) {
+    if (!this.accept(token)) {
+      throw this.error("expected " + token);
+    }
+  }
+
+  private Expr parseOr() {
+    Expr expr = this.parseAnd();
+    while (this.accept("OR")) {
+      expr = new Binary("OR", expr, this.parseAnd());
+    }
+    return expr;
+  }
+
+  private Expr parseAnd() {
+    Expr expr = this.parseNot();
+    while (this.accept("AND")) {
+      expr = new Binary("AND", expr, this.parseNot());
+    }
+    return expr;
+  }
+
+  private Expr parseNot() {
+    if (this.accept("NOT")) {
+      return new Unary("NOT", this.parseNot());
+    }
+    return this.parseComparison();
+  }
+
+  private Expr parseComparison() {
+    Expr expr = this.parseAdditive();
+    String op = this.peek();
+    if (op != null && (op.equals("<") || op.equals("<=") || op.equals(">")
+                       || op.equals(">=") || op.equals("==") || op.equals("=")
+                       || op.equals("!=") || op.equals("<>"))) {
+      ++this.pos;
+      expr = new Binary(op, expr, this.parseAdditive());
+    }
+    return expr;
+  }
+
+  private Expr parseAdditive() {
+    Expr expr = this.parseMultiplicative();
+    while ("+".equals(this.peek()) || "-".equals(this.peek())) {
+      String op = this.tokens.get(this.pos++);
+      expr = new Binary(op, expr, this.parseMultiplicative());
+    }
+    return expr;
+  }
+
+  private Expr parseMultiplicative() {
+    Expr expr = this.parseUnary();
+    while ("*".equals(this.peek()) || "/".equals(this.peek())
+           || "%".equals(this.peek())) {
+      String op = this.tokens.get(this.pos++);
+      expr = new Binary(op, expr, this.parseUnary());
+    }
+    return expr;
+  }
+
+  private Expr parseUnary() {
+    if (this.accept("-")) {
+      return new Unary("-", this.parseUnary());
+    }
+    return this.parsePrimary();
+  }
+
+  private Expr parsePrimary() {
+    String token = this.peek();
+    if (token == null) {
+      throw this.error("unexpected end");
+    }
+    if (this.accept("(")) {
+      Expr expr = this.parseOr();
+      this.expect(")");
+      return expr;
+    }
+    ++this.pos;
+    if (Character.isDigit(token.charAt(0)) || token.charAt(0) == '.'
+        || token.startsWith("INT_") || token.startsWith("DBL_")) {
+      return new Literal(token);
+    }
+    if (!Character.isLetter(token.charAt(0)) && token.charAt(0) != '_') {
+      throw this.error("unexpected " + token);
+    }
+    if (this.accept("(")) {
+      ArrayList<Expr> args = new ArrayList<Expr>();
+      if (!this.accept(")")) {
+        do {
+          args.add(this.parseOr());
+        } while (this.accept(","));
+        this.expect(")");
+      }
+      return new Call(token, args);
+    }
+    if (this.accept(".")) {
+      String column = this.peek();
+      if (column == null) {
+        throw this.error("expected a column after " + token + ".");
+      }
+      ++this.pos;
+      return new Ref(token, column);
+    }
+    return new Ref(null, token);
+  }
+}
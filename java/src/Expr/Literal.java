@@ -0,0 +1,38 @@
+/**
+ * This file copyright (c) 2015-2016, Jing Fan, Adalbert Gerald Soosai Raj, and Jignesh M. Patel
+ *
+ * See the file CREDITS.txt in the root directory for details.
+ **/
+
+package Expr;
+
+/**
+ * @brief A number, or one of the constants INT_MAX, INT_MIN, DBL_MAX and
+ * DBL_MIN.
+ */
+public class Literal extends Expr {
+  private String text;
+
+  /**
+   * @brief Constructor.
+   * @param text The literal as written in the program.
+   */
+  public Literal(String text) {
+    this.text = text;
+  }
+
+  public String getText() {
+    return this.text;
+  }
+
+  /**
+   * @brief Whether the literal is an integer.
+   */
+  public boolean isInteger() {
+    return this.text.matches("-?\\d+") || this.text.startsWith("INT_");
+  }
+
+  public String toString() {
+    return this.text;
+  }
+}
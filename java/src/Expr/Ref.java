@@ -0,0 +1,39 @@
+/**
+ * This file copyright (c) 2015-2016, Jing Fan, Adalbert Gerald Soosai Raj, and Jignesh M. Patel
+ *
+ * See the file CREDITS.txt in the root directory for details.
+ **/
+
+package Expr;
+
+/**
+ * @brief A reference to a column (table.column) or to a name, which is a
+ * variable, a table (e.g. message) or a vertex attribute (id).
+ */
+public class Ref extends Expr {
+  // The table, or null for a plain name.
+  private String table;
+  private String name;
+
+  /**
+   * @brief Constructor.
+   * @param table The table, or null.
+   * @param name The column or the name.
+   */
+  public Ref(String table, String name) {
+    this.table = table;
+    this.name = name;
+  }
+
+  public String getTable() {
+    return this.table;
+  }
+
+  public String getName() {
+    return this.name;
+  }
+
+  public String toString() {
+    return this.table == null ? this.name : this.table + "." + this.name;
+  }
+}
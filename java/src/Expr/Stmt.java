@@ -0,0 +1,68 @@
+/**
+ * This file copyright (c) 2015-2016, Jing Fan, Adalbert Gerald Soosai Raj, and Jignesh M. Patel
+ *
+ * See the file CREDITS.txt in the root directory for details.
+ **/
+
+package Expr;
+
+import java.util.ArrayList;
+
+/**
+ * @brief A statement of the UpdateAndSend section.
+ */
+public abstract class Stmt {
+
+  /**
+   * @brief var = expression
+   */
+  public static class Assign extends Stmt {
+    public final String name;
+    public final Expr value;
+
+    public Assign(String name, Expr value) {
+      this.name = name;
+      this.value = value;
+    }
+  }
+
+  /**
+   * @brief if (condition) { body }
+   */
+  public static class If extends Stmt {
+    public final Expr cond;
+    public final ArrayList<Stmt> body = new ArrayList<Stmt>();
+
+    public If(Expr cond) {
+      this.cond = cond;
+    }
+  }
+
+  /**
+   * @brief setVal(value)
+   */
+  public static class SetVal extends Stmt {
+    public final Expr value;
+
+    public SetVal(Expr value) {
+      this.value = value;
+    }
+  }
+
+  /**
+   * @brief send(direction, content[, condition])
+   */
+  public static class Send extends Stmt {
+    // all, in, out or no.
+    public final String dir;
+    public final Expr content;
+    // The condition, or null.
+    public final Expr cond;
+
+    public Send(String dir, Expr content, Expr cond) {
+      this.dir = dir;
+      this.content = content;
+      this.cond = cond;
+    }
+  }
+}
@@ -0,0 +1,37 @@
+/**
+ * This file copyright (c) 2015-2016, Jing Fan, Adalbert Gerald Soosai Raj, and Jignesh M. Patel
+ *
+ * See the file CREDITS.txt in the root directory for details.
+ **/
+
+package Expr;
+
+/**
+ * @brief A unary operation, "-" or "NOT".
+ */
+public class Unary extends Expr {
+  private String op;
+  private Expr operand;
+
+  /**
+   * @brief Constructor.
+   * @param op The operator.
+   * @param operand The operand.
+   */
+  public Unary(String op, Expr operand) {
+    this.op = op;
+    this.operand = operand;
+  }
+
+  public String getOp() {
+    return this.op;
+  }
+
+  public Expr getOperand() {
+    return this.operand;
+  }
+
+  public String toString() {
+    return "(" + this.op + (this.op.equals("-") ? "" : " ") + this.operand + ")";
+  }
+}
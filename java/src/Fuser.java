@@ -0,0 +1,436 @@
+/**
+ * This file copyright (c) 2015-2016, Jing Fan, Adalbert Gerald Soosai Raj, and Jignesh M. Patel
+ *
+ * See the file CREDITS.txt in the root directory for details.
+ **/
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import Block.Block;
+import Block.DropTableBlock;
+
+/**
+ * @brief Fuses several Grail programs over the same graph into one script.
+ * Every program keeps its own state tables, prefixed by the program name
+ * (e.g. pagerank_next), and its own termination flag. The messages of all
+ * the programs are computed by one statement per superstep, which joins
+ * edge once per direction and produces one value column per program:
+ *
+ * SELECT id, MIN(s.val_0) AS val_0, SUM(s.val_1) AS val_1
+ * INTO fused_message
+ * FROM (
+ *   SELECT edge.dest AS id, CASE WHEN ... END AS val_0, ... AS val_1
+ *   FROM edge
+ *   LEFT OUTER JOIN wcc_toupdate ON wcc_toupdate.id = edge.src AND ...
+ *   LEFT OUTER JOIN pagerank_next ON pagerank_next.id = edge.src AND ...
+ *   WHERE wcc_toupdate.id IS NOT NULL OR pagerank_next.id IS NOT NULL
+ *   union all
+ *   ...
+ * )s
+ * GROUP BY id
+ *
+ * The programs are translated without the optimizer, as its rewrites are
+ * replaced by the fused superstep. The options implemented by the optimizer
+ * or by their own supersteps are rejected in fused scripts: Checkpoint,
+ * Sources, Aggregate, Freeze, Partitions, Accumulation DELTA, Layout
+ * COLUMNSTORE and ComponentPlan POINTER_JUMPING.
+ */
+public class Fuser {
+  // The tables shared by all the programs.
+  private static final HashSet<String> SHARED_TABLES = new HashSet<String>();
+  // The stages that create or drop shared tables and indexes.
+  private static final HashSet<String> SHARED_STAGES = new HashSet<String>();
+  static {
+    Collections.addAll(SHARED_TABLES, "vertex", "edge", "in_cnts", "out_cnts");
+    Collections.addAll(SHARED_STAGES, "genCnt", "initdropoutcnts",
+                       "initdropsrcindex", "initdropdestindex");
+  }
+  private static final Pattern TARGET = Pattern.compile(
+      "(?i)\\b(?:INTO|CREATE\\s+TABLE)\\s+(\\w+)");
+  private static final Pattern TABLE_REF = Pattern.compile("\\b(\\w+)\\.\\w+");
+  // The table holding the messages of all the programs.
+  private static final String FUSED_TABLE = "fused_message";
+
+  /**
+   * @brief A program to fuse.
+   */
+  private static class Program {
+    String name;
+    HashMap<String, String> options;
+    HashMap<String, String> convertedOptions;
+    ArrayList<Block> blocks;
+    // The tables of the program, longest first.
+    ArrayList<String> tables = new ArrayList<String>();
+  }
+
+  private ArrayList<String> filenames;
+  private ArrayList<Program> programs = new ArrayList<Program>();
+  private ArrayList<Block> blocks = new ArrayList<Block>();
+
+  /**
+   * @brief Constructor.
+   * @param filenames The Grail programs.
+   */
+  public Fuser(ArrayList<String> filenames) {
+    this.filenames = filenames;
+  }
+
+  /**
+   * @brief Return SQL blocks.
+   * @return SQL blocks.
+   */
+  public ArrayList<Block> getBlocks() {
+    return this.blocks;
+  }
+
+  /**
+   * @brief Prefix the tables of a program in a statement.
+   * @param program The program.
+   * @param sql The statement.
+   * @return The statement using the tables of the program.
+   */
+  private static String rename(Program program, String sql) {
+    for (String table : program.tables) {
+      sql = sql.replaceAll("\\b" + table + "\\b", program.name + "_" + table);
+    }
+    return sql;
+  }
+
+  /**
+   * @brief Create a block from generated SQL.
+   */
+  private static Block sqlBlock(String stage, int indent, String sql) {
+    Block block = new Block(stage, indent);
+    block.concat(sql);
+    return block;
+  }
+
+  /**
+   * @brief Get an option value in upper case, or null.
+   */
+  private static String upper(String value) {
+    return value == null ? null : value.trim().toUpperCase();
+  }
+
+  /**
+   * @brief Translate the programs.
+   */
+  private void translate() {
+    HashSet<String> names = new HashSet<String>();
+    for (String filename : this.filenames) {
+      Program program = new Program();
+      program.options = Parser.parse(filename);
+      if (program.options.get("Checkpoint") != null
+          || program.options.get("Sources") != null
+          || program.options.get("Aggregate") != null
+          || program.options.get("Freeze") != null
+          || program.options.get("Partitions") != null
+          || "DELTA".equals(upper(program.options.get("Accumulation")))
+          || "COLUMNSTORE".equals(upper(program.options.get("Layout")))
+          || "POINTER_JUMPING".equals(upper(program.options.get("ComponentPlan")))) {
+        throw new IllegalArgumentException(
+            "Checkpoint, Sources, Aggregate, Freeze, Partitions, Accumulation"
+            + " DELTA, Layout COLUMNSTORE and ComponentPlan POINTER_JUMPING"
+            + " can not be used in fused programs: " + filename);
+      }
+      Translator translator = new Translator(program.options);
+      translator.translate();
+      program.blocks = translator.getBlocks();
+      program.convertedOptions = translator.getConvertedOptions();
+
+      String name = new File(filename).getName().replaceAll("\\.grail$", "")
+                                                 .replaceAll("\\W", "_");
+      while (names.contains(name)) {
+        name += "_" + this.programs.size();
+      }
+      names.add(name);
+      program.name = name;
+
+      HashSet<String> tables = new HashSet<String>();
+      Collections.addAll(tables, "next", "cur", "message", "toupdate");
+      for (Block block : program.blocks) {
+        Matcher m = TARGET.matcher(block.getSql());
+        while (m.find()) {
+          tables.add(m.group(1));
+        }
+      }
+      tables.removeAll(SHARED_TABLES);
+      program.tables.addAll(tables);
+      // Longer names first, so a name is not replaced inside another one.
+      Collections.sort(program.tables, new Comparator<String>() {
+          public int compare(String a, String b) {
+            return b.length() - a.length();
+          }
+        });
+      this.programs.add(program);
+    }
+  }
+
+  /**
+   * @brief Whether a program sends messages in a direction.
+   * @param program The program.
+   * @param dir "out" or "in".
+   */
+  private static boolean sends(Program program, String dir) {
+    String msgDir = program.convertedOptions.get("msgDir");
+    return msgDir != null && (msgDir.equals(dir) || msgDir.equals("all"));
+  }
+
+  /**
+   * @brief Get the table whose vertices send the messages of a program.
+   */
+  private static String getSender(Program program) {
+    HashMap<String, String> opts = program.convertedOptions;
+    // When every vertex updates its value to the aggregation, every vertex
+    // sends, as in Optimizer.allSender.
+    if ("all".equals(opts.get("isSender"))
+        && "cur.val".equals(opts.get("setValNewVal"))) {
+      return "next";
+    }
+    return opts.get("sendContext");
+  }
+
+  /**
+   * @brief Generate one direction of the fused send.
+   * @param dir "out" (receivers are edge.dest) or "in".
+   * @return The SELECT statement.
+   */
+  private String genFusedDirection(String dir) {
+    String receiver = dir.equals("out") ? "dest" : "src";
+    String key = dir.equals("out") ? "src" : "dest";
+    ArrayList<String> cols = new ArrayList<String>();
+    StringBuilder from = new StringBuilder("FROM edge");
+    ArrayList<String> preds = new ArrayList<String>();
+    for (int i = 0; i < this.programs.size(); ++i) {
+      Program program = this.programs.get(i);
+      String msgType = program.options.get("MessageValType");
+      if (program.convertedOptions.get("msgDir") == null
+          || program.convertedOptions.get("msgDir").equals("no")) {
+        continue;
+      }
+      if (!sends(program, dir)) {
+        cols.add("CAST(NULL AS " + msgType + ") AS val_" + i);
+        continue;
+      }
+      String sender = getSender(program);
+      String content = program.convertedOptions.get("contentStr");
+      if (sender.equals("next")) {
+        content = content.replaceAll("\\bcur\\.", "next.");
+      }
+      String senderTb = rename(program, sender);
+      content = rename(program, content);
+      from.append("\nLEFT OUTER JOIN " + senderTb + " ON " + senderTb
+                  + ".id = edge." + key + " AND @flag_" + program.name + " != 0");
+      // The other tables used by the message, joined on the sender.
+      HashSet<String> joined = new HashSet<String>();
+      Matcher m = TABLE_REF.matcher(content);
+      while (m.find()) {
+        String table = m.group(1);
+        if (table.equals("edge") || table.equals(senderTb)
+            || !joined.add(table)) {
+          continue;
+        }
+        String alias = table;
+        if (table.equals("in_cnts") || table.equals("out_cnts")) {
+          alias = program.name + "_" + table;
+          from.append("\nLEFT OUTER JOIN " + table + " AS " + alias);
+        } else {
+          from.append("\nLEFT OUTER JOIN " + table);
+        }
+        from.append(" ON " + alias + ".id = " + senderTb + ".id");
+      }
+      content = content.replaceAll("\\b(in_cnts|out_cnts)\\.",
+                                   program.name + "_$1.");
+      cols.add("CASE WHEN " + senderTb + ".id IS NOT NULL THEN CAST("
+               + content + " AS " + msgType + ") END AS val_" + i);
+      preds.add(senderTb + ".id IS NOT NULL");
+    }
+    StringBuilder sql = new StringBuilder();
+    sql.append("SELECT edge." + receiver + " AS id, " + String.join(", ", cols) + "\n");
+    sql.append(from + "\n");
+    sql.append("WHERE " + String.join(" OR ", preds) + "\n");
+    return sql.toString();
+  }
+
+  /**
+   * @brief Generate the statement computing the messages of all the
+   * programs, with one join with edge per direction.
+   * @return The statement, or null if no program sends messages.
+   */
+  private String genFusedSend() {
+    ArrayList<String> cols = new ArrayList<String>();
+    for (int i = 0; i < this.programs.size(); ++i) {
+      Program program = this.programs.get(i);
+      String dir = program.convertedOptions.get("msgDir");
+      if (dir == null || dir.equals("no")) continue;
+      String agg = program.convertedOptions.get("aggFunc")
+                          .replace("message.val", "s.val_" + i);
+      // A vertex gets no message from a program without values, even if
+      // the aggregation (e.g. COUNT) returns one.
+      cols.add("CASE WHEN COUNT(s.val_" + i + ") > 0 THEN " + agg
+               + " END AS val_" + i);
+    }
+    if (cols.isEmpty()) return null;
+    ArrayList<String> branches = new ArrayList<String>();
+    for (String dir : new String[] {"out", "in"}) {
+      for (Program program : this.programs) {
+        if (sends(program, dir)) {
+          branches.add(this.genFusedDirection(dir));
+          break;
+        }
+      }
+    }
+    StringBuilder sql = new StringBuilder();
+    sql.append("SELECT id, " + String.join(", ", cols) + "\n");
+    sql.append("INTO " + FUSED_TABLE + "\n");
+    sql.append("FROM (\n");
+    sql.append(String.join("union all\n", branches));
+    sql.append(")s\n");
+    sql.append("GROUP BY id;\n");
+    return sql.toString();
+  }
+
+  /**
+   * @brief Fuse the programs.
+   */
+  public void run() {
+    this.translate();
+
+    // Initialization, the shared tables are created once.
+    HashSet<String> sharedSql = new HashSet<String>();
+    this.blocks.add(new DropTableBlock("initdropfused", 0, FUSED_TABLE));
+    for (Program program : this.programs) {
+      for (Block block : program.blocks) {
+        if (block.getStage().equals("beginWhile")) break;
+        if (SHARED_STAGES.contains(block.getStage())) {
+          if (sharedSql.add(block.getSql())) {
+            this.blocks.add(block);
+          }
+          continue;
+        }
+        this.blocks.add(sqlBlock(block.getStage(), block.getIndentLevel(),
+                                 rename(program, block.getSql())));
+      }
+    }
+    boolean out = false;
+    boolean in = false;
+    for (Program program : this.programs) {
+      out |= sends(program, "out");
+      in |= sends(program, "in");
+    }
+    if (out) {
+      this.blocks.add(new Block("createIdx", 0, "CREATE INDEX idx_src ON edge(src);"));
+    }
+    if (in) {
+      this.blocks.add(new Block("createIdx", 0, "CREATE INDEX idx_dest ON edge(dest);"));
+    }
+
+    // The first messages are combined before the loop, later ones are
+    // combined by the fused send.
+    for (Program program : this.programs) {
+      for (Block block : program.blocks) {
+        if (block.getStage().equals("combineMsg")
+            || block.getStage().equals("dropmessage")) {
+          this.blocks.add(sqlBlock(block.getStage(), 0,
+                                   rename(program, block.getSql())));
+        }
+      }
+    }
+
+    Block beginWhile = new Block("beginWhile", 0);
+    ArrayList<String> conds = new ArrayList<String>();
+    for (Program program : this.programs) {
+      String endStr = program.options.get("End");
+      String initVal = endStr.equals("NO_MESSAGE")
+          ? "-1"
+          : endStr.substring(endStr.indexOf('(') + 1, endStr.indexOf(')'))
+                  .split(",")[1].trim();
+      beginWhile.append("DECLARE @flag_" + program.name + " int");
+      beginWhile.append("SET @flag_" + program.name + " = " + initVal);
+      conds.add("@flag_" + program.name + " != 0");
+    }
+    beginWhile.append("WHILE " + String.join(" OR ", conds));
+    beginWhile.append("BEGIN");
+    this.blocks.add(beginWhile);
+
+    // Every running program updates its values.
+    for (Program program : this.programs) {
+      Block update = new Block("update_" + program.name, 1);
+      update.append("IF (@flag_" + program.name + " != 0)");
+      update.append("BEGIN");
+      boolean inLoop = false;
+      for (Block block : program.blocks) {
+        String stage = block.getStage();
+        if (stage.equals("beginWhile")) {
+          inLoop = true;
+          continue;
+        }
+        if (!inLoop) continue;
+        if (stage.equals("endWhile")) break;
+        if (stage.equals("genVar") || stage.equals("join")) {
+          // The tables of the last superstep are kept until now, as the
+          // fused send may still read them after the program stops.
+          Matcher m = TARGET.matcher(block.getSql());
+          if (m.find()) {
+            update.concat(rename(program, new DropTableBlock(
+                "drop", 1, m.group(1)).getSql()));
+          }
+          update.concat(rename(program, block.getSql()));
+        } else if (stage.equals("setVal")) {
+          update.concat(rename(program, block.getSql()));
+        }
+      }
+      update.append("END");
+      this.blocks.add(update);
+    }
+
+    // The messages of all the programs.
+    String fusedSend = this.genFusedSend();
+    if (fusedSend != null) {
+      Block send = new Block("fusedSend", 1);
+      for (String line : fusedSend.split("\n")) {
+        send.append(line);
+      }
+      this.blocks.add(send);
+    }
+
+    // Every running program takes its messages and checks termination.
+    for (int i = 0; i < this.programs.size(); ++i) {
+      Program program = this.programs.get(i);
+      String dir = program.convertedOptions.get("msgDir");
+      String cur = program.name + "_cur";
+      Block split = new Block("splitMsg_" + program.name, 1);
+      split.append("IF (@flag_" + program.name + " != 0)");
+      split.append("BEGIN");
+      split.concat(new DropTableBlock("dropcur", 1, cur).getSql());
+      if (fusedSend != null && dir != null && !dir.equals("no")) {
+        split.append("SELECT id, val_" + i + " AS val");
+        split.append("INTO " + cur);
+        split.append("FROM " + FUSED_TABLE);
+        split.append("WHERE val_" + i + " IS NOT NULL");
+      } else {
+        split.append("SELECT id, val INTO " + cur + " FROM " + program.name
+                     + "_next WHERE 1 = 0");
+      }
+      if (program.options.get("End").equals("NO_MESSAGE")) {
+        // Both branches create cur by the SELECT INTO just above.
+        split.append("SET @flag_" + program.name + " = @@ROWCOUNT");
+      } else {
+        split.append("SET @flag_" + program.name + " = @flag_" + program.name + " - 1");
+      }
+      split.append("END");
+      this.blocks.add(split);
+    }
+    if (fusedSend != null) {
+      this.blocks.add(new DropTableBlock("dropfused", 1, FUSED_TABLE));
+    }
+    this.blocks.add(new Block("endWhile", 0, "END"));
+  }
+}
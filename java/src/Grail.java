@@ -4,6 +4,7 @@
  * See the file CREDITS.txt in the root directory for details.
  **/
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 
@@ -44,12 +45,76 @@ import Block.Block;
  * // are no messages left) or (ITER, max_iteration_num) (Terminate when the
  * // iteration number reaches upper bound.)
  * End: NO_MESSAGE
+ * // (Optional) Global values of every superstep, computed over the vertices
+ * // that received messages once the messages are combined. getAggregationVal()
+ * // is the combined message and getVal() the value before the update. They
+ * // can end the iterations with UNTIL after the End condition, e.g.
+ * // End: (ITER, 50) UNTIL delta < 0.0001. The section takes one line.
+ * Aggregate: active = COUNT(*), delta = MAX(ABS(getAggregationVal() - getVal()))
+ * // (Optional) Warm start from the result table of a previous run. The
+ * // table should have the same (id, val) layout as next. Vertices missing
+ * // from it start with InitiateVal. Sends inside an if only seed messages
+ * // from the vertices whose value is no longer InitiateVal.
+ * WarmStart : prev_result
+ * // (Optional) Save a checkpoint every 5 supersteps. Run with -resume to
+ * // continue from the last checkpoint instead of starting over.
+ * Checkpoint : 5
+ * // (Optional) in_cnts and out_cnts are loaded together with the graph
+ * // (see Graph.GraphLoader), so they are not computed from edge.
+ * DegreeTables : PRELOADED
+ * // (Optional) Run the program from every source in the id column of the
+ * // table at once. next, message and cur are keyed by (source_id, id), the
+ * // vertex in InitialMessage is replaced by each source, and every
+ * // superstep joins edge once for all the sources.
+ * Sources : sssp_sources
+ * // (Optional) For min-label propagation programs such as wcc.grail, compute
+ * // the same labels by pointer jumping in O(log n) rounds instead of one
+ * // superstep per hop of the diameter. Same as running with -components.
+ * ComponentPlan : POINTER_JUMPING
+ * // (Optional) Hash partition the vertex tables on id and edge on the key
+ * // the messages are sent from into 64 partitions (SQL Server), so the joins
+ * // of a superstep run partition by partition. Same as -partitions 64.
+ * Partitions : 64
+ * // (Optional) With Partitions, place the vertices by a table (id, part)
+ * // written by Graph.GraphPartitioner instead of hashing the ids, so fewer
+ * // edges cross partitions.
+ * PartitionMap : vertex_part
+ * // (Optional) For programs where all the vertices send messages, such as
+ * // pagerank.grail, store edge and the vertex tables as columnstore (SQL
+ * // Server), so the full scans of every superstep run in batch mode. Same
+ * // as -columnstore.
+ * Layout : COLUMNSTORE
+ * // (Optional) For programs where all the vertices send messages combined
+ * // by SUM(message), such as pagerank.grail, a vertex whose value moved by
+ * // less than 0.0001 since it last sent stops sending. The vertices send
+ * // the change of their messages, so the sums keep the last message of the
+ * // frozen ones, and a vertex sends again once its value moves further.
+ * Freeze : 0.0001
+ * // (Optional) For programs that set their value to a * SUM(message) + b
+ * // and send messages linear in it, such as pagerank.grail, send only the
+ * // changes of the values, and only the changes above DeltaTolerance / |V|.
+ * // The loop ends when no change is above it. Same as -delta.
+ * Accumulation : DELTA
+ * DeltaTolerance : 0.0001
  */
 public class Grail {
   // Grail program file path.
   private String filename = null;
   // SQL blocks.
   ArrayList<Block> blocks = null;
+  // Whether to resume from the last checkpoint.
+  private boolean resume = false;
+  // The plan of min-label programs, or null for the one in the program.
+  private String componentPlan = null;
+  // The number of partitions, or null for the one in the program.
+  private String partitions = null;
+  // The layout of the tables, or null for the one in the program.
+  private String layout = null;
+  // The accumulation of the values, or null for the one in the program.
+  private String accumulation = null;
+  // The options of the program, and the options converted by the translator.
+  private HashMap<String, String> options = null;
+  private HashMap<String, String> convertedOptions = null;
 
   /**
    * @brief Constructor. It will parse the configuration file and record
@@ -60,6 +125,52 @@ public class Grail {
     this.filename = filename;
   }
 
+  /**
+   * @brief Constructor.
+   * @param filename The path to configuration file.
+   * @param resume Whether the generated SQL should resume from the last
+   * checkpoint.
+   */
+  public Grail (String filename, boolean resume) {
+    this.filename = filename;
+    this.resume = resume;
+  }
+
+  /**
+   * @brief Set the plan of min-label propagation programs, overriding
+   * ComponentPlan of the program.
+   * @param componentPlan LABEL_PROPAGATION or POINTER_JUMPING.
+   */
+  public void setComponentPlan(String componentPlan) {
+    this.componentPlan = componentPlan;
+  }
+
+  /**
+   * @brief Set the number of partitions of the tables, overriding
+   * Partitions of the program.
+   * @param partitions The number of partitions.
+   */
+  public void setPartitions(String partitions) {
+    this.partitions = partitions;
+  }
+
+  /**
+   * @brief Set how the values are accumulated, overriding Accumulation of
+   * the program.
+   * @param accumulation VALUE or DELTA.
+   */
+  public void setAccumulation(String accumulation) {
+    this.accumulation = accumulation;
+  }
+
+  /**
+   * @brief Set the layout of the tables, overriding Layout of the program.
+   * @param layout ROWSTORE or COLUMNSTORE.
+   */
+  public void setLayout(String layout) {
+    this.layout = layout;
+  }
+
   /**
    * @brief Return SQL blocks.
    * @return SQL blocks.
@@ -68,16 +179,56 @@ public class Grail {
     return this.blocks;
   }
 
+  /**
+   * @brief Return the options of the program, it should be called after
+   * run().
+   * @return The options, see Parser.parse.
+   */
+  public HashMap<String, String> getOptions() {
+    return this.options;
+  }
+
+  /**
+   * @brief Estimate the rows read and written by the blocks in every
+   * superstep, it should be called after run().
+   * @param stats The statistics of the graph.
+   * @return The estimator holding the estimate.
+   */
+  public CostEstimator estimate(GraphStats stats) {
+    CostEstimator estimator = new CostEstimator(this.blocks,
+                                                this.options,
+                                                this.convertedOptions,
+                                                stats);
+    estimator.estimate();
+    return estimator;
+  }
+
   /**
    * @brief Run the Grail. It will first parse the input file of user, then
    * translate it into basic SQL blocks. After translation, possible
    * optimization will be added by modifying the basic SQL blocks.
    */
   public void run() {
-    HashMap<String, String> options = Parser.parse(filename);
-    Translator translator = new Translator(options);
+    this.options = Parser.parse(filename);
+    if (this.resume) {
+      this.options.put("Resume", "y");
+    }
+    if (this.componentPlan != null) {
+      this.options.put("ComponentPlan", this.componentPlan);
+    }
+    if (this.partitions != null) {
+      this.options.put("Partitions", this.partitions);
+    }
+    if (this.layout != null) {
+      this.options.put("Layout", this.layout);
+    }
+    if (this.accumulation != null) {
+      this.options.put("Accumulation", this.accumulation);
+    }
+    Translator translator = new Translator(this.options);
     translator.translate();
     this.blocks = translator.getBlocks();
+    this.convertedOptions = translator.getConvertedOptions();
     Optimizer op = new Optimizer(translator.getConvertedOptions(),
                                  this.blocks,
                                  translator.getSenders());
@@ -87,17 +238,90 @@ public class Grail {
   /**
    * @brief Main function.
    * @param args The argument number can be either 0 (use config.grail as
-   * default) or 1 (input file name).
+   * default) or 1 (input file name). The input file name can be preceded by
+   * -resume to resume from the last checkpoint, by -components to compute
+   * the labels of min-label programs by pointer jumping, by -partitions <K>
+   * to hash partition the tables into K partitions, by -columnstore to store
+   * the tables of all-sender programs as columnstore, by -delta to send
+   * only the changes of the values of sum programs such as PageRank, and by
+   * -explain <stats file>
+   * or -explain-graph <edge-list file> to print the estimated cost of every
+   * superstep (see GraphStats) instead of the SQL. With more than one input
+   * file, the programs are fused into one script (see Fuser), which takes
+   * none of the options.
    */
-  public static void main(String[] args) {
+  public static void main(String[] args) throws IOException {
     Grail grail = null;
-    assert(args.length <= 1);
-    if (args.length == 1) {
-      grail = new Grail(args[0]);
+    boolean resume = false;
+    String componentPlan = null;
+    String partitions = null;
+    String layout = null;
+    String accumulation = null;
+    GraphStats stats = null;
+    int argIdx = 0;
+    while (argIdx < args.length && args[argIdx].startsWith("-")) {
+      switch (args[argIdx]) {
+        case "-resume":
+          resume = true;
+          break;
+        case "-components":
+          componentPlan = "POINTER_JUMPING";
+          break;
+        case "-partitions":
+          partitions = args[++argIdx];
+          break;
+        case "-columnstore":
+          layout = "COLUMNSTORE";
+          break;
+        case "-delta":
+          accumulation = "DELTA";
+          break;
+        case "-explain":
+          stats = GraphStats.parse(args[++argIdx]);
+          break;
+        case "-explain-graph":
+          stats = GraphStats.fromEdgeList(args[++argIdx], 0.5);
+          break;
+        default:
+          System.err.println("Unknown option " + args[argIdx]);
+          System.exit(1);
+      }
+      ++argIdx;
+    }
+    if (args.length - argIdx > 1) {
+      // Several programs are fused into one script. The fused programs are
+      // not optimized and can not checkpoint, so the options would be lost.
+      if (resume || componentPlan != null || partitions != null
+          || layout != null || accumulation != null || stats != null) {
+        System.err.println("The options can not be used with more than one "
+                           + "input file");
+        System.exit(1);
+      }
+      ArrayList<String> filenames = new ArrayList<String>();
+      for (; argIdx < args.length; ++argIdx) {
+        filenames.add(args[argIdx]);
+      }
+      Fuser fuser = new Fuser(filenames);
+      fuser.run();
+      for (Block block : fuser.getBlocks()) {
+        block.print();
+      }
+      return;
+    }
+    if (args.length - argIdx == 1) {
+      grail = new Grail(args[argIdx], resume);
     } else {
-      grail = new Grail("config.grail");
+      grail = new Grail("config.grail", resume);
     }
+    grail.setComponentPlan(componentPlan);
+    grail.setPartitions(partitions);
+    grail.setLayout(layout);
+    grail.setAccumulation(accumulation);
     grail.run();
+    if (stats != null) {
+      grail.estimate(stats).print(System.out);
+      return;
+    }
     for (Block block : grail.getBlocks()) {
       block.print();
     }
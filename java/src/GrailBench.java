@@ -0,0 +1,336 @@
+/**
+ * This file copyright (c) 2015-2016, Jing Fan, Adalbert Gerald Soosai Raj, and Jignesh M. Patel
+ *
+ * See the file CREDITS.txt in the root directory for details.
+ **/
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+
+import Block.Block;
+import Graph.GraphGenerator;
+
+/**
+ * @brief Quick benchmarks of the compiler and the execution backends,
+ * written as a text table: the mean score of the measurement iterations,
+ * their standard deviation and the unit. This is not JMH and its output
+ * is not in the format of JMH: the timing loop runs in this JVM without
+ * forks or a Blackhole. Use the JMH module in ../jmh for numbers to
+ * compare.
+ *
+ * Compile benchmarks run every program of the analytics directory and a
+ * generated nested program. Execution benchmarks run them on every backend
+ * over -graph or a generated R-MAT graph, see the options below.
+ *
+ * Usage: java GrailBench [-analytics ../../analytics] [-depth 8] [-vars 32]
+ *                        [-warmup 3] [-iterations 5] [-time 1000]
+ *                        [-graph edges.txt | -rmat scale] [-weighted]
+ *                        [-jdbc url] [-jvm] [-jvm-generic]
+ *                        [-jvm-ooc dir] [-offheap] [-compressed]
+ *                        [-cluster n] [-cluster-port port]
+ *                        [-cluster-parts parts.txt]
+ *                        [-sources 1,2,3] [-out result.txt]
+ */
+public class GrailBench {
+  // The directory of the Grail programs.
+  private String analyticsDir = "../../analytics";
+  // The if-nesting depth and the number of variables of generated programs.
+  private int depth = 8;
+  private int vars = 32;
+  // Warmup and measurement iterations, and the time of an iteration in ms.
+  private int warmup = 3;
+  private int iterations = 5;
+  private long iterationTime = 1000;
+  // The graph for the execution benchmarks.
+  private String graph = null;
+  // The scale of the R-MAT graph generated when no graph is given.
+  private int rmatScale = 0;
+  private boolean weighted = false;
+  // The registered execution backends.
+  private ArrayList<ExecutionBackend> backends = new ArrayList<ExecutionBackend>();
+  // The results, formatted as text.
+  private ArrayList<String> results = new ArrayList<String>();
+
+  /**
+   * @brief Add an execution backend.
+   * @param backend The backend.
+   */
+  public void addBackend(ExecutionBackend backend) {
+    this.backends.add(backend);
+  }
+
+  /**
+   * @brief Generate a program with nested if statements. The first depth
+   * variables guard the nested ifs, and the innermost block updates the
+   * value and sends messages.
+   * @param depth The if-nesting depth.
+   * @param vars The number of variables, at least depth.
+   * @return The path of the program file.
+   */
+  static String genNestedProgram(int depth, int vars) throws IOException {
+    File file = File.createTempFile("nested_" + depth + "_" + vars, ".grail");
+    file.deleteOnExit();
+    FileWriter writer = new FileWriter(file);
+    writer.write("VertexValType : INT\n");
+    writer.write("MessageValType : INT\n");
+    writer.write("InitiateVal : INT_MAX\n");
+    writer.write("InitialMessage : (1,0)\n");
+    writer.write("CombineMessage: MIN(message)\n");
+    writer.write("UpdateAndSend:");
+    for (int i = 0; i < Math.max(depth, vars); ++i) {
+      writer.write("v" + i + "=getAggregationVal()<getVal()\n");
+    }
+    for (int i = 0; i < depth; ++i) {
+      writer.write("if (v" + i + ") {\n");
+    }
+    writer.write("setVal(getAggregationVal())\n");
+    writer.write("send(out, getAggregationVal() + edge.weight)\n");
+    for (int i = 0; i < depth; ++i) {
+      writer.write("}\n");
+    }
+    writer.write("End: NO_MESSAGE\n");
+    writer.close();
+    return file.getPath();
+  }
+
+  /**
+   * @brief Benchmark the compilation of a program.
+   * @param name The benchmark name.
+   * @param filename The program file.
+   */
+  private void benchCompile(String name, String filename) {
+    // Phases: parse, translate, optimize.
+    long[] phaseNanos = new long[3];
+    double[] scores = new double[this.iterations];
+    long ops = 0;
+    try {
+      for (int iter = 0; iter < this.warmup + this.iterations; ++iter) {
+        Arrays.fill(phaseNanos, 0);
+        ops = 0;
+        long start = System.nanoTime();
+        long deadline = start + this.iterationTime * 1000000L;
+        long now = start;
+        while (now < deadline) {
+          long t0 = now;
+          HashMap<String, String> options = Parser.parse(filename);
+          long t1 = System.nanoTime();
+          Translator translator = new Translator(options);
+          translator.translate();
+          long t2 = System.nanoTime();
+          ArrayList<Block> blocks = translator.getBlocks();
+          new Optimizer(translator.getConvertedOptions(),
+                        blocks,
+                        translator.getSenders()).run();
+          now = System.nanoTime();
+          phaseNanos[0] += t1 - t0;
+          phaseNanos[1] += t2 - t1;
+          phaseNanos[2] += now - t2;
+          ++ops;
+        }
+        if (iter >= this.warmup) {
+          scores[iter - this.warmup] = ops * 1e9 / (now - start);
+        }
+      }
+    } catch (RuntimeException e) {
+      System.err.println("Skip " + name + ": " + e);
+      return;
+    }
+    HashMap<String, Double> secondary = new HashMap<String, Double>();
+    secondary.put("parse", phaseNanos[0] / (double) ops);
+    secondary.put("translate", phaseNanos[1] / (double) ops);
+    secondary.put("optimize", phaseNanos[2] / (double) ops);
+    this.results.add(format("compile." + name, "ops/s",
+                            scores, secondary, "ns/op"));
+  }
+
+  /**
+   * @brief Benchmark the execution of a program on a backend.
+   * @param name The benchmark name.
+   * @param filename The program file.
+   * @param backend The backend.
+   */
+  private void benchRun(String name, String filename, ExecutionBackend backend) {
+    double[] scores = new double[this.iterations];
+    long[] superstepNanos = null;
+    try {
+      for (int iter = 0; iter < this.warmup + this.iterations; ++iter) {
+        Grail grail = new Grail(filename);
+        grail.run();
+        long start = System.nanoTime();
+        superstepNanos = backend.run(grail);
+        long elapsed = System.nanoTime() - start;
+        if (iter >= this.warmup) {
+          scores[iter - this.warmup] = superstepNanos.length * 1e9 / elapsed;
+        }
+      }
+    } catch (Exception e) {
+      System.err.println("Skip " + name + " on " + backend.getName() + ": " + e);
+      return;
+    }
+    // Report the supersteps of the last run.
+    HashMap<String, Double> secondary = new HashMap<String, Double>();
+    for (int i = 0; i < superstepNanos.length; ++i) {
+      secondary.put(String.format("superstep%04d", i), superstepNanos[i] / 1e6);
+    }
+    this.results.add(format("run." + backend.getName() + "." + name,
+                            "supersteps/s", scores, secondary, "ms"));
+  }
+
+  /**
+   * @brief Format a result as text: the mean score with the standard
+   * deviation of the iterations, then one line per secondary metric.
+   */
+  private static String format(String benchmark,
+                               String unit,
+                               double[] scores,
+                               HashMap<String, Double> secondary,
+                               String secondaryUnit) {
+    double mean = 0;
+    for (double score : scores) mean += score;
+    mean /= scores.length;
+    double var = 0;
+    for (double score : scores) var += (score - mean) * (score - mean);
+    double sd = scores.length > 1 ? Math.sqrt(var / (scores.length - 1)) : 0;
+
+    StringBuilder sb = new StringBuilder();
+    sb.append(String.format(Locale.ROOT, "%-56s %14.3f %12.3f  %s",
+                            benchmark, mean, sd, unit));
+    String[] keys = secondary.keySet().toArray(new String[0]);
+    Arrays.sort(keys);
+    for (String key : keys) {
+      sb.append(String.format(Locale.ROOT, "%n  %-54s %14.3f %12s  %s",
+                              key, secondary.get(key), "", secondaryUnit));
+    }
+    return sb.toString();
+  }
+
+  /**
+   * @brief Run all the benchmarks.
+   * @param out The stream for the results.
+   */
+  public void run(PrintStream out) throws Exception {
+    ArrayList<String> names = new ArrayList<String>();
+    ArrayList<String> programs = new ArrayList<String>();
+    File[] files = new File(this.analyticsDir).listFiles();
+    if (files != null) {
+      Arrays.sort(files);
+      for (File file : files) {
+        if (file.getName().endsWith(".grail")) {
+          names.add(file.getName().replace(".grail", ""));
+          programs.add(file.getPath());
+        }
+      }
+    }
+    names.add("nested" + this.depth + "_vars" + this.vars);
+    programs.add(genNestedProgram(this.depth, this.vars));
+
+    for (int i = 0; i < programs.size(); ++i) {
+      this.benchCompile(names.get(i), programs.get(i));
+    }
+    if (this.graph == null && this.rmatScale > 0) {
+      File file = File.createTempFile("rmat" + this.rmatScale, ".txt");
+      file.deleteOnExit();
+      GraphGenerator gen = new GraphGenerator();
+      gen.setRmat(this.rmatScale, 16, 0.57, 0.19, 0.19);
+      gen.setWeighted(this.weighted, 100);
+      gen.generate(new GraphGenerator.TextSink(file.getPath(), this.weighted));
+      this.graph = file.getPath();
+    }
+    if (this.graph != null) {
+      for (ExecutionBackend backend : this.backends) {
+        backend.prepare(this.graph, this.weighted);
+        for (int i = 0; i < programs.size(); ++i) {
+          this.benchRun(names.get(i), programs.get(i), backend);
+        }
+      }
+    }
+
+    out.println(String.format(Locale.ROOT, "%-56s %14s %12s  %s",
+                              "Benchmark", "Score", "SD", "Units"));
+    for (String result : this.results) {
+      out.println(result);
+    }
+  }
+
+  /**
+   * @brief Main function.
+   * @param args See the usage in the class comment.
+   */
+  public static void main(String[] args) throws Exception {
+    GrailBench bench = new GrailBench();
+    String outFile = null;
+    int[] sources = null;
+    boolean offHeap = false;
+    boolean compressed = false;
+    int clusterWorkers = 0;
+    int clusterPort = 0;
+    String clusterParts = null;
+    for (int i = 0; i < args.length; ++i) {
+      switch (args[i]) {
+        case "-analytics": bench.analyticsDir = args[++i]; break;
+        case "-depth": bench.depth = Integer.parseInt(args[++i]); break;
+        case "-vars": bench.vars = Integer.parseInt(args[++i]); break;
+        case "-warmup": bench.warmup = Integer.parseInt(args[++i]); break;
+        case "-iterations": bench.iterations = Integer.parseInt(args[++i]); break;
+        case "-time": bench.iterationTime = Long.parseLong(args[++i]); break;
+        case "-graph": bench.graph = args[++i]; break;
+        case "-rmat": bench.rmatScale = Integer.parseInt(args[++i]); break;
+        case "-weighted": bench.weighted = true; break;
+        case "-jdbc": bench.addBackend(new JdbcBackend(args[++i])); break;
+        case "-jvm": bench.addBackend(new JvmBackend()); break;
+        case "-jvm-generic": {
+          JvmBackend backend = new JvmBackend();
+          backend.setSpecialized(false);
+          bench.addBackend(backend);
+          break;
+        }
+        case "-jvm-ooc": {
+          JvmBackend backend = new JvmBackend();
+          backend.setOutOfCore(args[++i]);
+          bench.addBackend(backend);
+          break;
+        }
+        case "-sources": {
+          String[] ids = args[++i].split(",");
+          sources = new int[ids.length];
+          for (int j = 0; j < ids.length; ++j) {
+            sources[j] = Integer.parseInt(ids[j].trim());
+          }
+          break;
+        }
+        case "-offheap": offHeap = true; break;
+        case "-compressed": compressed = true; break;
+        case "-cluster": clusterWorkers = Integer.parseInt(args[++i]); break;
+        case "-cluster-port": clusterPort = Integer.parseInt(args[++i]); break;
+        case "-cluster-parts": clusterParts = args[++i]; break;
+        case "-out": outFile = args[++i]; break;
+        default:
+          System.err.println("Unknown option " + args[i]);
+          System.exit(1);
+      }
+    }
+    for (ExecutionBackend backend : bench.backends) {
+      if (backend instanceof JvmBackend) {
+        ((JvmBackend) backend).setSources(sources);
+        ((JvmBackend) backend).setOffHeap(offHeap);
+        ((JvmBackend) backend).setCompressed(compressed);
+      }
+    }
+    ClusterBackend cluster = null;
+    if (clusterWorkers > 0) {
+      cluster = new ClusterBackend(clusterWorkers, clusterPort);
+      cluster.setPartitionFile(clusterParts);
+      bench.addBackend(cluster);
+    }
+    PrintStream out = outFile == null ? System.out : new PrintStream(outFile);
+    bench.run(out);
+    out.close();
+    if (cluster != null) cluster.close();
+  }
+}
@@ -0,0 +1,538 @@
+/**
+ * This file copyright (c) 2015-2016, Jing Fan, Adalbert Gerald Soosai Raj, and Jignesh M. Patel
+ *
+ * See the file CREDITS.txt in the root directory for details.
+ **/
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import Engine.CodeGenerator;
+import Engine.CsrGraph;
+import Engine.VertexProgram;
+
+import Graph.EdgeListReader;
+import Graph.GraphLoader;
+import Runner.BlockRunner;
+import Runner.ExecutionStats;
+import Runner.PlanCapture;
+import Runner.SqlDialect;
+
+/**
+ * @brief Compiles Grail programs and runs the generated SQL through JDBC,
+ * by default on an in-memory H2 database, so the translator can be checked
+ * without a SQL Server instance.
+ *
+ * For every program in the analytics directory that has tests in the tests
+ * directory, each test graph is loaded from
+ * tests/<algo>/create_and_load_{vertex,edge}_test<n>.sql, the program is run,
+ * and the next table is compared against tests/<algo>/<algo>_golden_test<n>.out.
+ * With -graph, the programs are run on an edge-list file instead, and only
+ * the statistics are printed.
+ *
+ * -plans n prints the plans of the statements in the initialization, the
+ * first and the nth iteration, and the plans flagged by Runner.PlanCapture.
+ *
+ * -components runs min-label programs (wcc) with the pointer-jumping plan.
+ * The programs that can not run in the chosen mode, such as the programs
+ * with NextTblSchema (toposort) or the others under -components, are
+ * reported as SKIPPED with the reason.
+ *
+ * -jvm runs the programs compiled by JvmBackend instead of the SQL, the
+ * test graphs are read from the insert statements of the scripts.
+ * -jvm-ooc dir runs them out of core, with the graph written to dir, and
+ * -offheap keeps their vertex arrays off the heap, and -compressed their
+ * neighbor lists compressed. -cluster n runs them on
+ * n local worker processes (see ClusterBackend).
+ *
+ * Usage: java -cp .:h2.jar GrailHarness [-url jdbc:h2:mem:grail]
+ *                        [-analytics ../../analytics] [-tests ../../tests]
+ *                        [-programs pagerank,sssp] [-graph edges.txt]
+ *                        [-weighted] [-stats] [-plans n] [-components] [-jvm]
+ *                        [-jvm-ooc dir] [-offheap] [-compressed]
+ *                        [-cluster n]
+ */
+public class GrailHarness {
+  // The tolerance of comparing floating point values.
+  private static final double EPSILON = 1e-6;
+
+  private String url = "jdbc:h2:mem:grail;DB_CLOSE_DELAY=-1";
+  private String analyticsDir = "../../analytics";
+  private String testsDir = "../../tests";
+  // The programs to run, or null for all programs with tests.
+  private String[] programs = null;
+  private String graph = null;
+  private boolean weighted = false;
+  // Whether to print the statistics of every run.
+  private boolean printStats = false;
+  // The other iteration whose plans are captured, or 0 to capture no plans.
+  private int planIteration = 0;
+  // The plan of min-label programs, or null for the one of the program.
+  private String componentPlan = null;
+  // Whether to run the programs compiled for the JVM instead of the SQL.
+  private boolean jvm = false;
+  private JvmBackend jvmBackend = new JvmBackend();
+  // The workers the programs run on instead, or null.
+  private ClusterBackend cluster = null;
+  // The rows of "insert into <table> values(...)".
+  private static final Pattern INSERT = Pattern.compile(
+      "insert\\s+into\\s+(\\w+)\\s+values\\s*\\(([^)]*)\\)",
+      Pattern.CASE_INSENSITIVE);
+
+  /**
+   * @brief Run the statements of a SQL script, separated by ';'.
+   * @param conn The connection.
+   * @param filename The script file path.
+   */
+  private static void runScript(Connection conn, String filename)
+      throws IOException, SQLException {
+    String script = new String(Files.readAllBytes(Paths.get(filename)), "UTF-8");
+    Statement stmt = conn.createStatement();
+    for (String sql : script.split(";")) {
+      if (!sql.trim().isEmpty()) {
+        stmt.execute(sql.trim());
+      }
+    }
+    stmt.close();
+  }
+
+  /**
+   * @brief Read the rows inserted into a table by a SQL script.
+   * @param filename The script file path.
+   * @param table The table.
+   * @return The rows, the values must be integers.
+   */
+  private static ArrayList<int[]> readInserts(String filename, String table)
+      throws IOException {
+    String script = new String(Files.readAllBytes(Paths.get(filename)), "UTF-8");
+    ArrayList<int[]> rows = new ArrayList<int[]>();
+    Matcher m = INSERT.matcher(script);
+    while (m.find()) {
+      if (!m.group(1).equalsIgnoreCase(table)) continue;
+      String[] values = m.group(2).split(",");
+      int[] row = new int[values.length];
+      for (int i = 0; i < values.length; ++i) {
+        row[i] = Integer.parseInt(values[i].trim());
+      }
+      rows.add(row);
+    }
+    return rows;
+  }
+
+  /**
+   * @brief Build a graph from the vertex and edge scripts of a test.
+   */
+  private static CsrGraph loadTestGraph(String vertexScript, String edgeScript)
+      throws IOException {
+    ArrayList<int[]> vertices = readInserts(vertexScript, "vertex");
+    ArrayList<int[]> edges = readInserts(edgeScript, "edge");
+    int[] ids = new int[vertices.size()];
+    for (int i = 0; i < ids.length; ++i) ids[i] = vertices.get(i)[0];
+    int[] src = new int[edges.size()];
+    int[] dest = new int[edges.size()];
+    int[] weight = new int[edges.size()];
+    for (int i = 0; i < src.length; ++i) {
+      int[] edge = edges.get(i);
+      src[i] = edge[0];
+      dest[i] = edge[1];
+      weight[i] = edge.length > 2 ? edge[2] : 1;
+    }
+    return CsrGraph.build(ids, ids.length, src, dest, weight, src.length);
+  }
+
+  /**
+   * @brief Read a golden file, every line is "id | val".
+   * @param filename The golden file path.
+   * @return The rows, each one is {id, val}.
+   */
+  private static ArrayList<String[]> readGolden(String filename)
+      throws IOException {
+    ArrayList<String[]> rows = new ArrayList<String[]>();
+    BufferedReader reader = new BufferedReader(new FileReader(filename));
+    String line;
+    while ((line = reader.readLine()) != null) {
+      if (line.trim().isEmpty()) continue;
+      String[] tokens = line.split("\\|");
+      rows.add(new String[] {tokens[0].trim(), tokens[1].trim()});
+    }
+    reader.close();
+    return rows;
+  }
+
+  /**
+   * @brief Whether two values are equal, numbers are compared with a
+   * tolerance.
+   */
+  private static boolean sameValue(String expected, String actual) {
+    if (expected.equals(actual)) return true;
+    try {
+      double e = Double.parseDouble(expected);
+      double a = Double.parseDouble(actual);
+      return Math.abs(e - a) <= EPSILON * Math.max(1.0, Math.abs(e));
+    } catch (NumberFormatException ex) {
+      return false;
+    }
+  }
+
+  /**
+   * @brief Read the next table.
+   * @return The rows, each one is {id, val}, ordered by id.
+   */
+  private static ArrayList<String[]> readNext(Connection conn)
+      throws SQLException {
+    ArrayList<String[]> rows = new ArrayList<String[]>();
+    Statement stmt = conn.createStatement();
+    ResultSet rs = stmt.executeQuery("SELECT id, val FROM next ORDER BY id");
+    while (rs.next()) {
+      rows.add(new String[] {rs.getString(1), rs.getString(2)});
+    }
+    rs.close();
+    stmt.close();
+    return rows;
+  }
+
+  /**
+   * @brief Read the values of a program run in the JVM.
+   * @return The rows, each one is {id, val}, ordered by id.
+   */
+  private static ArrayList<String[]> readValues(CsrGraph graph,
+                                                VertexProgram program) {
+    ArrayList<String[]> rows = new ArrayList<String[]>();
+    for (int id = 0; id < graph.getSize(); ++id) {
+      if (!graph.exists(id)) continue;
+      double val = program.getValue(id);
+      rows.add(new String[] {
+          String.valueOf(id),
+          val == Math.rint(val) ? String.valueOf((long) val) : String.valueOf(val)});
+    }
+    return rows;
+  }
+
+  /**
+   * @brief Read the values of a program run on the workers.
+   * @return The rows, each one is {id, val}, ordered by id.
+   */
+  private static ArrayList<String[]> readValues(CsrGraph graph,
+                                                ClusterBackend cluster) {
+    ArrayList<String[]> rows = new ArrayList<String[]>();
+    for (int id = 0; id < graph.getSize(); ++id) {
+      if (!graph.exists(id)) continue;
+      double val = cluster.getValue(id);
+      rows.add(new String[] {
+          String.valueOf(id),
+          val == Math.rint(val) ? String.valueOf((long) val) : String.valueOf(val)});
+    }
+    return rows;
+  }
+
+  /**
+   * @brief Run a program on the workers, with a test graph written to
+   * temporary files.
+   * @return The time of every superstep, in nanoseconds.
+   */
+  private long[] runCluster(CsrGraph graph, Grail grail) throws Exception {
+    File edges = File.createTempFile("edges", ".txt");
+    File vertices = File.createTempFile("vertices", ".txt");
+    edges.deleteOnExit();
+    vertices.deleteOnExit();
+    PrintWriter edgeWriter = new PrintWriter(edges);
+    PrintWriter vertexWriter = new PrintWriter(vertices);
+    for (int v = 0; v < graph.getSize(); ++v) {
+      if (graph.exists(v)) vertexWriter.println(v);
+      for (int e = graph.getOutOffsets()[v]; e < graph.getOutOffsets()[v + 1]; ++e) {
+        edgeWriter.println(v + " " + graph.getOutTargets()[e] + " "
+                           + graph.getOutWeights()[e]);
+      }
+    }
+    edgeWriter.close();
+    vertexWriter.close();
+    this.cluster.setVertexFile(vertices.getPath());
+    this.cluster.prepare(edges.getPath(), true);
+    return this.cluster.run(grail);
+  }
+
+  /**
+   * @brief Compare the values against a golden file.
+   * @return null if they are the same, otherwise the first difference.
+   */
+  private static String compare(ArrayList<String[]> actual, String golden)
+      throws IOException {
+    ArrayList<String[]> expected = readGolden(golden);
+    int i = 0;
+    String diff = null;
+    for (; i < actual.size() && diff == null; ++i) {
+      String id = actual.get(i)[0];
+      String val = actual.get(i)[1];
+      if (i >= expected.size()) {
+        diff = "unexpected row " + id + " | " + val;
+      } else if (!expected.get(i)[0].equals(id)
+                 || !sameValue(expected.get(i)[1], val)) {
+        diff = "expected " + expected.get(i)[0] + " | " + expected.get(i)[1]
+               + ", got " + id + " | " + val;
+      }
+    }
+    if (diff == null && i < expected.size()) {
+      diff = "missing row " + expected.get(i)[0] + " | " + expected.get(i)[1];
+    }
+    return diff;
+  }
+
+  /**
+   * @brief Compile a program and run it on the loaded graph.
+   * @return The statistics of the run.
+   */
+  private ExecutionStats runProgram(Connection conn, String program)
+      throws SQLException {
+    Grail grail = new Grail(program);
+    grail.setComponentPlan(this.componentPlan);
+    grail.run();
+    BlockRunner runner = new BlockRunner(conn, SqlDialect.forUrl(this.url));
+    PlanCapture plans = null;
+    if (this.planIteration > 0) {
+      plans = new PlanCapture(this.planIteration);
+      runner.setPlanCapture(plans);
+    }
+    ExecutionStats stats = runner.run(grail.getBlocks());
+    if (this.printStats) {
+      stats.print(System.out);
+    }
+    if (plans != null) {
+      plans.print(System.out);
+      for (PlanCapture.Plan plan : plans.getFlagged()) {
+        System.out.println("WARN " + plan.stage + " (iteration "
+                           + plan.iteration + "): " + plan.warnings);
+      }
+    }
+    return stats;
+  }
+
+  /**
+   * @brief Get why a program can not run in this mode, so it is reported as
+   * SKIPPED instead of failing every test.
+   * @param program The program file.
+   * @return The reason, or null if the program runs.
+   */
+  private String skipReason(String program) {
+    HashMap<String, String> options = Parser.parse(program);
+    // The translator keeps the vertex value in one val column.
+    if (options.get("NextTblSchema") != null) {
+      return "NextTblSchema is not supported by the translator";
+    }
+    if (this.jvm) {
+      try {
+        CodeGenerator.checkSupported(options);
+      } catch (UnsupportedOperationException e) {
+        return e.getMessage();
+      }
+    } else if (this.componentPlan != null && !Translator.isMinLabel(options)) {
+      return "not a min-label program";
+    }
+    return null;
+  }
+
+  /**
+   * @brief Report a program as SKIPPED if it can not run in this mode.
+   * @param algo The program name.
+   * @return Whether it is skipped.
+   */
+  private boolean skipped(String algo) {
+    String reason = this.skipReason(this.analyticsDir + "/" + algo + ".grail");
+    if (reason != null) {
+      System.out.println("SKIPPED " + algo + ": " + reason);
+    }
+    return reason != null;
+  }
+
+  /**
+   * @brief Run the tests of a program.
+   * @param algo The program name.
+   * @return The number of failed tests.
+   */
+  private int runTests(Connection conn, String algo) throws IOException {
+    String program = this.analyticsDir + "/" + algo + ".grail";
+    String dir = this.testsDir + "/" + algo;
+    int failed = 0;
+    for (int n = 1; new File(dir + "/create_and_load_vertex_test" + n + ".sql").exists(); ++n) {
+      String name = algo + " test" + n;
+      String golden = dir + "/" + algo + "_golden_test" + n + ".out";
+      if (this.jvm) {
+        try {
+          CsrGraph graph = loadTestGraph(
+              dir + "/create_and_load_vertex_test" + n + ".sql",
+              dir + "/create_and_load_edge_test" + n + ".sql");
+          Grail grail = new Grail(program);
+          grail.run();
+          long start = System.nanoTime();
+          long[] nanos;
+          ArrayList<String[]> values;
+          if (this.cluster != null) {
+            nanos = this.runCluster(graph, grail);
+            values = readValues(graph, this.cluster);
+          } else {
+            VertexProgram compiled = this.jvmBackend.compile(grail.getOptions());
+            this.jvmBackend.attach(compiled, graph);
+            start = System.nanoTime();
+            nanos = compiled.run();
+            values = readValues(graph, compiled);
+          }
+          long elapsed = System.nanoTime() - start;
+          String diff = compare(values, golden);
+          if (diff == null) {
+            System.out.printf("PASS %s (%d iterations, %.3f ms)%n", name,
+                              nanos.length, elapsed / 1e6);
+          } else {
+            System.out.println("FAIL " + name + ": " + diff);
+            ++failed;
+          }
+        } catch (Exception e) {
+          System.out.println("FAIL " + name + ": " + e.getMessage());
+          ++failed;
+        }
+        continue;
+      }
+      try {
+        runScript(conn, dir + "/create_and_load_vertex_test" + n + ".sql");
+        runScript(conn, dir + "/create_and_load_edge_test" + n + ".sql");
+        ExecutionStats stats = this.runProgram(conn, program);
+        String diff = compare(readNext(conn), golden);
+        if (diff == null) {
+          System.out.printf("PASS %s (%d iterations, %.3f ms)%n", name,
+                            stats.getIterations(), stats.getTotalNanos() / 1e6);
+        } else {
+          System.out.println("FAIL " + name + ": " + diff);
+          ++failed;
+        }
+      } catch (Exception e) {
+        System.out.println("FAIL " + name + ": " + e.getMessage());
+        ++failed;
+      }
+    }
+    return failed;
+  }
+
+  /**
+   * @brief Run the programs, on the test graphs or on the given graph.
+   * @return The number of failures.
+   */
+  public int run() throws Exception {
+    ArrayList<String> algos = new ArrayList<String>();
+    if (this.programs != null) {
+      for (String algo : this.programs) algos.add(algo);
+    } else {
+      for (File file : new File(this.analyticsDir).listFiles()) {
+        String name = file.getName();
+        if (name.endsWith(".grail")
+            && new File(this.testsDir, name.replace(".grail", "")).isDirectory()) {
+          algos.add(name.replace(".grail", ""));
+        }
+      }
+      Collections.sort(algos);
+    }
+
+    int failed = 0;
+    if (this.jvm) {
+      ExecutionBackend backend = this.cluster != null ? this.cluster : this.jvmBackend;
+      if (this.graph != null) {
+        backend.prepare(this.graph, this.weighted);
+      }
+      for (String algo : algos) {
+        if (this.skipped(algo)) continue;
+        if (this.graph == null) {
+          failed += this.runTests(null, algo);
+          continue;
+        }
+        try {
+          Grail grail = new Grail(this.analyticsDir + "/" + algo + ".grail");
+          grail.run();
+          long[] nanos = backend.run(grail);
+          long total = 0;
+          for (long t : nanos) total += t;
+          System.out.printf("DONE %s (%d iterations, %.3f ms)%n", algo,
+                            nanos.length, total / 1e6);
+        } catch (Exception e) {
+          System.out.println("FAIL " + algo + ": " + e.getMessage());
+          ++failed;
+        }
+      }
+      if (this.cluster != null) this.cluster.close();
+      return failed;
+    }
+    if (this.graph != null) {
+      int threads = Runtime.getRuntime().availableProcessors();
+      new GraphLoader(this.url, null, null, this.weighted, 10000)
+          .load(new EdgeListReader(this.graph, threads, 10000));
+    }
+    Connection conn = DriverManager.getConnection(this.url);
+    for (String algo : algos) {
+      if (this.skipped(algo)) continue;
+      if (this.graph == null) {
+        failed += this.runTests(conn, algo);
+        continue;
+      }
+      try {
+        ExecutionStats stats = this.runProgram(
+            conn, this.analyticsDir + "/" + algo + ".grail");
+        System.out.printf("DONE %s (%d iterations, %.3f ms)%n", algo,
+                          stats.getIterations(), stats.getTotalNanos() / 1e6);
+      } catch (Exception e) {
+        System.out.println("FAIL " + algo + ": " + e.getMessage());
+        ++failed;
+      }
+    }
+    conn.close();
+    return failed;
+  }
+
+  /**
+   * @brief Main function.
+   * @param args See the usage in the class comment.
+   */
+  public static void main(String[] args) throws Exception {
+    GrailHarness harness = new GrailHarness();
+    for (int i = 0; i < args.length; ++i) {
+      switch (args[i]) {
+        case "-url": harness.url = args[++i]; break;
+        case "-analytics": harness.analyticsDir = args[++i]; break;
+        case "-tests": harness.testsDir = args[++i]; break;
+        case "-programs": harness.programs = args[++i].split(","); break;
+        case "-graph": harness.graph = args[++i]; break;
+        case "-weighted": harness.weighted = true; break;
+        case "-stats": harness.printStats = true; break;
+        case "-plans": harness.planIteration = Integer.parseInt(args[++i]); break;
+        case "-components": harness.componentPlan = "POINTER_JUMPING"; break;
+        case "-jvm": harness.jvm = true; break;
+        case "-cluster": {
+          harness.jvm = true;
+          harness.cluster = new ClusterBackend(Integer.parseInt(args[++i]), 0);
+          break;
+        }
+        case "-offheap": harness.jvmBackend.setOffHeap(true); break;
+        case "-compressed": harness.jvmBackend.setCompressed(true); break;
+        case "-jvm-ooc": {
+          harness.jvm = true;
+          harness.jvmBackend.setOutOfCore(args[++i]);
+          break;
+        }
+        default:
+          System.err.println("Unknown option " + args[i]);
+          System.exit(1);
+      }
+    }
+    System.exit(harness.run() == 0 ? 0 : 1);
+  }
+}
@@ -0,0 +1,107 @@
+/**
+ * This file copyright (c) 2015-2016, Jing Fan, Adalbert Gerald Soosai Raj, and Jignesh M. Patel
+ *
+ * See the file CREDITS.txt in the root directory for details.
+ **/
+
+package Graph;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * @brief Insert rows into a table through JDBC batches. Auto-commit is
+ * turned off, and every full batch is executed and committed. Example:
+ * BatchInserter inserter = new BatchInserter(conn, "edge", 2, 10000);
+ * inserter.set(1, src);
+ * inserter.set(2, dest);
+ * inserter.addRow();
+ * inserter.close();
+ */
+public class BatchInserter implements AutoCloseable {
+  private Connection conn;
+  private PreparedStatement stmt;
+  // The number of rows in a batch.
+  private int batchSize;
+  // The number of rows in the current batch.
+  private int rowCnt = 0;
+
+  /**
+   * @brief Constructor.
+   * @param conn The connection, owned by the caller.
+   * @param table The name of the table.
+   * @param columns The number of columns of the table.
+   * @param batchSize The number of rows in a batch.
+   */
+  public BatchInserter(Connection conn,
+                       String table,
+                       int columns,
+                       int batchSize) throws SQLException {
+    StringBuilder sql = new StringBuilder("INSERT INTO " + table + " VALUES(");
+    for (int i = 0; i < columns; ++i) {
+      sql.append(i == 0 ? "?" : ", ?");
+    }
+    sql.append(")");
+    this.conn = conn;
+    this.conn.setAutoCommit(false);
+    this.stmt = conn.prepareStatement(sql.toString());
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * @brief Set an integer column of the current row.
+   * @param column The column index, starting from 1.
+   * @param val The value.
+   */
+  public void set(int column, long val) throws SQLException {
+    this.stmt.setLong(column, val);
+  }
+
+  /**
+   * @brief Set a real column of the current row.
+   * @param column The column index, starting from 1.
+   * @param val The value.
+   */
+  public void set(int column, double val) throws SQLException {
+    this.stmt.setDouble(column, val);
+  }
+
+  /**
+   * @brief Set a column of the current row to NULL.
+   * @param column The column index, starting from 1.
+   * @param sqlType The type of the column, from java.sql.Types.
+   */
+  public void setNull(int column, int sqlType) throws SQLException {
+    this.stmt.setNull(column, sqlType);
+  }
+
+  /**
+   * @brief Add the current row to the batch.
+   */
+  public void addRow() throws SQLException {
+    this.stmt.addBatch();
+    if (++this.rowCnt == this.batchSize) {
+      this.flush();
+    }
+  }
+
+  /**
+   * @brief Execute and commit the current batch.
+   */
+  public void flush() throws SQLException {
+    if (this.rowCnt > 0) {
+      this.stmt.executeBatch();
+      this.conn.commit();
+      this.rowCnt = 0;
+    }
+  }
+
+  /**
+   * @brief Flush the last batch and close the statement.
+   */
+  public void close() throws SQLException {
+    this.flush();
+    this.stmt.close();
+  }
+}
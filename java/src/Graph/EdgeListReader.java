@@ -0,0 +1,318 @@
+/**
+ * This file copyright (c) 2015-2016, Jing Fan, Adalbert Gerald Soosai Raj, and Jignesh M. Patel
+ *
+ * See the file CREDITS.txt in the root directory for details.
+ **/
+
+package Graph;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * @brief A reader for edge-list files. Every line is "src dest [weight]",
+ * separated by spaces, tabs or commas. Lines starting with '#' or '%',
+ * after any leading separators, are comments. The file is split into chunks on line boundaries, every chunk
+ * is memory-mapped and parsed by one of the worker threads, and the parsed
+ * edges are handed to the handler in batches.
+ *
+ * Every field must be an integer in the int range, a real-valued weight or
+ * an id that does not fit in an int fails the read with its line number,
+ * instead of being truncated.
+ */
+public class EdgeListReader {
+  // The maximum size of a chunk, a mapped region can not exceed 2GB.
+  private static final long MAX_CHUNK_SIZE = 1L << 30;
+
+  /**
+   * @brief Receiver of parsed edges. The handler is called concurrently from
+   * all the workers, the worker id tells which worker parsed the batch. The
+   * arrays are reused by the worker after the call returns.
+   */
+  public interface EdgeHandler {
+    void handle(int worker, int[] src, int[] dest, int[] weight, int count)
+        throws Exception;
+  }
+
+  /**
+   * @brief A malformed field, at a byte offset of the file. The offset is
+   * turned into a line number once the workers are done.
+   */
+  private static class FormatException extends Exception {
+    private static final long serialVersionUID = 1L;
+    private long offset;
+
+    FormatException(String message, long offset) {
+      super(message);
+      this.offset = offset;
+    }
+  }
+
+  // Edge-list file path.
+  private String filename;
+  // The number of worker threads.
+  private int threads;
+  // The number of edges handed to the handler at a time.
+  private int batchSize;
+
+  /**
+   * @brief Constructor.
+   * @param filename The edge-list file path.
+   * @param threads The number of worker threads.
+   * @param batchSize The number of edges in a batch.
+   */
+  public EdgeListReader(String filename, int threads, int batchSize) {
+    this.filename = filename;
+    this.threads = threads;
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * @brief Check that the ids of a batch are not negative, for the handlers
+   * that index the vertices by id. The SQL loaders take any id.
+   * @param src The sources.
+   * @param dest The destinations.
+   * @param count The number of edges in the batch.
+   */
+  public static void checkIndexIds(int[] src, int[] dest, int count) {
+    for (int i = 0; i < count; ++i) {
+      if ((src[i] | dest[i]) < 0) {
+        throw new IllegalArgumentException(
+            "Negative vertex id " + Math.min(src[i], dest[i])
+            + ", the vertices are indexed by id");
+      }
+    }
+  }
+
+  /**
+   * @brief Get the number of worker threads.
+   * @return The number of worker threads.
+   */
+  public int getThreads() {
+    return this.threads;
+  }
+
+  /**
+   * @brief Read the whole file.
+   * @param handler The receiver of the edges.
+   * @return The number of edges read.
+   */
+  public long read(final EdgeHandler handler) throws IOException {
+    final FileChannel channel = FileChannel.open(Paths.get(filename),
+                                                 StandardOpenOption.READ);
+    try {
+      long size = channel.size();
+      int chunks = (int) Math.max(threads,
+                                  (size + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE);
+      final long[] bounds = new long[chunks + 1];
+      bounds[chunks] = size;
+      for (int i = 1; i < chunks; ++i) {
+        bounds[i] = nextLineStart(channel,
+                                  Math.max(size / chunks * i, bounds[i - 1]));
+      }
+
+      // Workers take the chunks one by one.
+      final AtomicInteger nextChunk = new AtomicInteger(0);
+      final AtomicLong edgeCnt = new AtomicLong(0);
+      final AtomicReference<Exception> error = new AtomicReference<Exception>();
+      Thread[] workers = new Thread[threads];
+      for (int w = 0; w < threads; ++w) {
+        final int worker = w;
+        workers[w] = new Thread(new Runnable() {
+          public void run() {
+            int[] src = new int[batchSize];
+            int[] dest = new int[batchSize];
+            int[] weight = new int[batchSize];
+            try {
+              int chunk;
+              while (error.get() == null
+                     && (chunk = nextChunk.getAndIncrement()) < bounds.length - 1) {
+                if (bounds[chunk] == bounds[chunk + 1]) continue;
+                MappedByteBuffer buffer = channel.map(
+                    FileChannel.MapMode.READ_ONLY,
+                    bounds[chunk],
+                    bounds[chunk + 1] - bounds[chunk]);
+                edgeCnt.addAndGet(parse(buffer, bounds[chunk], worker,
+                                        src, dest, weight, handler));
+              }
+            } catch (Exception e) {
+              error.compareAndSet(null, e);
+            }
+          }
+        });
+        workers[w].start();
+      }
+      for (Thread worker : workers) {
+        try {
+          worker.join();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException(e);
+        }
+      }
+      if (error.get() instanceof FormatException) {
+        FormatException e = (FormatException) error.get();
+        throw new IOException("Failed to load " + filename + ", line "
+                              + lineOf(channel, e.offset) + ": "
+                              + e.getMessage());
+      }
+      if (error.get() != null) {
+        throw new IOException("Failed to load " + filename + ": "
+                              + error.get().getMessage(), error.get());
+      }
+      return edgeCnt.get();
+    } finally {
+      channel.close();
+    }
+  }
+
+  /**
+   * @brief Find the start of the first line at or after the position.
+   * @param channel The file channel.
+   * @param pos The position.
+   * @return The start of the line.
+   */
+  private static long nextLineStart(FileChannel channel, long pos)
+      throws IOException {
+    if (pos == 0) return 0;
+    ByteBuffer buffer = ByteBuffer.allocate(4096);
+    // Start from the previous byte, so a position right after '\n' is
+    // returned as is.
+    long cur = pos - 1;
+    while (true) {
+      buffer.clear();
+      int n = channel.read(buffer, cur);
+      if (n <= 0) return channel.size();
+      for (int i = 0; i < n; ++i) {
+        if (buffer.get(i) == '\n') return cur + i + 1;
+      }
+      cur += n;
+    }
+  }
+
+  /**
+   * @brief Get the line number of a position, counting from 1.
+   * @param channel The file channel.
+   * @param pos The position.
+   * @return The line number.
+   */
+  private static long lineOf(FileChannel channel, long pos) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+    long line = 1;
+    long cur = 0;
+    while (cur < pos) {
+      buffer.clear();
+      buffer.limit((int) Math.min(buffer.capacity(), pos - cur));
+      int n = channel.read(buffer, cur);
+      if (n <= 0) break;
+      for (int i = 0; i < n; ++i) {
+        if (buffer.get(i) == '\n') ++line;
+      }
+      cur += n;
+    }
+    return line;
+  }
+
+  private static boolean isSeparator(byte c) {
+    return c == ' ' || c == '\t' || c == ',' || c == '\r' || c == '\n';
+  }
+
+  /**
+   * @brief Get the field starting at a position, for the error messages.
+   */
+  private static String fieldAt(ByteBuffer buffer, int pos) {
+    StringBuilder field = new StringBuilder();
+    while (pos < buffer.limit() && !isSeparator(buffer.get(pos))
+           && field.length() < 32) {
+      field.append((char) buffer.get(pos++));
+    }
+    return field.toString();
+  }
+
+  /**
+   * @brief Parse a chunk.
+   * @param buffer The mapped chunk.
+   * @param chunkStart The position of the chunk in the file.
+   * @return The number of edges in the chunk.
+   */
+  private long parse(ByteBuffer buffer,
+                     long chunkStart,
+                     int worker,
+                     int[] src,
+                     int[] dest,
+                     int[] weight,
+                     EdgeHandler handler) throws Exception {
+    long total = 0;
+    int count = 0;
+    int[] fields = new int[3];
+    int limit = buffer.limit();
+    int pos = 0;
+    while (pos < limit) {
+      byte c;
+      int fieldCnt = 0;
+      while (pos < limit && (c = buffer.get(pos)) != '\n') {
+        if (isSeparator(c)) {
+          ++pos;
+          continue;
+        }
+        if (fieldCnt == 0 && (c == '#' || c == '%')) {
+          // Skip the comment line.
+          while (pos < limit && buffer.get(pos) != '\n') ++pos;
+          break;
+        }
+        int start = pos;
+        boolean negative = c == '-';
+        if (negative) ++pos;
+        long val = 0;
+        int digits = 0;
+        while (pos < limit && (c = buffer.get(pos)) >= '0' && c <= '9') {
+          val = val * 10 + (c - '0');
+          // Stop before the long overflows, -2^31 is the largest magnitude.
+          if (val > (long) Integer.MAX_VALUE + 1) {
+            throw new FormatException(fieldAt(buffer, start)
+                                      + " is out of the int range",
+                                      chunkStart + start);
+          }
+          ++pos;
+          ++digits;
+        }
+        if (digits == 0 || (pos < limit && !isSeparator(buffer.get(pos)))) {
+          throw new FormatException(fieldAt(buffer, start)
+                                    + " is not an integer",
+                                    chunkStart + start);
+        }
+        if (negative) val = -val;
+        if (val > Integer.MAX_VALUE) {
+          throw new FormatException(fieldAt(buffer, start)
+                                    + " is out of the int range",
+                                    chunkStart + start);
+        }
+        if (fieldCnt < 3) {
+          fields[fieldCnt++] = (int) val;
+        }
+      }
+      ++pos;
+      if (fieldCnt < 2) continue;
+      src[count] = fields[0];
+      dest[count] = fields[1];
+      weight[count] = fieldCnt == 3 ? fields[2] : 1;
+      if (++count == src.length) {
+        handler.handle(worker, src, dest, weight, count);
+        total += count;
+        count = 0;
+      }
+    }
+    if (count > 0) {
+      handler.handle(worker, src, dest, weight, count);
+      total += count;
+    }
+    return total;
+  }
+}
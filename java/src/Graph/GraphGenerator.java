@@ -0,0 +1,403 @@
+/**
+ * This file copyright (c) 2015-2016, Jing Fan, Adalbert Gerald Soosai Raj, and Jignesh M. Patel
+ *
+ * See the file CREDITS.txt in the root directory for details.
+ **/
+
+package Graph;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.SplittableRandom;
+
+/**
+ * @brief Generator of synthetic graphs for scale tests. Edges are streamed to
+ * the sink as they are generated, so the memory use does not depend on the
+ * number of edges. The edges are generated in blocks, every block has its
+ * own random generator derived from the seed and the block index, so the
+ * same seed always gives the same graph.
+ *
+ * Models:
+ * rmat: R-MAT with 2^scale vertices and edgefactor * 2^scale edges, with
+ *       the quadrant probabilities a, b, c (d = 1 - a - b - c). Vertex ids
+ *       are scrambled so that the high degree vertices are spread out.
+ * er:   Erdos-Renyi G(n, m), m edges between uniformly chosen vertices.
+ * grid: A rows x cols 2D grid, every vertex is linked with its 4 neighbours
+ *       in both directions. The diameter is rows + cols, good for SSSP.
+ *
+ * Usage:
+ * java Graph.GraphGenerator -model rmat|er|grid [-scale 20] [-edgefactor 16]
+ *      [-a 0.57 -b 0.19 -c 0.19] [-vertices n] [-edges m] [-rows r -cols c]
+ *      [-seed 1] [-weighted] [-maxweight 100]
+ *      [-format text|snapshot|jdbc] [-out file] [-url jdbc url] [-batch rows]
+ */
+public class GraphGenerator {
+  // The number of edges generated with one random generator.
+  private static final long BLOCK_SIZE = 1 << 16;
+
+  /**
+   * @brief Receiver of generated edges.
+   */
+  public interface EdgeSink {
+    void edge(int src, int dest, int weight) throws Exception;
+    void close() throws Exception;
+  }
+
+  private String model = "rmat";
+  private int scale = 16;
+  private int edgeFactor = 16;
+  private double a = 0.57;
+  private double b = 0.19;
+  private double c = 0.19;
+  private long vertices = 1 << 16;
+  private long edges = 1 << 20;
+  private int rows = 256;
+  private int cols = 256;
+  private long seed = 1;
+  private boolean weighted = false;
+  private int maxWeight = 100;
+
+  /**
+   * @brief Setters.
+   */
+  public void setModel(String model) {
+    this.model = model;
+  }
+
+  public void setRmat(int scale, int edgeFactor, double a, double b, double c) {
+    this.scale = scale;
+    this.edgeFactor = edgeFactor;
+    this.a = a;
+    this.b = b;
+    this.c = c;
+  }
+
+  public void setEr(long vertices, long edges) {
+    this.vertices = vertices;
+    this.edges = edges;
+  }
+
+  public void setGrid(int rows, int cols) {
+    this.rows = rows;
+    this.cols = cols;
+  }
+
+  public void setSeed(long seed) {
+    this.seed = seed;
+  }
+
+  public void setWeighted(boolean weighted, int maxWeight) {
+    this.weighted = weighted;
+    this.maxWeight = maxWeight;
+  }
+
+  /**
+   * @brief Generate the graph.
+   * @param sink The receiver of the edges, closed at the end.
+   * @return The number of edges generated.
+   */
+  public long generate(EdgeSink sink) throws Exception {
+    long edgeCnt = 0;
+    switch (this.model) {
+      case "rmat":
+        edgeCnt = this.generateRmat(sink);
+        break;
+      case "er":
+        edgeCnt = this.generateEr(sink);
+        break;
+      case "grid":
+        edgeCnt = this.generateGrid(sink);
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown model " + this.model);
+    }
+    sink.close();
+    return edgeCnt;
+  }
+
+  /**
+   * @brief Get the random generator of a block.
+   */
+  private SplittableRandom blockRandom(long block) {
+    return new SplittableRandom(this.seed * 0x9E3779B97F4A7C15L + block);
+  }
+
+  /**
+   * @brief Get a random weight, or 1 if the graph is unweighted.
+   */
+  private int weight(SplittableRandom random) {
+    return this.weighted ? 1 + random.nextInt(this.maxWeight) : 1;
+  }
+
+  /**
+   * @brief Scramble a vertex id in [0, 2^scale) by a bijection, so the ids
+   * of high degree vertices are not clustered at 0.
+   */
+  private long scramble(long id) {
+    long mask = (1L << this.scale) - 1;
+    id = (id * 0x5DEECE66DL + (this.seed & mask)) & mask;
+    id ^= id >>> (this.scale / 2 + 1);
+    return (id * 0x2545F4914F6CDD1DL) & mask;
+  }
+
+  private long generateRmat(EdgeSink sink) throws Exception {
+    if (this.scale > 31) {
+      throw new IllegalArgumentException("Vertex ids must fit in int, scale <= 31");
+    }
+    long total = (long) this.edgeFactor << this.scale;
+    double ab = this.a + this.b;
+    double abc = this.a + this.b + this.c;
+    for (long block = 0; block * BLOCK_SIZE < total; ++block) {
+      SplittableRandom random = this.blockRandom(block);
+      long end = Math.min(total, (block + 1) * BLOCK_SIZE);
+      for (long e = block * BLOCK_SIZE; e < end; ++e) {
+        long src = 0;
+        long dest = 0;
+        for (int level = 0; level < this.scale; ++level) {
+          double r = random.nextDouble();
+          src <<= 1;
+          dest <<= 1;
+          if (r < this.a) {
+            // Top left quadrant.
+          } else if (r < ab) {
+            dest |= 1;
+          } else if (r < abc) {
+            src |= 1;
+          } else {
+            src |= 1;
+            dest |= 1;
+          }
+        }
+        sink.edge((int) this.scramble(src), (int) this.scramble(dest),
+                  this.weight(random));
+      }
+    }
+    return total;
+  }
+
+  private long generateEr(EdgeSink sink) throws Exception {
+    if (this.vertices > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Vertex ids must fit in int");
+    }
+    for (long block = 0; block * BLOCK_SIZE < this.edges; ++block) {
+      SplittableRandom random = this.blockRandom(block);
+      long end = Math.min(this.edges, (block + 1) * BLOCK_SIZE);
+      for (long e = block * BLOCK_SIZE; e < end; ++e) {
+        int src = (int) random.nextLong(this.vertices);
+        int dest = (int) random.nextLong(this.vertices);
+        sink.edge(src, dest, this.weight(random));
+      }
+    }
+    return this.edges;
+  }
+
+  private long generateGrid(EdgeSink sink) throws Exception {
+    if ((long) this.rows * this.cols > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Vertex ids must fit in int");
+    }
+    long edgeCnt = 0;
+    // One block for every row.
+    for (int r = 0; r < this.rows; ++r) {
+      SplittableRandom random = this.blockRandom(r);
+      for (int col = 0; col < this.cols; ++col) {
+        int id = r * this.cols + col;
+        if (col + 1 < this.cols) {
+          sink.edge(id, id + 1, this.weight(random));
+          sink.edge(id + 1, id, this.weight(random));
+          edgeCnt += 2;
+        }
+        if (r + 1 < this.rows) {
+          sink.edge(id, id + this.cols, this.weight(random));
+          sink.edge(id + this.cols, id, this.weight(random));
+          edgeCnt += 2;
+        }
+      }
+    }
+    return edgeCnt;
+  }
+
+  /**
+   * @brief A sink that writes an edge-list text file, one edge per line.
+   */
+  public static class TextSink implements EdgeSink {
+    private OutputStream out;
+    private boolean weighted;
+    private byte[] line = new byte[40];
+
+    public TextSink(String filename, boolean weighted) throws IOException {
+      this.out = new BufferedOutputStream(new FileOutputStream(filename), 1 << 20);
+      this.weighted = weighted;
+    }
+
+    public void edge(int src, int dest, int weight) throws IOException {
+      int len = putInt(this.line, 0, src);
+      this.line[len++] = ' ';
+      len = putInt(this.line, len, dest);
+      if (this.weighted) {
+        this.line[len++] = ' ';
+        len = putInt(this.line, len, weight);
+      }
+      this.line[len++] = '\n';
+      this.out.write(this.line, 0, len);
+    }
+
+    /**
+     * @brief Format a non-negative integer into the buffer.
+     * @return The position after the number.
+     */
+    private static int putInt(byte[] buffer, int pos, int val) {
+      int end = pos;
+      int tmp = val;
+      do {
+        ++end;
+        tmp /= 10;
+      } while (tmp != 0);
+      for (int i = end - 1; i >= pos; --i) {
+        buffer[i] = (byte) ('0' + val % 10);
+        val /= 10;
+      }
+      return end;
+    }
+
+    public void close() throws IOException {
+      this.out.close();
+    }
+  }
+
+  /**
+   * @brief A sink that writes a snapshot file with columns src, dest and
+   * optionally weight.
+   */
+  public static class SnapshotSink implements EdgeSink {
+    private SnapshotWriter writer;
+    private boolean weighted;
+
+    public SnapshotSink(String filename, boolean weighted) throws IOException {
+      String[] names = weighted ? new String[] {"src", "dest", "weight"}
+                                : new String[] {"src", "dest"};
+      byte[] types = weighted ? new byte[] {Snapshot.INT, Snapshot.INT, Snapshot.INT}
+                              : new byte[] {Snapshot.INT, Snapshot.INT};
+      byte[] encodings = weighted
+          ? new byte[] {Snapshot.VARINT, Snapshot.VARINT, Snapshot.VARINT}
+          : new byte[] {Snapshot.VARINT, Snapshot.VARINT};
+      this.writer = new SnapshotWriter(filename, names, types, encodings, 65536);
+      this.weighted = weighted;
+    }
+
+    public void edge(int src, int dest, int weight) throws IOException {
+      this.writer.set(0, (long) src);
+      this.writer.set(1, (long) dest);
+      if (this.weighted) {
+        this.writer.set(2, (long) weight);
+      }
+      this.writer.addRow();
+    }
+
+    public void close() throws IOException {
+      this.writer.close();
+    }
+  }
+
+  /**
+   * @brief A sink that inserts the edges into the edge table through JDBC
+   * batches. The vertex, edge and degree tables are recreated; the degree
+   * tables are left empty.
+   */
+  public static class JdbcSink implements EdgeSink {
+    private Connection conn;
+    private BatchInserter inserter;
+    private boolean weighted;
+
+    public JdbcSink(Connection conn, boolean weighted, int batchSize)
+        throws Exception {
+      GraphLoader.createTables(conn, weighted);
+      this.conn = conn;
+      this.inserter = new BatchInserter(conn, "edge", weighted ? 3 : 2, batchSize);
+      this.weighted = weighted;
+    }
+
+    public void edge(int src, int dest, int weight) throws Exception {
+      this.inserter.set(1, (long) src);
+      this.inserter.set(2, (long) dest);
+      if (this.weighted) {
+        this.inserter.set(3, (long) weight);
+      }
+      this.inserter.addRow();
+    }
+
+    public void close() throws Exception {
+      this.inserter.close();
+      // The vertices are the ends of the edges.
+      java.sql.Statement stmt = this.conn.createStatement();
+      stmt.execute("INSERT INTO vertex SELECT src FROM edge UNION SELECT dest FROM edge");
+      stmt.close();
+      this.conn.commit();
+      this.conn.close();
+    }
+  }
+
+  /**
+   * @brief Main function.
+   * @param args See the usage in the class comment.
+   */
+  public static void main(String[] args) throws Exception {
+    GraphGenerator gen = new GraphGenerator();
+    String format = "text";
+    String out = null;
+    String url = null;
+    int batchSize = 10000;
+    int scale = gen.scale;
+    int edgeFactor = gen.edgeFactor;
+    double a = gen.a;
+    double b = gen.b;
+    double c = gen.c;
+    int maxWeight = gen.maxWeight;
+    boolean weighted = false;
+    for (int i = 0; i < args.length; ++i) {
+      switch (args[i]) {
+        case "-model": gen.setModel(args[++i]); break;
+        case "-scale": scale = Integer.parseInt(args[++i]); break;
+        case "-edgefactor": edgeFactor = Integer.parseInt(args[++i]); break;
+        case "-a": a = Double.parseDouble(args[++i]); break;
+        case "-b": b = Double.parseDouble(args[++i]); break;
+        case "-c": c = Double.parseDouble(args[++i]); break;
+        case "-vertices": gen.vertices = Long.parseLong(args[++i]); break;
+        case "-edges": gen.edges = Long.parseLong(args[++i]); break;
+        case "-rows": gen.rows = Integer.parseInt(args[++i]); break;
+        case "-cols": gen.cols = Integer.parseInt(args[++i]); break;
+        case "-seed": gen.setSeed(Long.parseLong(args[++i])); break;
+        case "-weighted": weighted = true; break;
+        case "-maxweight": maxWeight = Integer.parseInt(args[++i]); break;
+        case "-format": format = args[++i]; break;
+        case "-out": out = args[++i]; break;
+        case "-url": url = args[++i]; break;
+        case "-batch": batchSize = Integer.parseInt(args[++i]); break;
+        default:
+          System.err.println("Unknown option " + args[i]);
+          System.exit(1);
+      }
+    }
+    gen.setRmat(scale, edgeFactor, a, b, c);
+    gen.setWeighted(weighted, maxWeight);
+
+    EdgeSink sink = null;
+    if (format.equals("jdbc") && url != null) {
+      sink = new JdbcSink(DriverManager.getConnection(url), weighted, batchSize);
+    } else if (format.equals("snapshot") && out != null) {
+      sink = new SnapshotSink(out, weighted);
+    } else if (format.equals("text") && out != null) {
+      sink = new TextSink(out, weighted);
+    } else {
+      System.err.println("Give -out for text and snapshot, or -url for jdbc.");
+      System.exit(1);
+    }
+    long start = System.currentTimeMillis();
+    long edgeCnt = gen.generate(sink);
+    System.out.println("Generated " + edgeCnt + " edges in "
+                       + (System.currentTimeMillis() - start) + " ms.");
+  }
+}
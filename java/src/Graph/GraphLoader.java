@@ -0,0 +1,315 @@
+/**
+ * This file copyright (c) 2015-2016, Jing Fan, Adalbert Gerald Soosai Raj, and Jignesh M. Patel
+ *
+ * See the file CREDITS.txt in the root directory for details.
+ **/
+
+package Graph;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * @brief Bulk loader for the vertex and edge tables. The edge-list file is
+ * parsed in parallel by EdgeListReader, and every worker inserts its edges
+ * through its own connection with batched inserts. The degree tables in_cnts
+ * and out_cnts are counted on the fly, so the Grail program can be compiled
+ * with "DegreeTables : PRELOADED" and skip the GROUP BY over edge.
+ *
+ * Any JDBC driver on the class path can be the target, including embedded
+ * databases for tests. Usage:
+ * java Graph.GraphLoader -url jdbc:h2:mem:grail [-user u] [-password p]
+ *                        [-threads 8] [-batch 10000] [-weighted] edges.txt
+ */
+public class GraphLoader {
+  private String url;
+  private String user;
+  private String password;
+  // Whether the edge table has the weight column.
+  private boolean weighted;
+  private int batchSize;
+  // The degrees of the vertices, counted by all the workers.
+  private DegreeTable degrees;
+
+  /**
+   * @brief Constructor.
+   * @param url The JDBC url.
+   * @param user The user name, or null.
+   * @param password The password, or null.
+   * @param weighted Whether to load the third column as edge weight.
+   * @param batchSize The number of rows in an insert batch.
+   */
+  public GraphLoader(String url,
+                     String user,
+                     String password,
+                     boolean weighted,
+                     int batchSize) {
+    this.url = url;
+    this.user = user;
+    this.password = password;
+    this.weighted = weighted;
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * @brief Open a new connection to the target database.
+   * @return The connection.
+   */
+  public Connection connect() throws SQLException {
+    if (this.user == null) {
+      return DriverManager.getConnection(this.url);
+    }
+    return DriverManager.getConnection(this.url, this.user, this.password);
+  }
+
+  /**
+   * @brief Create the vertex, edge and degree tables, dropping the old ones.
+   * @param conn The connection.
+   * @param weighted Whether the edge table has the weight column.
+   */
+  public static void createTables(Connection conn, boolean weighted)
+      throws SQLException {
+    Statement stmt = conn.createStatement();
+    for (String table : new String[] {"vertex", "edge", "in_cnts", "out_cnts"}) {
+      stmt.execute("DROP TABLE IF EXISTS " + table);
+    }
+    stmt.execute("CREATE TABLE vertex(id int)");
+    stmt.execute("CREATE TABLE edge(src int, dest int"
+                 + (weighted ? ", weight int)" : ")"));
+    stmt.execute("CREATE TABLE in_cnts(id int, cnt int)");
+    stmt.execute("CREATE TABLE out_cnts(id int, cnt int)");
+    stmt.close();
+  }
+
+  /**
+   * @brief The in- and out-degrees of the vertices, in a hash table with
+   * open addressing keyed by id. It takes space for the vertices only, not
+   * for every id up to the largest one, and any int is a valid id.
+   */
+  private static class DegreeTable {
+    private int[] ids = new int[1024];
+    private int[] in = new int[1024];
+    private int[] out = new int[1024];
+    private boolean[] used = new boolean[1024];
+    private int size = 0;
+
+    /**
+     * @brief Get the slot of an id, adding the id if it is new.
+     */
+    private int slot(int id) {
+      if (2 * (this.size + 1) > this.ids.length) this.rehash();
+      int mask = this.ids.length - 1;
+      // The high bits of the product, so nearby ids spread out.
+      int i = (id * 0x9e3779b9) >>> Integer.numberOfLeadingZeros(mask);
+      while (this.used[i] && this.ids[i] != id) i = (i + 1) & mask;
+      if (!this.used[i]) {
+        this.used[i] = true;
+        this.ids[i] = id;
+        ++this.size;
+      }
+      return i;
+    }
+
+    private void rehash() {
+      int[] oldIds = this.ids;
+      int[] oldIn = this.in;
+      int[] oldOut = this.out;
+      boolean[] oldUsed = this.used;
+      int capacity = 2 * oldIds.length;
+      this.ids = new int[capacity];
+      this.in = new int[capacity];
+      this.out = new int[capacity];
+      this.used = new boolean[capacity];
+      this.size = 0;
+      for (int j = 0; j < oldIds.length; ++j) {
+        if (!oldUsed[j]) continue;
+        int i = this.slot(oldIds[j]);
+        this.in[i] = oldIn[j];
+        this.out[i] = oldOut[j];
+      }
+    }
+
+    void addEdge(int src, int dest) {
+      // slot() may rehash, so it is called before the arrays are read.
+      int i = this.slot(src);
+      ++this.out[i];
+      i = this.slot(dest);
+      ++this.in[i];
+    }
+
+    /**
+     * @brief Get the slots of the vertices, ordered by id.
+     */
+    int[] slotsById() {
+      long[] sorted = new long[this.size];
+      int n = 0;
+      for (int i = 0; i < this.ids.length; ++i) {
+        if (this.used[i]) sorted[n++] = ((long) this.ids[i] << 32) | i;
+      }
+      Arrays.sort(sorted);
+      int[] slots = new int[n];
+      for (int j = 0; j < n; ++j) slots[j] = (int) sorted[j];
+      return slots;
+    }
+  }
+
+  /**
+   * @brief Load the edge-list file.
+   * @param reader The reader of the edge-list file.
+   * @return The number of edges loaded.
+   */
+  public long load(EdgeListReader reader) throws Exception {
+    int threads = reader.getThreads();
+    Connection setupConn = this.connect();
+    createTables(setupConn, this.weighted);
+
+    final Connection[] conns = new Connection[threads];
+    final BatchInserter[] inserters = new BatchInserter[threads];
+    this.degrees = new DegreeTable();
+    try {
+      for (int w = 0; w < threads; ++w) {
+        conns[w] = this.connect();
+        inserters[w] = new BatchInserter(conns[w],
+                                         "edge",
+                                         this.weighted ? 3 : 2,
+                                         this.batchSize);
+      }
+
+      long edgeCnt = reader.read(new EdgeListReader.EdgeHandler() {
+        public void handle(int worker,
+                           int[] src,
+                           int[] dest,
+                           int[] weight,
+                           int count) throws Exception {
+          BatchInserter inserter = inserters[worker];
+          for (int i = 0; i < count; ++i) {
+            inserter.set(1, src[i]);
+            inserter.set(2, dest[i]);
+            if (weighted) {
+              inserter.set(3, weight[i]);
+            }
+            inserter.addRow();
+          }
+          // One table for all the workers, a batch at a time.
+          synchronized (degrees) {
+            for (int i = 0; i < count; ++i) {
+              degrees.addEdge(src[i], dest[i]);
+            }
+          }
+        }
+      });
+      for (BatchInserter inserter : inserters) {
+        inserter.close();
+      }
+
+      this.loadDegrees(conns);
+      return edgeCnt;
+    } finally {
+      for (Connection conn : conns) {
+        if (conn != null) conn.close();
+      }
+      setupConn.close();
+    }
+  }
+
+  /**
+   * @brief Load the vertex, in_cnts and out_cnts tables from the counted
+   * degrees. Every connection loads a range of the vertices.
+   * @param conns The connections, one for each worker.
+   */
+  private void loadDegrees(final Connection[] conns) throws Exception {
+    final DegreeTable table = this.degrees;
+    final int[] slots = table.slotsById();
+    final int[] ids = table.ids;
+    final int[] in = table.in;
+    final int[] out = table.out;
+    this.degrees = null;
+
+    final int rangeSize = (slots.length + conns.length - 1) / conns.length;
+    final ArrayList<Exception> errors = new ArrayList<Exception>();
+    Thread[] workers = new Thread[conns.length];
+    for (int w = 0; w < conns.length; ++w) {
+      final int worker = w;
+      workers[w] = new Thread(new Runnable() {
+        public void run() {
+          int begin = Math.min(slots.length, worker * rangeSize);
+          int end = Math.min(slots.length, begin + rangeSize);
+          try {
+            BatchInserter vertex = new BatchInserter(conns[worker], "vertex", 1, batchSize);
+            BatchInserter inCnts = new BatchInserter(conns[worker], "in_cnts", 2, batchSize);
+            BatchInserter outCnts = new BatchInserter(conns[worker], "out_cnts", 2, batchSize);
+            for (int j = begin; j < end; ++j) {
+              int i = slots[j];
+              vertex.set(1, ids[i]);
+              vertex.addRow();
+              if (in[i] > 0) {
+                inCnts.set(1, ids[i]);
+                inCnts.set(2, in[i]);
+                inCnts.addRow();
+              }
+              if (out[i] > 0) {
+                outCnts.set(1, ids[i]);
+                outCnts.set(2, out[i]);
+                outCnts.addRow();
+              }
+            }
+            vertex.close();
+            inCnts.close();
+            outCnts.close();
+          } catch (Exception e) {
+            synchronized (errors) {
+              errors.add(e);
+            }
+          }
+        }
+      });
+      workers[w].start();
+    }
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    if (!errors.isEmpty()) {
+      throw errors.get(0);
+    }
+  }
+
+  /**
+   * @brief Main function.
+   * @param args See the usage in the class comment.
+   */
+  public static void main(String[] args) throws Exception {
+    String url = null;
+    String user = null;
+    String password = null;
+    String filename = null;
+    int threads = Runtime.getRuntime().availableProcessors();
+    int batchSize = 10000;
+    boolean weighted = false;
+    for (int i = 0; i < args.length; ++i) {
+      switch (args[i]) {
+        case "-url": url = args[++i]; break;
+        case "-user": user = args[++i]; break;
+        case "-password": password = args[++i]; break;
+        case "-threads": threads = Integer.parseInt(args[++i]); break;
+        case "-batch": batchSize = Integer.parseInt(args[++i]); break;
+        case "-weighted": weighted = true; break;
+        default: filename = args[i]; break;
+      }
+    }
+    if (url == null || filename == null) {
+      System.err.println("Usage: java Graph.GraphLoader -url <jdbc url> "
+                         + "[-user u] [-password p] [-threads n] [-batch n] "
+                         + "[-weighted] <edge list file>");
+      System.exit(1);
+    }
+    long start = System.currentTimeMillis();
+    GraphLoader loader = new GraphLoader(url, user, password, weighted, batchSize);
+    long edgeCnt = loader.load(new EdgeListReader(filename, threads, batchSize));
+    System.out.println("Loaded " + edgeCnt + " edges in "
+                       + (System.currentTimeMillis() - start) + " ms.");
+  }
+}
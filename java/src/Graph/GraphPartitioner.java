@@ -0,0 +1,323 @@
+/**
+ * This file copyright (c) 2015-2016, Jing Fan, Adalbert Gerald Soosai Raj, and Jignesh M. Patel
+ *
+ * See the file CREDITS.txt in the root directory for details.
+ **/
+
+package Graph;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.Arrays;
+
+/**
+ * @brief Assigns the vertices of a graph to K partitions so few edges cross
+ * partitions, with the Fennel streaming heuristic. The vertices are visited
+ * in id order, and every vertex goes to the partition that holds most of
+ * its neighbors, less a penalty growing with the size of the partition:
+ *
+ * score(i) = |N(v) in P_i| - alpha * gamma * |P_i|^(gamma - 1)
+ *
+ * with gamma = 1.5 and alpha = sqrt(K) * |E| / |V|^1.5. No partition takes
+ * more than (1 + slack) * |V| / K vertices. Later passes stream the
+ * vertices again, with the neighbors placed where the last pass put them,
+ * which lowers the cut further. Edges are taken as undirected.
+ *
+ * The result maps every vertex to its partition, as a text file of "id
+ * part" lines or as a table vertex_part(id, part). The file is read by
+ * ClusterBackend to place the vertices on the workers, and the table by
+ * "PartitionMap : vertex_part" in a program with "Partitions : K". Usage:
+ * java Graph.GraphPartitioner -parts 8 [-passes 3] [-slack 0.05]
+ *                            [-out parts.txt] [-url jdbc url] edges.txt
+ */
+public class GraphPartitioner {
+  private static final double GAMMA = 1.5;
+
+  private int parts;
+  private int passes = 3;
+  private double slack = 0.05;
+  // The undirected graph, the neighbors of v are
+  // neighbors[offsets[v] .. offsets[v + 1]).
+  private int size = 0;
+  private boolean[] exists;
+  private long edgeCnt = 0;
+  private int[] offsets;
+  private int[] neighbors;
+
+  /**
+   * @brief Constructor.
+   * @param parts The number of partitions.
+   */
+  public GraphPartitioner(int parts) {
+    if (parts < 1) {
+      throw new IllegalArgumentException("The number of partitions should be positive");
+    }
+    this.parts = parts;
+  }
+
+  /**
+   * @brief Set the number of streaming passes, 3 by default.
+   */
+  public void setPasses(int passes) {
+    this.passes = passes;
+  }
+
+  /**
+   * @brief Set how much larger than |V| / K a partition may grow, 0.05 by
+   * default.
+   */
+  public void setSlack(double slack) {
+    this.slack = slack;
+  }
+
+  /**
+   * @brief Load the graph from an edge-list file.
+   * @param edgeFile The edge-list file, see EdgeListReader.
+   */
+  public void load(String edgeFile) throws IOException {
+    final int[][] edges = new int[2][1024];
+    final int[] count = new int[1];
+    int threads = Runtime.getRuntime().availableProcessors();
+    new EdgeListReader(edgeFile, threads, 10000).read(
+        new EdgeListReader.EdgeHandler() {
+          public void handle(int worker, int[] src, int[] dest, int[] weight,
+                             int batch) {
+            EdgeListReader.checkIndexIds(src, dest, batch);
+            synchronized (edges) {
+              if (count[0] + batch > edges[0].length) {
+                int capacity = Math.max(edges[0].length * 2, count[0] + batch);
+                edges[0] = Arrays.copyOf(edges[0], capacity);
+                edges[1] = Arrays.copyOf(edges[1], capacity);
+              }
+              System.arraycopy(src, 0, edges[0], count[0], batch);
+              System.arraycopy(dest, 0, edges[1], count[0], batch);
+              count[0] += batch;
+            }
+          }
+        });
+
+    int maxId = -1;
+    for (int i = 0; i < count[0]; ++i) {
+      maxId = Math.max(maxId, Math.max(edges[0][i], edges[1][i]));
+    }
+    this.size = maxId + 1;
+    this.edgeCnt = count[0];
+    this.exists = new boolean[this.size];
+    this.offsets = new int[this.size + 1];
+    for (int i = 0; i < count[0]; ++i) {
+      this.exists[edges[0][i]] = true;
+      this.exists[edges[1][i]] = true;
+      ++this.offsets[edges[0][i] + 1];
+      ++this.offsets[edges[1][i] + 1];
+    }
+    for (int v = 0; v < this.size; ++v) {
+      this.offsets[v + 1] += this.offsets[v];
+    }
+    this.neighbors = new int[2 * count[0]];
+    int[] pos = Arrays.copyOf(this.offsets, this.size);
+    for (int i = 0; i < count[0]; ++i) {
+      this.neighbors[pos[edges[0][i]]++] = edges[1][i];
+      this.neighbors[pos[edges[1][i]]++] = edges[0][i];
+    }
+  }
+
+  /**
+   * @brief Partition the loaded graph.
+   * @return The partition of every vertex, indexed by id, -1 for the ids
+   * that are not vertices.
+   */
+  public int[] partition() {
+    int vertexCnt = 0;
+    for (boolean vertex : this.exists) {
+      if (vertex) ++vertexCnt;
+    }
+    int[] part = new int[this.size];
+    Arrays.fill(part, -1);
+    long[] sizes = new long[this.parts];
+    if (vertexCnt == 0) return part;
+    double capacity = Math.ceil((1 + this.slack) * vertexCnt / this.parts);
+    double alpha = Math.sqrt(this.parts) * this.edgeCnt
+                   / Math.pow(vertexCnt, GAMMA);
+    int[] counts = new int[this.parts];
+
+    for (int pass = 0; pass < Math.max(1, this.passes); ++pass) {
+      for (int v = 0; v < this.size; ++v) {
+        if (!this.exists[v]) continue;
+        if (part[v] >= 0) --sizes[part[v]];
+        Arrays.fill(counts, 0);
+        for (int e = this.offsets[v]; e < this.offsets[v + 1]; ++e) {
+          int u = this.neighbors[e];
+          if (u != v && part[u] >= 0) ++counts[part[u]];
+        }
+        int best = -1;
+        double bestScore = 0;
+        for (int i = 0; i < this.parts; ++i) {
+          if (sizes[i] >= capacity) continue;
+          double score = counts[i]
+                         - alpha * GAMMA * Math.pow(sizes[i], GAMMA - 1);
+          if (best < 0 || score > bestScore
+              || (score == bestScore && sizes[i] < sizes[best])) {
+            best = i;
+            bestScore = score;
+          }
+        }
+        part[v] = best;
+        ++sizes[best];
+      }
+    }
+    return part;
+  }
+
+  /**
+   * @brief Get the fraction of the edges between two partitions.
+   * @param part The partition of every vertex.
+   */
+  public double getCut(int[] part) {
+    long cut = 0;
+    for (int v = 0; v < this.size; ++v) {
+      for (int e = this.offsets[v]; e < this.offsets[v + 1]; ++e) {
+        if (part[this.neighbors[e]] != part[v]) ++cut;
+      }
+    }
+    // Every edge is seen from both ends.
+    return this.edgeCnt == 0 ? 0 : cut / 2.0 / this.edgeCnt;
+  }
+
+  /**
+   * @brief Get the partitions of hashing the ids, id % K.
+   */
+  public int[] hashPartition() {
+    int[] part = new int[this.size];
+    for (int v = 0; v < this.size; ++v) {
+      part[v] = this.exists[v] ? v % this.parts : -1;
+    }
+    return part;
+  }
+
+  /**
+   * @brief Write the partitions as "id part" lines.
+   * @param part The partition of every vertex.
+   * @param filename The file.
+   */
+  public static void write(int[] part, String filename) throws IOException {
+    BufferedWriter writer = new BufferedWriter(new FileWriter(filename));
+    try {
+      for (int v = 0; v < part.length; ++v) {
+        if (part[v] < 0) continue;
+        writer.write(v + " " + part[v]);
+        writer.newLine();
+      }
+    } finally {
+      writer.close();
+    }
+  }
+
+  /**
+   * @brief Read the partitions written by write().
+   * @param filename The file.
+   * @return The partition of every vertex, indexed by id, -1 for the ids
+   * not in the file.
+   */
+  public static int[] read(String filename) throws IOException {
+    int[] part = new int[1024];
+    Arrays.fill(part, -1);
+    BufferedReader reader = new BufferedReader(new FileReader(filename));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String[] tokens = line.trim().split("\\s+");
+        if (tokens.length < 2) continue;
+        int v = Integer.parseInt(tokens[0]);
+        if (v >= part.length) {
+          int length = part.length;
+          part = Arrays.copyOf(part, Math.max(2 * length, v + 1));
+          Arrays.fill(part, length, part.length, -1);
+        }
+        part[v] = Integer.parseInt(tokens[1]);
+      }
+    } finally {
+      reader.close();
+    }
+    return part;
+  }
+
+  /**
+   * @brief Store the partitions in the table vertex_part(id, part),
+   * dropping the old one.
+   * @param conn The connection.
+   * @param part The partition of every vertex.
+   * @param batchSize The number of rows in an insert batch.
+   */
+  public static void store(Connection conn, int[] part, int batchSize)
+      throws Exception {
+    Statement stmt = conn.createStatement();
+    stmt.execute("DROP TABLE IF EXISTS vertex_part");
+    stmt.execute("CREATE TABLE vertex_part(id int, part int)");
+    stmt.close();
+    BatchInserter inserter = new BatchInserter(conn, "vertex_part", 2, batchSize);
+    for (int v = 0; v < part.length; ++v) {
+      if (part[v] < 0) continue;
+      inserter.set(1, v);
+      inserter.set(2, part[v]);
+      inserter.addRow();
+    }
+    inserter.close();
+  }
+
+  /**
+   * @brief Main function.
+   * @param args See the usage in the class comment.
+   */
+  public static void main(String[] args) throws Exception {
+    int parts = 0;
+    int passes = 3;
+    double slack = 0.05;
+    String out = null;
+    String url = null;
+    String edgeFile = null;
+    for (int i = 0; i < args.length; ++i) {
+      switch (args[i]) {
+        case "-parts": parts = Integer.parseInt(args[++i]); break;
+        case "-passes": passes = Integer.parseInt(args[++i]); break;
+        case "-slack": slack = Double.parseDouble(args[++i]); break;
+        case "-out": out = args[++i]; break;
+        case "-url": url = args[++i]; break;
+        default:
+          if (args[i].startsWith("-") || edgeFile != null) {
+            System.err.println("Unknown option " + args[i]);
+            System.exit(1);
+          }
+          edgeFile = args[i];
+      }
+    }
+    if (parts < 1 || edgeFile == null || (out == null && url == null)) {
+      System.err.println("Give -parts, -out or -url, and the edge-list file.");
+      System.exit(1);
+    }
+    GraphPartitioner partitioner = new GraphPartitioner(parts);
+    partitioner.setPasses(passes);
+    partitioner.setSlack(slack);
+    long start = System.currentTimeMillis();
+    partitioner.load(edgeFile);
+    int[] part = partitioner.partition();
+    System.out.printf("Partitioned in %d ms, %.1f%% of the edges cut"
+                      + " (%.1f%% by id %% %d).%n",
+                      System.currentTimeMillis() - start,
+                      100 * partitioner.getCut(part),
+                      100 * partitioner.getCut(partitioner.hashPartition()), parts);
+    if (out != null) {
+      write(part, out);
+    }
+    if (url != null) {
+      Connection conn = DriverManager.getConnection(url);
+      store(conn, part, 10000);
+      conn.close();
+    }
+  }
+}
@@ -0,0 +1,95 @@
+/**
+ * This file copyright (c) 2015-2016, Jing Fan, Adalbert Gerald Soosai Raj, and Jignesh M. Patel
+ *
+ * See the file CREDITS.txt in the root directory for details.
+ **/
+
+package Graph;
+
+import java.sql.Types;
+
+/**
+ * @brief Constants of the columnar binary snapshot format, which is used to
+ * move tables (vertex state such as next, or edge lists) between the
+ * database and JVM-side tools. Layout, all numbers in little endian:
+ *
+ * header: magic "GRLS", version, column count, then for every column the
+ *         name (short length + UTF-8 bytes), type and encoding (one byte
+ *         each), then the maximum number of rows in a chunk.
+ * chunk:  row count, payload length, the min and max of the first column
+ *         (to skip chunks without reading them), then for every column the
+ *         length of its data and the data.
+ * column: a flag byte, 1 if the column has NULLs in the chunk, then the
+ *         null bitmap (one bit per row, low bit first), then the values.
+ *         A NULL is stored as 0 (a zero delta in DELTA_VARINT), and the
+ *         min and max of the first column skip it.
+ * end:    a chunk with zero rows.
+ *
+ * Version 1 files have no flag nor bitmap, and are still read.
+ *
+ * Encodings: PLAIN stores 4 (INT) or 8 (BIGINT, FLOAT) bytes per value.
+ * VARINT stores zigzag varints. DELTA_VARINT stores the zigzag varint of
+ * the difference with the previous value in the chunk, which suits sorted
+ * id columns.
+ */
+public class Snapshot {
+  public static final int MAGIC = 0x534C5247;
+  public static final int VERSION = 2;
+
+  // Column types. FLOAT is a double precision real, as float in T-SQL.
+  public static final byte INT = 0;
+  public static final byte BIGINT = 1;
+  public static final byte FLOAT = 2;
+
+  // Column encodings.
+  public static final byte PLAIN = 0;
+  public static final byte VARINT = 1;
+  public static final byte DELTA_VARINT = 2;
+
+  // Size of the fixed part of a chunk header.
+  static final int CHUNK_HEADER_SIZE = 4 + 4 + 8 + 8;
+
+  /**
+   * @brief Get the type from its name in SQL.
+   * @param name The type name, such as INT or float.
+   * @return The type.
+   */
+  public static byte typeOf(String name) {
+    switch (name.trim().toUpperCase()) {
+      case "INT": case "INTEGER": case "SMALLINT": case "TINYINT":
+        return INT;
+      case "BIGINT":
+        return BIGINT;
+      case "FLOAT": case "REAL": case "DOUBLE": case "DOUBLE PRECISION":
+      case "DECIMAL": case "NUMERIC":
+        return FLOAT;
+    }
+    throw new IllegalArgumentException("Unsupported column type: " + name);
+  }
+
+  /**
+   * @brief Get the name of the type in SQL.
+   * @param type The type.
+   * @return The type name.
+   */
+  public static String sqlType(byte type) {
+    switch (type) {
+      case INT: return "int";
+      case BIGINT: return "bigint";
+      default: return "float";
+    }
+  }
+
+  /**
+   * @brief Get the type in JDBC.
+   * @param type The type.
+   * @return The type, from java.sql.Types.
+   */
+  public static int jdbcType(byte type) {
+    switch (type) {
+      case INT: return Types.INTEGER;
+      case BIGINT: return Types.BIGINT;
+      default: return Types.DOUBLE;
+    }
+  }
+}
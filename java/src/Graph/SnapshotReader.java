@@ -0,0 +1,281 @@
+/**
+ * This file copyright (c) 2015-2016, Jing Fan, Adalbert Gerald Soosai Raj, and Jignesh M. Patel
+ *
+ * See the file CREDITS.txt in the root directory for details.
+ **/
+
+package Graph;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * @brief Streaming reader of the columnar snapshot format (see Snapshot).
+ * Chunks are memory-mapped one at a time, and a column is only decoded when
+ * it is asked for, so chunks can be skipped by looking at the min and max of
+ * the first column. Example:
+ * SnapshotReader reader = new SnapshotReader("next.grls");
+ * while (reader.nextChunk()) {
+ *   long[] ids = reader.getLongs(0);
+ *   double[] vals = reader.getDoubles(1);
+ *   for (int i = 0; i < reader.getRows(); ++i) {
+ *     if (reader.isNull(1, i)) ...
+ *   }
+ * }
+ * reader.close();
+ */
+public class SnapshotReader implements AutoCloseable {
+  private FileChannel channel;
+  private String[] names;
+  private byte[] types;
+  private byte[] encodings;
+  private int chunkRows;
+  // Whether the columns have null bitmaps, from version 2.
+  private boolean nullable;
+  // The file position of the next chunk.
+  private long pos;
+  // The current chunk.
+  private int rows;
+  private long min;
+  private long max;
+  private MappedByteBuffer payload;
+  // The offset of the values and of the null bitmap of every column in the
+  // payload, -1 for the columns without NULLs in the chunk.
+  private int[] offsets;
+  private int[] nullOffsets;
+  // Decoded columns, reused for every chunk.
+  private long[][] longs;
+  private double[][] doubles;
+  // Whether the column is decoded into its own type for the current chunk.
+  private boolean[] decoded;
+
+  /**
+   * @brief Constructor. It reads the header of the file.
+   * @param filename The path of the snapshot file.
+   */
+  public SnapshotReader(String filename) throws IOException {
+    this.channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+    ByteBuffer buffer = this.readAt(0, 12);
+    if (buffer.getInt() != Snapshot.MAGIC) {
+      throw new IOException(filename + " is not a snapshot file");
+    }
+    int version = buffer.getInt();
+    if (version < 1 || version > Snapshot.VERSION) {
+      throw new IOException("Unsupported snapshot version in " + filename);
+    }
+    this.nullable = version >= 2;
+    int columns = buffer.getInt();
+    this.pos = 12;
+    this.names = new String[columns];
+    this.types = new byte[columns];
+    this.encodings = new byte[columns];
+    for (int i = 0; i < columns; ++i) {
+      int len = this.readAt(this.pos, 2).getShort();
+      buffer = this.readAt(this.pos + 2, len + 2);
+      byte[] name = new byte[len];
+      buffer.get(name);
+      this.names[i] = new String(name, StandardCharsets.UTF_8);
+      this.types[i] = buffer.get();
+      this.encodings[i] = buffer.get();
+      this.pos += 2 + len + 2;
+    }
+    this.chunkRows = this.readAt(this.pos, 4).getInt();
+    this.pos += 4;
+    this.offsets = new int[columns];
+    this.nullOffsets = new int[columns];
+    this.decoded = new boolean[columns];
+    this.longs = new long[columns][];
+    this.doubles = new double[columns][];
+  }
+
+  /**
+   * @brief Read bytes at the position of the file.
+   * @return The buffer, ready to get.
+   */
+  private ByteBuffer readAt(long position, int len) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(len).order(ByteOrder.LITTLE_ENDIAN);
+    while (buffer.hasRemaining()) {
+      if (this.channel.read(buffer, position + buffer.position()) < 0) {
+        throw new IOException("Unexpected end of snapshot file");
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  /**
+   * @brief Getters.
+   */
+  public String[] getNames() {
+    return this.names;
+  }
+
+  public byte[] getTypes() {
+    return this.types;
+  }
+
+  public int getChunkRows() {
+    return this.chunkRows;
+  }
+
+  public int getRows() {
+    return this.rows;
+  }
+
+  public long getMin() {
+    return this.min;
+  }
+
+  public long getMax() {
+    return this.max;
+  }
+
+  /**
+   * @brief Get the index of a column.
+   * @param name The column name.
+   * @return The column index, or -1 if there is no such column.
+   */
+  public int getColumn(String name) {
+    for (int i = 0; i < this.names.length; ++i) {
+      if (this.names[i].equals(name)) return i;
+    }
+    return -1;
+  }
+
+  /**
+   * @brief Move to the next chunk. Only the chunk header is read.
+   * @return False if there are no chunks left.
+   */
+  public boolean nextChunk() throws IOException {
+    ByteBuffer header = this.readAt(this.pos, Snapshot.CHUNK_HEADER_SIZE);
+    this.rows = header.getInt();
+    int payloadLen = header.getInt();
+    this.min = header.getLong();
+    this.max = header.getLong();
+    if (this.rows == 0) {
+      this.payload = null;
+      return false;
+    }
+    this.payload = this.channel.map(FileChannel.MapMode.READ_ONLY,
+                                    this.pos + Snapshot.CHUNK_HEADER_SIZE,
+                                    payloadLen);
+    this.payload.order(ByteOrder.LITTLE_ENDIAN);
+    int offset = 0;
+    for (int c = 0; c < this.names.length; ++c) {
+      this.offsets[c] = offset + 4;
+      this.nullOffsets[c] = -1;
+      if (this.nullable) {
+        if (this.payload.get(offset + 4) != 0) {
+          this.nullOffsets[c] = offset + 5;
+          this.offsets[c] += (this.rows + 7) / 8;
+        }
+        ++this.offsets[c];
+      }
+      offset += 4 + this.payload.getInt(offset);
+      this.decoded[c] = false;
+    }
+    this.pos += Snapshot.CHUNK_HEADER_SIZE + payloadLen;
+    return true;
+  }
+
+  /**
+   * @brief Whether a value of the current chunk is NULL.
+   * @param c The column index.
+   * @param i The row in the chunk.
+   */
+  public boolean isNull(int c, int i) {
+    int p = this.nullOffsets[c];
+    return p >= 0 && (this.payload.get(p + (i >> 3)) & (1 << (i & 7))) != 0;
+  }
+
+  /**
+   * @brief Get an integer column of the current chunk.
+   * @param c The column index.
+   * @return The values, only the first getRows() of them are valid.
+   */
+  public long[] getLongs(int c) {
+    if (this.longs[c] == null) this.longs[c] = new long[this.chunkRows];
+    long[] vals = this.longs[c];
+    if (this.types[c] == Snapshot.FLOAT) {
+      double[] reals = this.getDoubles(c);
+      for (int i = 0; i < this.rows; ++i) vals[i] = (long) reals[i];
+      return vals;
+    }
+    if (this.decoded[c]) return vals;
+    ByteBuffer buffer = this.payload;
+    int p = this.offsets[c];
+    switch (this.encodings[c]) {
+      case Snapshot.PLAIN:
+        for (int i = 0; i < this.rows; ++i) {
+          if (this.types[c] == Snapshot.INT) {
+            vals[i] = buffer.getInt(p);
+            p += 4;
+          } else {
+            vals[i] = buffer.getLong(p);
+            p += 8;
+          }
+        }
+        break;
+      case Snapshot.VARINT:
+      case Snapshot.DELTA_VARINT:
+        long prev = 0;
+        boolean delta = this.encodings[c] == Snapshot.DELTA_VARINT;
+        for (int i = 0; i < this.rows; ++i) {
+          long raw = 0;
+          int shift = 0;
+          byte b;
+          do {
+            b = buffer.get(p++);
+            raw |= (long) (b & 0x7F) << shift;
+            shift += 7;
+          } while (b < 0);
+          long val = (raw >>> 1) ^ -(raw & 1);
+          if (delta) {
+            val += prev;
+            prev = val;
+          }
+          vals[i] = val;
+        }
+        break;
+    }
+    this.decoded[c] = true;
+    return vals;
+  }
+
+  /**
+   * @brief Get a real column of the current chunk.
+   * @param c The column index.
+   * @return The values, only the first getRows() of them are valid.
+   */
+  public double[] getDoubles(int c) {
+    if (this.doubles[c] == null) this.doubles[c] = new double[this.chunkRows];
+    double[] vals = this.doubles[c];
+    if (this.types[c] != Snapshot.FLOAT) {
+      long[] ints = this.getLongs(c);
+      for (int i = 0; i < this.rows; ++i) vals[i] = ints[i];
+      return vals;
+    }
+    if (this.decoded[c]) return vals;
+    int p = this.offsets[c];
+    for (int i = 0; i < this.rows; ++i) {
+      vals[i] = this.payload.getDouble(p);
+      p += 8;
+    }
+    this.decoded[c] = true;
+    return vals;
+  }
+
+  /**
+   * @brief Close the file.
+   */
+  public void close() throws IOException {
+    this.payload = null;
+    this.channel.close();
+  }
+}
@@ -0,0 +1,177 @@
+/**
+ * This file copyright (c) 2015-2016, Jing Fan, Adalbert Gerald Soosai Raj, and Jignesh M. Patel
+ *
+ * See the file CREDITS.txt in the root directory for details.
+ **/
+
+package Graph;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Statement;
+
+/**
+ * @brief Export a table (e.g. next) into a snapshot file, or import a
+ * snapshot file into a table. The rows are exported in the order of the
+ * first column, which is delta encoded. SQL NULLs are kept in the null
+ * bitmaps of the snapshot. Usage:
+ * java Graph.SnapshotTool export -url <jdbc url> -table next next.grls
+ * java Graph.SnapshotTool import -url <jdbc url> -table next_copy next.grls
+ * Other options: [-user u] [-password p] [-chunk rows] [-batch rows]
+ */
+public class SnapshotTool {
+
+  /**
+   * @brief Export a table into a snapshot file.
+   * @param conn The connection.
+   * @param table The table name.
+   * @param filename The path of the snapshot file.
+   * @param chunkRows The number of rows in a chunk.
+   * @return The number of rows exported.
+   */
+  public static long export(Connection conn,
+                            String table,
+                            String filename,
+                            int chunkRows) throws Exception {
+    conn.setAutoCommit(false);
+    Statement stmt = conn.createStatement();
+    stmt.setFetchSize(chunkRows);
+    ResultSet rs = stmt.executeQuery("SELECT * FROM " + table + " ORDER BY 1");
+    ResultSetMetaData meta = rs.getMetaData();
+    int columns = meta.getColumnCount();
+    String[] names = new String[columns];
+    byte[] types = new byte[columns];
+    byte[] encodings = new byte[columns];
+    for (int c = 0; c < columns; ++c) {
+      names[c] = meta.getColumnName(c + 1).toLowerCase();
+      types[c] = Snapshot.typeOf(meta.getColumnTypeName(c + 1));
+      if (types[c] == Snapshot.FLOAT) {
+        encodings[c] = Snapshot.PLAIN;
+      } else {
+        encodings[c] = c == 0 ? Snapshot.DELTA_VARINT : Snapshot.VARINT;
+      }
+    }
+    SnapshotWriter writer = new SnapshotWriter(filename, names, types,
+                                               encodings, chunkRows);
+    while (rs.next()) {
+      for (int c = 0; c < columns; ++c) {
+        if (types[c] == Snapshot.FLOAT) {
+          writer.set(c, rs.getDouble(c + 1));
+        } else {
+          writer.set(c, rs.getLong(c + 1));
+        }
+        if (rs.wasNull()) {
+          writer.setNull(c);
+        }
+      }
+      writer.addRow();
+    }
+    writer.close();
+    rs.close();
+    stmt.close();
+    return writer.getRowCount();
+  }
+
+  /**
+   * @brief Import a snapshot file into a new table.
+   * @param conn The connection.
+   * @param table The table name, the old table is dropped.
+   * @param filename The path of the snapshot file.
+   * @param batchSize The number of rows in an insert batch.
+   * @return The number of rows imported.
+   */
+  public static long load(Connection conn,
+                          String table,
+                          String filename,
+                          int batchSize) throws Exception {
+    SnapshotReader reader = new SnapshotReader(filename);
+    String[] names = reader.getNames();
+    byte[] types = reader.getTypes();
+    StringBuilder ddl = new StringBuilder("CREATE TABLE " + table + "(");
+    for (int c = 0; c < names.length; ++c) {
+      ddl.append((c == 0 ? "" : ", ") + names[c] + " "
+                 + Snapshot.sqlType(types[c]));
+    }
+    ddl.append(")");
+    Statement stmt = conn.createStatement();
+    stmt.execute("DROP TABLE IF EXISTS " + table);
+    stmt.execute(ddl.toString());
+    stmt.close();
+
+    BatchInserter inserter = new BatchInserter(conn, table, names.length,
+                                               batchSize);
+    long rowCnt = 0;
+    while (reader.nextChunk()) {
+      int rows = reader.getRows();
+      for (int c = 0; c < names.length; ++c) {
+        if (types[c] == Snapshot.FLOAT) {
+          reader.getDoubles(c);
+        } else {
+          reader.getLongs(c);
+        }
+      }
+      for (int i = 0; i < rows; ++i) {
+        for (int c = 0; c < names.length; ++c) {
+          if (reader.isNull(c, i)) {
+            inserter.setNull(c + 1, Snapshot.jdbcType(types[c]));
+          } else if (types[c] == Snapshot.FLOAT) {
+            inserter.set(c + 1, reader.getDoubles(c)[i]);
+          } else {
+            inserter.set(c + 1, reader.getLongs(c)[i]);
+          }
+        }
+        inserter.addRow();
+      }
+      rowCnt += rows;
+    }
+    inserter.close();
+    reader.close();
+    return rowCnt;
+  }
+
+  /**
+   * @brief Main function.
+   * @param args See the usage in the class comment.
+   */
+  public static void main(String[] args) throws Exception {
+    String url = null;
+    String user = null;
+    String password = null;
+    String table = null;
+    String filename = null;
+    int chunkRows = 65536;
+    int batchSize = 10000;
+    String command = args.length > 0 ? args[0] : "";
+    for (int i = 1; i < args.length; ++i) {
+      switch (args[i]) {
+        case "-url": url = args[++i]; break;
+        case "-user": user = args[++i]; break;
+        case "-password": password = args[++i]; break;
+        case "-table": table = args[++i]; break;
+        case "-chunk": chunkRows = Integer.parseInt(args[++i]); break;
+        case "-batch": batchSize = Integer.parseInt(args[++i]); break;
+        default: filename = args[i]; break;
+      }
+    }
+    if (!(command.equals("export") || command.equals("import"))
+        || url == null || table == null || filename == null) {
+      System.err.println("Usage: java Graph.SnapshotTool export|import "
+                         + "-url <jdbc url> -table <table> [-user u] "
+                         + "[-password p] [-chunk rows] [-batch rows] <file>");
+      System.exit(1);
+    }
+    Connection conn = user == null ? DriverManager.getConnection(url)
+                                   : DriverManager.getConnection(url, user,
+                                                                 password);
+    long start = System.currentTimeMillis();
+    long rowCnt = command.equals("export")
+                  ? export(conn, table, filename, chunkRows)
+                  : load(conn, table, filename, batchSize);
+    conn.close();
+    System.out.println((command.equals("export") ? "Exported " : "Imported ")
+                       + rowCnt + " rows in "
+                       + (System.currentTimeMillis() - start) + " ms.");
+  }
+}
@@ -0,0 +1,313 @@
+/**
+ * This file copyright (c) 2015-2016, Jing Fan, Adalbert Gerald Soosai Raj, and Jignesh M. Patel
+ *
+ * See the file CREDITS.txt in the root directory for details.
+ **/
+
+package Graph;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * @brief Streaming writer of the columnar snapshot format (see Snapshot).
+ * Rows are buffered until a chunk is full, then every column of the chunk
+ * is encoded and written. Example:
+ * SnapshotWriter writer = new SnapshotWriter("next.grls",
+ *     new String[] {"id", "val"},
+ *     new byte[] {Snapshot.INT, Snapshot.FLOAT},
+ *     new byte[] {Snapshot.DELTA_VARINT, Snapshot.PLAIN},
+ *     65536);
+ * writer.set(0, id);
+ * writer.set(1, val); // or writer.setNull(1);
+ * writer.addRow();
+ * writer.close();
+ */
+public class SnapshotWriter implements AutoCloseable {
+  private OutputStream out;
+  private byte[] types;
+  private byte[] encodings;
+  private int chunkRows;
+  // Buffered values of the current chunk, integer columns use longs and
+  // real columns use doubles.
+  private long[][] longs;
+  private double[][] doubles;
+  // The null bitmap of every column in the current chunk, and whether the
+  // column has any NULL in it.
+  private byte[][] nulls;
+  private boolean[] hasNulls;
+  private int rowCnt = 0;
+  private long totalRows = 0;
+  // Buffer for encoding a column.
+  private ByteBuffer colBuffer;
+  // Buffer for the chunk header.
+  private ByteBuffer header = ByteBuffer.allocate(Snapshot.CHUNK_HEADER_SIZE)
+                                       .order(ByteOrder.LITTLE_ENDIAN);
+
+  /**
+   * @brief Constructor.
+   * @param filename The path of the snapshot file.
+   * @param names The column names.
+   * @param types The column types.
+   * @param encodings The column encodings.
+   * @param chunkRows The maximum number of rows in a chunk.
+   */
+  public SnapshotWriter(String filename,
+                        String[] names,
+                        byte[] types,
+                        byte[] encodings,
+                        int chunkRows) throws IOException {
+    this(new BufferedOutputStream(new FileOutputStream(filename), 1 << 20),
+         names, types, encodings, chunkRows);
+  }
+
+  /**
+   * @brief Constructor.
+   * @param out The output stream, closed by close().
+   * @param names The column names.
+   * @param types The column types.
+   * @param encodings The column encodings.
+   * @param chunkRows The maximum number of rows in a chunk.
+   */
+  public SnapshotWriter(OutputStream out,
+                        String[] names,
+                        byte[] types,
+                        byte[] encodings,
+                        int chunkRows) throws IOException {
+    this.out = out;
+    this.types = types;
+    this.encodings = encodings;
+    this.chunkRows = chunkRows;
+    this.longs = new long[names.length][];
+    this.doubles = new double[names.length][];
+    this.nulls = new byte[names.length][(chunkRows + 7) / 8];
+    this.hasNulls = new boolean[names.length];
+    for (int i = 0; i < names.length; ++i) {
+      if (types[i] == Snapshot.FLOAT) {
+        if (encodings[i] != Snapshot.PLAIN) {
+          throw new IllegalArgumentException("FLOAT column " + names[i]
+                                             + " must use PLAIN encoding");
+        }
+        this.doubles[i] = new double[chunkRows];
+      } else {
+        this.longs[i] = new long[chunkRows];
+      }
+    }
+    // A varint takes at most 10 bytes, after the flag and the bitmap.
+    this.colBuffer = ByteBuffer.allocate(1 + (chunkRows + 7) / 8
+                                         + chunkRows * 10)
+                               .order(ByteOrder.LITTLE_ENDIAN);
+
+    byte[][] nameBytes = new byte[names.length][];
+    int headerLen = 4 * 4;
+    for (int i = 0; i < names.length; ++i) {
+      nameBytes[i] = names[i].getBytes(StandardCharsets.UTF_8);
+      headerLen += 2 + nameBytes[i].length + 2;
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(headerLen)
+                                  .order(ByteOrder.LITTLE_ENDIAN);
+    buffer.putInt(Snapshot.MAGIC);
+    buffer.putInt(Snapshot.VERSION);
+    buffer.putInt(names.length);
+    for (int i = 0; i < names.length; ++i) {
+      buffer.putShort((short) nameBytes[i].length);
+      buffer.put(nameBytes[i]);
+      buffer.put(types[i]);
+      buffer.put(encodings[i]);
+    }
+    buffer.putInt(chunkRows);
+    this.out.write(buffer.array(), 0, buffer.position());
+  }
+
+  /**
+   * @brief Set an integer column of the current row.
+   * @param column The column index, starting from 0.
+   * @param val The value.
+   */
+  public void set(int column, long val) {
+    if (this.longs[column] == null) {
+      this.doubles[column][this.rowCnt] = val;
+    } else {
+      this.longs[column][this.rowCnt] = val;
+    }
+  }
+
+  /**
+   * @brief Set a real column of the current row.
+   * @param column The column index, starting from 0.
+   * @param val The value.
+   */
+  public void set(int column, double val) {
+    if (this.doubles[column] == null) {
+      this.longs[column][this.rowCnt] = (long) val;
+    } else {
+      this.doubles[column][this.rowCnt] = val;
+    }
+  }
+
+  /**
+   * @brief Set a column of the current row to NULL.
+   * @param column The column index, starting from 0.
+   */
+  public void setNull(int column) {
+    this.set(column, 0L);
+    this.nulls[column][this.rowCnt >> 3] |= 1 << (this.rowCnt & 7);
+    this.hasNulls[column] = true;
+  }
+
+  private boolean isNull(int column, int row) {
+    return (this.nulls[column][row >> 3] & (1 << (row & 7))) != 0;
+  }
+
+  /**
+   * @brief Add the current row.
+   */
+  public void addRow() throws IOException {
+    if (++this.rowCnt == this.chunkRows) {
+      this.flush();
+    }
+  }
+
+  /**
+   * @brief Get the number of rows written.
+   * @return The number of rows.
+   */
+  public long getRowCount() {
+    return this.totalRows + this.rowCnt;
+  }
+
+  /**
+   * @brief Write out the buffered rows as a chunk.
+   */
+  public void flush() throws IOException {
+    if (this.rowCnt == 0) return;
+    long min = Long.MAX_VALUE;
+    long max = Long.MIN_VALUE;
+    for (int i = 0; i < this.rowCnt; ++i) {
+      if (this.isNull(0, i)) continue;
+      long val = this.longs[0] == null ? (long) this.doubles[0][i]
+                                       : this.longs[0][i];
+      min = Math.min(min, val);
+      max = Math.max(max, val);
+    }
+    if (min > max) {
+      // The first column is all NULL.
+      min = 0;
+      max = 0;
+    }
+    // Encode all the columns first to know the payload length.
+    byte[][] payloads = new byte[this.types.length][];
+    int payloadLen = 0;
+    for (int c = 0; c < this.types.length; ++c) {
+      this.colBuffer.clear();
+      this.encode(c);
+      payloads[c] = new byte[this.colBuffer.position()];
+      this.colBuffer.flip();
+      this.colBuffer.get(payloads[c]);
+      payloadLen += 4 + payloads[c].length;
+    }
+    this.header.clear();
+    this.header.putInt(this.rowCnt);
+    this.header.putInt(payloadLen);
+    this.header.putLong(min);
+    this.header.putLong(max);
+    this.out.write(this.header.array(), 0, this.header.position());
+    for (byte[] payload : payloads) {
+      this.header.clear();
+      this.header.putInt(payload.length);
+      this.out.write(this.header.array(), 0, 4);
+      this.out.write(payload);
+    }
+    this.totalRows += this.rowCnt;
+    this.rowCnt = 0;
+    for (int c = 0; c < this.types.length; ++c) {
+      if (this.hasNulls[c]) {
+        Arrays.fill(this.nulls[c], (byte) 0);
+        this.hasNulls[c] = false;
+      }
+    }
+  }
+
+  /**
+   * @brief Encode a column of the current chunk into colBuffer.
+   * @param c The column index.
+   */
+  private void encode(int c) {
+    ByteBuffer buffer = this.colBuffer;
+    buffer.put((byte) (this.hasNulls[c] ? 1 : 0));
+    if (this.hasNulls[c]) {
+      buffer.put(this.nulls[c], 0, (this.rowCnt + 7) / 8);
+    }
+    if (this.types[c] == Snapshot.FLOAT) {
+      for (int i = 0; i < this.rowCnt; ++i) {
+        buffer.putDouble(this.doubles[c][i]);
+      }
+      return;
+    }
+    long[] vals = this.longs[c];
+    switch (this.encodings[c]) {
+      case Snapshot.PLAIN:
+        for (int i = 0; i < this.rowCnt; ++i) {
+          if (this.types[c] == Snapshot.INT) {
+            buffer.putInt((int) vals[i]);
+          } else {
+            buffer.putLong(vals[i]);
+          }
+        }
+        break;
+      case Snapshot.VARINT:
+        for (int i = 0; i < this.rowCnt; ++i) {
+          putVarLong(buffer, zigzag(vals[i]));
+        }
+        break;
+      case Snapshot.DELTA_VARINT:
+        long prev = 0;
+        for (int i = 0; i < this.rowCnt; ++i) {
+          // A NULL repeats the previous value, so it costs one byte.
+          long val = this.isNull(c, i) ? prev : vals[i];
+          putVarLong(buffer, zigzag(val - prev));
+          prev = val;
+        }
+        break;
+    }
+  }
+
+  /**
+   * @brief Zigzag encoding, which maps small negative numbers to small
+   * unsigned numbers.
+   */
+  static long zigzag(long val) {
+    return (val << 1) ^ (val >> 63);
+  }
+
+  /**
+   * @brief Append an unsigned varint, 7 bits per byte, low bits first.
+   */
+  static void putVarLong(ByteBuffer buffer, long val) {
+    while ((val & ~0x7FL) != 0) {
+      buffer.put((byte) ((val & 0x7F) | 0x80));
+      val >>>= 7;
+    }
+    buffer.put((byte) val);
+  }
+
+  /**
+   * @brief Write the last chunk and the end mark, and close the stream.
+   */
+  public void close() throws IOException {
+    this.flush();
+    this.header.clear();
+    this.header.putInt(0);
+    this.header.putInt(0);
+    this.header.putLong(0);
+    this.header.putLong(0);
+    this.out.write(this.header.array(), 0, this.header.position());
+    this.out.close();
+  }
+}
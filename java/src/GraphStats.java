@@ -0,0 +1,186 @@
+/**
+ * This file copyright (c) 2015-2016, Jing Fan, Adalbert Gerald Soosai Raj, and Jignesh M. Patel
+ *
+ * See the file CREDITS.txt in the root directory for details.
+ **/
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.TreeMap;
+
+import Graph.EdgeListReader;
+
+/**
+ * @brief Statistics of a graph, used by CostEstimator. They are read from a
+ * file with one "key value" pair per line:
+ *
+ * vertices 4847571
+ * edges 68993773
+ * // The fraction of the vertices receiving messages that change their
+ * // value shrinks by this factor every superstep.
+ * decay 0.5
+ * // (Optional) the out-degree histogram, one line per degree.
+ * degree 1 1250000
+ * degree 2 600000
+ * // (Optional) supersteps estimated for NO_MESSAGE programs that do not
+ * // converge, and the edge rows a run may touch before it is flagged.
+ * maxSupersteps 100
+ * edgeBudget 1000000000
+ */
+public class GraphStats {
+  private long vertices = 0;
+  private long edges = 0;
+  private double decay = 0.5;
+  private int maxSupersteps = 100;
+  // 0 means 20 times the edges.
+  private double edgeBudget = 0;
+  // Out-degree -> the number of vertices.
+  private TreeMap<Long, Long> degrees = new TreeMap<Long, Long>();
+
+  /**
+   * @brief Constructor.
+   * @param vertices |V|.
+   * @param edges |E|.
+   * @param decay The expected frontier decay.
+   */
+  public GraphStats(long vertices, long edges, double decay) {
+    this.vertices = vertices;
+    this.edges = edges;
+    this.decay = decay;
+  }
+
+  /**
+   * @brief Read the statistics from a file.
+   * @param filename The file path.
+   * @return The statistics.
+   */
+  public static GraphStats parse(String filename) throws IOException {
+    GraphStats stats = new GraphStats(0, 0, 0.5);
+    BufferedReader reader = new BufferedReader(new FileReader(filename));
+    String line;
+    while ((line = reader.readLine()) != null) {
+      line = line.trim();
+      if (line.isEmpty() || line.startsWith("//") || line.startsWith("#")) {
+        continue;
+      }
+      String[] tokens = line.split("\\s+");
+      switch (tokens[0]) {
+        case "vertices": stats.vertices = Long.parseLong(tokens[1]); break;
+        case "edges": stats.edges = Long.parseLong(tokens[1]); break;
+        case "decay": stats.decay = Double.parseDouble(tokens[1]); break;
+        case "maxSupersteps": stats.maxSupersteps = Integer.parseInt(tokens[1]); break;
+        case "edgeBudget": stats.edgeBudget = Double.parseDouble(tokens[1]); break;
+        case "degree":
+          stats.degrees.put(Long.parseLong(tokens[1]), Long.parseLong(tokens[2]));
+          break;
+        default:
+          reader.close();
+          throw new IOException("Unknown statistic " + tokens[0] + " in " + filename);
+      }
+    }
+    reader.close();
+    if (stats.vertices <= 0 || stats.edges < 0) {
+      throw new IOException("vertices and edges must be given in " + filename);
+    }
+    return stats;
+  }
+
+  /**
+   * @brief Compute the statistics of an edge-list file, the vertices are the
+   * ids from 1 to the largest one.
+   * @param filename The edge-list file path, see Graph.EdgeListReader.
+   * @param decay The expected frontier decay.
+   * @return The statistics.
+   */
+  public static GraphStats fromEdgeList(String filename, double decay)
+      throws IOException {
+    int threads = Runtime.getRuntime().availableProcessors();
+    EdgeListReader reader = new EdgeListReader(filename, threads, 65536);
+    final int[][] outDegrees = new int[threads][1024];
+    // The largest id seen by every worker.
+    final int[] maxIds = new int[threads];
+    long edges = reader.read(new EdgeListReader.EdgeHandler() {
+        public void handle(int worker, int[] src, int[] dest, int[] weight,
+                           int count) {
+          int[] degrees = outDegrees[worker];
+          for (int i = 0; i < count; ++i) {
+            int id = Math.max(src[i], dest[i]);
+            maxIds[worker] = Math.max(maxIds[worker], id);
+            if (id >= degrees.length) {
+              int[] grown = new int[Math.max(id + 1, degrees.length * 2)];
+              System.arraycopy(degrees, 0, grown, 0, degrees.length);
+              degrees = grown;
+              outDegrees[worker] = degrees;
+            }
+            ++degrees[src[i]];
+          }
+        }
+      });
+    int maxId = 0;
+    for (int id : maxIds) {
+      maxId = Math.max(maxId, id);
+    }
+    // Vertex ids start from 1.
+    GraphStats stats = new GraphStats(maxId, edges, decay);
+    long[] merged = new long[maxId + 1];
+    for (int[] degrees : outDegrees) {
+      for (int id = 0; id < degrees.length && id <= maxId; ++id) {
+        merged[id] += degrees[id];
+      }
+    }
+    for (int id = 1; id <= maxId; ++id) {
+      Long count = stats.degrees.get(merged[id]);
+      stats.degrees.put(merged[id], count == null ? 1 : count + 1);
+    }
+    return stats;
+  }
+
+  /**
+   * @brief Getters.
+   */
+  public long getVertices() {
+    return this.vertices;
+  }
+
+  public long getEdges() {
+    return this.edges;
+  }
+
+  public double getDecay() {
+    return this.decay;
+  }
+
+  public int getMaxSupersteps() {
+    return this.maxSupersteps;
+  }
+
+  public double getEdgeBudget() {
+    return this.edgeBudget > 0 ? this.edgeBudget : 20.0 * this.edges;
+  }
+
+  /**
+   * @brief Get the average out-degree.
+   */
+  public double getAvgDegree() {
+    return this.vertices == 0 ? 0 : (double) this.edges / this.vertices;
+  }
+
+  /**
+   * @brief Get the expected out-degree of a vertex reached through an edge,
+   * E[d^2] / E[d]. High-degree vertices are reached more often, so frontiers
+   * after the first superstep touch more edges than the average degree
+   * suggests. Without a histogram the degrees are assumed to be uniform.
+   */
+  public double getReachedDegree() {
+    double sum = 0;
+    double sumSq = 0;
+    for (Long degree : this.degrees.keySet()) {
+      double count = this.degrees.get(degree);
+      sum += count * degree;
+      sumSq += count * degree * degree;
+    }
+    if (sum == 0) return this.getAvgDegree();
+    return sumSq / sum;
+  }
+}
@@ -0,0 +1,51 @@
+/**
+ * This file copyright (c) 2015-2016, Jing Fan, Adalbert Gerald Soosai Raj, and Jignesh M. Patel
+ *
+ * See the file CREDITS.txt in the root directory for details.
+ **/
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+
+import Graph.EdgeListReader;
+import Graph.GraphLoader;
+import Runner.BlockRunner;
+import Runner.SqlDialect;
+
+/**
+ * @brief Runs the generated SQL on a database through JDBC, the SQL is
+ * rewritten for the database by Runner.SqlDialect.
+ */
+public class JdbcBackend implements ExecutionBackend {
+  private String url;
+  private Connection conn = null;
+
+  /**
+   * @brief Constructor.
+   * @param url The JDBC url, the driver must be on the classpath.
+   */
+  public JdbcBackend(String url) {
+    this.url = url;
+  }
+
+  public String getName() {
+    // jdbc:<database>:...
+    return "jdbc-" + this.url.split(":")[1];
+  }
+
+  public void prepare(String edgeFile, boolean weighted) throws Exception {
+    int threads = Runtime.getRuntime().availableProcessors();
+    GraphLoader loader = new GraphLoader(this.url, null, null, weighted, 10000);
+    loader.load(new EdgeListReader(edgeFile, threads, 10000));
+    if (this.conn == null) {
+      this.conn = DriverManager.getConnection(this.url);
+    }
+  }
+
+  public long[] run(Grail grail) throws Exception {
+    BlockRunner runner = new BlockRunner(this.conn, SqlDialect.forUrl(this.url));
+    // The row counts are not needed, and counting would be timed.
+    runner.setCountRows(false);
+    return runner.run(grail.getBlocks()).getSuperstepNanos();
+  }
+}
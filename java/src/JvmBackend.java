@@ -0,0 +1,184 @@
+/**
+ * This file copyright (c) 2015-2016, Jing Fan, Adalbert Gerald Soosai Raj, and Jignesh M. Patel
+ *
+ * See the file CREDITS.txt in the root directory for details.
+ **/
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import Engine.CodeGenerator;
+import Engine.CsrGraph;
+import Engine.DiskGraph;
+import Engine.OutOfCoreProgram;
+import Engine.ProgramCompiler;
+import Engine.SpmvProgram;
+import Engine.UnionFindProgram;
+import Engine.VertexProgram;
+import Expr.Stmt;
+
+/**
+ * @brief Runs Grail programs in the JVM. Every program is compiled to a
+ * specialized Engine.VertexProgram by Engine.CodeGenerator, so the
+ * expressions are not interpreted, and runs over the graph in compressed
+ * sparse row form. Recognized programs run on specialized engines instead:
+ * linear programs such as PageRank as sparse matrix-vector products (see
+ * Engine.SpmvProgram), and min-label propagation such as WCC as a
+ * union-find (see Engine.UnionFindProgram).
+ *
+ * Out of core, the graph is kept on disk in a directory (see
+ * Engine.DiskGraph) and every program runs as a generated
+ * Engine.OutOfCoreProgram, which keeps only the vertices in memory.
+ *
+ * With compressed adjacency, the neighbor lists of the graph in memory are
+ * compressed (see Engine.CompressedCsr) and every program runs as a
+ * generated program decoding them.
+ */
+public class JvmBackend implements ExecutionBackend {
+  private CsrGraph graph = null;
+  // The compiled programs, by source, so a program is compiled once.
+  private HashMap<String, Class<? extends VertexProgram>> compiled =
+      new HashMap<String, Class<? extends VertexProgram>>();
+  // Whether recognized programs run on the specialized engines.
+  private boolean specialized = true;
+  // The sources of the programs that declare Sources, or null.
+  private int[] sources = null;
+  // The directory of the graph on disk, or null to run in memory.
+  private String outOfCoreDir = null;
+  private DiskGraph disk = null;
+  // Whether the generated programs keep the vertex arrays off the heap.
+  private boolean offHeap = false;
+  // Whether the neighbor lists in memory are compressed.
+  private boolean compressed = false;
+
+  public String getName() {
+    String name = this.outOfCoreDir != null ? "jvm-ooc"
+                  : this.specialized ? "jvm" : "jvm-generic";
+    if (this.compressed && this.outOfCoreDir == null) name += "-compressed";
+    return this.offHeap ? name + "-offheap" : name;
+  }
+
+  /**
+   * @brief Compile a program.
+   * @param options The options of the program, see Parser.parse.
+   * @return A new instance of the compiled program.
+   */
+  public VertexProgram compile(HashMap<String, String> options)
+      throws ReflectiveOperationException {
+    String className = "GrailProgram";
+    CodeGenerator.checkSupported(options);
+    ArrayList<Stmt> stmts = Parser.parseUpdateAndSend(options);
+    // The specialized engines hold the edges and the vertices on the heap,
+    // with the plain neighbor lists.
+    boolean compressed = this.compressed && this.outOfCoreDir == null;
+    if (this.specialized && this.outOfCoreDir == null && !this.offHeap && !compressed) {
+      SpmvProgram program = SpmvProgram.detect(options, stmts);
+      if (program != null) {
+        program.setSources(this.sources);
+        return program;
+      }
+      if (Translator.isMinLabel(options)) {
+        return new UnionFindProgram();
+      }
+    }
+    CodeGenerator generator = new CodeGenerator(options, stmts);
+    generator.setOutOfCore(this.outOfCoreDir != null);
+    generator.setOffHeap(this.offHeap);
+    generator.setCompressed(compressed);
+    String code = generator.generate(className);
+    Class<? extends VertexProgram> cls = this.compiled.get(code);
+    if (cls == null) {
+      cls = ProgramCompiler.compile(className, code);
+      this.compiled.put(code, cls);
+    }
+    return cls.getDeclaredConstructor().newInstance();
+  }
+
+  /**
+   * @brief Set whether recognized programs run on the specialized engines,
+   * by default they do.
+   */
+  public void setSpecialized(boolean specialized) {
+    this.specialized = specialized;
+  }
+
+  /**
+   * @brief Set the sources of the programs that declare Sources, only SpMV
+   * programs run several sources at once.
+   * @param sources The source vertex ids.
+   */
+  public void setSources(int[] sources) {
+    this.sources = sources;
+  }
+
+  /**
+   * @brief Run the programs out of core, on a graph on disk.
+   * @param dir The directory the graph is written to by prepare().
+   */
+  public void setOutOfCore(String dir) {
+    this.outOfCoreDir = dir;
+  }
+
+  /**
+   * @brief Keep the values, the messages and the frontier of the programs
+   * off the heap, see Engine.VertexStore.
+   */
+  public void setOffHeap(boolean offHeap) {
+    this.offHeap = offHeap;
+  }
+
+  /**
+   * @brief Compress the neighbor lists of the graph in memory, see
+   * Engine.CompressedCsr; prepare() then builds them from the edge file
+   * without the plain lists. Out of core it has no effect.
+   */
+  public void setCompressed(boolean compressed) {
+    this.compressed = compressed;
+  }
+
+  /**
+   * @brief Give a compiled program its graph. Out of core, the graph is
+   * written to the directory and the program reads it from there. With
+   * compressed adjacency the graph is compressed first.
+   * @param program A program returned by compile().
+   * @param graph The graph.
+   */
+  public void attach(VertexProgram program, CsrGraph graph) throws IOException {
+    if (program instanceof OutOfCoreProgram) {
+      DiskGraph.write(graph, this.outOfCoreDir);
+      ((OutOfCoreProgram) program).setDiskGraph(DiskGraph.open(this.outOfCoreDir));
+    } else {
+      if (this.compressed) graph.compress();
+      program.setGraph(graph);
+    }
+  }
+
+  /**
+   * @brief Set the graph directly, instead of loading it in prepare().
+   * @param graph The graph.
+   */
+  public void setGraph(CsrGraph graph) {
+    this.graph = graph;
+  }
+
+  public void prepare(String edgeFile, boolean weighted) throws Exception {
+    if (this.outOfCoreDir != null) {
+      DiskGraph.build(edgeFile, weighted, this.outOfCoreDir);
+      this.disk = DiskGraph.open(this.outOfCoreDir);
+      return;
+    }
+    this.graph = this.compressed ? CsrGraph.loadCompressed(edgeFile, weighted)
+                                 : CsrGraph.load(edgeFile, weighted);
+  }
+
+  public long[] run(Grail grail) throws Exception {
+    VertexProgram program = this.compile(grail.getOptions());
+    if (program instanceof OutOfCoreProgram) {
+      ((OutOfCoreProgram) program).setDiskGraph(this.disk);
+    } else {
+      program.setGraph(this.graph);
+    }
+    return program.run();
+  }
+}
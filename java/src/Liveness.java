@@ -0,0 +1,245 @@
+/**
+ * This file copyright (c) 2015-2016, Jing Fan, Adalbert Gerald Soosai Raj, and Jignesh M. Patel
+ *
+ * See the file CREDITS.txt in the root directory for details.
+ **/
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import Block.Block;
+import Block.DropTableBlock;
+
+/**
+ * @brief Liveness analysis of the tables of the superstep. The translator
+ * drops the tables that are local to an iteration at the end of the loop
+ * body, so all of them coexist at the end of every superstep. This pass
+ * moves the drop of every such table right after its last use, and lets a
+ * later auxiliary table (Table0, Table1, ...) take the name of one that is
+ * already dropped, so the loop body only holds the tables that are live at
+ * the same time.
+ *
+ * A table is local to the iteration if it is created once in the loop body,
+ * dropped later in the body, and not read before it is created (which would
+ * be the table of the last superstep) nor by the termination check. Loop
+ * carried tables such as next, message and the senders are left alone.
+ */
+public class Liveness {
+  private static final Pattern TARGET = Pattern.compile(
+      "(?i)\\bINTO\\s+(\\w+)");
+  private static final Pattern COLUMNS = Pattern.compile(
+      "(?is)\\bSELECT\\s+(.*?)\\s+INTO\\b");
+  private static final Pattern ALIAS = Pattern.compile(
+      "(?i)\\bAS\\s+(\\w+)\\s*$");
+
+  // Generated SQL blocks.
+  private ArrayList<Block> blocks;
+  // The index of the first and the last block of the loop.
+  private int begin;
+  private int end;
+
+  /**
+   * @brief Constructor.
+   * @param blocks The blocks to rewrite.
+   */
+  public Liveness(ArrayList<Block> blocks) {
+    this.blocks = blocks;
+  }
+
+  /**
+   * @brief Whether a statement reads or writes a table.
+   * @param sql The statement.
+   * @param table The name of the table.
+   */
+  private static boolean uses(String sql, String table) {
+    return Pattern.compile("\\b" + table + "\\b").matcher(sql).find();
+  }
+
+  /**
+   * @brief Whether a block is the drop of a table.
+   */
+  private static boolean isDrop(Block block, String table) {
+    return block instanceof DropTableBlock
+        && block.getStage().equals("drop" + table);
+  }
+
+  /**
+   * @brief Get the columns of the table created by a statement, in order.
+   * @return The column names, or null if they are unknown.
+   */
+  private static String getColumns(String sql) {
+    Matcher m = COLUMNS.matcher(sql);
+    if (!m.find()) return null;
+    StringBuilder columns = new StringBuilder();
+    for (String attr : m.group(1).split(",")) {
+      Matcher alias = ALIAS.matcher(attr.trim());
+      if (!alias.find()) return null;
+      columns.append(alias.group(1).toLowerCase()).append(",");
+    }
+    return columns.toString();
+  }
+
+  /**
+   * @brief Find the tables local to the iteration.
+   * @return The tables, mapped to the index of the block creating them.
+   */
+  private HashMap<String, Integer> findLocalTables() {
+    LinkedHashMap<String, Integer> created = new LinkedHashMap<String, Integer>();
+    ArrayList<String> repeated = new ArrayList<String>();
+    for (int i = this.begin + 1; i < this.end; ++i) {
+      // A block may create a table in either branch of a flow control.
+      HashSet<String> targets = new HashSet<String>();
+      Matcher m = TARGET.matcher(this.blocks.get(i).getSql());
+      while (m.find()) {
+        targets.add(m.group(1));
+      }
+      for (String table : targets) {
+        if (created.put(table, i) != null) {
+          repeated.add(table);
+        }
+      }
+    }
+    for (String table : repeated) {
+      created.remove(table);
+    }
+
+    LinkedHashMap<String, Integer> local = new LinkedHashMap<String, Integer>();
+    for (String table : created.keySet()) {
+      int create = created.get(table);
+      boolean dropped = false;
+      boolean carried = uses(this.blocks.get(this.end).getSql(), table);
+      for (int i = this.begin + 1; i < this.end && !carried; ++i) {
+        Block block = this.blocks.get(i);
+        if (isDrop(block, table)) {
+          dropped |= i > create;
+          carried |= i < create;
+        } else if (i < create && uses(block.getSql(), table)) {
+          carried = true;
+        }
+      }
+      if (dropped && !carried) {
+        local.put(table, create);
+      }
+    }
+    return local;
+  }
+
+  /**
+   * @brief Move the drops of the local tables right after their last use.
+   * The tables are visited from the last created one, so the drops after
+   * the same block keep the order of creation.
+   */
+  private void dropAtLastUse(HashMap<String, Integer> local) {
+    ArrayList<String> tables = new ArrayList<String>(local.keySet());
+    for (int t = tables.size() - 1; t >= 0; --t) {
+      String table = tables.get(t);
+      Block drop = null;
+      for (int i = this.begin + 1; i < this.end; ++i) {
+        if (isDrop(this.blocks.get(i), table)) {
+          drop = this.blocks.remove(i);
+          break;
+        }
+      }
+      int last = this.begin;
+      for (int i = this.begin + 1; i < this.end - 1; ++i) {
+        if (uses(this.blocks.get(i).getSql(), table)) {
+          last = i;
+        }
+      }
+      this.blocks.add(last + 1, drop);
+    }
+  }
+
+  /**
+   * @brief Rename a table in the loop body.
+   */
+  private void rename(String from, String to) {
+    for (int i = this.begin + 1; i < this.end; ++i) {
+      Block block = this.blocks.get(i);
+      if (isDrop(block, from)) {
+        this.blocks.set(i, new DropTableBlock("drop" + to,
+                                              block.getIndentLevel(), to));
+      } else if (uses(block.getSql(), from)) {
+        block.renameTable(from, to);
+      }
+    }
+  }
+
+  /**
+   * @brief Let the auxiliary tables take the names of the tables with the
+   * same columns that are already dropped.
+   */
+  private void reuseNames(HashMap<String, Integer> local) {
+    // The dropped auxiliary tables, mapped to their columns.
+    LinkedHashMap<String, String> free = new LinkedHashMap<String, String>();
+    for (int i = this.begin + 1; i < this.end; ++i) {
+      Block block = this.blocks.get(i);
+      Matcher m = TARGET.matcher(block.getSql());
+      if (block instanceof DropTableBlock) {
+        for (String table : local.keySet()) {
+          // The drop of the table created by a reused name frees it again.
+          if (isDrop(block, table) && TbNameGen.isTbName(table)) {
+            free.put(table, getColumns(this.findCreate(table)));
+          }
+        }
+      } else if (m.find() && local.containsKey(m.group(1))
+                 && TbNameGen.isTbName(m.group(1))) {
+        String columns = getColumns(block.getSql());
+        String name = null;
+        for (String table : free.keySet()) {
+          if (columns != null && columns.equals(free.get(table))) {
+            name = table;
+            break;
+          }
+        }
+        if (name != null) {
+          free.remove(name);
+          local.put(name, local.remove(m.group(1)));
+          this.rename(m.group(1), name);
+        }
+      }
+    }
+  }
+
+  /**
+   * @brief Get the statement creating a table in the loop body.
+   */
+  private String findCreate(String table) {
+    for (int i = this.begin + 1; i < this.end; ++i) {
+      Matcher m = TARGET.matcher(this.blocks.get(i).getSql());
+      while (m.find()) {
+        if (m.group(1).equals(table)) return this.blocks.get(i).getSql();
+      }
+    }
+    return "";
+  }
+
+  /**
+   * @brief Find the loop body.
+   * @return Whether the blocks have a loop.
+   */
+  private boolean findLoop() {
+    this.begin = -1;
+    this.end = -1;
+    for (int i = 0; i < this.blocks.size(); ++i) {
+      String stage = this.blocks.get(i).getStage();
+      if (stage.equals("beginWhile") && this.begin < 0) this.begin = i;
+      if (stage.equals("endWhile")) this.end = i;
+    }
+    return this.begin >= 0 && this.end > this.begin;
+  }
+
+  /**
+   * @brief Run the analysis and rewrite the loop body.
+   */
+  public void run() {
+    if (!this.findLoop()) return;
+    HashMap<String, Integer> local = this.findLocalTables();
+    this.dropAtLastUse(local);
+    this.reuseNames(local);
+  }
+}
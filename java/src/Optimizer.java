@@ -7,8 +7,14 @@
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.regex.Pattern;
 
+import Block.BeginWhileBlock;
 import Block.Block;
+import Block.CheckpointBlock;
+import Block.CreateTableBlock;
+import Block.DropIndexBlock;
+import Block.DropTableBlock;
 import Block.EndWhileBlock;
 import Block.FlowControlBlock;
 import Block.InsertUpdateBlock;
@@ -18,6 +24,14 @@ import Block.UpdateVertexBlock;
  * @brief This class is the optimizer for Grail.
  */
 public class Optimizer {
+  // The hints letting SQL Server run the merged send in batch mode.
+  private static final String BATCH_HINT = "OPTION (HASH JOIN, HASH GROUP)";
+  // Lines that continue the statement before them.
+  private static final Pattern CONTINUATION = Pattern.compile(
+      "(?i)^\\s*(?:(?:FROM|WHERE|GROUP|ORDER|HAVING|AND|OR|UNION|ON|LEFT|"
+      + "RIGHT|INNER|JOIN|OPTION)\\b|[);]).*");
+  private static final Pattern SUM_MESSAGE = Pattern.compile(
+      "(?i)\\bSUM\\s*\\(\\s*message\\.val\\s*\\)");
   // The configuration options, recording the direction of sending message, etc.
   private HashMap<String, String> options = null;
   // Generated SQL blocks.
@@ -80,6 +94,13 @@ public class Optimizer {
     return "CREATE INDEX idx_" + attr + " ON edge(" + attr + ");";
   }
 
+  /**
+   * @brief Whether the tables are laid out as columnstore.
+   */
+  private boolean isColumnstore() {
+    return "COLUMNSTORE".equals(this.options.get("layout"));
+  }
+
   /**
    * @brief Merge sending message and combining message to avoid the
    * materialization of table message. At the same time, we can change the
@@ -139,11 +160,13 @@ public class Optimizer {
     String aggFunc = this.options.get("aggFunc")
                          .replace("message.val",
                                   this.options.get("contentStr"));
+    // The key of the messages, with the source in multi-source mode.
+    String keys = this.options.get("sources") == null ? "id" : "source_id, id";
     if (this.options.get("msgDir").equals("all")) {
-      sendMsgBlock.append("GROUP BY id");
+      sendMsgBlock.append("GROUP BY " + keys);
       sendMsgBlock.append(";");
       sendMsg = sendMsgBlock.getSql();
-      sendMsg = sendMsg.replace("SELECT *", "SELECT id, "
+      sendMsg = sendMsg.replace("SELECT *", "SELECT " + keys + ", "
             + this.options.get("aggFunc").replace("message.val", "val")
             + " as val ");
       sendMsg = sendMsg.replace("GROUP BY src", "");
@@ -158,6 +181,10 @@ public class Optimizer {
       sendMsg = sendMsg.replace("cur", "cur_alias");
     }
     sendMsg = sendMsg.replace("INTO message", "INTO cur");
+    if (this.isColumnstore()) {
+      // Batch mode only has hash joins and hash aggregation.
+      sendMsg += new Block("hint", indent, BATCH_HINT).getSql();
+    }
     // Merge these two parts.
     Block setIsFirstBlock = new Block("setIsFirst", indent, "SET @isFirst = 0");
 
@@ -195,7 +222,8 @@ public class Optimizer {
     this.blocks.set(i, new EndWhileBlock(endWhileBlock.getStage(),
                                          endWhileBlock.getIndentLevel(),
                                          endWhileBlock.getEndStr(),
-                                         this.senders.iterator().next()));
+                                         this.senders.iterator().next(),
+                                         endWhileBlock.getUntil()));
   }
 
   /**
@@ -213,7 +241,8 @@ public class Optimizer {
         }
       }
       this.blocks.remove(idx);
-      this.blocks.add(idx, new InsertUpdateBlock(block));
+      this.blocks.add(idx, new InsertUpdateBlock(
+          block, this.isColumnstore() ? "OPTION (HASH JOIN)" : null));
       for (idx = 0; idx < this.blocks.size(); ++idx) {
         if (this.blocks.get(idx).getStage().equals("dropcur")) {
           this.blocks.remove(idx);
@@ -223,12 +252,575 @@ public class Optimizer {
     }
   }
 
+  /**
+   * @brief Replace the value of the sender in the message of the program.
+   * @param content The message, over cur.val or next.val.
+   * @param val The value of the sender.
+   */
+  private static String withSender(String content, String val) {
+    return content.replaceAll("\\b(?:cur|next)\\.val\\b", val);
+  }
+
+  /**
+   * @brief Append the statement sending a message from every row of a table
+   * along the edges in the direction of the program, and summing the
+   * messages of every receiver into a new table (id, val).
+   * @param block The block to append to.
+   * @param table The table of the senders, with their id.
+   * @param message The message, over the columns of the table.
+   * @param sum The sum, such as SUM or 0.85 * SUM.
+   * @param target The new table.
+   */
+  private void appendSumSend(Block block,
+                             String table,
+                             String message,
+                             String sum,
+                             String target) {
+    String from = table + ", edge";
+    String joins = "";
+    for (String cnts : new String[] {"in_cnts", "out_cnts"}) {
+      if (this.options.get("contentStr").contains(cnts)) {
+        from += ", " + cnts;
+        joins += " AND " + cnts + ".id = " + table + ".id";
+      }
+    }
+    String dir = this.options.get("msgDir");
+    int indent = block.getIndentLevel();
+    if (dir.equals("all")) {
+      block.append("SELECT id, " + sum + "(val) AS val");
+      block.append("INTO " + target);
+      block.append("FROM (");
+      block.append("SELECT dest AS id, " + message + " AS val", indent + 1);
+      block.append("FROM " + from, indent + 1);
+      block.append("WHERE edge.src = " + table + ".id" + joins, indent + 1);
+      block.append("UNION ALL", indent + 1);
+      block.append("SELECT src AS id, " + message + " AS val", indent + 1);
+      block.append("FROM " + from, indent + 1);
+      block.append("WHERE edge.dest = " + table + ".id" + joins, indent + 1);
+      block.append(") s");
+      block.append("GROUP BY id");
+    } else {
+      String[] attrs = dir.equals("out") ? new String[] {"dest", "src"}
+                                         : new String[] {"src", "dest"};
+      block.append("SELECT " + attrs[0] + " AS id, " + sum + "(" + message
+                   + ") AS val");
+      block.append("INTO " + target);
+      block.append("FROM " + from);
+      block.append("WHERE edge." + attrs[1] + " = " + table + ".id" + joins);
+      block.append("GROUP BY " + attrs[0]);
+    }
+  }
+
+  /**
+   * @brief Stop the vertices whose value changed by less than Freeze since
+   * they last sent from sending again. Every vertex sends the change of its
+   * message instead of the message, the value it sent is kept in sent, and
+   * the sum of the messages of every vertex in acc. A frozen vertex so
+   * keeps its last contribution to the sums, and it sends again once the
+   * changes of its neighbors move its own value by Freeze. The first
+   * superstep runs as before, from the initial messages.
+   */
+  public void freeze() {
+    if (!this.options.get("isSender").equals("all")
+        || !this.options.get("setValNewVal").equals("cur.val")) {
+      throw new IllegalArgumentException(
+          "Freeze needs a program where all the vertices send messages, such"
+          + " as pagerank.grail");
+    }
+    String aggFunc = this.options.get("aggFunc");
+    String update = SUM_MESSAGE.matcher(aggFunc).replaceAll("acc.val");
+    String dir = this.options.get("msgDir");
+    if (update.equals(aggFunc) || update.contains("message")
+        || dir == null || dir.equals("no")) {
+      throw new IllegalArgumentException(
+          "Freeze needs a program that sends messages combined by"
+          + " SUM(message)");
+    }
+    String content = this.options.get("contentStr");
+    String change = withSender(content, "changed.val") + " - COALESCE("
+                    + withSender(content, "changed.old") + ", 0)";
+
+    int idx = this.findStage("flowControl");
+    FlowControlBlock flowControl = (FlowControlBlock) this.blocks.get(idx);
+    int indent = flowControl.getIndentLevel();
+    int endIdx = this.findStage("endWhile");
+    EndWhileBlock endWhileBlock = (EndWhileBlock) this.blocks.get(endIdx);
+    boolean noMessage = endWhileBlock.getEndStr().equals("NO_MESSAGE");
+    Block rhs = new Block("freeze", indent);
+    rhs.append("SELECT next.id AS id, next.val AS val, sent.val AS old");
+    rhs.append("INTO changed");
+    rhs.append("FROM next LEFT JOIN sent ON sent.id = next.id");
+    rhs.append("WHERE sent.id IS NULL OR ABS(next.val - sent.val) >= "
+               + this.options.get("freeze"));
+    if (noMessage) {
+      rhs.append("SET @flag = @@ROWCOUNT");
+    } else {
+      // All the vertices are frozen, the values do not change any more.
+      rhs.append("IF (@@ROWCOUNT = 0)");
+      rhs.append("  SET @flag = 1");
+    }
+    this.appendSumSend(rhs, "changed", change, "SUM", "delta");
+    rhs.append("UPDATE acc SET acc.val = acc.val + delta.val");
+    rhs.append("FROM acc, delta");
+    rhs.append("WHERE acc.id = delta.id;");
+    rhs.append("INSERT INTO acc");
+    rhs.append("SELECT *");
+    rhs.append("FROM delta");
+    rhs.append("WHERE NOT EXISTS (");
+    rhs.append("  SELECT * FROM acc");
+    rhs.append("  WHERE acc.id = delta.id)");
+    rhs.append("UPDATE sent SET sent.val = changed.val");
+    rhs.append("FROM sent, changed");
+    rhs.append("WHERE sent.id = changed.id;");
+    rhs.append("INSERT INTO sent");
+    rhs.append("SELECT changed.id, changed.val");
+    rhs.append("FROM changed");
+    rhs.append("WHERE NOT EXISTS (");
+    rhs.append("  SELECT * FROM sent");
+    rhs.append("  WHERE sent.id = changed.id)");
+    // Only the sums that changed give new values.
+    rhs.append("UPDATE next SET next.val = " + update);
+    rhs.append("FROM next, acc");
+    rhs.append("WHERE next.id = acc.id");
+    rhs.append("AND EXISTS (SELECT * FROM delta WHERE delta.id = acc.id);");
+    rhs.concat(new DropTableBlock("dropchanged", indent, "changed").getSql());
+    rhs.concat(new DropTableBlock("dropdelta", indent, "delta").getSql());
+
+    // The first superstep updates next from the initial messages.
+    int setValIdx = this.findStage("setVal");
+    String lhs = flowControl.getLhs() + this.blocks.get(setValIdx).getSql();
+    this.blocks.set(idx, new FlowControlBlock(flowControl.getStage(),
+                                              indent,
+                                              flowControl.getFlowControl(),
+                                              lhs,
+                                              rhs.getSql()));
+    this.blocks.remove(setValIdx);
+    if (noMessage) {
+      this.blocks.set(this.findStage("endWhile"),
+                      new EndWhileBlock(endWhileBlock.getStage(),
+                                        endWhileBlock.getIndentLevel(),
+                                        endWhileBlock.getEndStr(),
+                                        null,
+                                        endWhileBlock.getUntil()));
+    }
+
+    idx = this.findStage("beginWhile");
+    this.blocks.add(idx++, new CreateTableBlock("createAcc", 0, "acc",
+        new String[] {"id int", "val " + this.options.get("messageValType")}));
+    this.blocks.add(idx, new CreateTableBlock("createSent", 0, "sent",
+        new String[] {"id int", "val " + this.options.get("vertexValType")}));
+    idx = this.findStage("initdropcur");
+    for (String table : new String[] {"acc", "sent", "changed", "delta"}) {
+      this.blocks.add(idx++, new DropTableBlock("initdrop" + table, 0, table));
+    }
+  }
+
+  /**
+   * @brief Lay out edge and the vertex tables as columnstore on SQL Server.
+   * Programs where all the vertices send messages scan all of them and all
+   * the edges in every superstep, so the nonclustered columnstore index on
+   * edge replaces the B-tree indexes, and next, cur and out_cnts are stored
+   * as clustered columnstore right after they are created. Together with
+   * the hash hints of the merged send, the joins and the aggregation run in
+   * batch mode.
+   */
+  public void columnstore() {
+    if (!this.options.get("isSender").equals("all")
+        || !this.options.get("setValNewVal").equals("cur.val")) {
+      throw new IllegalArgumentException(
+          "Layout COLUMNSTORE needs a program where all the vertices send"
+          + " messages, such as pagerank.grail");
+    }
+    String columns = "src, dest";
+    if (this.options.get("contentStr").contains("edge.weight")) {
+      columns += ", weight";
+    }
+    int idx = this.findStage("initdropdestindex");
+    this.blocks.add(idx + 1, new DropIndexBlock("initdropcsindex", 0,
+                                                "ncci_edge", "edge"));
+    idx = this.findStage("createIdx");
+    while (this.findStage("createIdx") >= 0) {
+      this.blocks.remove(this.findStage("createIdx"));
+    }
+    this.blocks.add(idx, new Block("createColumnstore", 0,
+        "CREATE NONCLUSTERED COLUMNSTORE INDEX ncci_edge ON edge("
+        + columns + ");"));
+
+    String[][] tables = {{"copyVertex", "next"},
+                         {"genCnt", "out_cnts"},
+                         {"flowControl", "cur"}};
+    for (String[] table : tables) {
+      idx = this.findStage(table[0]);
+      if (idx < 0) continue;
+      this.blocks.add(idx + 1, new Block("columnstore" + table[1].replace("_", ""),
+          this.blocks.get(idx).getIndentLevel(),
+          "CREATE CLUSTERED COLUMNSTORE INDEX cci_" + table[1] + " ON "
+          + table[1] + ";"));
+    }
+  }
+
+  /**
+   * @brief Get the index of the first block of the stage.
+   * @param stage The stage string.
+   * @return The index of the block, or -1 if there is no such block.
+   */
+  private int findStage(String stage) {
+    for (int i = 0; i < this.blocks.size(); ++i) {
+      if (this.blocks.get(i).getStage().equals(stage)) return i;
+    }
+    return -1;
+  }
+
+  /**
+   * @brief Save the tables that are carried from one superstep to the next
+   * every few supersteps, so a long running program can be resumed from the
+   * last checkpoint instead of from the start. When resuming, the state is
+   * restored from the checkpoint tables instead of being initialized.
+   */
+  public void checkpoint() {
+    // The tables that live across supersteps: the vertex values, the
+    // senders that are kept for the next superstep, and cur_alias if cur
+    // has been renamed.
+    ArrayList<String> tables = new ArrayList<String>();
+    tables.add("next");
+    for (String sender : this.senders) {
+      if (!sender.equals("cur") && !tables.contains(sender)) {
+        tables.add(sender);
+      }
+    }
+    if (findStage("renamecur") != -1) {
+      tables.add("cur_alias");
+    }
+
+    int endIdx = findStage("endWhile");
+    EndWhileBlock endWhileBlock = (EndWhileBlock) this.blocks.get(endIdx);
+    String endStr = endWhileBlock.getEndStr();
+    // The checkpoint is taken before @flag is updated at the end of the
+    // superstep. For NO_MESSAGE, the resumed loop runs at least once and
+    // recomputes @flag.
+    String flagVal = endStr.equals("NO_MESSAGE") ? "-1" : "@flag - 1";
+    this.blocks.add(endIdx,
+                    new CheckpointBlock("checkpoint",
+                                        endWhileBlock.getIndentLevel(),
+                                        this.options.get("checkpoint"),
+                                        tables,
+                                        flagVal));
+
+    int beginIdx = findStage("beginWhile");
+    Block beginWhileBlock = this.blocks.get(beginIdx);
+    int indent = beginWhileBlock.getIndentLevel();
+    Block declareBlock = new Block("declareCkpt", indent);
+    declareBlock.append("DECLARE @superstep int");
+    if (this.options.get("resume") == null) {
+      // Start a new run, discard the checkpoint of the previous run.
+      for (String table : tables) {
+        this.blocks.add(beginIdx++,
+                        new DropTableBlock("dropckpt" + table,
+                                           indent,
+                                           "ckpt_" + table));
+      }
+      this.blocks.add(beginIdx++,
+                      new DropTableBlock("dropckptstate", indent, "ckpt_state"));
+      declareBlock.append("SET @superstep = 0");
+      declareBlock.append("CREATE TABLE ckpt_state(superstep int, flag int, is_first int);");
+      declareBlock.append("INSERT INTO ckpt_state VALUES(0, 0, 1);");
+      this.blocks.add(beginIdx, declareBlock);
+    } else {
+      declareBlock.append("IF (SELECT superstep FROM ckpt_state) = 0");
+      declareBlock.append("  THROW 50000, 'No checkpoint to resume from.', 1;");
+      declareBlock.append("SET @superstep = (SELECT superstep FROM ckpt_state)");
+      declareBlock.append("SET @isFirst = (SELECT is_first FROM ckpt_state)");
+      for (String table : tables) {
+        declareBlock.append("SELECT * INTO " + table + " FROM ckpt_" + table + ";");
+      }
+      this.blocks.add(beginIdx++, declareBlock);
+      this.blocks.set(beginIdx,
+                      new BeginWhileBlock(beginWhileBlock.getStage(),
+                                          indent,
+                                          endStr,
+                                          "(SELECT flag FROM ckpt_state)"));
+    }
+  }
+
+  /**
+   * @brief Replace label propagation of a min-label program (see
+   * Translator.isMinLabel) by pointer jumping. Propagation takes as many
+   * supersteps as the diameter of the largest component; pointer jumping
+   * keeps a parent for every vertex, which is a vertex of its component
+   * with a smaller or equal id, and in every round
+   *   1. takes the smallest parent among the vertex and its neighbors,
+   *   2. hooks the parent of every vertex to that value if it is smaller,
+   *   3. replaces every parent by the parent of the parent until no parent
+   *      changes, so every vertex points to the root of its tree.
+   * The loop ends when no parent is hooked. Parents only decrease and stay
+   * in the component, and a round changes nothing only when all neighbors
+   * have the same parent, so the parent of every vertex ends as the
+   * smallest id of its component, the same values as label propagation.
+   */
+  public void pointerJumping() {
+    // Keep the initialization of next, and replace the rest.
+    int idx = findStage("createMsg");
+    while (this.blocks.size() > idx) {
+      this.blocks.remove(idx);
+    }
+    idx = findStage("genCnt");
+    if (idx != -1) {
+      this.blocks.remove(idx);
+    }
+    for (String table : new String[] {"pj_edge", "pj_min", "pj_hook", "pj_parent"}) {
+      this.blocks.add(new DropTableBlock("initdrop" + table.replace("_", ""),
+                                         0,
+                                         table));
+    }
+
+    // Every vertex starts as its own parent, the message of its id.
+    Block initBlock = new Block("pjInit", 0);
+    initBlock.append("UPDATE next SET val = id;");
+    this.blocks.add(initBlock);
+    // Messages only reach vertices, so the edges between vertices are used
+    // in both directions.
+    Block edgeBlock = new Block("pjEdge", 0);
+    edgeBlock.append("SELECT s.a AS a, s.b AS b");
+    edgeBlock.append("INTO pj_edge");
+    edgeBlock.append("FROM (");
+    edgeBlock.append("  SELECT src AS a, dest AS b");
+    edgeBlock.append("  FROM edge, next");
+    edgeBlock.append("  WHERE edge.src = next.id");
+    edgeBlock.append("  UNION ALL");
+    edgeBlock.append("  SELECT dest AS a, src AS b");
+    edgeBlock.append("  FROM edge, next");
+    edgeBlock.append("  WHERE edge.dest = next.id");
+    edgeBlock.append(") s");
+    edgeBlock.append("WHERE s.b IN (SELECT id FROM next)");
+    this.blocks.add(edgeBlock);
+    this.blocks.add(new Block("pjIdx", 0, "CREATE INDEX idx_pj_b ON pj_edge(b);"));
+    Block declareBlock = new Block("declarePJ", 0);
+    declareBlock.append("DECLARE @jumped int");
+    this.blocks.add(declareBlock);
+    this.blocks.add(new BeginWhileBlock("beginWhile", 0, "NO_MESSAGE"));
+
+    Block minBlock = new Block("pjMin", 1);
+    minBlock.append("SELECT s.id AS id, MIN(s.val) AS val");
+    minBlock.append("INTO pj_min");
+    minBlock.append("FROM (");
+    minBlock.append("  SELECT id, val FROM next");
+    minBlock.append("  UNION ALL");
+    minBlock.append("  SELECT pj_edge.a AS id, next.val AS val");
+    minBlock.append("  FROM pj_edge, next");
+    minBlock.append("  WHERE pj_edge.b = next.id");
+    minBlock.append(") s");
+    minBlock.append("GROUP BY s.id");
+    this.blocks.add(minBlock);
+    Block hookBlock = new Block("pjHook", 1);
+    hookBlock.append("SELECT s.id AS id, MIN(s.val) AS val");
+    hookBlock.append("INTO pj_hook");
+    hookBlock.append("FROM (");
+    hookBlock.append("  SELECT id, val FROM pj_min");
+    hookBlock.append("  UNION ALL");
+    hookBlock.append("  SELECT next.val AS id, pj_min.val AS val");
+    hookBlock.append("  FROM next, pj_min");
+    hookBlock.append("  WHERE next.id = pj_min.id");
+    hookBlock.append(") s");
+    hookBlock.append("GROUP BY s.id");
+    this.blocks.add(hookBlock);
+    Block updateBlock = new Block("pjUpdate", 1);
+    updateBlock.append("UPDATE next SET next.val = pj_hook.val");
+    updateBlock.append("FROM next, pj_hook");
+    updateBlock.append("WHERE next.id = pj_hook.id AND pj_hook.val < next.val;");
+    updateBlock.append("SET @flag = @@ROWCOUNT");
+    this.blocks.add(updateBlock);
+    this.blocks.add(new DropTableBlock("droppjmin", 1, "pj_min"));
+    this.blocks.add(new DropTableBlock("droppjhook", 1, "pj_hook"));
+
+    Block jumpBlock = new Block("pjJump", 1);
+    jumpBlock.append("SET @jumped = 1");
+    jumpBlock.append("WHILE @jumped != 0");
+    jumpBlock.append("BEGIN");
+    jumpBlock.append("  SELECT id, val INTO pj_parent FROM next;");
+    jumpBlock.append("  UPDATE next SET next.val = pj_parent.val");
+    jumpBlock.append("  FROM next, pj_parent");
+    jumpBlock.append("  WHERE next.val = pj_parent.id AND pj_parent.val < next.val;");
+    jumpBlock.append("  SET @jumped = @@ROWCOUNT");
+    jumpBlock.append("  IF OBJECT_ID('dbo.pj_parent', 'U') IS NOT NULL DROP TABLE pj_parent;");
+    jumpBlock.append("END");
+    this.blocks.add(jumpBlock);
+    this.blocks.add(new Block("endWhile", 0, "END"));
+    this.blocks.add(new DropTableBlock("droppjedge", 0, "pj_edge"));
+  }
+
+  /**
+   * @brief Replace the supersteps of a program that sums linear messages
+   * into an affine update (see Translator.sumAffine) by delta-based
+   * accumulation. With the update a * SUM(message) + b, next keeps the
+   * value of every vertex and the change not yet added to it, delta. Every
+   * vertex starts from 0 with the change b, and in every superstep
+   *   1. the vertices whose change is above the threshold add it to their
+   *      value and send it, as the message of the program would,
+   *   2. every vertex adds a times the sum of the changes it received to its
+   *      own change.
+   * The value of every vertex so adds up the same terms as the values of
+   * the supersteps, but the vertices with negligible changes do not join
+   * edge. The threshold is DeltaTolerance / |V|, and the loop ends when no
+   * vertex is above it, so the changes left sum to at most DeltaTolerance.
+   * They are added to the values at the end. (ITER, n) still bounds the
+   * number of supersteps.
+   */
+  public void deltaAccumulation() {
+    int endIdx = findStage("endWhile");
+    String endStr = ((EndWhileBlock) this.blocks.get(endIdx)).getEndStr();
+    // Keep the initialization of next and the degrees, and replace the rest.
+    int idx = findStage("createMsg");
+    while (this.blocks.size() > idx) {
+      this.blocks.remove(idx);
+    }
+    String valType = this.options.get("vertexValType");
+    idx = findStage("copyVertex");
+    Block copyBlock = new Block("copyVertex", 0);
+    copyBlock.append("SELECT id AS id, CAST(0 AS " + valType + ") AS val, CAST("
+                     + this.options.get("deltaBase") + " AS " + valType
+                     + ") AS delta");
+    copyBlock.append("INTO next");
+    copyBlock.append("FROM vertex");
+    this.blocks.set(idx, copyBlock);
+    for (String table : new String[] {"delta_send", "delta_recv"}) {
+      this.blocks.add(new DropTableBlock("initdrop" + table.replace("_", ""),
+                                         0,
+                                         table));
+    }
+    Block declareBlock = new Block("declareDelta", 0);
+    declareBlock.append("DECLARE @threshold float");
+    declareBlock.append("SET @threshold = (SELECT "
+                        + this.options.get("deltaTolerance")
+                        + " / NULLIF(COUNT(*), 0) FROM next)");
+    this.blocks.add(declareBlock);
+    this.blocks.add(new BeginWhileBlock("beginWhile", 0, endStr));
+    this.createIdx();
+
+    Block sendBlock = new Block("deltaSend", 1);
+    sendBlock.append("SELECT id, delta");
+    sendBlock.append("INTO delta_send");
+    sendBlock.append("FROM next");
+    sendBlock.append("WHERE ABS(delta) > @threshold");
+    if (endStr.equals("NO_MESSAGE")) {
+      sendBlock.append("SET @flag = @@ROWCOUNT");
+    } else {
+      // No change is above the threshold, the values are final.
+      sendBlock.append("IF (@@ROWCOUNT = 0)");
+      sendBlock.append("  SET @flag = 1");
+    }
+    sendBlock.append("UPDATE next SET val = val + delta, delta = 0");
+    sendBlock.append("WHERE ABS(delta) > @threshold;");
+    String scale = this.options.get("deltaScale");
+    this.appendSumSend(sendBlock, "delta_send",
+                       withSender(this.options.get("contentStr"), "delta_send.delta"),
+                       scale.equals("1.0") ? "SUM" : scale + " * SUM",
+                       "delta_recv");
+    sendBlock.append("UPDATE next SET next.delta = next.delta + delta_recv.val");
+    sendBlock.append("FROM next, delta_recv");
+    sendBlock.append("WHERE next.id = delta_recv.id;");
+    this.blocks.add(sendBlock);
+    this.blocks.add(new DropTableBlock("dropdeltasend", 1, "delta_send"));
+    this.blocks.add(new DropTableBlock("dropdeltarecv", 1, "delta_recv"));
+    this.blocks.add(new EndWhileBlock("endWhile", 1, endStr, null));
+    this.blocks.add(new Block("deltaFlush", 0,
+                              "UPDATE next SET val = val + delta, delta = 0;"));
+  }
+
   /**
    * @brief Run optimization.
    */
   public void run() {
+    if ("POINTER_JUMPING".equals(this.options.get("componentPlan"))) {
+      this.pointerJumping();
+      return;
+    }
+    if ("DELTA".equals(this.options.get("accumulation"))) {
+      this.deltaAccumulation();
+      return;
+    }
     this.createIdx();
     this.allSender();
     this.mergeSendCombineMsg();
+    if (this.options.get("freeze") != null) {
+      this.freeze();
+    }
+    if (this.isColumnstore()) {
+      this.columnstore();
+    }
+    if (this.options.get("checkpoint") != null) {
+      this.checkpoint();
+    }
+    new Liveness(this.blocks).run();
+    if (this.options.get("partitions") != null) {
+      new PartitionLayout(this.options, this.blocks).run();
+    }
+    this.rowCountFlag();
+  }
+
+  /**
+   * @brief For NO_MESSAGE, set @flag from @@ROWCOUNT right after the
+   * statement that creates the senders, instead of counting them again at
+   * the end of every superstep. The table is counted as before if anything
+   * else in the loop writes it. This runs last, so no statement the other
+   * passes add lands between the SELECT INTO and the SET.
+   */
+  public void rowCountFlag() {
+    int beginIdx = findStage("beginWhile");
+    int endIdx = findStage("endWhile");
+    if (beginIdx == -1 || endIdx == -1) return;
+    EndWhileBlock endWhileBlock = (EndWhileBlock) this.blocks.get(endIdx);
+    String counter = endWhileBlock.getCounter();
+    if (!endWhileBlock.getEndStr().equals("NO_MESSAGE") || counter == null) {
+      return;
+    }
+    Pattern creates = Pattern.compile("(?i)^\\s*INTO\\s+" + counter + "\\s*$");
+    Pattern writes = Pattern.compile(
+        "(?i)(?:\\bINTO|\\bUPDATE|\\bDELETE(?:\\s+FROM)?|\\bTABLE|'\\s*,)\\s*'?"
+        + counter + "\\b");
+    ArrayList<Integer> creating = new ArrayList<Integer>();
+    for (int i = beginIdx + 1; i < endIdx; ++i) {
+      boolean found = false;
+      for (String line : this.blocks.get(i).getSql().split("\n")) {
+        if (creates.matcher(line).matches()) {
+          found = true;
+        } else if (writes.matcher(line).find()
+                   && !line.trim().startsWith("IF OBJECT_ID")) {
+          return;
+        }
+      }
+      if (found) creating.add(i);
+    }
+    if (creating.isEmpty()) return;
+
+    for (int i : creating) {
+      Block block = this.blocks.get(i);
+      String[] lines = block.getSql().split("\n", -1);
+      StringBuilder out = new StringBuilder();
+      for (int j = 0; j < lines.length; ++j) {
+        out.append(lines[j]).append("\n");
+        if (!creates.matcher(lines[j]).matches()) continue;
+        int depth = 0;
+        while (j + 1 < lines.length
+               && (depth > 0 || CONTINUATION.matcher(lines[j + 1]).matches())) {
+          ++j;
+          out.append(lines[j]).append("\n");
+          depth += lines[j].length() - lines[j].replace("(", "").length();
+          depth -= lines[j].length() - lines[j].replace(")", "").length();
+        }
+        String indent = lines[j].substring(0, lines[j].length()
+                                           - lines[j].trim().length());
+        out.append(indent + "SET @flag = @@ROWCOUNT\n");
+      }
+      // The last line has no line break.
+      out.setLength(out.length() - 1);
+      Block rewritten = new Block(block.getStage(), block.getIndentLevel());
+      rewritten.concat(out.toString());
+      this.blocks.set(i, rewritten);
+    }
+    this.blocks.set(endIdx, new EndWhileBlock(endWhileBlock.getStage(),
+                                              endWhileBlock.getIndentLevel(),
+                                              endWhileBlock.getEndStr(),
+                                              null,
+                                              endWhileBlock.getUntil()));
   }
 }
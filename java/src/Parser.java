@@ -4,7 +4,13 @@
  * See the file CREDITS.txt in the root directory for details.
  **/
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import Expr.ExprParser;
+import Expr.Stmt;
 
 /**
  * @brief This class is a parser. It will read Grail input from file and
@@ -12,6 +18,7 @@ import java.util.HashMap;
  *
  */
 public class Parser {
+  private static final Pattern UNTIL = Pattern.compile("(?i)\\s+UNTIL\\s+");
 
   /**
    * @brief Parse program and return the setting as a hashmap.
@@ -44,6 +51,30 @@ public class Parser {
       fileReader.rmFirst();
     }
 
+    // End : NO_MESSAGE UNTIL cond, the condition on the aggregates is kept
+    // apart so End stays NO_MESSAGE or (ITER, n) for its readers.
+    String end = options.get("End");
+    if (end != null) {
+      Matcher m = UNTIL.matcher(end);
+      if (m.find()) {
+        options.put("End", end.substring(0, m.start()).trim());
+        options.put("EndCondition", end.substring(m.end()).trim());
+      }
+    }
     return options;
   }
+
+  /**
+   * @brief Parse the UpdateAndSend section into statements, for the engines
+   * that do not go through the generated SQL.
+   * @param options The options returned by parse().
+   * @return The statements, see Expr.Stmt.
+   */
+  static ArrayList<Stmt> parseUpdateAndSend(HashMap<String, String> options) {
+    String text = options.get("UpdateAndSend");
+    if (text == null) {
+      return new ArrayList<Stmt>();
+    }
+    return ExprParser.parseStatements(text);
+  }
 }
@@ -0,0 +1,308 @@
+/**
+ * This file copyright (c) 2015-2016, Jing Fan, Adalbert Gerald Soosai Raj, and Jignesh M. Patel
+ *
+ * See the file CREDITS.txt in the root directory for details.
+ **/
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import Block.Block;
+import Block.DropTableBlock;
+
+/**
+ * @brief Hash partitions the tables of the program on SQL Server, so the
+ * joins of a superstep run partition by partition in parallel. Every table
+ * keyed by the vertex id gets a column part = id % K and is stored on the
+ * partition scheme ps_grail with K partitions:
+ *
+ * SELECT dest AS id, MIN(...) AS val, (dest) % 64 AS part
+ * INTO cur
+ * ...
+ * CREATE CLUSTERED INDEX cix_cur ON cur(part, id) ON ps_grail(part);
+ *
+ * edge is copied once into part_edge, partitioned on the key the messages
+ * are sent from (src, or dest when sending to in-neighbors). The joins of
+ * two partitioned tables on the vertex id also join them on part, so every
+ * partition is joined only with the same partition of the other table.
+ *
+ * With PartitionMap, part is looked up in the map table (id, part) written
+ * by Graph.GraphPartitioner instead of id % K, so the neighbors mostly land
+ * in the same partition.
+ */
+public class PartitionLayout {
+  private static final String SCHEME = "ps_grail";
+  private static final String FUNCTION = "pf_grail";
+  private static final String EDGE = "part_edge";
+  // SELECT list
+  // INTO t
+  private static final Pattern SELECT_INTO = Pattern.compile(
+      "(?m)^([ \\t]*SELECT\\s+)(.*)(\\n[ \\t]*INTO\\s+)(\\w+)$");
+  private static final Pattern FROM = Pattern.compile(
+      "(?i)\\s*FROM\\s+(\\w+)[ \\t;]*(?:\\n|$)");
+  // Lines that continue the statement before them.
+  private static final Pattern CONTINUATION = Pattern.compile(
+      "(?i)^\\s*(?:(?:FROM|WHERE|GROUP|AND|UNION|ON|LEFT|JOIN)\\b|[);]).*");
+  private static final Pattern FIRST_FROM = Pattern.compile(
+      "(?i)\\bFROM\\s+(\\w+)");
+  private static final Pattern RENAME = Pattern.compile(
+      "(?i)EXEC\\s+SP_RENAME\\s+'(\\w+)'\\s*,\\s*'(\\w+)'");
+  private static final Pattern ID_ITEM = Pattern.compile(
+      "(?i)^(?:(.*?)\\s+AS\\s+)?id$");
+  private static final Pattern ID_JOIN = Pattern.compile(
+      "\\b(\\w+)\\.id = (\\w+)\\.id\\b");
+  private static final Pattern EDGE_JOIN = Pattern.compile(
+      "\\b" + EDGE + "\\.(src|dest) = (\\w+)\\.id\\b");
+
+  // Generated SQL blocks.
+  private ArrayList<Block> blocks;
+  // The number of partitions.
+  private int partitions;
+  // The column of edge the messages are sent from.
+  private String edgeKey;
+  // The table mapping the vertices to their partitions, or null to hash.
+  private String partitionMap;
+  // The tables with the column part.
+  private HashSet<String> partitioned = new HashSet<String>();
+
+  /**
+   * @brief Constructor.
+   * @param options The options converted by the translator.
+   * @param blocks The blocks to rewrite.
+   */
+  public PartitionLayout(HashMap<String, String> options,
+                         ArrayList<Block> blocks) {
+    this.blocks = blocks;
+    this.partitions = Integer.parseInt(options.get("partitions"));
+    this.edgeKey = "in".equals(options.get("msgDir")) ? "dest" : "src";
+    this.partitionMap = options.get("partitionMap");
+  }
+
+  /**
+   * @brief Get the partition of a vertex id.
+   * @param id The SQL expression of the id.
+   */
+  private String partOf(String id) {
+    if (this.partitionMap == null) {
+      return "(" + id + ") % " + this.partitions;
+    }
+    return "(SELECT part FROM " + this.partitionMap + " WHERE "
+           + this.partitionMap + ".id = " + id + ")";
+  }
+
+  /**
+   * @brief Split a SELECT list on the commas outside of parentheses.
+   */
+  private static ArrayList<String> splitList(String list) {
+    ArrayList<String> items = new ArrayList<String>();
+    int depth = 0;
+    int start = 0;
+    for (int i = 0; i < list.length(); ++i) {
+      char c = list.charAt(i);
+      if (c == '(') ++depth;
+      if (c == ')') --depth;
+      if (c == ',' && depth == 0) {
+        items.add(list.substring(start, i).trim());
+        start = i + 1;
+      }
+    }
+    items.add(list.substring(start).trim());
+    return items;
+  }
+
+  /**
+   * @brief Get the SQL creating the clustered index that moves a table onto
+   * the partition scheme.
+   */
+  private static String clusterSql(String table, String key) {
+    return "CREATE CLUSTERED INDEX cix_" + table + " ON " + table + "(part, "
+           + key + ") ON " + SCHEME + "(part);";
+  }
+
+  /**
+   * @brief Add the column part to the tables created from a vertex id, and
+   * store them on the partition scheme.
+   * @param sql The SQL of a block.
+   * @return The rewritten SQL.
+   */
+  private String partitionTargets(String sql) {
+    ArrayList<String> targets = new ArrayList<String>();
+    Matcher m = SELECT_INTO.matcher(sql);
+    StringBuffer sb = new StringBuffer();
+    while (m.find()) {
+      String list = m.group(2).trim();
+      String target = m.group(4);
+      String id = null;
+      for (String item : splitList(list)) {
+        Matcher idItem = ID_ITEM.matcher(item);
+        if (idItem.matches()) {
+          id = idItem.group(1) == null ? "id" : idItem.group(1);
+        }
+      }
+      String replacement = m.group();
+      Matcher source = FIRST_FROM.matcher(sql.substring(m.end()));
+      if ("id".equals(id) && this.partitionMap != null && source.find()) {
+        // A bare id would be the id of the map in its subquery.
+        id = source.group(1) + ".id";
+      }
+      if (id != null) {
+        replacement = m.group(1) + list + ", " + this.partOf(id)
+                      + " AS part" + m.group(3) + target;
+        targets.add(target);
+      } else if (list.equals("*")) {
+        // SELECT * INTO t FROM s keeps the column part of s.
+        Matcher from = FROM.matcher(sql.substring(m.end()));
+        if (from.lookingAt() && this.partitioned.contains(from.group(1))) {
+          targets.add(target);
+        }
+      }
+      m.appendReplacement(sb, Matcher.quoteReplacement(replacement));
+    }
+    m.appendTail(sb);
+    sql = sb.toString();
+
+    m = RENAME.matcher(sql);
+    while (m.find()) {
+      if (this.partitioned.contains(m.group(1))) {
+        this.partitioned.add(m.group(2));
+      }
+    }
+    if (targets.isEmpty()) return sql;
+
+    // The table is clustered right after the statement creating it, in the
+    // same branch.
+    StringBuilder out = new StringBuilder();
+    String[] lines = sql.split("\n", -1);
+    int targetIdx = 0;
+    for (int i = 0; i < lines.length; ++i) {
+      out.append(lines[i]).append("\n");
+      if (targetIdx == targets.size()
+          || !lines[i].trim().equals("INTO " + targets.get(targetIdx))) {
+        continue;
+      }
+      int depth = 0;
+      while (i + 1 < lines.length
+             && (depth > 0 || CONTINUATION.matcher(lines[i + 1]).matches())) {
+        ++i;
+        out.append(lines[i]).append("\n");
+        depth += lines[i].length() - lines[i].replace("(", "").length();
+        depth -= lines[i].length() - lines[i].replace(")", "").length();
+      }
+      String indent = lines[i].substring(0, lines[i].length()
+                                         - lines[i].trim().length());
+      out.append(indent + clusterSql(targets.get(targetIdx), "id"));
+      out.append("\n");
+      this.partitioned.add(targets.get(targetIdx));
+      ++targetIdx;
+    }
+    // The last line has no line break.
+    out.setLength(out.length() - 1);
+    return out.toString();
+  }
+
+  /**
+   * @brief Join the partitioned tables on part as well as on the vertex id.
+   * @param sql The SQL of a block.
+   * @return The rewritten SQL.
+   */
+  private String alignJoins(String sql) {
+    sql = sql.replaceAll("\\bedge\\b", EDGE);
+    Matcher m = ID_JOIN.matcher(sql);
+    StringBuffer sb = new StringBuffer();
+    while (m.find()) {
+      String replacement = m.group();
+      if (this.partitioned.contains(m.group(1))
+          && this.partitioned.contains(m.group(2))) {
+        replacement += " AND " + m.group(1) + ".part = " + m.group(2) + ".part";
+      }
+      m.appendReplacement(sb, Matcher.quoteReplacement(replacement));
+    }
+    m.appendTail(sb);
+
+    m = EDGE_JOIN.matcher(sb.toString());
+    sb = new StringBuffer();
+    while (m.find()) {
+      String replacement = m.group();
+      if (m.group(1).equals(this.edgeKey)
+          && this.partitioned.contains(m.group(2))) {
+        replacement += " AND " + EDGE + ".part = " + m.group(2) + ".part";
+      }
+      m.appendReplacement(sb, Matcher.quoteReplacement(replacement));
+    }
+    m.appendTail(sb);
+    return sb.toString();
+  }
+
+  /**
+   * @brief Get the blocks creating the partition scheme and part_edge.
+   */
+  private ArrayList<Block> createScheme() {
+    ArrayList<Block> init = new ArrayList<Block>();
+    init.add(new DropTableBlock("initdroppartedge", 0, EDGE));
+    Block scheme = new Block("partitionScheme", 0);
+    scheme.append("IF EXISTS (SELECT * FROM sys.partition_schemes WHERE name = '"
+                  + SCHEME + "')");
+    scheme.append("DROP PARTITION SCHEME " + SCHEME + ";");
+    scheme.append("IF EXISTS (SELECT * FROM sys.partition_functions WHERE name = '"
+                  + FUNCTION + "')");
+    scheme.append("DROP PARTITION FUNCTION " + FUNCTION + ";");
+    // RANGE LEFT on 0 .. K - 2 puts every value of id % K in its own
+    // partition.
+    StringBuilder bounds = new StringBuilder();
+    for (int i = 0; i < this.partitions - 1; ++i) {
+      if (i > 0) bounds.append(", ");
+      bounds.append(i);
+    }
+    scheme.append("CREATE PARTITION FUNCTION " + FUNCTION
+                  + " (int) AS RANGE LEFT FOR VALUES (" + bounds + ");");
+    scheme.append("CREATE PARTITION SCHEME " + SCHEME + " AS PARTITION "
+                  + FUNCTION + " ALL TO ([PRIMARY]);");
+    init.add(scheme);
+    Block edge = new Block("partitionEdge", 0);
+    edge.append("SELECT edge.*, " + this.partOf("edge." + this.edgeKey) + " AS part");
+    edge.append("INTO " + EDGE);
+    edge.append("FROM edge;");
+    edge.append(clusterSql(EDGE, this.edgeKey));
+    init.add(edge);
+    return init;
+  }
+
+  /**
+   * @brief Rewrite the blocks.
+   */
+  public void run() {
+    // The tables of the last run are dropped before the partition scheme.
+    int first = 0;
+    while (first < this.blocks.size()
+           && (this.blocks.get(first).getStage().startsWith("initdrop")
+               || this.blocks.get(first).getStage().startsWith("intdrop"))) {
+      ++first;
+    }
+    ArrayList<Block> init = this.createScheme();
+    this.blocks.addAll(first, init);
+    this.partitioned.add(EDGE);
+    first += init.size();
+
+    // The tables are created before they are used, except the tables carried
+    // to the next superstep, so the partitioned tables are found first.
+    ArrayList<String> sqls = new ArrayList<String>();
+    for (int i = 0; i < this.blocks.size(); ++i) {
+      sqls.add(i < first ? this.blocks.get(i).getSql()
+                         : this.partitionTargets(this.blocks.get(i).getSql()));
+    }
+    for (int i = first; i < this.blocks.size(); ++i) {
+      Block block = this.blocks.get(i);
+      String sql = this.alignJoins(sqls.get(i));
+      // The termination check is kept, it is read by the cost estimator.
+      if (sql.equals(block.getSql()) || block.getStage().equals("endWhile")) {
+        continue;
+      }
+      Block rewritten = new Block(block.getStage(), block.getIndentLevel());
+      rewritten.concat(sql);
+      this.blocks.set(i, rewritten);
+    }
+  }
+}
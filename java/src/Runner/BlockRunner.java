@@ -0,0 +1,616 @@
+/**
+ * This file copyright (c) 2015-2016, Jing Fan, Adalbert Gerald Soosai Raj, and Jignesh M. Patel
+ *
+ * See the file CREDITS.txt in the root directory for details.
+ **/
+
+package Runner;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import Block.Block;
+
+/**
+ * @brief Executes the SQL blocks generated by Grail through JDBC. The T-SQL
+ * control flow (variables, IF, WHILE, transactions) is interpreted here, and
+ * every other statement is rewritten by the dialect and sent to the
+ * database, so the blocks can run on databases without T-SQL. The time and
+ * the written rows of every block are recorded per iteration.
+ */
+public class BlockRunner {
+
+  private enum Kind {
+    SQL,
+    SELECT_ASSIGN,
+    DECLARE,
+    SET,
+    IF,
+    ELSE,
+    WHILE,
+    BEGIN,
+    END,
+    BEGIN_TX,
+    COMMIT_TX,
+    THROW
+  }
+
+  /**
+   * @brief A parsed statement. IF, WHILE and BEGIN have children.
+   */
+  private static class Stmt {
+    Kind kind;
+    String text;
+    int blockIdx;
+    // The statements in BEGIN ... END.
+    ArrayList<Stmt> body = new ArrayList<Stmt>();
+    // The branches of IF, or the body of WHILE.
+    Stmt thenStmt;
+    Stmt elseStmt;
+
+    Stmt(Kind kind, String text, int blockIdx) {
+      this.kind = kind;
+      this.text = text;
+      this.blockIdx = blockIdx;
+    }
+  }
+
+  private static final Pattern DROP_IF_EXISTS = Pattern.compile(
+      "(?i)^IF\\s+OBJECT_ID\\(.*DROP\\s+TABLE.*");
+  // Lines that continue the previous SQL statement.
+  private static final Pattern CONTINUATION = Pattern.compile(
+      "(?i)^(FROM|WHERE|GROUP|ORDER|HAVING|INTO|AND|OR|UNION|ON|LEFT|RIGHT|"
+      + "INNER|FULL|JOIN|WHEN|VALUES|OPTION)\\b.*|^[);].*");
+  private static final Pattern VARIABLE = Pattern.compile("@@?(\\w+)");
+  private static final Pattern SIMPLE_COND = Pattern.compile(
+      "^\\(?\\s*(-?\\d+)\\s*(=|!=|<>|<=|>=|<|>)\\s*(-?\\d+)\\s*\\)?$");
+  private static final Pattern FROM = Pattern.compile("(?i)\\bFROM\\b");
+  private static final Pattern NUMBER = Pattern.compile("^-?\\d+(\\.\\d+)?$");
+
+  private Connection conn;
+  private SqlDialect dialect;
+  // Whether to count the rows of tables created by SELECT INTO.
+  private boolean countRows = true;
+  // The stages of the blocks.
+  private ArrayList<String> stages = new ArrayList<String>();
+  // T-SQL variables.
+  private HashMap<String, String> vars = new HashMap<String, String>();
+  // @@ROWCOUNT.
+  private long rowCount = 0;
+  // The table of the last SELECT INTO when its rows were not counted, so
+  // @@ROWCOUNT counts them when it is read, or null.
+  private String uncounted = null;
+  // The statements of the run, the outermost loop while it runs, and the
+  // index of the statement after it.
+  private ArrayList<Stmt> program;
+  private Stmt loop = null;
+  private int next = 0;
+  // The current iteration of the outermost loop.
+  private int iteration = 0;
+  private int loopDepth = 0;
+  private ExecutionStats stats;
+  // Captures the plans of the statements, or null.
+  private PlanCapture planCapture = null;
+
+  /**
+   * @brief Constructor.
+   * @param conn The connection.
+   * @param dialect The dialect of the database.
+   */
+  public BlockRunner(Connection conn, SqlDialect dialect) {
+    this.conn = conn;
+    this.dialect = dialect;
+  }
+
+  /**
+   * @brief Set whether to count the rows of tables created by SELECT INTO.
+   * Counting costs a scan of the new table.
+   * @param countRows Whether to count the rows.
+   */
+  public void setCountRows(boolean countRows) {
+    this.countRows = countRows;
+  }
+
+  /**
+   * @brief Capture the plans of the statements before they are run. The
+   * time of capturing is not counted in the statistics.
+   * @param planCapture The plan capture, or null to capture no plans.
+   */
+  public void setPlanCapture(PlanCapture planCapture) {
+    this.planCapture = planCapture;
+  }
+
+  /**
+   * @brief Get the value of a T-SQL variable after the run.
+   * @param name The name, without '@'.
+   * @return The value, or null.
+   */
+  public String getVariable(String name) {
+    return this.vars.get(name.toLowerCase());
+  }
+
+  /**
+   * @brief Run the blocks.
+   * @param blocks The blocks generated by Grail.
+   * @return The statistics of the run.
+   */
+  public ExecutionStats run(List<Block> blocks) throws SQLException {
+    this.start(blocks);
+    while (this.nextSuperstep()) {
+      this.superstep();
+    }
+    return this.finish();
+  }
+
+  /**
+   * @brief Start a run one superstep at a time: run the statements before
+   * the outermost loop. Then nextSuperstep() and superstep() run the loop,
+   * and finish() the statements after it.
+   * @param blocks The blocks generated by Grail.
+   */
+  public void start(List<Block> blocks) throws SQLException {
+    ArrayList<Stmt> stmts = new ArrayList<Stmt>();
+    this.stages.clear();
+    for (int i = 0; i < blocks.size(); ++i) {
+      this.stages.add(blocks.get(i).getStage());
+      split(blocks.get(i).getSql(), i, stmts);
+    }
+    this.program = new ArrayList<Stmt>();
+    int[] pos = {0};
+    while (pos[0] < stmts.size()) {
+      this.program.add(parse(stmts, pos));
+    }
+
+    this.stats = new ExecutionStats();
+    this.iteration = 0;
+    this.loopDepth = 0;
+    this.loop = null;
+    this.next = 0;
+    while (this.next < this.program.size()) {
+      Stmt stmt = this.program.get(this.next++);
+      if (stmt.kind == Kind.WHILE) {
+        this.loop = stmt;
+        break;
+      }
+      this.exec(stmt);
+    }
+  }
+
+  /**
+   * @brief Test the condition of the outermost loop.
+   * @return Whether the loop runs another superstep.
+   */
+  public boolean nextSuperstep() throws SQLException {
+    if (this.loop == null) return false;
+    long start = System.nanoTime();
+    boolean cond = this.test(this.substitute(this.loop.text));
+    if (cond) ++this.iteration;
+    this.record(this.loop, start, 0);
+    if (!cond) this.loop = null;
+    return cond;
+  }
+
+  /**
+   * @brief Run the body of the outermost loop once, after nextSuperstep()
+   * returned true.
+   */
+  public void superstep() throws SQLException {
+    ++this.loopDepth;
+    try {
+      this.exec(this.loop.thenStmt);
+    } finally {
+      --this.loopDepth;
+    }
+  }
+
+  /**
+   * @brief Run the statements after the outermost loop.
+   * @return The statistics of the run.
+   */
+  public ExecutionStats finish() throws SQLException {
+    this.loop = null;
+    while (this.next < this.program.size()) {
+      this.exec(this.program.get(this.next++));
+    }
+    return this.stats;
+  }
+
+  /**
+   * @brief Split the SQL of a block into statements.
+   * @param sql The SQL of the block.
+   * @param blockIdx The index of the block.
+   * @param stmts The list to append to.
+   */
+  private static void split(String sql, int blockIdx, ArrayList<Stmt> stmts) {
+    Stmt cur = null;
+    int depth = 0;
+    for (String line : sql.split("\n")) {
+      line = line.trim();
+      if (line.isEmpty()) continue;
+      String upper = line.toUpperCase();
+      if (cur != null) {
+        boolean cont = depth > 0 || CONTINUATION.matcher(line).matches();
+        if (!cont && upper.startsWith("SELECT")) {
+          // INSERT INTO t SELECT ..., or the second part of a UNION.
+          String text = cur.text.toUpperCase();
+          cont = (text.startsWith("INSERT") && !text.contains("SELECT"))
+                 || text.endsWith("UNION ALL") || text.endsWith("UNION");
+        }
+        if (cont) {
+          cur.text += "\n" + line;
+          depth += depthOf(line);
+          if (depth <= 0 && line.endsWith(";")) {
+            cur.text = stripSemicolon(cur.text);
+            cur = null;
+            depth = 0;
+          }
+          continue;
+        }
+        cur.text = stripSemicolon(cur.text);
+        cur = null;
+        depth = 0;
+      }
+
+      Kind kind;
+      String text = stripSemicolon(line);
+      if (DROP_IF_EXISTS.matcher(line).matches()) {
+        kind = Kind.SQL;
+      } else if (upper.equals("BEGIN")) {
+        kind = Kind.BEGIN;
+      } else if (upper.startsWith("BEGIN TRAN")) {
+        kind = Kind.BEGIN_TX;
+      } else if (upper.startsWith("COMMIT")) {
+        kind = Kind.COMMIT_TX;
+      } else if (upper.equals("END") || upper.equals("END;")) {
+        kind = Kind.END;
+      } else if (upper.equals("ELSE")) {
+        kind = Kind.ELSE;
+      } else if (upper.startsWith("IF ") || upper.startsWith("IF(")) {
+        kind = Kind.IF;
+        text = text.substring(2).trim();
+      } else if (upper.startsWith("WHILE ")) {
+        kind = Kind.WHILE;
+        text = text.substring(5).trim();
+      } else if (upper.startsWith("DECLARE ")) {
+        kind = Kind.DECLARE;
+      } else if (upper.startsWith("SET @")) {
+        kind = Kind.SET;
+      } else if (upper.startsWith("THROW")) {
+        kind = Kind.THROW;
+      } else {
+        // A SQL statement, which may continue on the next lines.
+        kind = upper.startsWith("SELECT @") ? Kind.SELECT_ASSIGN : Kind.SQL;
+        cur = new Stmt(kind, line, blockIdx);
+        stmts.add(cur);
+        depth = depthOf(line);
+        if (depth <= 0 && line.endsWith(";")) {
+          cur.text = stripSemicolon(cur.text);
+          cur = null;
+          depth = 0;
+        }
+        continue;
+      }
+      stmts.add(new Stmt(kind, text, blockIdx));
+    }
+    if (cur != null) {
+      cur.text = stripSemicolon(cur.text);
+    }
+  }
+
+  private static int depthOf(String line) {
+    int depth = 0;
+    for (int i = 0; i < line.length(); ++i) {
+      if (line.charAt(i) == '(') ++depth;
+      if (line.charAt(i) == ')') --depth;
+    }
+    return depth;
+  }
+
+  private static String stripSemicolon(String text) {
+    text = text.trim();
+    while (text.endsWith(";")) {
+      text = text.substring(0, text.length() - 1).trim();
+    }
+    return text;
+  }
+
+  /**
+   * @brief Parse a statement with its children.
+   * @param stmts The statements.
+   * @param pos The position, moved after the statement.
+   * @return The statement.
+   */
+  private static Stmt parse(ArrayList<Stmt> stmts, int[] pos) {
+    Stmt stmt = stmts.get(pos[0]++);
+    switch (stmt.kind) {
+      case IF:
+        stmt.thenStmt = parse(stmts, pos);
+        if (pos[0] < stmts.size() && stmts.get(pos[0]).kind == Kind.ELSE) {
+          ++pos[0];
+          stmt.elseStmt = parse(stmts, pos);
+        }
+        break;
+      case WHILE:
+        stmt.thenStmt = parse(stmts, pos);
+        break;
+      case BEGIN:
+        while (pos[0] < stmts.size() && stmts.get(pos[0]).kind != Kind.END) {
+          stmt.body.add(parse(stmts, pos));
+        }
+        if (pos[0] == stmts.size()) {
+          throw new IllegalStateException("BEGIN without END in block "
+                                          + stmt.blockIdx);
+        }
+        ++pos[0];
+        break;
+      default:
+        break;
+    }
+    return stmt;
+  }
+
+  /**
+   * @brief Get @@ROWCOUNT. The rows of a SELECT INTO are counted here if
+   * the database did not report them.
+   */
+  private long getRowCount() throws SQLException {
+    if (this.uncounted != null) {
+      Statement stmt = this.conn.createStatement();
+      try {
+        ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + this.uncounted);
+        rs.next();
+        this.rowCount = rs.getLong(1);
+        rs.close();
+      } finally {
+        stmt.close();
+      }
+      this.uncounted = null;
+    }
+    return this.rowCount;
+  }
+
+  /**
+   * @brief Replace the variables in a statement with their values.
+   */
+  private String substitute(String text) throws SQLException {
+    Matcher m = VARIABLE.matcher(text);
+    StringBuffer sb = new StringBuffer();
+    while (m.find()) {
+      String val;
+      if (m.group().startsWith("@@")) {
+        val = m.group(1).equalsIgnoreCase("ROWCOUNT")
+              ? String.valueOf(this.getRowCount()) : "NULL";
+      } else {
+        val = this.vars.get(m.group(1).toLowerCase());
+        if (val == null) val = "NULL";
+      }
+      m.appendReplacement(sb, Matcher.quoteReplacement(val));
+    }
+    m.appendTail(sb);
+    return sb.toString();
+  }
+
+  /**
+   * @brief Evaluate an expression by the database.
+   * @param expr The expression, with the variables replaced.
+   * @return The value as a string.
+   */
+  private String evaluate(String expr) throws SQLException {
+    if (NUMBER.matcher(expr.trim()).matches()) {
+      return expr.trim();
+    }
+    Statement stmt = this.conn.createStatement();
+    try {
+      ResultSet rs = stmt.executeQuery("SELECT " + expr);
+      rs.next();
+      String val = rs.getString(1);
+      rs.close();
+      return val;
+    } finally {
+      stmt.close();
+    }
+  }
+
+  /**
+   * @brief Run SELECT @x = expr, @y = expr FROM ... as one query, and set
+   * the variables from its row.
+   * @param text The statement.
+   */
+  private void selectAssign(String text) throws SQLException {
+    String body = text.trim().substring("SELECT".length());
+    // The select list ends at the first FROM outside parentheses.
+    int end = body.length();
+    Matcher m = FROM.matcher(body);
+    while (m.find()) {
+      if (depthOf(body.substring(0, m.start())) == 0) {
+        end = m.start();
+        break;
+      }
+    }
+    ArrayList<String> names = new ArrayList<String>();
+    ArrayList<String> exprs = new ArrayList<String>();
+    String list = body.substring(0, end);
+    int start = 0;
+    for (int i = 0; i <= list.length(); ++i) {
+      if (i < list.length()
+          && (list.charAt(i) != ',' || depthOf(list.substring(start, i)) != 0)) {
+        continue;
+      }
+      String item = list.substring(start, i);
+      int eq = item.indexOf('=');
+      names.add(item.substring(item.indexOf('@') + 1, eq).trim().toLowerCase());
+      exprs.add(this.substitute(item.substring(eq + 1).trim()));
+      start = i + 1;
+    }
+    String rest = end == body.length() ? ""
+                  : " " + this.substitute(body.substring(end));
+    if (names.size() == 1) {
+      this.vars.put(names.get(0), this.evaluate(exprs.get(0) + rest));
+      return;
+    }
+    Statement stmt = this.conn.createStatement();
+    try {
+      ResultSet rs = stmt.executeQuery("SELECT " + String.join(", ", exprs) + rest);
+      boolean found = rs.next();
+      for (int i = 0; i < names.size(); ++i) {
+        this.vars.put(names.get(i), found ? rs.getString(i + 1) : null);
+      }
+      rs.close();
+    } finally {
+      stmt.close();
+    }
+  }
+
+  /**
+   * @brief Evaluate a condition.
+   * @param cond The condition, with the variables replaced.
+   * @return The result.
+   */
+  private boolean test(String cond) throws SQLException {
+    Matcher m = SIMPLE_COND.matcher(cond.trim());
+    if (m.matches()) {
+      long lhs = Long.parseLong(m.group(1));
+      long rhs = Long.parseLong(m.group(3));
+      switch (m.group(2)) {
+        case "=": return lhs == rhs;
+        case "!=": case "<>": return lhs != rhs;
+        case "<": return lhs < rhs;
+        case ">": return lhs > rhs;
+        case "<=": return lhs <= rhs;
+        default: return lhs >= rhs;
+      }
+    }
+    return "1".equals(this.evaluate("CASE WHEN " + cond + " THEN 1 ELSE 0 END"));
+  }
+
+  /**
+   * @brief Execute a statement.
+   * @param stmt The statement.
+   */
+  private void exec(Stmt stmt) throws SQLException {
+    long start = System.nanoTime();
+    long rows = 0;
+    switch (stmt.kind) {
+      case BEGIN:
+        for (Stmt child : stmt.body) {
+          this.exec(child);
+        }
+        return;
+      case IF: {
+        boolean cond = this.test(this.substitute(stmt.text));
+        this.record(stmt, start, 0);
+        if (cond) {
+          this.exec(stmt.thenStmt);
+        } else if (stmt.elseStmt != null) {
+          this.exec(stmt.elseStmt);
+        }
+        return;
+      }
+      case WHILE: {
+        boolean outermost = this.loopDepth == 0;
+        ++this.loopDepth;
+        while (true) {
+          start = System.nanoTime();
+          boolean cond = this.test(this.substitute(stmt.text));
+          if (cond && outermost) ++this.iteration;
+          this.record(stmt, start, 0);
+          if (!cond) break;
+          this.exec(stmt.thenStmt);
+        }
+        --this.loopDepth;
+        return;
+      }
+      case DECLARE: {
+        String name = stmt.text.split("\\s+")[1].substring(1).toLowerCase();
+        this.vars.put(name, "NULL");
+        break;
+      }
+      case SET: {
+        int eq = stmt.text.indexOf('=');
+        String name = stmt.text.substring(stmt.text.indexOf('@') + 1, eq)
+                          .trim().toLowerCase();
+        this.vars.put(name, this.evaluate(this.substitute(
+            stmt.text.substring(eq + 1).trim())));
+        break;
+      }
+      case SELECT_ASSIGN:
+        this.selectAssign(stmt.text);
+        break;
+      case BEGIN_TX:
+        this.conn.setAutoCommit(false);
+        break;
+      case COMMIT_TX:
+        this.conn.commit();
+        this.conn.setAutoCommit(true);
+        break;
+      case THROW:
+        throw new SQLException(this.substitute(stmt.text));
+      case SQL:
+        if (this.planCapture != null && this.planCapture.wants(this.iteration)) {
+          this.planCapture.capture(this.conn, this.dialect, stmt.blockIdx,
+                                   this.stages.get(stmt.blockIdx),
+                                   this.iteration,
+                                   this.dialect.translate(this.substitute(stmt.text)));
+          start = System.nanoTime();
+        }
+        this.uncounted = null;
+        rows = this.execSql(stmt.text);
+        this.rowCount = rows;
+        String target = this.dialect.getSelectIntoTarget(stmt.text);
+        if (target != null && !this.countRows && rows == 0) {
+          this.uncounted = target;
+        }
+        break;
+      default:
+        throw new IllegalStateException("Unexpected " + stmt.kind
+                                        + " in block " + stmt.blockIdx);
+    }
+    this.record(stmt, start, rows);
+  }
+
+  /**
+   * @brief Execute a SQL statement.
+   * @param text The T-SQL statement.
+   * @return The number of rows written.
+   */
+  private long execSql(String text) throws SQLException {
+    String sql = this.dialect.translate(this.substitute(text));
+    Statement stmt = this.conn.createStatement();
+    try {
+      long rows = 0;
+      if (!stmt.execute(sql)) {
+        rows = Math.max(0, stmt.getUpdateCount());
+      }
+      String target = this.dialect.getSelectIntoTarget(text);
+      if (this.countRows && target != null) {
+        ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + target);
+        rs.next();
+        rows = rs.getLong(1);
+        rs.close();
+      }
+      if (this.planCapture != null) {
+        this.planCapture.observe(sql);
+      }
+      return rows;
+    } catch (SQLException e) {
+      throw new SQLException(e.getMessage() + "\nin statement:\n" + sql, e);
+    } finally {
+      stmt.close();
+    }
+  }
+
+  /**
+   * @brief Record the time of a statement to its block.
+   */
+  private void record(Stmt stmt, long start, long rows) {
+    this.stats.add(stmt.blockIdx, this.stages.get(stmt.blockIdx),
+                   this.iteration, System.nanoTime() - start, rows);
+  }
+}
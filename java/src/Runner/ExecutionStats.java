@@ -0,0 +1,116 @@
+/**
+ * This file copyright (c) 2015-2016, Jing Fan, Adalbert Gerald Soosai Raj, and Jignesh M. Patel
+ *
+ * See the file CREDITS.txt in the root directory for details.
+ **/
+
+package Runner;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+
+/**
+ * @brief Time and row counts of every executed block, per iteration. The
+ * blocks before the loop are recorded as iteration 0, the supersteps start
+ * from 1.
+ */
+public class ExecutionStats {
+
+  /**
+   * @brief The statistics of a block in an iteration.
+   */
+  public static class StageStat {
+    public int blockIdx;
+    public String stage;
+    public int iteration;
+    public long nanos;
+    public long rows;
+
+    StageStat(int blockIdx, String stage, int iteration) {
+      this.blockIdx = blockIdx;
+      this.stage = stage;
+      this.iteration = iteration;
+    }
+  }
+
+  // In the order of execution.
+  private ArrayList<StageStat> stats = new ArrayList<StageStat>();
+  // The number of supersteps.
+  private int iterations = 0;
+
+  /**
+   * @brief Record time and rows of a block.
+   * @param blockIdx The index of the block.
+   * @param stage The stage of the block.
+   * @param iteration The iteration.
+   * @param nanos The time.
+   * @param rows The number of rows written, or 0 if unknown.
+   */
+  void add(int blockIdx, String stage, int iteration, long nanos, long rows) {
+    StageStat stat = null;
+    if (!this.stats.isEmpty()) {
+      StageStat last = this.stats.get(this.stats.size() - 1);
+      if (last.blockIdx == blockIdx && last.iteration == iteration) {
+        stat = last;
+      }
+    }
+    if (stat == null) {
+      stat = new StageStat(blockIdx, stage, iteration);
+      this.stats.add(stat);
+    }
+    stat.nanos += nanos;
+    stat.rows += rows;
+    this.iterations = Math.max(this.iterations, iteration);
+  }
+
+  /**
+   * @brief Getters.
+   */
+  public ArrayList<StageStat> getStats() {
+    return this.stats;
+  }
+
+  public int getIterations() {
+    return this.iterations;
+  }
+
+  /**
+   * @brief Get the time of every superstep.
+   * @return The time in nanoseconds, the i-th element is superstep i + 1.
+   */
+  public long[] getSuperstepNanos() {
+    long[] nanos = new long[this.iterations];
+    for (StageStat stat : this.stats) {
+      if (stat.iteration > 0) {
+        nanos[stat.iteration - 1] += stat.nanos;
+      }
+    }
+    return nanos;
+  }
+
+  /**
+   * @brief Get the total time.
+   * @return The time in nanoseconds.
+   */
+  public long getTotalNanos() {
+    long nanos = 0;
+    for (StageStat stat : this.stats) {
+      nanos += stat.nanos;
+    }
+    return nanos;
+  }
+
+  /**
+   * @brief Print one line for every block in every iteration.
+   * @param out The output stream.
+   */
+  public void print(PrintStream out) {
+    out.println(String.format("%5s %5s %-20s %12s %12s",
+                              "iter", "block", "stage", "ms", "rows"));
+    for (StageStat stat : this.stats) {
+      out.println(String.format("%5d %5d %-20s %12.3f %12d",
+                                stat.iteration, stat.blockIdx, stat.stage,
+                                stat.nanos / 1e6, stat.rows));
+    }
+  }
+}
@@ -0,0 +1,226 @@
+/**
+ * This file copyright (c) 2015-2016, Jing Fan, Adalbert Gerald Soosai Raj, and Jignesh M. Patel
+ *
+ * See the file CREDITS.txt in the root directory for details.
+ **/
+
+package Runner;
+
+import java.io.PrintStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * @brief Captures the estimated plans of the statements run by BlockRunner,
+ * in the initialization, the first iteration and the Nth iteration, and
+ * flags plan shapes that usually mean a missing or unused index:
+ *
+ * FULL_SCAN_EDGE: edge is scanned although an index on it was created, e.g.
+ * by Optimizer.createIdx.
+ * HASH_SPILL: a hash join or aggregate reports that it spills to disk. Most
+ * databases report spills only in actual plans, so this is flagged only when
+ * the estimated plan already mentions it.
+ * SORT_GROUP_BY: a sort feeds the GROUP BY of the combine, where a hash
+ * aggregate or an index order is expected.
+ */
+public class PlanCapture {
+
+  /**
+   * @brief The plan of a statement.
+   */
+  public static class Plan {
+    public int blockIdx;
+    public String stage;
+    public int iteration;
+    public String sql;
+    public ArrayList<String> lines;
+    public ArrayList<String> warnings = new ArrayList<String>();
+
+    Plan(int blockIdx, String stage, int iteration, String sql,
+         ArrayList<String> lines) {
+      this.blockIdx = blockIdx;
+      this.stage = stage;
+      this.iteration = iteration;
+      this.sql = sql;
+      this.lines = lines;
+    }
+  }
+
+  private static final Pattern CREATE_INDEX = Pattern.compile(
+      "(?is)\\s*CREATE\\s+(?:UNIQUE\\s+)?(?:CLUSTERED\\s+|NONCLUSTERED\\s+)?"
+      + "INDEX\\s+(\\w+)\\s+ON\\s+(\\w+).*");
+  private static final Pattern DROP_INDEX = Pattern.compile(
+      "(?is)\\s*DROP\\s+INDEX\\s+(?:IF\\s+EXISTS\\s+)?(\\w+).*");
+  // Full scans of edge, in the plans of SQL Server, PostgreSQL and H2.
+  private static final Pattern EDGE_SCAN = Pattern.compile(
+      "(?i).*(table scan\\(object:\\(.*\\[edge\\]|seq scan on edge\\b"
+      + "|\\bedge\\.tablescan\\b|clustered index scan\\(object:\\(.*\\[edge\\]).*");
+  private static final Pattern SPILL = Pattern.compile(
+      "(?i).*(spill|hash warning|sort warning|disk:|batches: [2-9]).*");
+  private static final Pattern SORT = Pattern.compile(
+      "(?i).*\\b(sort|incremental sort)\\b.*");
+  private static final Pattern SORTED_AGGREGATE = Pattern.compile(
+      "(?i).*(stream aggregate|groupaggregate).*");
+  private static final Pattern GROUP_BY = Pattern.compile(
+      "(?is).*\\bGROUP\\s+BY\\b.*");
+
+  // The other iteration to capture, besides the first one.
+  private int nth;
+  // Plans keyed by stage, in the order of capture.
+  private LinkedHashMap<String, ArrayList<Plan>> plans =
+      new LinkedHashMap<String, ArrayList<Plan>>();
+  // The existing indexes, index name -> table.
+  private HashMap<String, String> indexes = new HashMap<String, String>();
+
+  /**
+   * @brief Constructor.
+   * @param nth The other iteration to capture, besides the initialization
+   * and the first iteration.
+   */
+  public PlanCapture(int nth) {
+    this.nth = nth;
+  }
+
+  /**
+   * @brief Whether the plans of an iteration are captured.
+   * @param iteration The iteration, 0 is the initialization.
+   */
+  boolean wants(int iteration) {
+    return iteration <= 1 || iteration == this.nth;
+  }
+
+  /**
+   * @brief Track the indexes created and dropped by a statement.
+   * @param sql The executed statement.
+   */
+  void observe(String sql) {
+    Matcher m = CREATE_INDEX.matcher(sql);
+    if (m.matches()) {
+      this.indexes.put(m.group(1).toLowerCase(), m.group(2).toLowerCase());
+      return;
+    }
+    m = DROP_INDEX.matcher(sql);
+    if (m.matches()) {
+      this.indexes.remove(m.group(1).toLowerCase());
+    }
+  }
+
+  /**
+   * @brief Capture the plan of a statement before it is run.
+   * @param conn The connection.
+   * @param dialect The dialect, which knows how to get a plan.
+   * @param blockIdx The index of the block.
+   * @param stage The stage of the block.
+   * @param iteration The iteration.
+   * @param sql The rewritten statement.
+   */
+  void capture(Connection conn, SqlDialect dialect, int blockIdx,
+               String stage, int iteration, String sql) {
+    ArrayList<String> lines;
+    try {
+      lines = dialect.explain(conn, sql);
+    } catch (SQLException e) {
+      // A plan is never a reason to fail the run.
+      lines = new ArrayList<String>();
+      lines.add("(no plan: " + e.getMessage() + ")");
+    }
+    if (lines == null) {
+      return;
+    }
+    Plan plan = new Plan(blockIdx, stage, iteration, sql, lines);
+    this.analyze(plan);
+    ArrayList<Plan> list = this.plans.get(stage);
+    if (list == null) {
+      list = new ArrayList<Plan>();
+      this.plans.put(stage, list);
+    }
+    list.add(plan);
+  }
+
+  /**
+   * @brief Flag the anti-patterns in a plan.
+   * @param plan The plan.
+   */
+  private void analyze(Plan plan) {
+    boolean edgeIndexed = this.indexes.containsValue("edge");
+    boolean sort = false;
+    boolean sortedAggregate = false;
+    HashSet<String> warnings = new HashSet<String>();
+    for (String line : plan.lines) {
+      if (line == null) continue;
+      if (edgeIndexed && EDGE_SCAN.matcher(line).matches()) {
+        warnings.add("FULL_SCAN_EDGE");
+      }
+      if (SPILL.matcher(line).matches()) {
+        warnings.add("HASH_SPILL");
+      }
+      sort |= SORT.matcher(line).matches();
+      sortedAggregate |= SORTED_AGGREGATE.matcher(line).matches();
+    }
+    if (sort && sortedAggregate && GROUP_BY.matcher(plan.sql).matches()) {
+      warnings.add("SORT_GROUP_BY");
+    }
+    for (String warning : new String[] {"FULL_SCAN_EDGE", "HASH_SPILL",
+                                        "SORT_GROUP_BY"}) {
+      if (warnings.contains(warning)) {
+        plan.warnings.add(warning);
+      }
+    }
+  }
+
+  /**
+   * @brief Get the plans of a stage.
+   * @param stage The stage.
+   * @return The plans, or null if no plan was captured.
+   */
+  public ArrayList<Plan> getPlans(String stage) {
+    return this.plans.get(stage);
+  }
+
+  /**
+   * @brief Get the plans keyed by stage.
+   */
+  public LinkedHashMap<String, ArrayList<Plan>> getPlans() {
+    return this.plans;
+  }
+
+  /**
+   * @brief Get the plans with warnings.
+   * @return The plans.
+   */
+  public ArrayList<Plan> getFlagged() {
+    ArrayList<Plan> flagged = new ArrayList<Plan>();
+    for (ArrayList<Plan> list : this.plans.values()) {
+      for (Plan plan : list) {
+        if (!plan.warnings.isEmpty()) {
+          flagged.add(plan);
+        }
+      }
+    }
+    return flagged;
+  }
+
+  /**
+   * @brief Print the plans, grouped by stage.
+   * @param out The output stream.
+   */
+  public void print(PrintStream out) {
+    for (String stage : this.plans.keySet()) {
+      for (Plan plan : this.plans.get(stage)) {
+        out.println("-- " + stage + " (block " + plan.blockIdx
+                    + ", iteration " + plan.iteration + ")"
+                    + (plan.warnings.isEmpty() ? "" : " " + plan.warnings));
+        out.println(plan.sql);
+        for (String line : plan.lines) {
+          out.println("   " + line);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,179 @@
+/**
+ * This file copyright (c) 2015-2016, Jing Fan, Adalbert Gerald Soosai Raj, and Jignesh M. Patel
+ *
+ * See the file CREDITS.txt in the root directory for details.
+ **/
+
+package Runner;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * @brief Rewrites the T-SQL statements generated by Grail for other
+ * databases. The base class keeps the statements as they are (SQL Server),
+ * AnsiDialect rewrites the T-SQL idioms into standard SQL understood by
+ * embedded databases such as H2 or HSQLDB.
+ */
+public class SqlDialect {
+  /**
+   * @brief Get the dialect for a JDBC url.
+   * @param url The JDBC url.
+   * @return The dialect.
+   */
+  public static SqlDialect forUrl(String url) {
+    if (url.startsWith("jdbc:sqlserver:") || url.startsWith("jdbc:jtds:")) {
+      return new SqlDialect();
+    }
+    return new AnsiDialect();
+  }
+
+  /**
+   * @brief Rewrite a statement.
+   * @param sql The statement, without the trailing ';'.
+   * @return The rewritten statement.
+   */
+  public String translate(String sql) {
+    return sql;
+  }
+
+  /**
+   * @brief Get the table created by a statement, used to count the rows of
+   * SELECT INTO.
+   * @param sql The statement before rewriting.
+   * @return The table name, or null if the statement creates no table from
+   * a query.
+   */
+  public String getSelectIntoTarget(String sql) {
+    Matcher m = SELECT_INTO.matcher(sql);
+    if (m.matches()) {
+      return m.group(2);
+    }
+    return null;
+  }
+
+  /**
+   * @brief Get the estimated plan of a statement without running it. SQL
+   * Server returns the plan of every statement while SHOWPLAN_TEXT is on.
+   * @param conn The connection.
+   * @param sql The rewritten statement.
+   * @return The lines of the plan, or null if the statement has no plan.
+   */
+  public ArrayList<String> explain(Connection conn, String sql)
+      throws SQLException {
+    if (!EXPLAINABLE.matcher(sql).matches()) {
+      return null;
+    }
+    ArrayList<String> plan = new ArrayList<String>();
+    Statement stmt = conn.createStatement();
+    stmt.execute("SET SHOWPLAN_TEXT ON");
+    try {
+      boolean isResult = stmt.execute(sql);
+      while (isResult || stmt.getUpdateCount() != -1) {
+        if (isResult) {
+          ResultSet rs = stmt.getResultSet();
+          while (rs.next()) {
+            plan.add(rs.getString(1));
+          }
+          rs.close();
+        }
+        isResult = stmt.getMoreResults();
+      }
+    } finally {
+      stmt.execute("SET SHOWPLAN_TEXT OFF");
+      stmt.close();
+    }
+    return plan;
+  }
+
+  // Statements that read tables, the others are DDL.
+  static final Pattern EXPLAINABLE = Pattern.compile(
+      "(?is)\\s*(SELECT|INSERT|UPDATE|DELETE|CREATE\\s+TABLE\\s+\\w+\\s+AS)\\b.*");
+
+  // SELECT list INTO t FROM ...
+  static final Pattern SELECT_INTO = Pattern.compile(
+      "(?is)\\s*SELECT\\s+(.*?)\\s+INTO\\s+(\\w+)\\s+(FROM\\b.*)");
+
+  /**
+   * @brief The dialect for databases following the SQL standard.
+   */
+  public static class AnsiDialect extends SqlDialect {
+    private static final Pattern DROP_TABLE = Pattern.compile(
+        "(?is)IF\\s+OBJECT_ID\\('(?:dbo\\.)?(\\w+)',\\s*'U'\\)\\s+IS\\s+NOT\\s+NULL\\s+DROP\\s+TABLE\\s+(\\w+)");
+    private static final Pattern DROP_INDEX = Pattern.compile(
+        "(?is)DROP\\s+INDEX\\s+(\\w+)\\s+ON\\s+\\w+");
+    private static final Pattern RENAME = Pattern.compile(
+        "(?is)EXEC\\s+SP_RENAME\\s+'(\\w+)'\\s*,\\s*'(\\w+)'");
+    private static final Pattern CREATE_AS = Pattern.compile(
+        "(?is)\\s*CREATE\\s+TABLE\\s+\\w+\\s+AS\\s+(.*)");
+    private static final Pattern UPDATE_FROM = Pattern.compile(
+        "(?is)UPDATE\\s+(\\w+)\\s+SET\\s+\\w+\\.(\\w+)\\s*=\\s*(.*?)\\s+FROM\\s+(\\w+)\\s*,\\s*(\\w+)\\s+WHERE\\s+(.*)");
+
+    public String translate(String sql) {
+      Matcher m = DROP_TABLE.matcher(sql);
+      if (m.matches()) {
+        return "DROP TABLE IF EXISTS " + m.group(2);
+      }
+      m = DROP_INDEX.matcher(sql);
+      if (m.matches()) {
+        return "DROP INDEX IF EXISTS " + m.group(1);
+      }
+      m = RENAME.matcher(sql);
+      if (m.matches()) {
+        return "ALTER TABLE " + m.group(1) + " RENAME TO " + m.group(2);
+      }
+      m = UPDATE_FROM.matcher(sql);
+      if (m.matches()) {
+        // UPDATE t SET t.a = e FROM t, o WHERE p
+        // =>
+        // UPDATE t SET a = (SELECT e FROM o WHERE p)
+        // WHERE EXISTS (SELECT * FROM o WHERE p)
+        String other = m.group(4).equals(m.group(1)) ? m.group(5) : m.group(4);
+        return "UPDATE " + m.group(1) + " SET " + m.group(2)
+               + " = (SELECT " + m.group(3) + " FROM " + other
+               + " WHERE " + m.group(6) + ")"
+               + " WHERE EXISTS (SELECT * FROM " + other
+               + " WHERE " + m.group(6) + ")";
+      }
+      m = SELECT_INTO.matcher(sql);
+      if (m.matches()) {
+        return "CREATE TABLE " + m.group(2) + " AS SELECT " + m.group(1)
+               + "\n" + m.group(3);
+      }
+      // CREATE TABLE t(a int, b int,) has a trailing comma.
+      return sql.replaceAll(",(\\s*\\))\\s*$", "$1");
+    }
+
+    public ArrayList<String> explain(Connection conn, String sql)
+        throws SQLException {
+      if (!EXPLAINABLE.matcher(sql).matches()) {
+        return null;
+      }
+      // Not every database explains CREATE TABLE AS, the query is explained
+      // instead.
+      Matcher m = CREATE_AS.matcher(sql);
+      if (m.matches()) {
+        sql = m.group(1);
+      }
+      ArrayList<String> plan = new ArrayList<String>();
+      Statement stmt = conn.createStatement();
+      try {
+        ResultSet rs = stmt.executeQuery("EXPLAIN " + sql);
+        while (rs.next()) {
+          for (String line : rs.getString(1).split("\n")) {
+            plan.add(line);
+          }
+        }
+        rs.close();
+      } finally {
+        stmt.close();
+      }
+      return plan;
+    }
+  }
+}
@@ -7,8 +7,8 @@
 /**
  * @brief Generate next available table name. The table name is used for
  * auxiliary tables, in the format of "Table" + tableid. The policy is simple :
- * the table id grows monotonically. There is no reuse here.
- *
+ * the table id grows monotonically. There is no reuse here, the names of the
+ * tables that are dropped are reused by Liveness after the translation.
  */
 public class TbNameGen {
     // Current table id.
@@ -21,4 +21,12 @@ public class TbNameGen {
   public static String getNextTbName() {
     return "Table" + (curIdx++);
   }
+
+  /**
+   * @brief Whether a table name is generated here.
+   * @param tbName The table name.
+   */
+  public static boolean isTbName(String tbName) {
+    return tbName.matches("Table[0-9]+");
+  }
 }
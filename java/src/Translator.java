@@ -5,9 +5,12 @@
  **/
  
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Stack;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -21,6 +24,14 @@ import Block.EndWhileBlock;
 import Block.InsertBlock;
 import Block.SelectIntoBlock;
 import Block.UpdateVertexBlock;
+import Expr.Binary;
+import Expr.Call;
+import Expr.Expr;
+import Expr.ExprParser;
+import Expr.Literal;
+import Expr.Ref;
+import Expr.Stmt;
+import Expr.Unary;
 
 /**
  * @brief This is the translation module of Grail.
@@ -40,6 +51,20 @@ public class Translator {
   private int indentLevel;
   // The tables that contains the information about the message senders.
   private HashSet<String> senders = new HashSet<String>();
+  // The table of the sources in multi-source mode, or null.
+  private String sources = null;
+  // The key columns of next, message and cur. In multi-source mode every
+  // source has its own copy of the vertices.
+  private String[] keys = {"id"};
+  // The aggregates of every superstep, by name, or empty.
+  private LinkedHashMap<String, String> aggregates
+      = new LinkedHashMap<String, String>();
+  // The condition on the aggregates that ends the iterations, or null.
+  private String until = null;
+
+  // The T-SQL variables of the generated script.
+  private static final HashSet<String> RESERVED_VARS = new HashSet<String>(
+      Arrays.asList("flag", "isfirst", "superstep"));
 
   private enum StatementType {
       BEGIN_IF,
@@ -56,6 +81,14 @@ public class Translator {
   public Translator(HashMap<String, String> options) {
     this.options = options;
     this.indentLevel = 0;
+    this.sources = options.get("Sources");
+    if (this.sources != null) {
+      if (options.get("WarmStart") != null) {
+        throw new IllegalArgumentException(
+            "WarmStart can not be used together with Sources");
+      }
+      this.keys = new String[] {"source_id", "id"};
+    }
   }
 
   /**
@@ -86,6 +119,13 @@ public class Translator {
    * @brief Generate begin of while.
    */
   private void beginWhile() {
+    if (!this.aggregates.isEmpty()) {
+      Block declareAggBlock = new Block("declareAgg", this.indentLevel);
+      for (String name : this.aggregates.keySet()) {
+        declareAggBlock.append("DECLARE @" + name + " float");
+      }
+      blocks.add(declareAggBlock);
+    }
     blocks.add(new BeginWhileBlock("beginWhile",
                                    this.indentLevel,
                                    this.options.get("End")));
@@ -116,7 +156,8 @@ public class Translator {
 
     blocks.add(new EndWhileBlock("endWhile",
                                  this.indentLevel,
-                                 this.options.get("End"), "message"));
+                                 this.options.get("End"), "message",
+                                 this.until));
     --this.indentLevel;
   }
 
@@ -148,6 +189,32 @@ public class Translator {
     this.tableNameList.add(tableNames[isIn ? 0 : 1]);
   }
 
+  /**
+   * @brief Generate the link counts tables used by the program. Nothing is
+   * generated if the tables are preloaded together with the graph.
+   */
+  private void generateAllCnts() {
+    if (this.isCntsPreloaded()) {
+      return;
+    }
+    if (options.get("UpdateAndSend").contains("in_cnts")) {
+      this.generateCnts(true);
+    }
+
+    if (options.get("UpdateAndSend").contains("out_cnts")) {
+      this.generateCnts(false);
+    }
+  }
+
+  /**
+   * @brief Whether in_cnts and out_cnts are loaded together with the graph,
+   * e.g. by Graph.GraphLoader.
+   * @return True if the link counts tables are preloaded.
+   */
+  private boolean isCntsPreloaded() {
+    return "PRELOADED".equals(options.get("DegreeTables"));
+  }
+
   /**
    * @brief Combine messages, that is do aggregation on the messages.
    */
@@ -155,6 +222,9 @@ public class Translator {
     String aggregationVal = options.get("CombineMessage")
                                 .replace("message", "message.val");
     ArrayList<String> attrList = new ArrayList<String>();
+    if (this.sources != null) {
+      attrList.add("message.source_id AS source_id");
+    }
     attrList.add("message.id AS id");
     attrList.add(aggregationVal + " AS val");
     ArrayList<String> fromList = new ArrayList<String>();
@@ -166,7 +236,8 @@ public class Translator {
                                         fromList,  // The from tables.
                                         null, // No predicates.
                                         false, // Don't join on id.
-                                        "id")); // Group by attributes.
+                                        // Group by attributes.
+                                        String.join(", ", this.keys)));
     this.tableNameList.add("cur");
     this.convertedOptions.put("aggFunc", aggregationVal);
   }
@@ -218,6 +289,9 @@ public class Translator {
         tbName = usedTbs.iterator().next();
       }
     }
+    if (this.sources != null) {
+      attrList.add(tbName + ".source_id AS source_id");
+    }
     attrList.add(tbName + ".id AS id");
     attrList.add(tbName + ".val AS val");
     fromList.addAll(usedTbs);
@@ -237,7 +311,9 @@ public class Translator {
                                         // Join thest tables on (vertex)id.
                                         true,
                                         // No group by.
-                                        null));
+                                        null,
+                                        // The join keys.
+                                        this.keys));
     this.tableNameList.add(varName);
   }
 
@@ -253,6 +329,9 @@ public class Translator {
                     String exp,
                     String valFrom) {
     ArrayList<String> attrList = new ArrayList<String>();
+    if (this.sources != null) {
+      attrList.add(tbList.get(0) + ".source_id AS source_id");
+    }
     attrList.add(tbList.get(0) + ".id AS id");
     attrList.add(valFrom + ".val AS val");
     this.blocks.add(new SelectIntoBlock("join",
@@ -262,7 +341,8 @@ public class Translator {
                                         tbList,
                                         exp,
                                         true,
-                                        null));
+                                        null,
+                                        this.keys));
     this.tableNameList.add(targetTb);
   }
 
@@ -322,10 +402,17 @@ public class Translator {
     // Only send to in neighbours and out neighbours.
     case "in": case "out": {
       int flag = dir.equals("in") ? 0 : 1;
+      if (this.sources != null) {
+        attrList.add(context + ".source_id AS source_id");
+      }
       attrList.add(attrs[flag] + " AS id");
       attrList.add(content + " AS val");
       pred = "edge." + attrs[1-flag] + " = " + context + ".id" + joinStr;
       String groupBy = dir.equals("in") ? "src" : "dest";
+      if (this.sources != null) {
+        // One join with edge sends the messages of all the sources.
+        groupBy = context + ".source_id, " + groupBy;
+      }
       this.blocks.add(new SelectIntoBlock("sendMsg",
                                           this.indentLevel,
                                           attrList,
@@ -339,6 +426,9 @@ public class Translator {
     // Send to all neighbours.
     case "all": {
       int flag = 0;
+      if (this.sources != null) {
+        attrList.add(context + ".source_id AS source_id");
+      }
       attrList.add(attrs[flag] + " AS id");
       attrList.add(content + " AS val");
       SelectIntoBlock lhs  = new SelectIntoBlock("genMsg0",
@@ -353,6 +443,9 @@ public class Translator {
                                                  "src");
       flag = 1 - flag;
       attrList.clear();
+      if (this.sources != null) {
+        attrList.add(context + ".source_id AS source_id");
+      }
       attrList.add(attrs[flag] + " AS id");
       attrList.add(content + " AS val");
       SelectIntoBlock rhs = new SelectIntoBlock("genMsg1",
@@ -380,6 +473,7 @@ public class Translator {
     }
     this.tableNameList.add("message");
     this.convertedOptions.put("contentStr", content);
+    this.convertedOptions.put("sendContext", context);
   }
 
   /**
@@ -439,7 +533,8 @@ public class Translator {
           blocks.add(new UpdateVertexBlock("setVal",
                                            this.indentLevel,
                                            context,
-                                           newVal));
+                                           newVal,
+                                           this.keys));
           this.convertedOptions.put("setValContext", context);
           this.convertedOptions.put("setValNewVal", newVal);
 
@@ -481,6 +576,146 @@ public class Translator {
 
   }
 
+  /**
+   * @brief Parse the Aggregate section, a list of name = expression where
+   * the expression aggregates getAggregationVal() (the combined message)
+   * and getVal() (the value before the update) over the vertices that
+   * received messages, and the condition of End UNTIL on them.
+   */
+  private void parseAggregates() {
+    String text = options.get("Aggregate");
+    if (text != null) {
+      int depth = 0;
+      int start = 0;
+      for (int i = 0; i <= text.length(); ++i) {
+        char c = i < text.length() ? text.charAt(i) : ',';
+        if (c == '(') ++depth;
+        if (c == ')') --depth;
+        if (c != ',' || depth != 0) continue;
+        String item = text.substring(start, i).trim();
+        start = i + 1;
+        int eq = item.indexOf('=');
+        String name = eq < 0 ? "" : item.substring(0, eq).trim();
+        String expr = eq < 0 ? "" : item.substring(eq + 1).trim();
+        if (!name.matches("[A-Za-z_]\\w*") || expr.isEmpty()) {
+          throw new IllegalArgumentException(
+              "Aggregate should be a list of name = expression, not " + item);
+        }
+        if (RESERVED_VARS.contains(name.toLowerCase())
+            || this.aggregates.containsKey(name)) {
+          throw new IllegalArgumentException(
+              "Aggregate " + name + " is defined twice or is reserved");
+        }
+        this.aggregates.put(name, expr.replace("getAggregationVal()", "cur.val")
+                                      .replace("getVal()", "next.val"));
+      }
+    }
+    String cond = options.get("EndCondition");
+    if (cond != null) {
+      if (this.aggregates.isEmpty()) {
+        throw new IllegalArgumentException(
+            "End UNTIL needs the aggregates of an Aggregate section");
+      }
+      for (String name : this.aggregates.keySet()) {
+        cond = cond.replaceAll("(?<![@\\w.])" + name + "\\b", "@" + name);
+      }
+      this.until = cond;
+    }
+  }
+
+  /**
+   * @brief Check the tolerance of Freeze, below which a vertex stops
+   * sending, and the options it can not be used with.
+   */
+  private void parseFreeze() {
+    String freeze = options.get("Freeze").trim();
+    double eps;
+    try {
+      eps = Double.parseDouble(freeze);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(
+          "Freeze should be a number, not " + freeze);
+    }
+    if (eps < 0) {
+      throw new IllegalArgumentException("Freeze should not be negative");
+    }
+    if (this.sources != null
+        || options.get("Checkpoint") != null
+        || this.convertedOptions.get("partitions") != null
+        || "COLUMNSTORE".equals(this.convertedOptions.get("layout"))
+        || "POINTER_JUMPING".equals(this.convertedOptions.get("componentPlan"))
+        || !this.aggregates.isEmpty()) {
+      throw new IllegalArgumentException(
+          "Freeze can not be used together with Sources, Checkpoint,"
+          + " Partitions, Layout COLUMNSTORE, ComponentPlan POINTER_JUMPING"
+          + " or Aggregate");
+    }
+    this.convertedOptions.put("freeze", freeze);
+    this.convertedOptions.put("vertexValType", options.get("VertexValType"));
+    this.convertedOptions.put("messageValType", options.get("MessageValType"));
+  }
+
+  /**
+   * @brief Check that the program can send the changes of its values, and
+   * keep a, b of its update and the tolerance for the optimizer.
+   */
+  private void parseDelta() {
+    double[] affine = sumAffine(this.options);
+    if (affine == null) {
+      throw new IllegalArgumentException(
+          "Accumulation DELTA needs a program that sums linear messages into"
+          + " an affine update, such as pagerank.grail");
+    }
+    if (options.get("Checkpoint") != null
+        || this.convertedOptions.get("partitions") != null
+        || "COLUMNSTORE".equals(this.convertedOptions.get("layout"))
+        || options.get("Freeze") != null
+        || !this.aggregates.isEmpty()) {
+      throw new IllegalArgumentException(
+          "Accumulation DELTA can not be used together with Checkpoint,"
+          + " Partitions, Layout COLUMNSTORE, Freeze or Aggregate");
+    }
+    String tolerance = options.get("DeltaTolerance");
+    tolerance = tolerance == null ? "0.0001" : tolerance.trim();
+    try {
+      if (Double.parseDouble(tolerance) <= 0) {
+        throw new IllegalArgumentException(
+            "DeltaTolerance should be positive");
+      }
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(
+          "DeltaTolerance should be a number, not " + tolerance);
+    }
+    this.convertedOptions.put("accumulation", "DELTA");
+    this.convertedOptions.put("deltaScale", String.valueOf(affine[0]));
+    this.convertedOptions.put("deltaBase", String.valueOf(affine[1]));
+    this.convertedOptions.put("deltaTolerance", tolerance);
+    this.convertedOptions.put("vertexValType", options.get("VertexValType"));
+  }
+
+  /**
+   * @brief Compute the aggregates of the superstep in one statement, once
+   * the messages are combined and before the values are updated.
+   */
+  private void aggregate() {
+    if (this.aggregates.isEmpty()) {
+      return;
+    }
+    ArrayList<String> assigns = new ArrayList<String>();
+    for (Map.Entry<String, String> entry : this.aggregates.entrySet()) {
+      assigns.add("@" + entry.getKey() + " = " + entry.getValue());
+    }
+    ArrayList<String> joins = new ArrayList<String>();
+    for (String key : this.keys) {
+      joins.add("next." + key + " = cur." + key);
+    }
+    Block block = new Block("aggregate", this.indentLevel);
+    block.append("SELECT " + String.join(", ", assigns));
+    block.append("FROM cur, next");
+    block.append("WHERE " + String.join(" AND ", joins) + ";");
+    this.blocks.add(block);
+  }
+
   /** @brief Drop table.
    * @param s The name of the table.
    */
@@ -493,16 +728,16 @@ public class Translator {
    */
   private void superstep() {
     this.combineMsg();
+    this.aggregate();
     this.dropTable("message");
     this.tableNameList.remove("message");
     this.updateAndSend();
   }
 
   /**
-   * @brief Copy data from vertex table.
-   * @return The SQL statement.
+   * @brief Get InitiateVal as SQL.
    */
-  private void copyVertex() {
+  private String initValSql() {
     String initVal = options.get("InitiateVal");
 
     switch (initVal) {
@@ -523,12 +758,39 @@ public class Translator {
         break;
       }
     }
+    return initVal;
+  }
+
+  /**
+   * @brief Copy data from vertex table.
+   * @return The SQL statement.
+   */
+  private void copyVertex() {
+    String initVal = this.initValSql();
 
     ArrayList<String> attrList = new ArrayList<String>();
-    attrList.add("id AS id");
-    attrList.add("CAST(" + initVal + " AS "+ this.options.get("VertexValType") + ")" + " AS val");
     ArrayList<String> fromList = new ArrayList<String>();
-    fromList.add("vertex");
+    String warmStart = options.get("WarmStart");
+    if (this.sources != null) {
+      // Every source has its own copy of the vertices.
+      attrList.add(this.sources + ".id AS source_id");
+      attrList.add("vertex.id AS id");
+      attrList.add("CAST(" + initVal + " AS "+ this.options.get("VertexValType") + ")" + " AS val");
+      fromList.add(this.sources);
+      fromList.add("vertex");
+    } else if (warmStart == null) {
+      attrList.add("id AS id");
+      attrList.add("CAST(" + initVal + " AS "+ this.options.get("VertexValType") + ")" + " AS val");
+      fromList.add("vertex");
+    } else {
+      // Take the value from the previous result. The vertices that are
+      // missing from it fall back to the initial value.
+      attrList.add("vertex.id AS id");
+      attrList.add("CAST(COALESCE(" + warmStart + ".val, " + initVal + ") AS "
+                   + this.options.get("VertexValType") + ")" + " AS val");
+      fromList.add("vertex LEFT OUTER JOIN " + warmStart
+                   + " ON vertex.id = " + warmStart + ".id");
+    }
 
     this.blocks.add(new SelectIntoBlock("copyVertex", // The stage string.
                                         this.indentLevel, // The indent level.
@@ -548,7 +810,25 @@ public class Translator {
   private void initMsg(String[] attrs) {
     ArrayList<String> attrList = new ArrayList<String>();
     ArrayList<String> fromList = new ArrayList<String>();
-    if (attrs[0].equals("ALL")) {
+    String msgVal = "CAST(" + attrs[1] + " as " + this.options.get("MessageValType") + ")";
+    if (this.sources != null) {
+      // The vertex in InitialMessage is replaced by every source, or every
+      // vertex receives the message from every source.
+      if (attrs[0].equals("ALL")) {
+        msgVal = msgVal.replace("CAST(id ", "CAST(vertex.id ");
+        this.blocks.add(new InsertBlock("initMsg",
+                                        this.indentLevel,
+                                        this.sources + ".id, vertex.id, " + msgVal,
+                                        "message",
+                                        this.sources + ", vertex"));
+      } else {
+        this.blocks.add(new InsertBlock("initMsg",
+                                        this.indentLevel,
+                                        "id, id, " + msgVal,
+                                        "message",
+                                        this.sources));
+      }
+    } else if (attrs[0].equals("ALL")) {
       attrList.add("*");
       attrList.add(attrs[1]);
       fromList.add("vertex");
@@ -569,6 +849,114 @@ public class Translator {
 
   }
 
+  /**
+   * @brief Replace the values of the sender in an expression of send by the
+   * previous result, rejecting the variables of UpdateAndSend, which have
+   * no value before the first superstep.
+   */
+  private String warmExpr(String expr, ArrayList<String> vars) {
+    String warmStart = options.get("WarmStart");
+    for (String var : vars) {
+      if (Pattern.compile("\\b" + Pattern.quote(var) + "\\b").matcher(expr).find()) {
+        throw new IllegalArgumentException(
+            "WarmStart can not send the first messages of " + expr
+            + ", it reads the variable " + var);
+      }
+    }
+    return expr.replace("getVal()", warmStart + ".val")
+               .replace("getAggregationVal()", warmStart + ".val");
+  }
+
+  /**
+   * @brief Init message table from the previous result. Every vertex in the
+   * previous result sends the message it would send with its old value, if
+   * the condition of send holds for it, so the first superstep continues
+   * from where the previous run stopped. A send guarded by an if only sends
+   * from the vertices whose value moved from InitiateVal, as the others
+   * never sent in the previous run. The vertices that are missing from the
+   * previous result get the initial message instead.
+   * @param attrs The attrs of message table.
+   */
+  private void initWarmMsg(String[] attrs) {
+    String warmStart = options.get("WarmStart");
+    String msgType = this.options.get("MessageValType");
+    String[] attrNames = {"src", "dest"};
+
+    // Find the first send statement, which decides the messages, and
+    // whether it is in an if.
+    String[] params = null;
+    int depth = 0;
+    ArrayList<String> vars = new ArrayList<String>();
+    for (String stat : options.get("UpdateAndSend").split("\n")) {
+      StatementType type = this.getStatementType(stat);
+      if (type == StatementType.BEGIN_IF) {
+        ++depth;
+      } else if (type == StatementType.END_IF) {
+        --depth;
+      } else if (type == StatementType.ASSIGNMENT && stat.contains("=")) {
+        vars.add(stat.substring(0, stat.indexOf('=')).trim());
+      } else if (type == StatementType.SEND_MSG) {
+        params = stat.substring(stat.indexOf('(') + 1,
+                                stat.lastIndexOf(')')).split(",");
+        for (int j = 0; j < params.length; ++j) {
+          params[j] = params[j].trim();
+        }
+        break;
+      }
+    }
+
+    if (params != null && !params[0].equals("no")) {
+      String content = this.warmExpr(params[1], vars);
+      String cond = params.length > 2 ? this.warmExpr(params[2], vars) : null;
+      String fromStr = warmStart + ", edge";
+      String joinStr = "";
+      String used = content + " " + (cond == null ? "" : cond);
+      if (used.contains("out_cnts")) {
+        fromStr += ", out_cnts";
+        joinStr += " AND out_cnts.id = " + warmStart + ".id";
+      }
+      if (used.contains("in_cnts")) {
+        fromStr += ", in_cnts";
+        joinStr += " AND in_cnts.id = " + warmStart + ".id";
+      }
+      if (cond != null) {
+        joinStr += " AND " + cond;
+      }
+      if (depth > 0) {
+        joinStr += " AND " + warmStart + ".val <> " + this.initValSql();
+      }
+      // flag is the index of the receiver attribute.
+      for (int flag = 0; flag < 2; ++flag) {
+        if ((params[0].equals("in") && flag == 1)
+            || (params[0].equals("out") && flag == 0)) {
+          continue;
+        }
+        Block block = new Block("initWarmMsg", this.indentLevel);
+        block.append("INSERT INTO message");
+        block.append("SELECT edge." + attrNames[flag] + ", "
+                     + "CAST(" + content + " as " + msgType + ")");
+        block.append("FROM " + fromStr);
+        block.append("WHERE edge." + attrNames[1 - flag] + " = "
+                     + warmStart + ".id" + joinStr + ";");
+        this.blocks.add(block);
+      }
+    }
+
+    if (attrs[0].equals("ALL")) {
+      String initVal = attrs[1].equals("id") ? "vertex.id" : attrs[1];
+      Block block = new Block("initMsg", this.indentLevel);
+      block.append("INSERT INTO message");
+      block.append("SELECT vertex.id, CAST(" + initVal + " as " + msgType + ")");
+      block.append("FROM vertex");
+      block.append("WHERE NOT EXISTS (");
+      block.append("  SELECT * FROM " + warmStart);
+      block.append("  WHERE " + warmStart + ".id = vertex.id);");
+      this.blocks.add(block);
+    } else {
+      this.initMsg(attrs);
+    }
+  }
+
   /**
    * @brief Create table.
    * @param stage The stage string.
@@ -583,24 +971,33 @@ public class Translator {
     this.tableNameList.add(tbName);
   }
   /**
-   * @brief Init.
+   * @brief Drop the tables and indexes left by the previous run.
    */
-  private void init() {
+  private void dropTables() {
     this.blocks.add(
         new DropTableBlock("initdropcur", this.indentLevel, "cur"));
     this.blocks.add(
         new DropTableBlock("initdropmsg", this.indentLevel, "message"));
     this.blocks.add(
         new DropTableBlock("initdropnext", this.indentLevel, "next"));
-    this.blocks.add(
-        new DropTableBlock("initdropoutcnts", this.indentLevel, "out_cnts"));
+    if (!this.isCntsPreloaded()) {
+      this.blocks.add(
+          new DropTableBlock("initdropoutcnts", this.indentLevel, "out_cnts"));
+    }
     this.blocks.add(
         new DropTableBlock("initdroptoupdate", this.indentLevel, "toupdate"));
     this.blocks.add(
         new DropIndexBlock("initdropsrcindex", this.indentLevel, "idx_src", "edge"));
     this.blocks.add(
         new DropIndexBlock("initdropdestindex", this.indentLevel, "idx_dest", "edge"));
-    
+  }
+
+  /**
+   * @brief Init.
+   */
+  private void init() {
+    this.dropTables();
+
     // Copy Vertex table.
     this.copyVertex();
 
@@ -612,26 +1009,351 @@ public class Translator {
         initMsgStrs[i] = initMsgStrs[i].trim();
     }
 
+    // Generate in_cnts table or out_cnts table. They should be ready before
+    // the initial messages, as warm start may send messages along edges.
+    this.generateAllCnts();
+
     String[] attrs = {"id int" , "val "  + options.get("MessageValType")};
+    if (this.sources != null) {
+      attrs = new String[] {"source_id int", "id int",
+                            "val " + options.get("MessageValType")};
+    }
     this.createTable("createMsg", "message", attrs);
 
-    this.initMsg(initMsgStrs);
+    if (options.get("WarmStart") == null) {
+      this.initMsg(initMsgStrs);
+    } else {
+      this.initWarmMsg(initMsgStrs);
+    }
+  }
 
-    // Generate in_cnts table or out_cnts table.
-    if (options.get("UpdateAndSend").contains("in_cnts")) {
-      this.generateCnts(true);
+  /**
+   * @brief Init when resuming from a checkpoint. The vertex values and the
+   * messages are restored from the checkpoint tables by the optimizer, so we
+   * only rebuild what is derived from the edge table.
+   */
+  private void initResume() {
+    this.dropTables();
+    this.generateAllCnts();
+  }
+
+  /**
+   * @brief Whether an expression is getAggregationVal() or cur.val.
+   */
+  private static boolean isAggregationVal(Expr expr) {
+    if (expr instanceof Call) {
+      return ((Call) expr).getName().equals("getAggregationVal");
     }
+    return expr instanceof Ref && "cur".equals(((Ref) expr).getTable())
+           && ((Ref) expr).getName().equals("val");
+  }
 
-    if (options.get("UpdateAndSend").contains("out_cnts")) {
-      this.generateCnts(false);
+  /**
+   * @brief Whether an expression is getVal() or next.val.
+   */
+  private static boolean isVal(Expr expr) {
+    if (expr instanceof Call) {
+      return ((Call) expr).getName().equals("getVal");
     }
+    return expr instanceof Ref && "next".equals(((Ref) expr).getTable())
+           && ((Ref) expr).getName().equals("val");
+  }
+
+  /**
+   * @brief Whether the program sums linear messages into an affine update,
+   * such as pagerank.grail: every vertex starts from the initial message 0
+   * to all, sets its value to a * SUM(message) + b with numbers a and b,
+   * and sends a message linear in that value, such as
+   * getAggregationVal() / out_cnts.cnt, along every edge. The values of
+   * such a program are the sums of the changes of the values, so the
+   * changes alone can be sent (see Optimizer.deltaAccumulation).
+   * @param options The options of the program.
+   * @return {a, b}, or null if it is not.
+   */
+  static double[] sumAffine(HashMap<String, String> options) {
+    for (String option : new String[] {"Sources", "WarmStart", "NextTblSchema"}) {
+      if (options.get(option) != null) return null;
+    }
+    String combine = String.valueOf(options.get("CombineMessage"));
+    String sum = "(?i)\\bSUM\\s*\\(\\s*message\\s*\\)";
+    if (!String.valueOf(options.get("InitialMessage")).replaceAll("\\s", "")
+            .equalsIgnoreCase("(ALL,0)")
+        || combine.split(sum, -1).length != 2
+        || options.get("UpdateAndSend") == null) {
+      return null;
+    }
+    double[] affine;
+    ArrayList<Stmt> stmts;
+    try {
+      affine = affine(ExprParser.parse(combine.replaceAll(sum, "message")));
+      stmts = ExprParser.parseStatements(options.get("UpdateAndSend"));
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+    if (affine == null || affine[0] == 0 || stmts.size() != 2
+        || !(stmts.get(0) instanceof Stmt.SetVal)
+        || !isAggregationVal(((Stmt.SetVal) stmts.get(0)).value)
+        || !(stmts.get(1) instanceof Stmt.Send)) {
+      return null;
+    }
+    Stmt.Send send = (Stmt.Send) stmts.get(1);
+    if (send.dir.equals("no") || !isLinear(send.content)) {
+      return null;
+    }
+    return affine;
+  }
+
+  /**
+   * @brief Get a and b of an expression a * message + b of numbers.
+   * @return {a, b}, or null if the expression is not.
+   */
+  private static double[] affine(Expr expr) {
+    if (expr instanceof Literal) {
+      try {
+        return new double[] {0, Double.parseDouble(((Literal) expr).getText())};
+      } catch (NumberFormatException e) {
+        return null;
+      }
+    }
+    if (expr instanceof Ref) {
+      Ref ref = (Ref) expr;
+      return ref.getTable() == null && ref.getName().equals("message")
+             ? new double[] {1, 0} : null;
+    }
+    if (expr instanceof Unary) {
+      double[] operand = affine(((Unary) expr).getOperand());
+      return ((Unary) expr).getOp().equals("-") && operand != null
+             ? new double[] {-operand[0], -operand[1]} : null;
+    }
+    if (!(expr instanceof Binary)) return null;
+    Binary binary = (Binary) expr;
+    double[] lhs = affine(binary.getLhs());
+    double[] rhs = affine(binary.getRhs());
+    if (lhs == null || rhs == null) return null;
+    switch (binary.getOp()) {
+      case "+": return new double[] {lhs[0] + rhs[0], lhs[1] + rhs[1]};
+      case "-": return new double[] {lhs[0] - rhs[0], lhs[1] - rhs[1]};
+      case "*":
+        if (lhs[0] != 0 && rhs[0] != 0) return null;
+        return new double[] {lhs[0] * rhs[1] + rhs[0] * lhs[1], lhs[1] * rhs[1]};
+      case "/":
+        if (rhs[0] != 0 || rhs[1] == 0) return null;
+        return new double[] {lhs[0] / rhs[1], lhs[1] / rhs[1]};
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * @brief Whether a message is getAggregationVal() times or divided by
+   * expressions of the edge and the degree tables.
+   */
+  private static boolean isLinear(Expr expr) {
+    if (isAggregationVal(expr)) return true;
+    if (expr instanceof Unary) {
+      return ((Unary) expr).getOp().equals("-")
+             && isLinear(((Unary) expr).getOperand());
+    }
+    if (!(expr instanceof Binary)) return false;
+    Binary binary = (Binary) expr;
+    switch (binary.getOp()) {
+      case "*":
+        return (isLinear(binary.getLhs()) && isFree(binary.getRhs()))
+               || (isFree(binary.getLhs()) && isLinear(binary.getRhs()));
+      case "/":
+        return isLinear(binary.getLhs()) && isFree(binary.getRhs());
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * @brief Whether an expression does not read the value of a vertex.
+   */
+  private static boolean isFree(Expr expr) {
+    return !expr.toString().matches(
+        "(?s).*(getAggregationVal|getVal|\\b(cur|next)\\.val\\b).*");
+  }
+
+  /**
+   * @brief Whether the program is min-label propagation, i.e. the weakly
+   * connected components of wcc.grail: every vertex starts from INT_MAX and
+   * the message of its own id, and when the minimum it receives is smaller
+   * than its value, it takes the minimum and sends it to all neighbors. The
+   * value of every vertex ends as the smallest id of its component, so the
+   * labels can be computed by other plans than propagation.
+   * @param options The options of the program.
+   * @return Whether it is.
+   */
+  static boolean isMinLabel(HashMap<String, String> options) {
+    for (String option : new String[] {"Sources", "WarmStart", "NextTblSchema"}) {
+      if (options.get(option) != null) return false;
+    }
+    if (!"INT".equalsIgnoreCase(String.valueOf(options.get("VertexValType")).trim())
+        || !"INT".equalsIgnoreCase(String.valueOf(options.get("MessageValType")).trim())
+        || !"INT_MAX".equals(String.valueOf(options.get("InitiateVal")).trim())
+        || !String.valueOf(options.get("InitialMessage")).replaceAll("\\s", "")
+            .equalsIgnoreCase("(ALL,id)")
+        || !String.valueOf(options.get("CombineMessage")).replaceAll("\\s", "")
+            .equalsIgnoreCase("MIN(message)")
+        || !"NO_MESSAGE".equals(String.valueOf(options.get("End")).trim())
+        || options.get("UpdateAndSend") == null) {
+      return false;
+    }
+    ArrayList<Stmt> stmts;
+    try {
+      stmts = ExprParser.parseStatements(options.get("UpdateAndSend"));
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
+    // [var = cond] if (var or cond) { setVal(agg) send(all, agg) }
+    String var = null;
+    if (stmts.size() == 2 && stmts.get(0) instanceof Stmt.Assign) {
+      Stmt.Assign assign = (Stmt.Assign) stmts.remove(0);
+      if (!isImprovement(assign.value)) return false;
+      var = assign.name;
+    }
+    if (stmts.size() != 1 || !(stmts.get(0) instanceof Stmt.If)) {
+      return false;
+    }
+    Stmt.If ifStmt = (Stmt.If) stmts.get(0);
+    boolean guarded = var != null
+        ? ifStmt.cond instanceof Ref && ((Ref) ifStmt.cond).getTable() == null
+          && ((Ref) ifStmt.cond).getName().equals(var)
+        : isImprovement(ifStmt.cond);
+    if (!guarded || ifStmt.body.size() != 2) {
+      return false;
+    }
+    Stmt first = ifStmt.body.get(0);
+    Stmt second = ifStmt.body.get(1);
+    return first instanceof Stmt.SetVal
+           && isAggregationVal(((Stmt.SetVal) first).value)
+           && second instanceof Stmt.Send
+           && ((Stmt.Send) second).dir.equals("all")
+           && ((Stmt.Send) second).cond == null
+           && isAggregationVal(((Stmt.Send) second).content);
+  }
+
+  /**
+   * @brief Whether a condition is getAggregationVal() < getVal().
+   */
+  private static boolean isImprovement(Expr cond) {
+    if (!(cond instanceof Binary)) return false;
+    Binary binary = (Binary) cond;
+    return (binary.getOp().equals("<")
+            && isAggregationVal(binary.getLhs()) && isVal(binary.getRhs()))
+           || (binary.getOp().equals(">")
+               && isVal(binary.getLhs()) && isAggregationVal(binary.getRhs()));
   }
 
   /**
    * @brief Generate SQL.
    */
   public void translate() {
-    init();
+    if (this.sources != null) {
+      this.convertedOptions.put("sources", this.sources);
+    }
+    if (options.get("Checkpoint") != null) {
+      this.convertedOptions.put("checkpoint", options.get("Checkpoint"));
+    }
+    if (isMinLabel(this.options)) {
+      this.convertedOptions.put("minLabel", "y");
+    }
+    String componentPlan = options.get("ComponentPlan");
+    if (componentPlan != null) {
+      componentPlan = componentPlan.trim().toUpperCase();
+      if (!componentPlan.equals("LABEL_PROPAGATION")
+          && !componentPlan.equals("POINTER_JUMPING")) {
+        throw new IllegalArgumentException(
+            "Unknown ComponentPlan " + componentPlan);
+      }
+      if (componentPlan.equals("POINTER_JUMPING")) {
+        if (this.convertedOptions.get("minLabel") == null) {
+          throw new IllegalArgumentException(
+              "ComponentPlan POINTER_JUMPING needs a min-label propagation"
+              + " program such as wcc.grail");
+        }
+        if (options.get("Checkpoint") != null || options.get("Resume") != null) {
+          throw new IllegalArgumentException(
+              "ComponentPlan POINTER_JUMPING can not be used together with"
+              + " Checkpoint");
+        }
+      }
+      this.convertedOptions.put("componentPlan", componentPlan);
+    }
+    if (options.get("Partitions") != null) {
+      int partitions;
+      try {
+        partitions = Integer.parseInt(options.get("Partitions").trim());
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException(
+            "Partitions should be a number, not " + options.get("Partitions"));
+      }
+      if (partitions < 2) {
+        throw new IllegalArgumentException(
+            "Partitions should be at least 2");
+      }
+      if ("POINTER_JUMPING".equals(this.convertedOptions.get("componentPlan"))) {
+        throw new IllegalArgumentException(
+            "ComponentPlan POINTER_JUMPING can not be used together with"
+            + " Partitions");
+      }
+      this.convertedOptions.put("partitions", String.valueOf(partitions));
+    }
+    if (options.get("PartitionMap") != null) {
+      if (this.convertedOptions.get("partitions") == null) {
+        throw new IllegalArgumentException(
+            "PartitionMap can only be used together with Partitions");
+      }
+      this.convertedOptions.put("partitionMap", options.get("PartitionMap").trim());
+    }
+    String layout = options.get("Layout");
+    if (layout != null) {
+      layout = layout.trim().toUpperCase();
+      if (!layout.equals("ROWSTORE") && !layout.equals("COLUMNSTORE")) {
+        throw new IllegalArgumentException("Unknown Layout " + layout);
+      }
+      if (layout.equals("COLUMNSTORE")
+          && (this.convertedOptions.get("partitions") != null
+              || "POINTER_JUMPING".equals(
+                     this.convertedOptions.get("componentPlan")))) {
+        throw new IllegalArgumentException(
+            "Layout COLUMNSTORE can not be used together with Partitions or"
+            + " ComponentPlan");
+      }
+      this.convertedOptions.put("layout", layout);
+    }
+    this.parseAggregates();
+    if (!this.aggregates.isEmpty()
+        && "POINTER_JUMPING".equals(this.convertedOptions.get("componentPlan"))) {
+      throw new IllegalArgumentException(
+          "ComponentPlan POINTER_JUMPING can not be used together with"
+          + " Aggregate");
+    }
+    if (options.get("Freeze") != null) {
+      this.parseFreeze();
+    }
+    String accumulation = options.get("Accumulation");
+    if (accumulation != null) {
+      accumulation = accumulation.trim().toUpperCase();
+      if (!accumulation.equals("VALUE") && !accumulation.equals("DELTA")) {
+        throw new IllegalArgumentException(
+            "Unknown Accumulation " + accumulation);
+      }
+      if (accumulation.equals("DELTA")) {
+        this.parseDelta();
+      }
+    }
+    if (options.get("Resume") != null) {
+      if (options.get("Checkpoint") == null) {
+        throw new IllegalArgumentException(
+            "Resume needs the Checkpoint of the run it resumes");
+      }
+      this.convertedOptions.put("resume", options.get("Resume"));
+      initResume();
+    } else {
+      init();
+    }
     beginWhile();
     superstep();
     endWhile();
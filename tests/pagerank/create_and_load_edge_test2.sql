@@ -0,0 +1,6 @@
+drop table IF EXISTS edge;
+create table edge(src int, dest int);
+insert into edge values(1,2);
+insert into edge values(2,3);
+insert into edge values(3,2);
+select * from edge;
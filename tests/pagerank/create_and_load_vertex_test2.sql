@@ -0,0 +1,7 @@
+drop table IF EXISTS vertex;
+create table vertex(id int);
+insert into vertex values(1);
+insert into vertex values(2);
+insert into vertex values(3);
+insert into vertex values(4);
+select * from vertex;